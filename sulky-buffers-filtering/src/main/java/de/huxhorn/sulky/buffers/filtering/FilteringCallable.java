@@ -35,8 +35,10 @@
 package de.huxhorn.sulky.buffers.filtering;
 
 import de.huxhorn.sulky.buffers.Buffer;
+import de.huxhorn.sulky.buffers.RangeRead;
 import de.huxhorn.sulky.conditions.Condition;
 import de.huxhorn.sulky.tasks.AbstractProgressingCallable;
+import java.util.List;
 import java.util.Objects;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +48,11 @@ public class FilteringCallable<E>
 {
 	private final Logger logger = LoggerFactory.getLogger(FilteringCallable.class);
 
+	/**
+	 * The maximum number of elements read from the source buffer at once.
+	 */
+	private static final int CHUNK_SIZE = 100;
+
 	private final FilteringBuffer<E> filteringBuffer;
 	private final int filterDelay;
 	private long lastFilteredElement = -1;
@@ -83,21 +90,32 @@ public class FilteringCallable<E>
 
 			if(currentSize != filterStartIndex)
 			{
-				for(long i = filterStartIndex; i < currentSize; i++)
+				long i = filterStartIndex;
+				while(i < currentSize && !disposed)
 				{
-					disposed = filteringBuffer.isDisposed();
-					if(disposed)
+					// uses a single range read if supported by the source buffer
+					List<E> chunk = RangeRead.get(sourceBuffer, i, (int) Math.min(CHUNK_SIZE, currentSize - i));
+					if(chunk.isEmpty())
 					{
+						// source buffer has been reset in the meantime
 						break;
 					}
-					E current = sourceBuffer.get(i);
-					if(current != null && condition.isTrue(current))
+					for(E current : chunk)
 					{
-						filteringBuffer.addFilteredIndex(i);
-						if(logger.isDebugEnabled()) logger.debug("Added index: {}", i);
+						disposed = filteringBuffer.isDisposed();
+						if(disposed)
+						{
+							break;
+						}
+						if(current != null && condition.isTrue(current))
+						{
+							filteringBuffer.addFilteredIndex(i);
+							if(logger.isDebugEnabled()) logger.debug("Added index: {}", i);
+						}
+						setCurrentStep(i);
+						lastFilteredElement = i;
+						i++;
 					}
-					setCurrentStep(i);
-					lastFilteredElement = i;
 				}
 			}
 			try
@@ -38,9 +38,12 @@ import de.huxhorn.sulky.buffers.Buffer;
 import de.huxhorn.sulky.buffers.CircularBuffer;
 import de.huxhorn.sulky.buffers.Dispose;
 import de.huxhorn.sulky.buffers.DisposeOperation;
+import de.huxhorn.sulky.buffers.RangeReadOperation;
 import de.huxhorn.sulky.buffers.Reset;
+import de.huxhorn.sulky.buffers.SetOperation;
 import de.huxhorn.sulky.swing.RowBasedTableModel;
 import java.awt.EventQueue;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.swing.event.EventListenerList;
@@ -63,6 +66,19 @@ public abstract class BufferTableModel<T>
 	private final AtomicInteger pauseRowCount=new AtomicInteger(0);
 	private final AtomicInteger lastRowCount=new AtomicInteger(0);
 
+	/**
+	 * The number of rows read at once if the buffer implements RangeReadOperation.
+	 */
+	private static final int PAGE_SIZE = 100;
+
+	/**
+	 * The most recently read rows if the buffer implements RangeReadOperation, null otherwise.
+	 * Discarded on every table change.
+	 *
+	 * Not used if the buffer supports set since changed rows wouldn't cause a table change.
+	 */
+	private volatile RowPage<T> page;
+
 	@SuppressWarnings("PMD.ConstructorCallsOverridableMethod")
 	public BufferTableModel(Buffer<T> buffer)
 	{
@@ -104,6 +120,7 @@ public abstract class BufferTableModel<T>
 	public void setBuffer(Buffer<T> buffer)
 	{
 		this.buffer = buffer;
+		this.page = null;
 		if(buffer instanceof CircularBuffer)
 		{
 			this.circularBuffer = (CircularBuffer<T>) buffer;
@@ -174,6 +191,7 @@ public abstract class BufferTableModel<T>
 	}
 
 	@Override
+	@SuppressWarnings("unchecked")
 	public T getValueAt(int row)
 	{
 		if(circularBuffer != null)
@@ -181,9 +199,30 @@ public abstract class BufferTableModel<T>
 			// special circular handling
 			return circularBuffer.getRelative(row);
 		}
+		if(buffer instanceof RangeReadOperation && !isSetSupported(buffer))
+		{
+			RowPage<T> currentPage = page;
+			if(currentPage == null || !currentPage.contains(row))
+			{
+				int start = row - row % PAGE_SIZE;
+				currentPage = new RowPage<>(start, ((RangeReadOperation<T>) buffer).get(start, PAGE_SIZE));
+				page = currentPage;
+				if(!currentPage.contains(row))
+				{
+					// buffer has been reset in the meantime
+					return null;
+				}
+			}
+			return currentPage.get(row);
+		}
 		return buffer.get(row);
 	}
 
+	private static boolean isSetSupported(Buffer<?> buffer)
+	{
+		return buffer instanceof SetOperation && ((SetOperation<?>) buffer).isSetSupported();
+	}
+
 	@Override
 	public abstract int getColumnCount();
 
@@ -227,6 +266,7 @@ public abstract class BufferTableModel<T>
 
 	private void fireTableChange(TableModelEvent evt)
 	{
+		page = null;
 		Runnable r = new BufferTableModel.FireTableChangeRunnable(evt);
 		if(EventQueue.isDispatchThread())
 		{
@@ -238,6 +278,28 @@ public abstract class BufferTableModel<T>
 		}
 	}
 
+	private static class RowPage<T>
+	{
+		private final int start;
+		private final List<T> values;
+
+		RowPage(int start, List<T> values)
+		{
+			this.start = start;
+			this.values = values;
+		}
+
+		boolean contains(int row)
+		{
+			return row >= start && row < start + values.size();
+		}
+
+		T get(int row)
+		{
+			return values.get(row - start);
+		}
+	}
+
 	private class FireTableChangeRunnable
 		implements Runnable
 	{
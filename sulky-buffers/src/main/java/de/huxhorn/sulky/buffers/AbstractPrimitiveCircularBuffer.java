@@ -0,0 +1,289 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.lang.reflect.Array;
+import java.util.NoSuchElementException;
+
+/**
+ * Index, wrap and overflow bookkeeping shared by the primitive circular buffers.
+ *
+ * Subclasses only access the array of type A, using the indices returned by this class.
+ *
+ * @param <A> the primitive array type, e.g. long[].
+ */
+abstract class AbstractPrimitiveCircularBuffer<A> // NOPMD only the typed subclasses are meant to be instantiated
+{
+	final A array;
+	private final int bufferSize;
+	private int startIndex;
+	private int availableElements;
+	private long overflowCounter;
+	private long size;
+
+	AbstractPrimitiveCircularBuffer(A array)
+	{
+		this.array = array;
+		this.bufferSize = Array.getLength(array);
+	}
+
+	static int checkBufferSize(int bufferSize)
+	{
+		if(bufferSize < 1)
+		{
+			throw new IllegalArgumentException("bufferSize (" + bufferSize + ") must be positive!");
+		}
+		return bufferSize;
+	}
+
+	/**
+	 * Registers a single added value, overwriting the oldest one if the buffer is full.
+	 *
+	 * @return the array index receiving the added value.
+	 */
+	final int addIndex()
+	{
+		size++;
+		if(availableElements == bufferSize)
+		{
+			// overwrite the oldest value
+			int result = startIndex;
+			startIndex = wrap(startIndex + 1);
+			overflowCounter++;
+			return result;
+		}
+		int result = wrap(startIndex + availableElements);
+		availableElements++;
+		return result;
+	}
+
+	/**
+	 * Adds length values starting at offset using at most two System.arraycopy calls.
+	 *
+	 * @param values the values to add.
+	 * @param valuesLength the length of values.
+	 * @param offset the offset of the first value.
+	 * @param length the number of values to add.
+	 */
+	final void addAllValues(A values, int valuesLength, int offset, int length)
+	{
+		if(offset < 0 || length < 0 || offset > valuesLength - length)
+		{
+			throw new IndexOutOfBoundsException("Invalid range " + offset + ".." + (offset + length) + " of " + valuesLength + " values!");
+		}
+		if(length == 0)
+		{
+			return;
+		}
+		long overflow = Math.max(0, (long) availableElements + length - bufferSize);
+		int copyCount = Math.min(length, bufferSize);
+		// skipped values would have been overwritten by the copied ones
+		int writeIndex = (int) ((startIndex + (long) availableElements + length - copyCount) % bufferSize);
+		int firstCount = Math.min(copyCount, bufferSize - writeIndex);
+		int sourceOffset = offset + length - copyCount;
+		System.arraycopy(values, sourceOffset, array, writeIndex, firstCount);
+		if(firstCount < copyCount)
+		{
+			System.arraycopy(values, sourceOffset + firstCount, array, 0, copyCount - firstCount);
+		}
+		if(overflow > 0)
+		{
+			startIndex = (int) ((startIndex + overflow) % bufferSize);
+			availableElements = bufferSize;
+		}
+		else
+		{
+			availableElements += length;
+		}
+		overflowCounter += overflow;
+		size += length;
+	}
+
+	/**
+	 * @param index must be in the range [0..(getAvailableElements()-1)].
+	 * @return the array index of the value at the given relative index.
+	 */
+	final int checkedIndex(int index)
+	{
+		if(index < 0 || index >= availableElements)
+		{
+			throw new IndexOutOfBoundsException("Invalid index " + index + "! Must be 0.." + (availableElements - 1) + ".");
+		}
+		return wrap(startIndex + index);
+	}
+
+	/**
+	 * @param index must be in the range [0..(getAvailableElements()-1)], this is not checked.
+	 * @return the array index of the value at the given relative index.
+	 */
+	final int uncheckedIndex(int index)
+	{
+		return wrap(startIndex + index);
+	}
+
+	/**
+	 * @return the array index of the oldest value.
+	 * @throws NoSuchElementException if the buffer is empty.
+	 */
+	final int firstIndex()
+	{
+		if(availableElements == 0)
+		{
+			throw new NoSuchElementException("Buffer is empty!");
+		}
+		return startIndex;
+	}
+
+	/**
+	 * Removes the oldest value from the bookkeeping.
+	 *
+	 * @return the array index of the removed value.
+	 * @throws NoSuchElementException if the buffer is empty.
+	 */
+	final int removeFirstIndex()
+	{
+		int result = firstIndex();
+		startIndex = wrap(startIndex + 1);
+		availableElements--;
+		return result;
+	}
+
+	/**
+	 * @return the array index of the oldest value, i.e. the start of the first segment.
+	 */
+	final int getFirstSegmentStart()
+	{
+		return startIndex;
+	}
+
+	/**
+	 * @return the exclusive array index ending the first segment of available values.
+	 */
+	final int getFirstSegmentEnd()
+	{
+		return Math.min(bufferSize, startIndex + availableElements);
+	}
+
+	/**
+	 * @return the number of available values wrapped to the start of the array.
+	 */
+	final int getSecondSegmentLength()
+	{
+		return availableElements - (getFirstSegmentEnd() - startIndex);
+	}
+
+	final int drainValues(A target, int targetLength, int targetOffset, int max)
+	{
+		int count = copyValues(target, targetLength, targetOffset, max);
+		startIndex = wrap(startIndex + count);
+		availableElements -= count;
+		return count;
+	}
+
+	final int copyValues(A target, int targetLength, int targetOffset, int max)
+	{
+		if(targetOffset < 0 || targetOffset > targetLength)
+		{
+			throw new IndexOutOfBoundsException("Invalid targetOffset " + targetOffset + "! Must be 0.." + targetLength + ".");
+		}
+		int count = Math.min(Math.min(max, availableElements), targetLength - targetOffset);
+		if(count <= 0)
+		{
+			return 0;
+		}
+		int firstCount = Math.min(count, bufferSize - startIndex);
+		System.arraycopy(array, startIndex, target, targetOffset, firstCount);
+		if(firstCount < count)
+		{
+			System.arraycopy(array, 0, target, targetOffset + firstCount, count - firstCount);
+		}
+		return count;
+	}
+
+	public boolean isEmpty()
+	{
+		return availableElements == 0;
+	}
+
+	public boolean isFull()
+	{
+		return availableElements == bufferSize;
+	}
+
+	public void clear()
+	{
+		startIndex = 0;
+		availableElements = 0;
+	}
+
+	public void reset()
+	{
+		clear();
+		overflowCounter = 0;
+		size = 0;
+	}
+
+	/**
+	 * @return the number of values added since creation or the last reset.
+	 */
+	public long getSize()
+	{
+		return size;
+	}
+
+	public int getAvailableElements()
+	{
+		return availableElements;
+	}
+
+	public int getBufferSize()
+	{
+		return bufferSize;
+	}
+
+	public long getOverflowCounter()
+	{
+		return overflowCounter;
+	}
+
+	private int wrap(int index)
+	{
+		if(index >= bufferSize)
+		{
+			return index - bufferSize;
+		}
+		return index;
+	}
+}
@@ -34,22 +34,62 @@
 
 package de.huxhorn.sulky.buffers;
 
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 
+/**
+ * Iterator over all elements a Buffer contained at the time the iterator was created.
+ *
+ * If the buffer implements RangeReadOperation, elements are read in chunks of chunkSize elements.
+ *
+ * @param <E> the type of the elements.
+ */
 public class BasicBufferIterator<E>
 	implements Iterator<E>
 {
+	public static final int DEFAULT_CHUNK_SIZE = 100;
+
 	private final Buffer<E> buffer;
+	private final RangeReadOperation<E> rangeRead;
+	private final int chunkSize;
 	private final long size;
 	private long current;
+	private List<E> chunk;
+	private long chunkStart;
 
 	public BasicBufferIterator(Buffer<E> buffer)
+	{
+		this(buffer, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param buffer the buffer to iterate over.
+	 * @param chunkSize the number of elements read at once if buffer implements RangeReadOperation.
+	 */
+	@SuppressWarnings("unchecked")
+	public BasicBufferIterator(Buffer<E> buffer, int chunkSize)
 	{
 		this.buffer = Objects.requireNonNull(buffer, "buffer must not be null!");
+		if(chunkSize <= 0)
+		{
+			throw new IllegalArgumentException("chunkSize must be positive but was " + chunkSize + "!");
+		}
+		if(buffer instanceof RangeReadOperation)
+		{
+			this.rangeRead = (RangeReadOperation<E>) buffer;
+		}
+		else
+		{
+			this.rangeRead = null;
+		}
+		this.chunkSize = chunkSize;
 		this.size = buffer.getSize();
 		this.current = 0;
+		this.chunk = Collections.emptyList();
+		this.chunkStart = 0;
 	}
 
 	@Override
@@ -65,7 +105,29 @@ public class BasicBufferIterator<E>
 		{
 			throw new NoSuchElementException("Iterator doesn't have more entries");
 		}
-		E result = buffer.get(current);
+		E result;
+		if(rangeRead != null)
+		{
+			if(current < chunkStart || current >= chunkStart + chunk.size())
+			{
+				chunkStart = current;
+				chunk = rangeRead.get(current, (int) Math.min(chunkSize, size - current));
+			}
+			int chunkIndex = (int) (current - chunkStart);
+			if(chunkIndex < chunk.size())
+			{
+				result = chunk.get(chunkIndex);
+			}
+			else
+			{
+				// buffer has been reset in the meantime
+				result = null;
+			}
+		}
+		else
+		{
+			result = buffer.get(current);
+		}
 		current++;
 		return result;
 	}
@@ -34,19 +34,32 @@
 
 package de.huxhorn.sulky.buffers;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Thread-safe CircularBuffer that doesn't overwrite elements.
+ *
+ * If the buffer is full, adding threads wait on a Condition that is signalled as soon as elements are removed.
+ *
+ * @param <E> the type of the elements.
+ */
 public class BlockingCircularBuffer<E>
 	implements CircularBuffer<E>
 {
 	private final Logger logger = LoggerFactory.getLogger(BlockingCircularBuffer.class);
 
 	private final Lock lock;
+	private final Condition notFull;
 	private OverwritingCircularBuffer<E> events;
 	private static final int DEFAULT_CONGESTION_DELAY = 500;
 	private int congestionDelay;
@@ -55,6 +68,7 @@ public class BlockingCircularBuffer<E>
 	{
 		events = new OverwritingCircularBuffer<>(bufferSize);
 		lock = new ReentrantLock(true);
+		notFull = lock.newCondition();
 		this.congestionDelay = congestionDelay;
 	}
 
@@ -68,6 +82,13 @@ public class BlockingCircularBuffer<E>
 		return congestionDelay;
 	}
 
+	/**
+	 * Sets the time in milliseconds a thread waiting for free space waits before it logs another congestion
+	 * warning. Waiting threads continue as soon as elements are removed, regardless of this value.
+	 * 0 means that only one warning is logged.
+	 *
+	 * @param congestionDelay the delay in milliseconds, must not be negative.
+	 */
 	public void setCongestionDelay(int congestionDelay)
 	{
 		if(congestionDelay < 0)
@@ -77,32 +98,56 @@ public class BlockingCircularBuffer<E>
 		this.congestionDelay = congestionDelay;
 	}
 
+	/**
+	 * Adds the element, waiting for free space if the buffer is full.
+	 *
+	 * The element is dropped if the calling thread is interrupted while waiting.
+	 *
+	 * @param element the element to add.
+	 */
 	@Override
 	public void add(E element)
 	{
 		lock.lock();
 		try
 		{
-			while(events.isFull())
+			if(awaitNotFull())
 			{
-				lock.unlock();
-				try
-				{
-					if(logger.isWarnEnabled()) logger.warn("Congestion ({} events) detected, sleeping for {} millis.", events.getAvailableElements(), congestionDelay);
+				events.add(element);
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
 
-					if(congestionDelay > 0)
-					{
-						Thread.sleep(congestionDelay);
-					}
-				}
-				catch(InterruptedException e)
+	/**
+	 * Adds the element if the buffer has free space within the given timeout.
+	 *
+	 * @param element the element to add.
+	 * @param timeout the maximum time to wait.
+	 * @param unit the unit of timeout.
+	 * @return true if the element has been added, false if the timeout elapsed.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public boolean offer(E element, long timeout, TimeUnit unit)
+		throws InterruptedException
+	{
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try
+		{
+			while(events.isFull())
+			{
+				if(nanos <= 0)
 				{
-					if(logger.isInfoEnabled()) logger.info("Interrupted...");
-					return;
+					return false;
 				}
-				lock.lock();
+				nanos = notFull.awaitNanos(nanos);
 			}
 			events.add(element);
+			return true;
 		}
 		finally
 		{
@@ -110,22 +155,79 @@ public class BlockingCircularBuffer<E>
 		}
 	}
 
+	/**
+	 * Adds all elements, inserting as many as fit per lock acquisition.
+	 *
+	 * Remaining elements are dropped if the calling thread is interrupted while waiting.
+	 *
+	 * @param elements the elements to add.
+	 */
 	@Override
 	public void addAll(List<E> elements)
 	{
-		for(E element : elements)
+		int size = elements.size();
+		int offset = 0;
+		lock.lock();
+		try
 		{
-			add(element);
+			while(offset < size && awaitNotFull())
+			{
+				int count = Math.min(events.getBufferSize() - events.getAvailableElements(), size - offset);
+				events.addAll(elements.subList(offset, offset + count));
+				offset += count;
+			}
+		}
+		finally
+		{
+			lock.unlock();
 		}
 	}
 
+	/**
+	 * Adds all elements, inserting as many as fit per lock acquisition.
+	 *
+	 * Remaining elements are dropped if the calling thread is interrupted while waiting.
+	 *
+	 * @param elements the elements to add.
+	 */
 	@Override
 	public void addAll(E[] elements)
 	{
-		for(E element : elements)
+		addAll(Arrays.asList(elements));
+	}
+
+	/**
+	 * Waits until the buffer isn't full anymore. Must be called while holding the lock.
+	 *
+	 * @return false if the calling thread has been interrupted.
+	 */
+	private boolean awaitNotFull()
+	{
+		boolean warn = true;
+		while(events.isFull())
 		{
-			add(element);
+			if(warn && logger.isWarnEnabled()) logger.warn("Congestion ({} events) detected, waiting for free space.", events.getAvailableElements());
+			try
+			{
+				if(congestionDelay > 0)
+				{
+					// warn again if no space has been freed in time
+					warn = !notFull.await(congestionDelay, TimeUnit.MILLISECONDS);
+				}
+				else
+				{
+					notFull.await();
+					warn = false;
+				}
+			}
+			catch(InterruptedException e)
+			{
+				if(logger.isInfoEnabled()) logger.info("Interrupted...");
+				Thread.currentThread().interrupt();
+				return false;
+			}
 		}
+		return true;
 	}
 
 	@Override
@@ -148,7 +250,9 @@ public class BlockingCircularBuffer<E>
 		lock.lock();
 		try
 		{
-			return events.removeFirst();
+			E result = events.removeFirst();
+			notFull.signal();
+			return result;
 		}
 		finally
 		{
@@ -167,7 +271,9 @@ public class BlockingCircularBuffer<E>
 		{
 			if(!events.isEmpty())
 			{
-				return events.removeAll();
+				List<E> result = events.removeAll();
+				notFull.signalAll();
+				return result;
 			}
 			return null;
 		}
@@ -177,6 +283,54 @@ public class BlockingCircularBuffer<E>
 		}
 	}
 
+	@Override
+	public int drainTo(Collection<? super E> collection, int max)
+	{
+		lock.lock();
+		try
+		{
+			int result = events.drainTo(collection, max);
+			if(result > 0)
+			{
+				notFull.signalAll();
+			}
+			return result;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The consumer is called while holding the lock, so it should not block.
+	 */
+	@Override
+	public int drain(Consumer<? super E> consumer, int max)
+	{
+		lock.lock();
+		try
+		{
+			int availableElements = events.getAvailableElements();
+			try
+			{
+				return events.drain(consumer, max);
+			}
+			finally
+			{
+				// elements are removed even if the consumer failed
+				if(events.getAvailableElements() < availableElements)
+				{
+					notFull.signalAll();
+				}
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
 	@Override
 	public void clear()
 	{
@@ -184,6 +338,7 @@ public class BlockingCircularBuffer<E>
 		try
 		{
 			events.clear();
+			notFull.signalAll();
 		}
 		finally
 		{
@@ -294,6 +449,7 @@ public class BlockingCircularBuffer<E>
 		try
 		{
 			events.reset();
+			notFull.signalAll();
 		}
 		finally
 		{
@@ -0,0 +1,123 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Parks waiting threads on a Condition until the consumer signals free space.
+ *
+ * The consumer only acquires the lock if a producer is actually waiting, so the uncongested case stays
+ * lock-free. Because the producer checks for free space before it registers as waiting, a signal may get
+ * lost. Waiting is therefore limited to maxWaitNanos, after which the producer checks again.
+ */
+public class BlockingWaitStrategy
+	implements WaitStrategy
+{
+	public static final long DEFAULT_MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final long maxWaitNanos;
+	private final Lock lock = new ReentrantLock();
+	private final Condition spaceAvailable = lock.newCondition();
+	private final AtomicInteger waiting = new AtomicInteger();
+
+	public BlockingWaitStrategy()
+	{
+		this(DEFAULT_MAX_WAIT_NANOS);
+	}
+
+	/**
+	 * @param maxWaitNanos the maximum time a producer waits before it checks for free space again.
+	 */
+	public BlockingWaitStrategy(long maxWaitNanos)
+	{
+		if(maxWaitNanos <= 0)
+		{
+			throw new IllegalArgumentException("maxWaitNanos (" + maxWaitNanos + ") must be positive!");
+		}
+		this.maxWaitNanos = maxWaitNanos;
+	}
+
+	@Override
+	public void await(int attempt)
+		throws InterruptedException
+	{
+		lock.lock();
+		try
+		{
+			waiting.incrementAndGet();
+			try
+			{
+				spaceAvailable.awaitNanos(maxWaitNanos);
+			}
+			finally
+			{
+				waiting.decrementAndGet();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void signalAll()
+	{
+		if(waiting.get() == 0)
+		{
+			return;
+		}
+		lock.lock();
+		try
+		{
+			spaceAvailable.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "BlockingWaitStrategy[maxWaitNanos=" + maxWaitNanos + "]";
+	}
+}
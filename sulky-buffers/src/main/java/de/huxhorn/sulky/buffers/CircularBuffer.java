@@ -34,6 +34,10 @@
 
 package de.huxhorn.sulky.buffers;
 
+import java.util.Collection;
+import java.util.Objects;
+import java.util.function.Consumer;
+
 public interface CircularBuffer<E>
 	extends Buffer<E>, AppendOperation<E>, RemoveOperation<E>, ResetOperation
 {
@@ -56,6 +60,49 @@ public interface CircularBuffer<E>
 	 */
 	E setRelative(int index, E element);
 
+	/**
+	 * Removes at most <code>max</code> elements and adds them to the given collection.
+	 *
+	 * The default implementation calls removeFirst() for every element.
+	 *
+	 * @param collection the collection receiving the elements.
+	 * @param max the maximum number of elements to remove.
+	 * @return the number of removed elements.
+	 */
+	default int drainTo(Collection<? super E> collection, int max)
+	{
+		Objects.requireNonNull(collection, "collection must not be null!");
+		int count = 0;
+		while(count < max && !isEmpty())
+		{
+			collection.add(removeFirst());
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Removes at most <code>max</code> elements and passes them to the given consumer
+	 * without allocating an intermediate collection.
+	 *
+	 * The default implementation calls removeFirst() for every element.
+	 *
+	 * @param consumer the consumer receiving the elements.
+	 * @param max the maximum number of elements to remove.
+	 * @return the number of removed elements.
+	 */
+	default int drain(Consumer<? super E> consumer, int max)
+	{
+		Objects.requireNonNull(consumer, "consumer must not be null!");
+		int count = 0;
+		while(count < max && !isEmpty())
+		{
+			consumer.accept(removeFirst());
+			count++;
+		}
+		return count;
+	}
+
 	long getOverflowCounter();
 
 	int getAvailableElements();
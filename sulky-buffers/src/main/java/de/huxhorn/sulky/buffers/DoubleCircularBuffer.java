@@ -0,0 +1,212 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Overwriting circular buffer of primitive double values, e.g. for time series of metrics.
+ *
+ * Semantics match OverwritingCircularBuffer, but values are stored in a double[] so adding them
+ * neither boxes nor creates garbage. This class is not thread-safe.
+ */
+public final class DoubleCircularBuffer
+	extends AbstractPrimitiveCircularBuffer<double[]>
+{
+	public DoubleCircularBuffer(int bufferSize)
+	{
+		super(new double[checkBufferSize(bufferSize)]);
+	}
+
+	public void add(double value)
+	{
+		array[addIndex()] = value;
+	}
+
+	public void addAll(double[] values)
+	{
+		addAll(values, 0, values.length);
+	}
+
+	/**
+	 * Adds length values starting at offset using at most two System.arraycopy calls.
+	 *
+	 * @param values the values to add.
+	 * @param offset the offset of the first value.
+	 * @param length the number of values to add.
+	 */
+	public void addAll(double[] values, int offset, int length)
+	{
+		addAllValues(values, values.length, offset, length);
+	}
+
+	/**
+	 * Returns the value at the given <code>index</code>. <code>index</code> must be in the
+	 * range <code>[0..(getAvailableElements()-1)]</code>.
+	 *
+	 * @param index must be in the range [0..(getAvailableElements()-1)].
+	 * @return the value.
+	 */
+	public double getRelative(int index)
+	{
+		return array[checkedIndex(index)];
+	}
+
+	/**
+	 * Sets the value at the given <code>index</code>. <code>index</code> must be in the
+	 * range <code>[0..(getAvailableElements()-1)]</code>.
+	 *
+	 * @param index must be in the range [0..(getAvailableElements()-1)].
+	 * @param value the value to be set.
+	 * @return the previous value.
+	 */
+	public double setRelative(int index, double value)
+	{
+		int realIndex = checkedIndex(index);
+		double result = array[realIndex];
+		array[realIndex] = value;
+		return result;
+	}
+
+	/**
+	 * @return the oldest value.
+	 * @throws NoSuchElementException if the buffer is empty.
+	 */
+	public double removeFirst()
+	{
+		return array[removeFirstIndex()];
+	}
+
+	/**
+	 * @return all available values, oldest first.
+	 */
+	public double[] removeAll()
+	{
+		double[] result = new double[getAvailableElements()];
+		drainTo(result, 0, result.length);
+		return result;
+	}
+
+	/**
+	 * Removes at most max values and copies them into target without creating garbage.
+	 *
+	 * @param target the array receiving the values.
+	 * @param targetOffset the index of target receiving the oldest value.
+	 * @param max the maximum number of values to remove.
+	 * @return the number of removed values.
+	 */
+	public int drainTo(double[] target, int targetOffset, int max)
+	{
+		return drainValues(target, target.length, targetOffset, max);
+	}
+
+	/**
+	 * Copies all available values into target without removing them.
+	 *
+	 * @param target the array receiving the values, oldest first.
+	 * @param targetOffset the index of target receiving the oldest value.
+	 * @return the number of copied values.
+	 */
+	public int copyTo(double[] target, int targetOffset)
+	{
+		return copyValues(target, target.length, targetOffset, getAvailableElements());
+	}
+
+	/**
+	 * @return all available values, oldest first.
+	 */
+	public double[] toArray()
+	{
+		double[] result = new double[getAvailableElements()];
+		copyValues(result, result.length, 0, result.length);
+		return result;
+	}
+
+	/**
+	 * @return the smallest available value, NaN if any value is NaN.
+	 * @throws NoSuchElementException if the buffer is empty.
+	 */
+	public double min()
+	{
+		double result = array[firstIndex()];
+		int count = getAvailableElements();
+		for(int i = 1; i < count; i++)
+		{
+			result = Math.min(result, array[uncheckedIndex(i)]);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the largest available value, NaN if any value is NaN.
+	 * @throws NoSuchElementException if the buffer is empty.
+	 */
+	public double max()
+	{
+		double result = array[firstIndex()];
+		int count = getAvailableElements();
+		for(int i = 1; i < count; i++)
+		{
+			result = Math.max(result, array[uncheckedIndex(i)]);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the sum of all available values, 0 if the buffer is empty.
+	 */
+	public double sum()
+	{
+		double result = 0;
+		int firstEnd = getFirstSegmentEnd();
+		for(int i = getFirstSegmentStart(); i < firstEnd; i++)
+		{
+			result += array[i];
+		}
+		int secondEnd = getSecondSegmentLength();
+		for(int i = 0; i < secondEnd; i++)
+		{
+			result += array[i];
+		}
+		return result;
+	}
+
+	@Override
+	public String toString()
+	{
+		return Arrays.toString(toArray());
+	}
+}
@@ -0,0 +1,479 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lock-free, bounded multi-producer/single-consumer CircularBuffer.
+ *
+ * Any number of threads may add elements concurrently. A producer claims the sequence of its slot
+ * using CAS, stores the element and publishes the sequence so the consumer never sees a half-written
+ * slot. If the buffer is full, producers wait using the WaitStrategy until the consumer removed
+ * elements. Like BlockingCircularBuffer, elements are never overwritten so getOverflowCounter()
+ * is always 0.
+ *
+ * add, addAll, isEmpty, isFull, getAvailableElements, getSize and getBufferSize may be called by any thread.
+ * All other methods must only be called by a single consumer thread at a time.
+ *
+ * @param <E> the type of the elements.
+ */
+public final class MpscCircularBuffer<E>
+	implements CircularBuffer<E>
+{
+	private static final int MAXIMUM_BUFFER_SIZE = 1 << 30;
+
+	private final Logger logger = LoggerFactory.getLogger(MpscCircularBuffer.class);
+
+	private final int bufferSize;
+	private final int mask;
+	private final Object[] elements;
+	/**
+	 * Contains the sequence of the element stored in the respective slot as soon as it has been published.
+	 */
+	private final AtomicLongArray published;
+	private final Sequence claimSequence = new Sequence(0);
+	private final Sequence consumeSequence = new Sequence(0);
+	private final WaitStrategy waitStrategy;
+	/**
+	 * The sequence of the element at index 0 of get(long).
+	 */
+	private volatile long baseSequence;
+
+	public MpscCircularBuffer(int bufferSize)
+	{
+		this(bufferSize, new BlockingWaitStrategy());
+	}
+
+	/**
+	 * @param bufferSize the maximum number of elements.
+	 * @param waitStrategy the strategy used by producers while the buffer is full.
+	 */
+	public MpscCircularBuffer(int bufferSize, WaitStrategy waitStrategy)
+	{
+		if(bufferSize < 1 || bufferSize > MAXIMUM_BUFFER_SIZE)
+		{
+			throw new IllegalArgumentException("bufferSize (" + bufferSize + ") must be in the range [1.." + MAXIMUM_BUFFER_SIZE + "]!");
+		}
+		this.waitStrategy = Objects.requireNonNull(waitStrategy, "waitStrategy must not be null!");
+		this.bufferSize = bufferSize;
+		// slots are addressed by masking the sequence
+		int capacity = bufferSize == 1 ? 1 : Integer.highestOneBit(bufferSize - 1) << 1;
+		this.mask = capacity - 1;
+		this.elements = new Object[capacity];
+		this.published = new AtomicLongArray(capacity);
+		for(int i = 0; i < capacity; i++)
+		{
+			published.set(i, -1);
+		}
+	}
+
+	public WaitStrategy getWaitStrategy()
+	{
+		return waitStrategy;
+	}
+
+	/**
+	 * Adds the element, waiting for free space if the buffer is full.
+	 *
+	 * The element is dropped if the calling thread is interrupted while waiting.
+	 *
+	 * @param element the element to add.
+	 */
+	@Override
+	public void add(E element)
+	{
+		int attempt = 0;
+		for(;;)
+		{
+			long sequence = claimSequence.get();
+			if(sequence - consumeSequence.get() >= bufferSize)
+			{
+				if(!await(attempt))
+				{
+					return;
+				}
+				attempt++;
+				continue;
+			}
+			if(claimSequence.compareAndSet(sequence, sequence + 1))
+			{
+				publish(sequence, element);
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void addAll(List<E> elements)
+	{
+		internalAddAll(elements.toArray());
+	}
+
+	@Override
+	public void addAll(E[] elements)
+	{
+		internalAddAll(elements);
+	}
+
+	/**
+	 * Claims as many slots as currently available with a single CAS.
+	 */
+	private void internalAddAll(Object[] source)
+	{
+		int offset = 0;
+		int attempt = 0;
+		while(offset < source.length)
+		{
+			long sequence = claimSequence.get();
+			long free = bufferSize - (sequence - consumeSequence.get());
+			if(free <= 0)
+			{
+				if(!await(attempt))
+				{
+					return;
+				}
+				attempt++;
+				continue;
+			}
+			int count = (int) Math.min(free, source.length - offset);
+			if(claimSequence.compareAndSet(sequence, sequence + count))
+			{
+				for(int i = 0; i < count; i++)
+				{
+					publish(sequence + i, source[offset + i]);
+				}
+				offset += count;
+				attempt = 0;
+			}
+		}
+	}
+
+	private boolean await(int attempt)
+	{
+		try
+		{
+			waitStrategy.await(attempt);
+			return true;
+		}
+		catch(InterruptedException e)
+		{
+			if(logger.isInfoEnabled()) logger.info("Interrupted...");
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private void publish(long sequence, Object element)
+	{
+		int index = (int) sequence & mask;
+		elements[index] = element;
+		published.lazySet(index, sequence);
+	}
+
+	/**
+	 * Returns the element with the given sequence, waiting for a producer that claimed but did not yet publish it.
+	 */
+	private E waitForElement(long sequence)
+	{
+		int index = (int) sequence & mask;
+		while(published.get(index) != sequence)
+		{
+			Thread.yield();
+		}
+		@SuppressWarnings({"unchecked"})
+		E result = (E) elements[index];
+		return result;
+	}
+
+	@Override
+	public E removeFirst()
+	{
+		long sequence = consumeSequence.get();
+		if(sequence == claimSequence.get())
+		{
+			return null;
+		}
+		E result = waitForElement(sequence);
+		elements[(int) sequence & mask] = null;
+		consumeSequence.set(sequence + 1);
+		waitStrategy.signalAll();
+		return result;
+	}
+
+	@Override
+	public List<E> removeAll()
+	{
+		long start = consumeSequence.get();
+		long end = claimSequence.get();
+		List<E> result = new ArrayList<>((int) (end - start));
+		for(long sequence = start; sequence < end; sequence++)
+		{
+			result.add(waitForElement(sequence));
+			elements[(int) sequence & mask] = null;
+		}
+		consumeSequence.set(end);
+		waitStrategy.signalAll();
+		return result;
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> collection, int max)
+	{
+		Objects.requireNonNull(collection, "collection must not be null!");
+		long start = consumeSequence.get();
+		long end = Math.min(claimSequence.get(), start + Math.max(max, 0));
+		if(start == end)
+		{
+			return 0;
+		}
+		long sequence = start;
+		try
+		{
+			while(sequence < end)
+			{
+				collection.add(waitForElement(sequence));
+				elements[(int) sequence & mask] = null;
+				sequence++;
+			}
+		}
+		finally
+		{
+			consumeSequence.set(sequence);
+			waitStrategy.signalAll();
+		}
+		return (int) (end - start);
+	}
+
+	@Override
+	public int drain(Consumer<? super E> consumer, int max)
+	{
+		Objects.requireNonNull(consumer, "consumer must not be null!");
+		long start = consumeSequence.get();
+		long end = Math.min(claimSequence.get(), start + Math.max(max, 0));
+		if(start == end)
+		{
+			return 0;
+		}
+		long sequence = start;
+		try
+		{
+			while(sequence < end)
+			{
+				E element = waitForElement(sequence);
+				elements[(int) sequence & mask] = null;
+				// count the element as removed even if the consumer fails
+				sequence++;
+				consumer.accept(element);
+			}
+		}
+		finally
+		{
+			consumeSequence.set(sequence);
+			waitStrategy.signalAll();
+		}
+		return (int) (end - start);
+	}
+
+	@Override
+	public void clear()
+	{
+		long start = consumeSequence.get();
+		long end = claimSequence.get();
+		for(long sequence = start; sequence < end; sequence++)
+		{
+			waitForElement(sequence);
+			elements[(int) sequence & mask] = null;
+		}
+		consumeSequence.set(end);
+		waitStrategy.signalAll();
+	}
+
+	@Override
+	public void reset()
+	{
+		clear();
+		baseSequence = consumeSequence.get();
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return getAvailableElements() == 0;
+	}
+
+	@Override
+	public boolean isFull()
+	{
+		return getAvailableElements() == bufferSize;
+	}
+
+	@Override
+	public E getRelative(int index)
+	{
+		long availableElements = getAvailableElements();
+		if(index < 0 || index >= availableElements)
+		{
+			throw new IndexOutOfBoundsException("Invalid index " + index + "! Must be 0.." + (availableElements - 1) + ".");
+		}
+		return waitForElement(consumeSequence.get() + index);
+	}
+
+	@Override
+	public E setRelative(int index, E element)
+	{
+		long availableElements = getAvailableElements();
+		if(index < 0 || index >= availableElements)
+		{
+			throw new IndexOutOfBoundsException("Invalid index " + index + "! Must be 0.." + (availableElements - 1) + ".");
+		}
+		long sequence = consumeSequence.get() + index;
+		E result = waitForElement(sequence);
+		elements[(int) sequence & mask] = element;
+		return result;
+	}
+
+	/**
+	 * Returns the element with the given index, counted since creation or the last reset,
+	 * or null if it has already been removed.
+	 *
+	 * @param index must be in the range <code>[0..(getSize()-1)]</code>.
+	 * @return the value at the given <code>index</code>.
+	 */
+	@Override
+	public E get(long index)
+	{
+		long size = getSize();
+		if(index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("Invalid index " + index + "! Must be 0.." + (size - 1) + ".");
+		}
+		long sequence = baseSequence + index;
+		long first = consumeSequence.get();
+		if(sequence < first)
+		{
+			return null;
+		}
+		return waitForElement(sequence);
+	}
+
+	@Override
+	public long getSize()
+	{
+		return claimSequence.get() - baseSequence;
+	}
+
+	@Override
+	public long getOverflowCounter()
+	{
+		return 0;
+	}
+
+	@Override
+	public int getAvailableElements()
+	{
+		// read the consumer sequence first so the result can't be negative
+		long first = consumeSequence.get();
+		long end = claimSequence.get();
+		return (int) Math.min(end - first, bufferSize);
+	}
+
+	@Override
+	public int getBufferSize()
+	{
+		return bufferSize;
+	}
+
+	@Override
+	public Iterator<E> iterator()
+	{
+		return new BufferIterator();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "MpscCircularBuffer[bufferSize=" + bufferSize + ", availableElements=" + getAvailableElements() + ", waitStrategy=" + waitStrategy + "]";
+	}
+
+	/**
+	 * Iterates over the elements available at the time the iterator was created.
+	 */
+	private class BufferIterator
+		implements Iterator<E>
+	{
+		private final long end;
+		private long current;
+
+		BufferIterator()
+		{
+			current = consumeSequence.get();
+			end = current + getAvailableElements();
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return current < end;
+		}
+
+		@Override
+		public E next()
+		{
+			if(!hasNext())
+			{
+				throw new NoSuchElementException("Iterator doesn't have more entries");
+			}
+			E result = waitForElement(current);
+			current++;
+			return result;
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException("Buffer does not support removal of arbitrary elements!");
+		}
+	}
+}
@@ -36,10 +36,14 @@ package de.huxhorn.sulky.buffers;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.RandomAccess;
+import java.util.function.Consumer;
 
 /**
  * http://c2.com/cgi/wiki?CircularBuffer
@@ -50,6 +54,10 @@ public final class OverwritingCircularBuffer<E>
 	private static final long serialVersionUID = 3423268103026176567L;
 
 	private final int bufferSize;
+	/**
+	 * bufferSize - 1 if bufferSize is a power of two, -1 otherwise.
+	 */
+	private transient int mask;
 	private transient int startIndex;
 	private transient int endIndex;
 	private transient long overflowCounter;
@@ -64,11 +72,53 @@ public final class OverwritingCircularBuffer<E>
 			throw new IllegalArgumentException("bufferSize (" + bufferSize + ") must be positive!");
 		}
 		this.bufferSize = bufferSize;
+		this.mask = calculateMask(bufferSize);
 
 		array = new Object[bufferSize];
 		reset();
 	}
 
+	/**
+	 * Creates a buffer with the smallest power of two buffer size greater than or equal to
+	 * <code>minimumBufferSize</code>, so indices are resolved using bit masking.
+	 *
+	 * @param minimumBufferSize the minimum buffer size.
+	 * @param <E> the type of the elements.
+	 * @return the new buffer.
+	 */
+	public static <E> OverwritingCircularBuffer<E> withPowerOfTwoBufferSize(int minimumBufferSize)
+	{
+		if(minimumBufferSize < 1 || minimumBufferSize > 1 << 30)
+		{
+			throw new IllegalArgumentException("minimumBufferSize (" + minimumBufferSize + ") must be in the range [1.." + (1 << 30) + "]!");
+		}
+		int bufferSize = minimumBufferSize == 1 ? 1 : Integer.highestOneBit(minimumBufferSize - 1) << 1;
+		return new OverwritingCircularBuffer<>(bufferSize);
+	}
+
+	private static int calculateMask(int bufferSize)
+	{
+		if(Integer.bitCount(bufferSize) == 1)
+		{
+			return bufferSize - 1;
+		}
+		return -1;
+	}
+
+	private int realIndex(int index)
+	{
+		if(mask >= 0)
+		{
+			return (startIndex + index) & mask;
+		}
+		int result = startIndex + index;
+		if(result >= bufferSize)
+		{
+			result -= bufferSize;
+		}
+		return result;
+	}
+
 	@Override
 	public void add(E element)
 	{
@@ -77,11 +127,6 @@ public final class OverwritingCircularBuffer<E>
 
 	private void internalAdd(Object element)
 	{
-		if(isFull())
-		{
-			removeFirst();
-			overflowCounter++;
-		}
 		size++;
 		array[endIndex] = element;
 		endIndex++;
@@ -89,7 +134,13 @@ public final class OverwritingCircularBuffer<E>
 		{
 			endIndex = 0;
 		}
-		if(startIndex == endIndex)
+		if(full)
+		{
+			// the oldest element has just been overwritten
+			startIndex = endIndex;
+			overflowCounter++;
+		}
+		else if(startIndex == endIndex)
 		{
 			full = true;
 		}
@@ -98,19 +149,64 @@ public final class OverwritingCircularBuffer<E>
 	@Override
 	public void addAll(List<E> elements)
 	{
-		for(E element : elements)
+		int count = elements.size();
+		if(count > bufferSize)
+		{
+			// only the last bufferSize elements survive
+			internalAddAll(elements.subList(count - bufferSize, count).toArray(), count);
+		}
+		else
 		{
-			add(element);
+			internalAddAll(elements.toArray(), count);
 		}
 	}
 
 	@Override
 	public void addAll(E[] elements)
 	{
-		for(E element : elements)
+		internalAddAll(elements, elements.length);
+	}
+
+	/**
+	 * Copies the last min(source.length, bufferSize) elements of source into the array using at most
+	 * two System.arraycopy calls and accounts for all overflowing elements at once.
+	 *
+	 * @param source the elements to add.
+	 * @param count the number of elements that are added, may be larger than source.length if the
+	 *              first elements have already been skipped because they would be overwritten anyway.
+	 */
+	private void internalAddAll(Object[] source, int count)
+	{
+		if(count == 0)
+		{
+			return;
+		}
+		int availableElements = getAvailableElements();
+		long overflow = Math.max(0, (long) availableElements + count - bufferSize);
+		int copyCount = Math.min(source.length, bufferSize);
+		int sourceOffset = source.length - copyCount;
+		// skipped elements would have been overwritten by the copied ones
+		int writeIndex = (int) ((endIndex + (long) (count - copyCount)) % bufferSize);
+		int firstCount = Math.min(copyCount, bufferSize - writeIndex);
+		System.arraycopy(source, sourceOffset, array, writeIndex, firstCount);
+		if(firstCount < copyCount)
 		{
-			add(element);
+			System.arraycopy(source, sourceOffset + firstCount, array, 0, copyCount - firstCount);
 		}
+		int newEnd = (int) ((endIndex + (long) count) % bufferSize);
+		if(overflow > 0)
+		{
+			// the buffer is full, i.e. the oldest remaining element is the one following the last added element
+			startIndex = newEnd;
+			full = true;
+		}
+		else if(availableElements + count == bufferSize)
+		{
+			full = true;
+		}
+		endIndex = newEnd;
+		overflowCounter += overflow;
+		size += count;
 	}
 
 	@Override
@@ -136,9 +232,8 @@ public final class OverwritingCircularBuffer<E>
 		{
 			throw new IndexOutOfBoundsException("Invalid index " + index + "! Must be 0.." + (availableElements - 1) + ".");
 		}
-		int realIndex = (startIndex + index) % bufferSize;
 		@SuppressWarnings({"unchecked"})
-		E result = (E) array[realIndex];
+		E result = (E) array[realIndex(index)];
 		return result;
 	}
 
@@ -150,7 +245,7 @@ public final class OverwritingCircularBuffer<E>
 		{
 			throw new IndexOutOfBoundsException("Invalid index " + index + "! Must be 0.." + (availableElements - 1) + ".");
 		}
-		int realIndex = (startIndex + index) % bufferSize;
+		int realIndex = realIndex(index);
 		@SuppressWarnings({"unchecked"})
 		E result = (E) array[realIndex];
 		array[realIndex] = element;
@@ -180,15 +275,92 @@ public final class OverwritingCircularBuffer<E>
 	@Override
 	public List<E> removeAll()
 	{
-		long availableElements = getAvailableElements();
-		List<E> result = new ArrayList<>((int) availableElements);
+		int availableElements = getAvailableElements();
+		List<E> result = new ArrayList<>(availableElements);
+		drainTo(result, availableElements);
+		return result;
+	}
 
-		for(int i = 0; i < availableElements; i++)
+	/**
+	 * Adds the one or two contiguous segments of the array to the collection at once.
+	 */
+	@Override
+	public int drainTo(Collection<? super E> collection, int max)
+	{
+		Objects.requireNonNull(collection, "collection must not be null!");
+		int count = Math.min(max, getAvailableElements());
+		if(count <= 0)
+		{
+			return 0;
+		}
+		int firstCount = Math.min(count, bufferSize - startIndex);
+		@SuppressWarnings({"unchecked"})
+		List<E> elements = (List<E>) Arrays.asList(array);
+		collection.addAll(elements.subList(startIndex, startIndex + firstCount));
+		if(firstCount < count)
 		{
-			result.add(removeFirst());
+			collection.addAll(elements.subList(0, count - firstCount));
 		}
+		discardFirst(count);
+		return count;
+	}
 
-		return result;
+	@Override
+	public int drain(Consumer<? super E> consumer, int max)
+	{
+		Objects.requireNonNull(consumer, "consumer must not be null!");
+		int count = Math.min(max, getAvailableElements());
+		if(count <= 0)
+		{
+			return 0;
+		}
+		int consumed = 0;
+		try
+		{
+			int index = startIndex;
+			while(consumed < count)
+			{
+				@SuppressWarnings({"unchecked"})
+				E element = (E) array[index];
+				// count the element as removed even if the consumer fails
+				consumed++;
+				consumer.accept(element);
+				index++;
+				if(index == bufferSize)
+				{
+					index = 0;
+				}
+			}
+		}
+		finally
+		{
+			discardFirst(consumed);
+		}
+		return count;
+	}
+
+	/**
+	 * Removes the first count elements, count must not exceed getAvailableElements().
+	 */
+	private void discardFirst(int count)
+	{
+		if(count == 0)
+		{
+			return;
+		}
+		int firstCount = Math.min(count, bufferSize - startIndex);
+		Arrays.fill(array, startIndex, startIndex + firstCount, null);
+		if(firstCount < count)
+		{
+			Arrays.fill(array, 0, count - firstCount, null);
+		}
+		int newStart = startIndex + count;
+		if(newStart >= bufferSize)
+		{
+			newStart -= bufferSize;
+		}
+		startIndex = newStart;
+		full = false;
 	}
 
 	@Override
@@ -211,10 +383,7 @@ public final class OverwritingCircularBuffer<E>
 		full = false;
 
 		// just because of garbage collection...
-		for(int i = 0; i < array.length; i++)
-		{
-			array[i] = null;
-		}
+		Arrays.fill(array, null);
 	}
 
 	@Override
@@ -421,6 +590,7 @@ public final class OverwritingCircularBuffer<E>
 	{
 		// Read in getBufferSize
 		s.defaultReadObject();
+		mask = calculateMask(bufferSize);
 		array = new Object[bufferSize];
 
 		// Read actual getAvailableElements
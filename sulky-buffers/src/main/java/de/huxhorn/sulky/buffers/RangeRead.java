@@ -0,0 +1,97 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public final class RangeRead
+{
+	private RangeRead()
+	{}
+
+	/**
+	 * Returns the values in the range <code>[from..(from+count-1)]</code> of the given buffer.
+	 *
+	 * Executes get(from, count) on the given buffer if it implements RangeReadOperation.
+	 * Calls get(index) for every index in the range otherwise.
+	 *
+	 * @param buffer the buffer to read from.
+	 * @param from   the index of the first value.
+	 * @param count  the maximum number of values.
+	 * @param <E>    the type of the values.
+	 * @return the values in the given range.
+	 * @see RangeReadOperation#get(long, int)
+	 */
+	public static <E> List<E> get(Buffer<E> buffer, long from, int count)
+	{
+		if(buffer instanceof RangeReadOperation)
+		{
+			@SuppressWarnings("unchecked")
+			RangeReadOperation<E> rangeRead = (RangeReadOperation<E>) buffer;
+			return rangeRead.get(from, count);
+		}
+		return get(buffer, from, count, buffer.getSize());
+	}
+
+	/**
+	 * Calls get(index) for every index in the range <code>[from..(from+count-1)]</code> that is smaller
+	 * than the given size.
+	 *
+	 * This is the fallback implementation of RangeReadOperation.
+	 *
+	 * @param buffer the buffer to read from.
+	 * @param from   the index of the first value.
+	 * @param count  the maximum number of values.
+	 * @param size   the size of the buffer.
+	 * @param <E>    the type of the values.
+	 * @return the values in the given range.
+	 */
+	public static <E> List<E> get(Buffer<E> buffer, long from, int count, long size)
+	{
+		if(from < 0 || from >= size || count <= 0)
+		{
+			return Collections.emptyList();
+		}
+		int available = (int) Math.min(count, size - from);
+		List<E> result = new ArrayList<>(available);
+		for(int i = 0; i < available; i++)
+		{
+			result.add(buffer.get(from + i));
+		}
+		return result;
+	}
+}
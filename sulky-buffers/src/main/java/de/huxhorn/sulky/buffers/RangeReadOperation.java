@@ -0,0 +1,54 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.util.List;
+
+public interface RangeReadOperation<E>
+{
+	/**
+	 * Returns the values in the range <code>[from..(from+count-1)]</code>.
+	 *
+	 * The returned list is shorter than <code>count</code> if the buffer does not contain that many elements
+	 * starting at <code>from</code>. It is empty if <code>from</code> is not in the range
+	 * <code>[0..(getSize()-1)]</code> or <code>count</code> is not positive.
+	 * Like Buffer.get(long), it contains <code>null</code> for every value that couldn't be resolved.
+	 *
+	 * @param from  the index of the first value.
+	 * @param count the maximum number of values.
+	 * @return the values in the given range.
+	 */
+	List<E> get(long from, int count);
+}
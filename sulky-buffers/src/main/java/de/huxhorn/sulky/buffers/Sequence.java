@@ -0,0 +1,103 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Padded volatile long used as sequence counter by MpscCircularBuffer.
+ *
+ * The unused fields surrounding the value keep it on a cache line of its own so that producers
+ * updating one sequence don't invalidate the cache line of the sequence used by the consumer.
+ */
+final class Sequence
+{
+	private static final AtomicLongFieldUpdater<Sequence> UPDATER = AtomicLongFieldUpdater.newUpdater(Sequence.class, "value");
+
+	// padding against false sharing
+	long p1; // NOPMD
+	long p2; // NOPMD
+	long p3; // NOPMD
+	long p4; // NOPMD
+	long p5; // NOPMD
+	long p6; // NOPMD
+	long p7; // NOPMD
+	private volatile long value;
+	// padding against false sharing
+	long p9; // NOPMD
+	long p10; // NOPMD
+	long p11; // NOPMD
+	long p12; // NOPMD
+	long p13; // NOPMD
+	long p14; // NOPMD
+	long p15; // NOPMD
+
+	Sequence(long initialValue)
+	{
+		this.value = initialValue;
+	}
+
+	long get()
+	{
+		return value;
+	}
+
+	void set(long newValue)
+	{
+		value = newValue;
+	}
+
+	/**
+	 * Sets the value without a full memory barrier. Previous writes of the calling thread are still visible
+	 * to threads reading the new value.
+	 *
+	 * @param newValue the new value.
+	 */
+	void lazySet(long newValue)
+	{
+		UPDATER.lazySet(this, newValue);
+	}
+
+	boolean compareAndSet(long expectedValue, long newValue)
+	{
+		return UPDATER.compareAndSet(this, expectedValue, newValue);
+	}
+
+	@Override
+	public String toString()
+	{
+		return Long.toString(value);
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Covers the bookkeeping shared by all primitive circular buffers using LongCircularBuffer.
+ */
+public class AbstractPrimitiveCircularBufferTest
+{
+	private static final int TEST_BUFFER_SIZE = 5;
+
+	@Test
+	public void empty()
+	{
+		LongCircularBuffer instance = new LongCircularBuffer(TEST_BUFFER_SIZE);
+		assertTrue("Instance is not empty!", instance.isEmpty());
+		assertFalse("Instance is full!", instance.isFull());
+		assertEquals(TEST_BUFFER_SIZE, instance.getBufferSize());
+		assertEquals(0, instance.getAvailableElements());
+		assertEquals(0, instance.getOverflowCounter());
+		assertEquals(0, instance.getSize());
+		assertEquals(0, instance.removeAll().length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidBufferSize()
+	{
+		new LongCircularBuffer(0);
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void removeFirstOfEmpty()
+	{
+		new LongCircularBuffer(TEST_BUFFER_SIZE).removeFirst();
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void getRelativeOutOfRange()
+	{
+		LongCircularBuffer instance = new LongCircularBuffer(TEST_BUFFER_SIZE);
+		instance.add(1);
+		instance.getRelative(1);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void addAllInvalidRange()
+	{
+		new LongCircularBuffer(TEST_BUFFER_SIZE).addAll(new long[3], 2, 2);
+	}
+
+	@Test
+	public void overflow()
+	{
+		LongCircularBuffer instance = new LongCircularBuffer(TEST_BUFFER_SIZE);
+		for(int i = 0; i < 2 * TEST_BUFFER_SIZE + 2; i++)
+		{
+			instance.add(i);
+		}
+		assertTrue("Instance isn't full!", instance.isFull());
+		assertEquals(TEST_BUFFER_SIZE + 2, instance.getOverflowCounter());
+		assertEquals(2 * TEST_BUFFER_SIZE + 2, instance.getSize());
+		assertEquals(7, instance.getRelative(0));
+		assertEquals(11, instance.getRelative(4));
+		assertEquals(9, instance.setRelative(2, 17));
+
+		long[] copy = new long[7];
+		assertEquals(TEST_BUFFER_SIZE, instance.copyTo(copy, 2));
+		assertArrayEquals(new long[]{0, 0, 7, 8, 17, 10, 11}, copy);
+		assertEquals(7, instance.removeFirst());
+		assertEquals(2, instance.drainTo(copy, 0, 2));
+		assertArrayEquals(new long[]{8, 17}, Arrays.copyOf(copy, 2));
+		assertArrayEquals(new long[]{10, 11}, instance.removeAll());
+		assertTrue("Instance is not empty!", instance.isEmpty());
+
+		instance.reset();
+		assertEquals(0, instance.getOverflowCounter());
+		assertEquals(0, instance.getSize());
+	}
+
+	@Test
+	public void bulkAddAllMatchesSingleAdd()
+	{
+		Random random = new Random(17);
+		for(int bufferSize : new int[]{1, 5, 8, 17})
+		{
+			LongCircularBuffer bulk = new LongCircularBuffer(bufferSize);
+			LongCircularBuffer single = new LongCircularBuffer(bufferSize);
+			int value = 0;
+			for(int round = 0; round < 200; round++)
+			{
+				int count = random.nextInt(3 * bufferSize);
+				long[] values = new long[count + 2];
+				for(int i = 0; i < count; i++)
+				{
+					values[i + 1] = value;
+					single.add(value);
+					value++;
+				}
+				bulk.addAll(values, 1, count);
+				int removeCount = random.nextInt(bufferSize + 1);
+				for(int i = 0; i < removeCount && !single.isEmpty(); i++)
+				{
+					assertEquals(single.removeFirst(), bulk.removeFirst());
+				}
+				assertArrayEquals(single.toArray(), bulk.toArray());
+				assertEquals("overflowCounter doesn't match!", single.getOverflowCounter(), bulk.getOverflowCounter());
+				assertEquals("Size doesn't match!", single.getSize(), bulk.getSize());
+				if(!single.isEmpty())
+				{
+					assertEquals(single.min(), bulk.min());
+					assertEquals(single.max(), bulk.max());
+				}
+				assertEquals(single.sum(), bulk.sum());
+			}
+		}
+	}
+}
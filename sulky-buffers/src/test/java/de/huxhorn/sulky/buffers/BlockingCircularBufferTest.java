@@ -0,0 +1,181 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BlockingCircularBufferTest
+{
+	private static final int TEST_BUFFER_SIZE = 5;
+
+	@Test
+	public void offerTimesOutIfFull()
+		throws InterruptedException
+	{
+		BlockingCircularBuffer<Long> instance = new BlockingCircularBuffer<>(TEST_BUFFER_SIZE);
+		for(long i = 0; i < TEST_BUFFER_SIZE; i++)
+		{
+			assertTrue(instance.offer(i, 0, TimeUnit.MILLISECONDS));
+		}
+		assertTrue(instance.isFull());
+		assertFalse(instance.offer(17L, 10, TimeUnit.MILLISECONDS));
+		assertEquals((Long) 0L, instance.removeFirst());
+		assertTrue(instance.offer(17L, 10, TimeUnit.MILLISECONDS));
+		assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 17L), instance.removeAll());
+		assertNull(instance.removeAll());
+	}
+
+	@Test(timeout = 10000)
+	public void removeFirstWakesUpWaitingProducer()
+		throws InterruptedException
+	{
+		// a congestion delay this long would fail the test if the producer was sleeping
+		final BlockingCircularBuffer<Long> instance = new BlockingCircularBuffer<>(1, 60000);
+		instance.add(1L);
+		Thread producer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				instance.add(2L);
+			}
+		});
+		producer.start();
+		while(producer.getState() != Thread.State.WAITING && producer.getState() != Thread.State.TIMED_WAITING)
+		{
+			Thread.sleep(1);
+		}
+		assertEquals((Long) 1L, instance.removeFirst());
+		producer.join();
+		assertEquals((Long) 2L, instance.removeFirst());
+	}
+
+	@Test(timeout = 10000)
+	public void addAllLargerThanBuffer()
+		throws InterruptedException
+	{
+		final BlockingCircularBuffer<Long> instance = new BlockingCircularBuffer<>(TEST_BUFFER_SIZE);
+		final List<Long> values = new ArrayList<>();
+		for(long i = 0; i < 1000; i++)
+		{
+			values.add(i);
+		}
+		Thread producer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				instance.addAll(values.subList(0, 500));
+				instance.addAll(values.subList(500, 1000).toArray(new Long[0]));
+			}
+		});
+		producer.start();
+		List<Long> received = new ArrayList<>();
+		while(received.size() < values.size())
+		{
+			List<Long> removed = instance.removeAll();
+			if(removed != null)
+			{
+				assertTrue(removed.size() <= TEST_BUFFER_SIZE);
+				received.addAll(removed);
+			}
+		}
+		producer.join();
+		assertEquals(values, received);
+	}
+
+	@Test(timeout = 10000)
+	public void drainToWakesUpWaitingProducer()
+		throws InterruptedException
+	{
+		final BlockingCircularBuffer<Long> instance = new BlockingCircularBuffer<>(2, 60000);
+		instance.addAll(new Long[]{1L, 2L});
+		Thread producer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				instance.add(3L);
+			}
+		});
+		producer.start();
+		while(producer.getState() != Thread.State.WAITING && producer.getState() != Thread.State.TIMED_WAITING)
+		{
+			Thread.sleep(1);
+		}
+		List<Long> drained = new ArrayList<>();
+		assertEquals(1, instance.drainTo(drained, 1));
+		producer.join();
+		final List<Long> consumed = new ArrayList<>();
+		assertEquals(2, instance.drain(new Consumer<Long>()
+		{
+			@Override
+			public void accept(Long value)
+			{
+				consumed.add(value);
+			}
+		}, 5));
+		assertEquals(Arrays.asList(1L), drained);
+		assertEquals(Arrays.asList(2L, 3L), consumed);
+	}
+
+	@Test
+	public void interruptedAddDropsElement()
+	{
+		BlockingCircularBuffer<Long> instance = new BlockingCircularBuffer<>(1);
+		instance.add(1L);
+		Thread.currentThread().interrupt();
+		try
+		{
+			instance.add(2L);
+			assertTrue(Thread.currentThread().isInterrupted());
+		}
+		finally
+		{
+			Thread.interrupted();
+		}
+		assertEquals(Arrays.asList(1L), instance.removeAll());
+	}
+}
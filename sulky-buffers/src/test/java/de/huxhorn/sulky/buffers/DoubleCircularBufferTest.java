@@ -0,0 +1,102 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.util.NoSuchElementException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DoubleCircularBufferTest
+{
+	private static final int TEST_BUFFER_SIZE = 5;
+
+	@Test
+	public void sumOfEmpty()
+	{
+		assertEquals(0, new DoubleCircularBuffer(TEST_BUFFER_SIZE).sum(), 0.0);
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void minOfEmpty()
+	{
+		new DoubleCircularBuffer(TEST_BUFFER_SIZE).min();
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void maxOfEmpty()
+	{
+		new DoubleCircularBuffer(TEST_BUFFER_SIZE).max();
+	}
+
+	@Test
+	public void aggregatesOfWrappedValues()
+	{
+		DoubleCircularBuffer instance = new DoubleCircularBuffer(TEST_BUFFER_SIZE);
+		instance.addAll(new double[]{4, -3, 9, 1, 6, 2, -8});
+		assertArrayEquals(new double[]{9, 1, 6, 2, -8}, instance.toArray(), 0.0);
+		assertEquals(-8, instance.min(), 0.0);
+		assertEquals(9, instance.max(), 0.0);
+		assertEquals(10, instance.sum(), 0.0);
+		assertEquals(9, instance.removeFirst(), 0.0);
+		assertEquals(-8, instance.min(), 0.0);
+		assertEquals(6, instance.max(), 0.0);
+		assertEquals(1, instance.sum(), 0.0);
+	}
+
+	@Test
+	public void nanPropagates()
+	{
+		DoubleCircularBuffer instance = new DoubleCircularBuffer(TEST_BUFFER_SIZE);
+		instance.addAll(new double[]{1.5, Double.NaN, -2.5});
+		assertTrue("min isn't NaN!", Double.isNaN(instance.min()));
+		assertTrue("max isn't NaN!", Double.isNaN(instance.max()));
+		assertTrue("sum isn't NaN!", Double.isNaN(instance.sum()));
+		assertEquals(1.5, instance.removeFirst(), 0.0);
+		assertEquals(Double.NaN, instance.removeFirst(), 0.0);
+		assertEquals(-2.5, instance.min(), 0.0);
+		assertEquals(-2.5, instance.max(), 0.0);
+	}
+
+	@Test
+	public void fractionalSum()
+	{
+		DoubleCircularBuffer instance = new DoubleCircularBuffer(TEST_BUFFER_SIZE);
+		instance.addAll(new double[]{0.25, 0.5, 0.125});
+		assertEquals(0.875, instance.sum(), 0.0);
+	}
+}
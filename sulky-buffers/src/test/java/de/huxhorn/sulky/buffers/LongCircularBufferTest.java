@@ -0,0 +1,79 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.util.NoSuchElementException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LongCircularBufferTest
+{
+	private static final int TEST_BUFFER_SIZE = 5;
+
+	@Test
+	public void sumOfEmpty()
+	{
+		assertEquals(0, new LongCircularBuffer(TEST_BUFFER_SIZE).sum());
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void minOfEmpty()
+	{
+		new LongCircularBuffer(TEST_BUFFER_SIZE).min();
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void maxOfEmpty()
+	{
+		new LongCircularBuffer(TEST_BUFFER_SIZE).max();
+	}
+
+	@Test
+	public void aggregatesOfWrappedValues()
+	{
+		LongCircularBuffer instance = new LongCircularBuffer(TEST_BUFFER_SIZE);
+		instance.addAll(new long[]{4, -3, 9, 1, 6, 2, -8});
+		assertArrayEquals(new long[]{9, 1, 6, 2, -8}, instance.toArray());
+		assertEquals(-8, instance.min());
+		assertEquals(9, instance.max());
+		assertEquals(10, instance.sum());
+		assertEquals(9, instance.removeFirst());
+		assertEquals(-8, instance.min());
+		assertEquals(6, instance.max());
+		assertEquals(1, instance.sum());
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class MpscCircularBufferTest
+{
+	private static final int TEST_BUFFER_SIZE = 5;
+	private static final int PRODUCER_COUNT = 4;
+	private static final int ELEMENTS_PER_PRODUCER = 20000;
+
+	private final WaitStrategy waitStrategy;
+
+	public MpscCircularBufferTest(WaitStrategy waitStrategy)
+	{
+		this.waitStrategy = waitStrategy;
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Collection<Object[]> waitStrategies()
+	{
+		return Arrays.asList(new Object[][]{
+				{new BlockingWaitStrategy()},
+				{new YieldingWaitStrategy()},
+				{new BusySpinWaitStrategy()},
+		});
+	}
+
+	@Test
+	public void empty()
+	{
+		MpscCircularBuffer<Long> instance = new MpscCircularBuffer<>(TEST_BUFFER_SIZE, waitStrategy);
+		assertTrue("Instance is not empty!", instance.isEmpty());
+		assertFalse("Instance is full!", instance.isFull());
+		assertEquals(0, instance.getAvailableElements());
+		assertEquals(TEST_BUFFER_SIZE, instance.getBufferSize());
+		assertEquals(0, instance.getOverflowCounter());
+		assertNull(instance.removeFirst());
+		assertEquals(0, instance.removeAll().size());
+		assertFalse(instance.iterator().hasNext());
+	}
+
+	@Test
+	public void addAndRemove()
+	{
+		MpscCircularBuffer<Long> instance = new MpscCircularBuffer<>(TEST_BUFFER_SIZE, waitStrategy);
+		for(long i = 0; i < 3; i++)
+		{
+			instance.add(i);
+		}
+		assertEquals(3, instance.getAvailableElements());
+		assertEquals(3, instance.getSize());
+		assertEquals((Long) 1L, instance.getRelative(1));
+		assertEquals((Long) 1L, instance.setRelative(1, 17L));
+		assertEquals((Long) 0L, instance.removeFirst());
+		assertNull(instance.get(0));
+		assertEquals((Long) 17L, instance.get(1));
+
+		instance.addAll(new Long[]{3L, 4L, 5L});
+		assertTrue(instance.isFull());
+		Iterator<Long> iterator = instance.iterator();
+		List<Long> iterated = new ArrayList<>();
+		while(iterator.hasNext())
+		{
+			iterated.add(iterator.next());
+		}
+		assertEquals(Arrays.asList(17L, 2L, 3L, 4L, 5L), iterated);
+		assertEquals(iterated, instance.removeAll());
+		assertTrue(instance.isEmpty());
+
+		instance.add(6L);
+		instance.reset();
+		assertEquals(0, instance.getSize());
+		assertTrue(instance.isEmpty());
+	}
+
+	@Test
+	public void drain()
+	{
+		MpscCircularBuffer<Long> instance = new MpscCircularBuffer<>(TEST_BUFFER_SIZE, waitStrategy);
+		instance.addAll(Arrays.asList(1L, 2L, 3L, 4L));
+		final List<Long> drained = new ArrayList<>();
+		assertEquals(0, instance.drainTo(drained, 0));
+		assertEquals(3, instance.drainTo(drained, 3));
+		instance.addAll(Arrays.asList(5L, 6L));
+		assertEquals(3, instance.drain(new Consumer<Long>()
+		{
+			@Override
+			public void accept(Long value)
+			{
+				drained.add(value);
+			}
+		}, 10));
+		assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L), drained);
+		assertTrue(instance.isEmpty());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void getRelativeOutOfBounds()
+	{
+		MpscCircularBuffer<Long> instance = new MpscCircularBuffer<>(TEST_BUFFER_SIZE, waitStrategy);
+		instance.add(1L);
+		instance.getRelative(1);
+	}
+
+	@Test
+	public void interruptedProducerDropsElement()
+	{
+		MpscCircularBuffer<Long> instance = new MpscCircularBuffer<>(1, waitStrategy);
+		instance.add(1L);
+		Thread.currentThread().interrupt();
+		try
+		{
+			instance.add(2L);
+			assertTrue(Thread.currentThread().isInterrupted());
+		}
+		finally
+		{
+			Thread.interrupted();
+		}
+		assertEquals(Arrays.asList(1L), instance.removeAll());
+	}
+
+	@Test(timeout = 60000)
+	public void multipleProducers()
+		throws InterruptedException
+	{
+		final MpscCircularBuffer<Long> instance = new MpscCircularBuffer<>(100, waitStrategy);
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> producers = new ArrayList<>();
+		for(int p = 0; p < PRODUCER_COUNT; p++)
+		{
+			final long producer = p;
+			Thread thread = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						start.await();
+					}
+					catch(InterruptedException e)
+					{
+						return;
+					}
+					for(long i = 0; i < ELEMENTS_PER_PRODUCER; i++)
+					{
+						long value = producer * ELEMENTS_PER_PRODUCER + i;
+						if(i % 2 == 0)
+						{
+							instance.add(value);
+						}
+						else
+						{
+							instance.addAll(Arrays.asList(value));
+						}
+					}
+				}
+			});
+			thread.start();
+			producers.add(thread);
+		}
+		start.countDown();
+
+		long[] expected = new long[PRODUCER_COUNT];
+		int received = 0;
+		while(received < PRODUCER_COUNT * ELEMENTS_PER_PRODUCER)
+		{
+			Long value = instance.removeFirst();
+			if(value == null)
+			{
+				Thread.yield();
+				continue;
+			}
+			int producer = (int) (value / ELEMENTS_PER_PRODUCER);
+			// elements of a single producer keep their order
+			assertEquals(expected[producer], value % ELEMENTS_PER_PRODUCER);
+			expected[producer]++;
+			received++;
+		}
+		for(Thread thread : producers)
+		{
+			thread.join(TimeUnit.SECONDS.toMillis(10));
+		}
+		assertTrue(instance.isEmpty());
+		assertEquals(PRODUCER_COUNT * ELEMENTS_PER_PRODUCER, instance.getSize());
+	}
+}
@@ -35,8 +35,11 @@
 package de.huxhorn.sulky.buffers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -46,6 +49,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class OverwritingCircularBufferTest
 {
@@ -308,6 +312,142 @@ public class OverwritingCircularBufferTest
 		internalTestRemoveAll(instance, 17);
 	}
 
+	@Test
+	public void bulkAddAllMatchesSingleAdd()
+	{
+		Random random = new Random(17);
+		for(int bufferSize : new int[]{1, 5, 8, 17})
+		{
+			OverwritingCircularBuffer<Long> bulk = new OverwritingCircularBuffer<>(bufferSize);
+			OverwritingCircularBuffer<Long> single = new OverwritingCircularBuffer<>(bufferSize);
+			long value = 0;
+			for(int round = 0; round < 200; round++)
+			{
+				int count = random.nextInt(3 * bufferSize);
+				Long[] values = new Long[count];
+				for(int i = 0; i < count; i++)
+				{
+					values[i] = value++;
+					single.add(values[i]);
+				}
+				if(random.nextBoolean())
+				{
+					bulk.addAll(values);
+				}
+				else
+				{
+					bulk.addAll(Arrays.asList(values));
+				}
+				int removeCount = random.nextInt(bufferSize + 1);
+				for(int i = 0; i < removeCount; i++)
+				{
+					assertEquals(single.removeFirst(), bulk.removeFirst());
+				}
+				assertEquals("Buffers differ!", single, bulk);
+				assertEquals("overflowCounter doesn't match!", single.getOverflowCounter(), bulk.getOverflowCounter());
+				assertEquals("Size doesn't match!", single.getSize(), bulk.getSize());
+				assertEquals("isFull doesn't match!", single.isFull(), bulk.isFull());
+				assertEquals("isEmpty doesn't match!", single.isEmpty(), bulk.isEmpty());
+			}
+			assertEquals(single.removeAll(), bulk.removeAll());
+		}
+	}
+
+	@Test
+	public void powerOfTwoBufferSize()
+	{
+		assertEquals(1, OverwritingCircularBuffer.withPowerOfTwoBufferSize(1).getBufferSize());
+		assertEquals(8, OverwritingCircularBuffer.withPowerOfTwoBufferSize(5).getBufferSize());
+		assertEquals(8, OverwritingCircularBuffer.withPowerOfTwoBufferSize(8).getBufferSize());
+		OverwritingCircularBuffer<Long> buffer = OverwritingCircularBuffer.withPowerOfTwoBufferSize(3);
+		for(long i = 0; i < 10; i++)
+		{
+			buffer.add(i);
+		}
+		assertEquals("overflowCounter doesn't match!", 6, buffer.getOverflowCounter());
+		for(int i = 0; i < 4; i++)
+		{
+			assertEquals((Long) (long) (i + 6), buffer.getRelative(i));
+			assertEquals((Long) (long) (i + 6), buffer.get(i + 6));
+		}
+	}
+
+	@Test
+	public void drainToWrapped()
+	{
+		for(int i = 0; i < TEST_BUFFER_SIZE + 3; i++)
+		{
+			instance.add((long) i);
+		}
+		List<Long> drained = new ArrayList<>();
+		assertEquals(0, instance.drainTo(drained, 0));
+		assertEquals(4, instance.drainTo(drained, 4));
+		assertEquals(Arrays.asList(3L, 4L, 5L, 6L), drained);
+		assertEquals(1, instance.getAvailableElements());
+		instance.add(8L);
+		drained.clear();
+		assertEquals(2, instance.drainTo(drained, 10));
+		assertEquals(Arrays.asList(7L, 8L), drained);
+		assertTrue("Instance isn't empty!", instance.isEmpty());
+		assertEquals(0, instance.drainTo(drained, 10));
+		assertEquals("overflowCounter doesn't match!", 3, instance.getOverflowCounter());
+	}
+
+	@Test
+	public void drainWrapped()
+	{
+		for(int i = 0; i < TEST_BUFFER_SIZE + 3; i++)
+		{
+			instance.add((long) i);
+		}
+		final List<Long> drained = new ArrayList<>();
+		Consumer<Long> consumer = new Consumer<Long>()
+		{
+			@Override
+			public void accept(Long value)
+			{
+				drained.add(value);
+			}
+		};
+		assertEquals(TEST_BUFFER_SIZE, instance.drain(consumer, Integer.MAX_VALUE));
+		assertEquals(Arrays.asList(3L, 4L, 5L, 6L, 7L), drained);
+		assertTrue("Instance isn't empty!", instance.isEmpty());
+		instance.add(8L);
+		assertEquals((Long) 8L, instance.getRelative(0));
+		assertEquals(1, instance.drain(consumer, 1));
+		assertEquals(0, instance.drain(consumer, 1));
+	}
+
+	@Test
+	public void drainRemovesConsumedElementsIfConsumerFails()
+	{
+		for(int i = 0; i < TEST_BUFFER_SIZE; i++)
+		{
+			instance.add((long) i);
+		}
+		Consumer<Long> consumer = new Consumer<Long>()
+		{
+			@Override
+			public void accept(Long value)
+			{
+				if(value == 2L)
+				{
+					throw new IllegalStateException();
+				}
+			}
+		};
+		try
+		{
+			instance.drain(consumer, TEST_BUFFER_SIZE);
+			fail("Expected IllegalStateException!");
+		}
+		catch(IllegalStateException ex)
+		{
+			// expected
+		}
+		assertEquals(Arrays.asList(3L, 4L), instance.removeAll());
+	}
+
 	public void internalTestRemove(OverwritingCircularBuffer<Long> impl, int valueCount)
 	{
 		long bufferSize = impl.getBufferSize();
@@ -0,0 +1,168 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RangeReadTest
+{
+	@Test
+	public void fallback()
+	{
+		CountingBuffer buffer = new CountingBuffer(10);
+
+		assertEquals(Arrays.asList(3L, 4L, 5L), RangeRead.get(buffer, 3, 3));
+		assertEquals(Arrays.asList(8L, 9L), RangeRead.get(buffer, 8, 5));
+		assertEquals(Collections.<Long>emptyList(), RangeRead.get(buffer, 10, 5));
+		assertEquals(Collections.<Long>emptyList(), RangeRead.get(buffer, -1, 5));
+		assertEquals(Collections.<Long>emptyList(), RangeRead.get(buffer, 0, 0));
+		assertEquals("get calls don't match!", 5, buffer.getCount);
+	}
+
+	@Test
+	public void rangeReadOperation()
+	{
+		RangeCountingBuffer buffer = new RangeCountingBuffer(10);
+
+		assertEquals(Arrays.asList(3L, 4L, 5L), RangeRead.get(buffer, 3, 3));
+		assertEquals("range calls don't match!", 1, buffer.rangeCount);
+		assertEquals("get calls don't match!", 0, buffer.getCount);
+	}
+
+	@Test
+	public void iteratorWithRangeReadOperation()
+	{
+		RangeCountingBuffer buffer = new RangeCountingBuffer(10);
+
+		List<Long> elements = new ArrayList<>();
+		Iterator<Long> iterator = new BasicBufferIterator<>(buffer, 4);
+		while(iterator.hasNext())
+		{
+			elements.add(iterator.next());
+		}
+
+		assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), elements);
+		assertEquals("range calls don't match!", 3, buffer.rangeCount);
+		assertEquals("get calls don't match!", 0, buffer.getCount);
+	}
+
+	@Test
+	public void iteratorWithoutRangeReadOperation()
+	{
+		CountingBuffer buffer = new CountingBuffer(3);
+
+		Iterator<Long> iterator = new BasicBufferIterator<>(buffer, 4);
+		assertTrue(iterator.hasNext());
+		assertEquals((Long) 0L, iterator.next());
+		assertEquals((Long) 1L, iterator.next());
+		assertEquals((Long) 2L, iterator.next());
+		assertFalse(iterator.hasNext());
+		assertEquals("get calls don't match!", 3, buffer.getCount);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void iteratorWithInvalidChunkSize()
+	{
+		new BasicBufferIterator<>(new CountingBuffer(3), 0);
+	}
+
+	private static class CountingBuffer
+		implements Buffer<Long>
+	{
+		private final long size;
+		int getCount;
+
+		CountingBuffer(long size)
+		{
+			this.size = size;
+		}
+
+		@Override
+		public Long get(long index)
+		{
+			getCount++;
+			if(index >= 0 && index < size)
+			{
+				return index;
+			}
+			return null;
+		}
+
+		@Override
+		public long getSize()
+		{
+			return size;
+		}
+
+		@Override
+		public Iterator<Long> iterator()
+		{
+			return new BasicBufferIterator<>(this);
+		}
+	}
+
+	private static class RangeCountingBuffer
+		extends CountingBuffer
+		implements RangeReadOperation<Long>
+	{
+		int rangeCount;
+
+		RangeCountingBuffer(long size)
+		{
+			super(size);
+		}
+
+		@Override
+		public List<Long> get(long from, int count)
+		{
+			rangeCount++;
+			List<Long> result = new ArrayList<>();
+			for(long i = from; i < getSize() && i < from + count; i++)
+			{
+				result.add(i);
+			}
+			return result;
+		}
+	}
+}
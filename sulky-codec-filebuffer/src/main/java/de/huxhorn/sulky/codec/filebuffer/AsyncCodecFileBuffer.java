@@ -0,0 +1,573 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.buffers.BasicBufferIterator;
+import de.huxhorn.sulky.buffers.DisposeOperation;
+import de.huxhorn.sulky.buffers.FileBuffer;
+import de.huxhorn.sulky.buffers.FlushOperation;
+import de.huxhorn.sulky.buffers.RangeReadOperation;
+import de.huxhorn.sulky.codec.Codec;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous front-end of a CodecFileBuffer.
+ *
+ * <p>Elements are accepted into a bounded queue and add returns immediately. A dispatcher thread removes
+ * batches of up to batchSize elements from the queue and encodes them in parallel using an ExecutorService.
+ * A single writer thread appends the encoded batches to the CodecFileBuffer, keeping the order in which
+ * the elements have been added.</p>
+ *
+ * <p>The OverflowPolicy defines what happens if the queue is full.</p>
+ *
+ * <p>get and getSize are executed by the CodecFileBuffer, i.e. they only see elements that have already been
+ * written. Call flush() to wait until all previously added elements have been written.</p>
+ *
+ * <p>dispose() writes all pending elements, stops the threads and disposes the CodecFileBuffer.
+ * Elements added after dispose() are written synchronously. dispose() must not be called while other threads
+ * are still adding elements.</p>
+ *
+ * @param <E> the type of objects that are stored in this buffer.
+ */
+public class AsyncCodecFileBuffer<E>
+	implements FileBuffer<E>, FlushOperation, DisposeOperation, RangeReadOperation<E>
+{
+	/**
+	 * Defines what happens if an element is added while the queue is full.
+	 */
+	public enum OverflowPolicy
+	{
+		/**
+		 * The calling thread waits until the queue has room for the element.
+		 */
+		BLOCK,
+
+		/**
+		 * The element is dropped. The number of dropped elements is available using getDroppedCount().
+		 */
+		DROP,
+
+		/**
+		 * The element is encoded and written by the calling thread.
+		 * The element may therefore be written before elements that are still queued.
+		 */
+		CALLER_RUNS
+	}
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private final Logger logger = LoggerFactory.getLogger(AsyncCodecFileBuffer.class);
+
+	private final CodecFileBuffer<E> buffer;
+	private final BlockingQueue<E> queue;
+	private final BlockingQueue<Batch<E>> batches;
+	private final ExecutorService encodingExecutor;
+	private final boolean ownedExecutor;
+	private final Thread dispatcherThread;
+	private final Thread writerThread;
+	private final AtomicLong acceptedCount;
+	private final AtomicLong droppedCount;
+
+	private final Object progressLock = new Object();
+
+	//@GuardedBy("progressLock")
+	private long processedCount;
+
+	private volatile OverflowPolicy overflowPolicy;
+	private volatile int batchSize;
+	private volatile boolean disposed;
+
+	/**
+	 * Creates an asynchronous front-end with a queue of DEFAULT_QUEUE_CAPACITY elements and
+	 * one encoding thread per available processor.
+	 *
+	 * @param buffer the buffer the elements are written to.
+	 */
+	public AsyncCodecFileBuffer(CodecFileBuffer<E> buffer)
+	{
+		this(buffer, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Creates an asynchronous front-end with one encoding thread per available processor.
+	 *
+	 * @param buffer the buffer the elements are written to.
+	 * @param queueCapacity the maximum number of queued elements.
+	 */
+	public AsyncCodecFileBuffer(CodecFileBuffer<E> buffer, int queueCapacity)
+	{
+		this(buffer, queueCapacity, null);
+	}
+
+	/**
+	 * @param buffer the buffer the elements are written to.
+	 * @param queueCapacity the maximum number of queued elements.
+	 * @param encodingExecutor the executor used to encode the elements. If null, an executor with one thread
+	 *                         per available processor is created and shut down by dispose().
+	 */
+	public AsyncCodecFileBuffer(CodecFileBuffer<E> buffer, int queueCapacity, ExecutorService encodingExecutor)
+	{
+		if(buffer == null)
+		{
+			throw new IllegalArgumentException("buffer must not be null!");
+		}
+		if(queueCapacity <= 0)
+		{
+			throw new IllegalArgumentException("queueCapacity must be positive but was " + queueCapacity + "!");
+		}
+		this.buffer = buffer;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		if(encodingExecutor == null)
+		{
+			this.encodingExecutor = Executors.newFixedThreadPool(parallelism, new EncoderThreadFactory());
+			this.ownedExecutor = true;
+		}
+		else
+		{
+			this.encodingExecutor = encodingExecutor;
+			this.ownedExecutor = false;
+		}
+		// limits the number of batches that are encoded at the same time
+		this.batches = new ArrayBlockingQueue<>(2 * parallelism);
+		this.acceptedCount = new AtomicLong();
+		this.droppedCount = new AtomicLong();
+		this.overflowPolicy = OverflowPolicy.BLOCK;
+		this.batchSize = DEFAULT_BATCH_SIZE;
+
+		dispatcherThread = new Thread(new DispatcherRunnable(), "AsyncCodecFileBuffer-Dispatcher");
+		dispatcherThread.setDaemon(true);
+		writerThread = new Thread(new WriterRunnable(), "AsyncCodecFileBuffer-Writer");
+		writerThread.setDaemon(true);
+		dispatcherThread.start();
+		writerThread.start();
+	}
+
+	public CodecFileBuffer<E> getBuffer()
+	{
+		return buffer;
+	}
+
+	public OverflowPolicy getOverflowPolicy()
+	{
+		return overflowPolicy;
+	}
+
+	/**
+	 * @param overflowPolicy the policy that is applied if the queue is full. Default is BLOCK.
+	 */
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy)
+	{
+		if(overflowPolicy == null)
+		{
+			throw new IllegalArgumentException("overflowPolicy must not be null!");
+		}
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	public int getBatchSize()
+	{
+		return batchSize;
+	}
+
+	/**
+	 * @param batchSize the maximum number of elements that are encoded and written at once.
+	 */
+	public void setBatchSize(int batchSize)
+	{
+		if(batchSize <= 0)
+		{
+			throw new IllegalArgumentException("batchSize must be positive but was " + batchSize + "!");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @return the number of elements that have been dropped because the queue was full.
+	 */
+	public long getDroppedCount()
+	{
+		return droppedCount.get();
+	}
+
+	/**
+	 * @return the number of elements that have been added but not yet written.
+	 */
+	public long getPendingCount()
+	{
+		synchronized(progressLock)
+		{
+			return acceptedCount.get() - processedCount;
+		}
+	}
+
+	@Override
+	public void add(E element)
+	{
+		if(disposed)
+		{
+			buffer.add(element);
+			return;
+		}
+		if(queue.offer(element))
+		{
+			acceptedCount.incrementAndGet();
+			return;
+		}
+		switch(overflowPolicy)
+		{
+			case DROP:
+				droppedCount.incrementAndGet();
+				break;
+			case CALLER_RUNS:
+				buffer.add(element);
+				break;
+			default:
+				try
+				{
+					queue.put(element);
+					acceptedCount.incrementAndGet();
+				}
+				catch(InterruptedException e)
+				{
+					droppedCount.incrementAndGet();
+					if(logger.isInfoEnabled()) logger.info("Interrupted while waiting for the queue, dropping element.");
+					Thread.currentThread().interrupt();
+				}
+				break;
+		}
+	}
+
+	@Override
+	public void addAll(List<E> elements)
+	{
+		if(elements != null)
+		{
+			for(E element : elements)
+			{
+				add(element);
+			}
+		}
+	}
+
+	@Override
+	public void addAll(E[] elements)
+	{
+		if(elements != null)
+		{
+			addAll(Arrays.asList(elements));
+		}
+	}
+
+	/**
+	 * @return true if the queue is full.
+	 */
+	@Override
+	public boolean isFull()
+	{
+		return queue.remainingCapacity() == 0;
+	}
+
+	/**
+	 * Waits until all elements that have been added before this call have been written, then flushes the
+	 * CodecFileBuffer. Returns early if the calling thread is interrupted.
+	 */
+	@Override
+	public void flush()
+	{
+		long target = acceptedCount.get();
+		synchronized(progressLock)
+		{
+			while(processedCount < target)
+			{
+				try
+				{
+					progressLock.wait();
+				}
+				catch(InterruptedException e)
+				{
+					if(logger.isInfoEnabled()) logger.info("Interrupted while flushing.");
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+		buffer.flush();
+	}
+
+	@Override
+	public E get(long index)
+	{
+		return buffer.get(index);
+	}
+
+	@Override
+	public List<E> get(long from, int count)
+	{
+		return buffer.get(from, count);
+	}
+
+	@Override
+	public long getSize()
+	{
+		return buffer.getSize();
+	}
+
+	@Override
+	public Iterator<E> iterator()
+	{
+		return new BasicBufferIterator<>(this);
+	}
+
+	/**
+	 * Writes all pending elements before resetting the buffer.
+	 */
+	@Override
+	public void reset()
+	{
+		flush();
+		buffer.reset();
+	}
+
+	@Override
+	public File getDataFile()
+	{
+		return buffer.getDataFile();
+	}
+
+	/**
+	 * Writes all pending elements, stops the threads and disposes the buffer.
+	 */
+	@Override
+	public void dispose()
+	{
+		if(disposed)
+		{
+			return;
+		}
+		disposed = true;
+		flush();
+		dispatcherThread.interrupt();
+		writerThread.interrupt();
+		try
+		{
+			dispatcherThread.join();
+			writerThread.join();
+		}
+		catch(InterruptedException e)
+		{
+			if(logger.isInfoEnabled()) logger.info("Interrupted while waiting for threads.");
+			Thread.currentThread().interrupt();
+		}
+		if(ownedExecutor)
+		{
+			encodingExecutor.shutdown();
+		}
+		buffer.dispose();
+	}
+
+	@Override
+	public boolean isDisposed()
+	{
+		return disposed;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "AsyncCodecFileBuffer[buffer=" + buffer +
+				", overflowPolicy=" + overflowPolicy +
+				", batchSize=" + batchSize +
+				", pendingCount=" + getPendingCount() +
+				", droppedCount=" + getDroppedCount() +
+				']';
+	}
+
+	private void processed(int count)
+	{
+		synchronized(progressLock)
+		{
+			processedCount += count;
+			progressLock.notifyAll();
+		}
+	}
+
+	private static class Batch<E>
+	{
+		private final List<E> elements;
+		private final Future<List<byte[]>> encodedElements;
+
+		Batch(List<E> elements, Future<List<byte[]>> encodedElements)
+		{
+			this.elements = elements;
+			this.encodedElements = encodedElements;
+		}
+	}
+
+	private static class EncodeCallable<E>
+		implements Callable<List<byte[]>>
+	{
+		private final List<E> elements;
+		private final Codec<E> codec;
+
+		EncodeCallable(List<E> elements, Codec<E> codec)
+		{
+			this.elements = elements;
+			this.codec = codec;
+		}
+
+		@Override
+		public List<byte[]> call()
+		{
+			if(codec == null)
+			{
+				throw new IllegalStateException("Codec has not been initialized!");
+			}
+			List<byte[]> result = new ArrayList<>(elements.size());
+			for(E element : elements)
+			{
+				result.add(codec.encode(element));
+			}
+			return result;
+		}
+	}
+
+	private static class EncoderThreadFactory
+		implements ThreadFactory
+	{
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable)
+		{
+			Thread result = new Thread(runnable, "AsyncCodecFileBuffer-Encoder-" + threadCount.incrementAndGet());
+			result.setDaemon(true);
+			return result;
+		}
+	}
+
+	private class DispatcherRunnable
+		implements Runnable
+	{
+		@Override
+		@SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+		public void run()
+		{
+			for(;;)
+			{
+				try
+				{
+					List<E> elements = new ArrayList<>();
+					elements.add(queue.take());
+					queue.drainTo(elements, batchSize - 1);
+					Future<List<byte[]>> encodedElements;
+					try
+					{
+						encodedElements = encodingExecutor.submit(new EncodeCallable<>(elements, buffer.getCodec()));
+					}
+					catch(RejectedExecutionException e)
+					{
+						if(logger.isWarnEnabled()) logger.warn("Couldn't encode {} elements!", elements.size(), e);
+						processed(elements.size());
+						continue;
+					}
+					batches.put(new Batch<>(elements, encodedElements));
+				}
+				catch(InterruptedException e)
+				{
+					if(logger.isDebugEnabled()) logger.debug("Dispatcher interrupted.");
+					break;
+				}
+			}
+		}
+	}
+
+	private class WriterRunnable
+		implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			for(;;)
+			{
+				Batch<E> batch;
+				try
+				{
+					batch = batches.take();
+				}
+				catch(InterruptedException e)
+				{
+					if(logger.isDebugEnabled()) logger.debug("Writer interrupted.");
+					break;
+				}
+				try
+				{
+					buffer.addAllEncoded(batch.elements, batch.encodedElements.get());
+				}
+				catch(ExecutionException e)
+				{
+					if(logger.isWarnEnabled()) logger.warn("Couldn't encode {} elements!", batch.elements.size(), e.getCause());
+				}
+				catch(InterruptedException e)
+				{
+					if(logger.isDebugEnabled()) logger.debug("Writer interrupted.");
+					break;
+				}
+				finally
+				{
+					processed(batch.elements.size());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,719 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.buffers.ResetOperation;
+import de.huxhorn.sulky.codec.Codec;
+import de.huxhorn.sulky.codec.compression.Compressors;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DataStrategy packing consecutive records into compressed blocks of about BLOCK_SIZE bytes.
+ *
+ * Every block consists of the compressed length, the uncompressed length and the data compressed by the
+ * BlockCompressor. The uncompressed data of a block contains the records, i.e. the length of the element
+ * followed by the encoded element.
+ *
+ * The offsets in the index combine the offset of the block in the data file (upper bits) with the offset of the
+ * record inside of the uncompressed block (lower INTRA_BLOCK_OFFSET_BITS bits).
+ *
+ * Blocks are only ever appended to the data file, existing blocks are never rewritten. Added elements are collected
+ * in the open block, which is kept in memory until its uncompressed data reaches BLOCK_SIZE or flush is called.
+ * Only then the block is written and the offsets of its elements are added to the index, so the files always
+ * stay consistent. Pending elements are returned by get and getRange of this instance but are neither visible to
+ * other instances nor contained in the size of the index. They are lost if flush isn't called, e.g. by
+ * CodecFileBuffer.flush() or CodecFileBuffer.dispose().
+ * The most recently used uncompressed blocks are kept in memory so neighbouring elements are read without
+ * decompressing their block again.
+ *
+ * Instances are not thread-safe, adding elements or flushing must not happen concurrently with any other call.
+ *
+ * @param <E> the type of the elements.
+ */
+public class BlockCompressingDataStrategy<E>
+	implements DataStrategy<E>, ResetOperation
+{
+	/**
+	 * Key of the meta data entry containing the name of the BlockCompressor used by a buffer.
+	 * Block compression is not available for sparse buffers.
+	 */
+	public static final String BLOCK_COMPRESSION_KEY = "sulky.blockCompression";
+
+	/**
+	 * 64KB. The open block is written as soon as its uncompressed data reaches this size.
+	 */
+	public static final int BLOCK_SIZE = 64 * 1024;
+
+	/**
+	 * The size of the block header, i.e. two ints containing the compressed and uncompressed length.
+	 */
+	public static final int BLOCK_HEADER_SIZE = 8;
+
+	/**
+	 * The number of bits of an offset used for the offset inside of the uncompressed block.
+	 */
+	public static final int INTRA_BLOCK_OFFSET_BITS = 20;
+
+	/**
+	 * The default number of uncompressed blocks kept in memory.
+	 */
+	public static final int DEFAULT_BLOCK_CACHE_SIZE = 8;
+
+	private static final long INTRA_BLOCK_OFFSET_MASK = (1L << INTRA_BLOCK_OFFSET_BITS) - 1;
+	private static final int DATA_LENGTH_SIZE = (int) DefaultDataStrategy.DATA_LENGTH_SIZE;
+
+	private final BlockCompressor compressor;
+	private final ElementCache<byte[]> blockCache;
+
+	/**
+	 * The uncompressed records of the open block, null if no block has been opened yet.
+	 */
+	private byte[] pendingBlock;
+	private int pendingLength;
+
+	/**
+	 * The offsets of the pending records inside of the open block.
+	 */
+	private int[] pendingOffsets;
+	private int pendingCount;
+
+	public BlockCompressingDataStrategy()
+	{
+		this(new DeflaterBlockCompressor());
+	}
+
+	public BlockCompressingDataStrategy(BlockCompressor compressor)
+	{
+		this(compressor, DEFAULT_BLOCK_CACHE_SIZE);
+	}
+
+	/**
+	 * @param compressor the compressor used for the blocks.
+	 * @param blockCacheSize the number of uncompressed blocks kept in memory.
+	 */
+	public BlockCompressingDataStrategy(BlockCompressor compressor, int blockCacheSize)
+	{
+		if(compressor == null)
+		{
+			throw new IllegalArgumentException("compressor must not be null!");
+		}
+		if(blockCacheSize < 1)
+		{
+			throw new IllegalArgumentException("blockCacheSize must be positive but was " + blockCacheSize + "!");
+		}
+		this.compressor = compressor;
+		this.blockCache = new ElementCache<>(blockCacheSize, 0);
+	}
+
+	public BlockCompressor getCompressor()
+	{
+		return compressor;
+	}
+
+	/**
+	 * Returns the compressor defined by the BLOCK_COMPRESSION_KEY entry of the given meta data.
+	 *
+	 * The entry contains the name of the compressor, i.e. any name known to Compressors.forName.
+	 *
+	 * @param metaData the meta data of a buffer.
+	 * @return the compressor or null if the buffer isn't using block compression.
+	 * @throws IllegalArgumentException if the compressor is unknown.
+	 */
+	public static BlockCompressor resolveCompressor(MetaData metaData)
+	{
+		if(metaData == null || metaData.isSparse())
+		{
+			return null;
+		}
+		Map<String, String> data = metaData.getData();
+		String name = data.get(BLOCK_COMPRESSION_KEY);
+		if(name == null)
+		{
+			return null;
+		}
+		if(DeflaterBlockCompressor.NAME.equals(name))
+		{
+			return new DeflaterBlockCompressor();
+		}
+		try
+		{
+			return new CompressorBlockCompressor(Compressors.forName(name));
+		}
+		catch(IllegalArgumentException ex)
+		{
+			throw new IllegalArgumentException("Unknown block compression '" + name + "'!", ex);
+		}
+	}
+
+	/**
+	 * @return the number of added elements that haven't been written to the files yet.
+	 */
+	public int getPendingCount()
+	{
+		return pendingCount;
+	}
+
+	/**
+	 * Writes the open block to the data file and the offsets of its elements to the index file.
+	 *
+	 * @param indexFile the index file.
+	 * @param dataFile the data file.
+	 * @param indexStrategy the index strategy.
+	 * @throws IOException in case of IOException :p
+	 */
+	public void flush(RandomAccessFile indexFile, RandomAccessFile dataFile, IndexStrategy indexStrategy)
+		throws IOException
+	{
+		if(pendingCount == 0)
+		{
+			return;
+		}
+		long elementsCount = indexStrategy.getSize(indexFile);
+		long blockOffset = dataFile.length();
+		ByteBuffer buffer = createBlock(pendingBlock, pendingLength);
+		RandomAccessFiles.writeFully(dataFile, buffer, blockOffset);
+		blockCache.put(blockOffset, Arrays.copyOf(pendingBlock, pendingLength), pendingLength);
+		indexStrategy.setOffsets(indexFile, elementsCount, getPendingOffsets(blockOffset));
+		clearPending();
+	}
+
+	/**
+	 * Writes the open block to the data file and the offsets of its elements to the index file.
+	 *
+	 * @param indexChannel the channel of the index file.
+	 * @param dataChannel the channel of the data file.
+	 * @param indexStrategy the index strategy.
+	 * @throws IOException in case of IOException :p
+	 */
+	public void flushUsingChannels(FileChannel indexChannel, FileChannel dataChannel, IndexStrategy indexStrategy)
+		throws IOException
+	{
+		if(pendingCount == 0)
+		{
+			return;
+		}
+		long elementsCount = indexStrategy.getSize(indexChannel);
+		long blockOffset = dataChannel.size();
+		ByteBuffer buffer = createBlock(pendingBlock, pendingLength);
+		FileChannels.writeFully(dataChannel, buffer, blockOffset);
+		blockCache.put(blockOffset, Arrays.copyOf(pendingBlock, pendingLength), pendingLength);
+		indexStrategy.setOffsets(indexChannel, elementsCount, getPendingOffsets(blockOffset));
+		clearPending();
+	}
+
+	/**
+	 * Forgets all uncompressed blocks and discards the pending elements, e.g. because the files have been deleted.
+	 */
+	@Override
+	public void reset()
+	{
+		blockCache.clear();
+		clearPending();
+	}
+
+	@Override
+	public void add(E element,
+	                RandomAccessFile indexFile,
+	                RandomAccessFile dataFile,
+	                Codec<E> codec,
+	                IndexStrategy indexStrategy)
+		throws IOException
+	{
+		addAll(Collections.singletonList(element), indexFile, dataFile, codec, indexStrategy);
+	}
+
+	@Override
+	public void addAll(List<E> elements,
+	                   RandomAccessFile indexFile,
+	                   RandomAccessFile dataFile,
+	                   Codec<E> codec,
+	                   IndexStrategy indexStrategy)
+		throws IOException
+	{
+		addAllEncoded(DefaultDataStrategy.encode(elements, codec), indexFile, dataFile, indexStrategy);
+	}
+
+	@Override
+	public void addAllEncoded(List<byte[]> encodedElements,
+	                          RandomAccessFile indexFile,
+	                          RandomAccessFile dataFile,
+	                          IndexStrategy indexStrategy)
+		throws IOException
+	{
+		for(byte[] encoded : encodedElements)
+		{
+			addPending(encoded);
+			if(pendingLength >= BLOCK_SIZE)
+			{
+				flush(indexFile, dataFile, indexStrategy);
+			}
+		}
+	}
+
+	@Override
+	public boolean set(long index, E element, RandomAccessFile indexFile, RandomAccessFile dataFile, Codec<E> codec, IndexStrategy indexStrategy)
+	{
+		throw new UnsupportedOperationException("BlockCompressingDataStrategy does not support set!");
+	}
+
+	@Override
+	public boolean isSetSupported()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean isEncodedAccessSupported()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean isFileChannelSupported()
+	{
+		return true;
+	}
+
+	@Override
+	public E get(long index,
+	             RandomAccessFile indexFile,
+	             RandomAccessFile dataFile,
+	             Codec<E> codec,
+	             IndexStrategy indexStrategy)
+		throws IOException, ClassNotFoundException
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		ByteBuffer encoded = getEncoded(index, indexFile, dataFile, indexStrategy);
+		if(encoded == null)
+		{
+			return null;
+		}
+		return DefaultDataStrategy.decode(encoded, codec);
+	}
+
+	@Override
+	public List<E> getRange(long index, int count,
+	                        RandomAccessFile indexFile,
+	                        RandomAccessFile dataFile,
+	                        Codec<E> codec,
+	                        IndexStrategy indexStrategy)
+		throws IOException, ClassNotFoundException
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		long elementsCount = indexStrategy.getSize(indexFile);
+		long size = elementsCount + pendingCount;
+		if(index < 0 || count <= 0 || index >= size)
+		{
+			return new ArrayList<>();
+		}
+		int actualCount = (int) Math.min(count, size - index);
+		List<E> result = new ArrayList<>(actualCount);
+		if(index < elementsCount)
+		{
+			long[] offsets = indexStrategy.getOffsets(indexFile, index, (int) Math.min(actualCount, elementsCount - index));
+			for(long offset : offsets)
+			{
+				if(offset < 0)
+				{
+					result.add(null);
+					continue;
+				}
+				result.add(DefaultDataStrategy.decode(readRecord(dataFile, offset), codec));
+			}
+		}
+		for(long i = Math.max(index, elementsCount); i < index + actualCount; i++)
+		{
+			result.add(DefaultDataStrategy.decode(readPendingRecord(i - elementsCount), codec));
+		}
+		return result;
+	}
+
+	@Override
+	public ByteBuffer getEncoded(long index,
+	                             RandomAccessFile indexFile,
+	                             RandomAccessFile dataFile,
+	                             IndexStrategy indexStrategy)
+		throws IOException
+	{
+		long elementsCount = indexStrategy.getSize(indexFile);
+		if(index >= elementsCount)
+		{
+			return readPendingRecord(index - elementsCount);
+		}
+		if(index >= 0)
+		{
+			long offset = indexStrategy.getOffset(indexFile, index);
+			if(offset < 0)
+			{
+				return null;
+			}
+			return readRecord(dataFile, offset);
+		}
+		return null;
+	}
+
+	@Override
+	public void addUsingChannels(E element,
+	                             FileChannel indexChannel,
+	                             FileChannel dataChannel,
+	                             Codec<E> codec,
+	                             IndexStrategy indexStrategy)
+		throws IOException
+	{
+		addAllUsingChannels(Collections.singletonList(element), indexChannel, dataChannel, codec, indexStrategy);
+	}
+
+	@Override
+	public void addAllUsingChannels(List<E> elements,
+	                                FileChannel indexChannel,
+	                                FileChannel dataChannel,
+	                                Codec<E> codec,
+	                                IndexStrategy indexStrategy)
+		throws IOException
+	{
+		addAllEncodedUsingChannels(DefaultDataStrategy.encode(elements, codec), indexChannel, dataChannel, indexStrategy);
+	}
+
+	@Override
+	public void addAllEncodedUsingChannels(List<byte[]> encodedElements,
+	                                       FileChannel indexChannel,
+	                                       FileChannel dataChannel,
+	                                       IndexStrategy indexStrategy)
+		throws IOException
+	{
+		for(byte[] encoded : encodedElements)
+		{
+			addPending(encoded);
+			if(pendingLength >= BLOCK_SIZE)
+			{
+				flushUsingChannels(indexChannel, dataChannel, indexStrategy);
+			}
+		}
+	}
+
+	@Override
+	public boolean setUsingChannels(long index, E element, FileChannel indexChannel, FileChannel dataChannel, Codec<E> codec, IndexStrategy indexStrategy)
+	{
+		throw new UnsupportedOperationException("BlockCompressingDataStrategy does not support set!");
+	}
+
+	@Override
+	public E getUsingChannels(long index,
+	                          FileChannel indexChannel,
+	                          FileChannel dataChannel,
+	                          Codec<E> codec,
+	                          IndexStrategy indexStrategy)
+		throws IOException, ClassNotFoundException
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		ByteBuffer encoded = getEncodedUsingChannels(index, indexChannel, dataChannel, indexStrategy);
+		if(encoded == null)
+		{
+			return null;
+		}
+		return DefaultDataStrategy.decode(encoded, codec);
+	}
+
+	@Override
+	public List<E> getRangeUsingChannels(long index, int count,
+	                                     FileChannel indexChannel,
+	                                     FileChannel dataChannel,
+	                                     Codec<E> codec,
+	                                     IndexStrategy indexStrategy)
+		throws IOException, ClassNotFoundException
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		long elementsCount = indexStrategy.getSize(indexChannel);
+		long size = elementsCount + pendingCount;
+		if(index < 0 || count <= 0 || index >= size)
+		{
+			return new ArrayList<>();
+		}
+		int actualCount = (int) Math.min(count, size - index);
+		List<E> result = new ArrayList<>(actualCount);
+		if(index < elementsCount)
+		{
+			long[] offsets = indexStrategy.getOffsets(indexChannel, index, (int) Math.min(actualCount, elementsCount - index));
+			for(long offset : offsets)
+			{
+				if(offset < 0)
+				{
+					result.add(null);
+					continue;
+				}
+				result.add(DefaultDataStrategy.decode(readRecord(dataChannel, offset), codec));
+			}
+		}
+		for(long i = Math.max(index, elementsCount); i < index + actualCount; i++)
+		{
+			result.add(DefaultDataStrategy.decode(readPendingRecord(i - elementsCount), codec));
+		}
+		return result;
+	}
+
+	@Override
+	public ByteBuffer getEncodedUsingChannels(long index,
+	                                          FileChannel indexChannel,
+	                                          FileChannel dataChannel,
+	                                          IndexStrategy indexStrategy)
+		throws IOException
+	{
+		long elementsCount = indexStrategy.getSize(indexChannel);
+		if(index >= elementsCount)
+		{
+			return readPendingRecord(index - elementsCount);
+		}
+		if(index >= 0)
+		{
+			long offset = indexStrategy.getOffset(indexChannel, index);
+			if(offset < 0)
+			{
+				return null;
+			}
+			return readRecord(dataChannel, offset);
+		}
+		return null;
+	}
+
+	static long getOffset(long blockOffset, int intraBlockOffset)
+	{
+		return blockOffset << INTRA_BLOCK_OFFSET_BITS | intraBlockOffset;
+	}
+
+	static long getBlockOffset(long offset)
+	{
+		return offset >>> INTRA_BLOCK_OFFSET_BITS;
+	}
+
+	static int getIntraBlockOffset(long offset)
+	{
+		return (int) (offset & INTRA_BLOCK_OFFSET_MASK);
+	}
+
+	private void addPending(byte[] encoded)
+	{
+		int recordLength = DATA_LENGTH_SIZE + encoded.length;
+		if(pendingBlock == null)
+		{
+			pendingBlock = new byte[Math.max(BLOCK_SIZE, recordLength)];
+			pendingOffsets = new int[64];
+		}
+		else if(pendingLength + recordLength > pendingBlock.length)
+		{
+			pendingBlock = Arrays.copyOf(pendingBlock, pendingLength + recordLength);
+		}
+		if(pendingCount == pendingOffsets.length)
+		{
+			pendingOffsets = Arrays.copyOf(pendingOffsets, pendingCount * 2);
+		}
+		ByteBuffer record = ByteBuffer.wrap(pendingBlock, pendingLength, recordLength);
+		record.putInt(encoded.length);
+		record.put(encoded);
+		pendingOffsets[pendingCount] = pendingLength;
+		pendingCount++;
+		pendingLength += recordLength;
+	}
+
+	/**
+	 * @return a copy of the pending record or null if there is no such record.
+	 */
+	private ByteBuffer readPendingRecord(long pendingIndex)
+	{
+		if(pendingIndex < 0 || pendingIndex >= pendingCount)
+		{
+			return null;
+		}
+		int start = pendingOffsets[(int) pendingIndex];
+		int length = ByteBuffer.wrap(pendingBlock).getInt(start);
+		return ByteBuffer.wrap(Arrays.copyOfRange(pendingBlock, start + DATA_LENGTH_SIZE, start + DATA_LENGTH_SIZE + length));
+	}
+
+	private long[] getPendingOffsets(long blockOffset)
+	{
+		long[] result = new long[pendingCount];
+		for(int i = 0; i < pendingCount; i++)
+		{
+			result[i] = getOffset(blockOffset, pendingOffsets[i]);
+		}
+		return result;
+	}
+
+	private void clearPending()
+	{
+		if(pendingBlock != null && pendingBlock.length > BLOCK_SIZE)
+		{
+			// don't keep the memory of an element larger than a block
+			pendingBlock = null;
+		}
+		pendingLength = 0;
+		pendingCount = 0;
+	}
+
+	private ByteBuffer readRecord(FileChannel dataChannel, long offset)
+		throws IOException
+	{
+		return sliceRecord(readBlock(dataChannel, getBlockOffset(offset)), offset);
+	}
+
+	private ByteBuffer readRecord(RandomAccessFile dataFile, long offset)
+		throws IOException
+	{
+		return sliceRecord(readBlock(dataFile, getBlockOffset(offset)), offset);
+	}
+
+	private static ByteBuffer sliceRecord(byte[] block, long offset)
+	{
+		int intraBlockOffset = getIntraBlockOffset(offset);
+		if(block.length < intraBlockOffset + DATA_LENGTH_SIZE)
+		{
+			throw new IndexOutOfBoundsException("Invalid offset: " + offset + "! Couldn't read length of data!");
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(block);
+		int bufferSize = buffer.getInt(intraBlockOffset);
+		int start = intraBlockOffset + DATA_LENGTH_SIZE;
+		if(bufferSize < 0 || block.length < start + bufferSize)
+		{
+			throw new IndexOutOfBoundsException("Invalid length (" + bufferSize + ") at offset: " + offset + "!");
+		}
+		buffer.limit(start + bufferSize);
+		buffer.position(start);
+		return buffer.slice();
+	}
+
+	/**
+	 * @return the uncompressed data of the block at the given offset. Must not be changed.
+	 */
+	private byte[] readBlock(FileChannel dataChannel, long blockOffset)
+		throws IOException
+	{
+		byte[] result = blockCache.get(blockOffset);
+		if(result != null)
+		{
+			return result;
+		}
+		long dataLength = dataChannel.size();
+		checkBlockHeader(blockOffset, dataLength);
+		ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+		FileChannels.readFully(dataChannel, header, blockOffset);
+		byte[] compressed = new byte[getCompressedLength(header, blockOffset, dataLength)];
+		FileChannels.readFully(dataChannel, ByteBuffer.wrap(compressed), blockOffset + BLOCK_HEADER_SIZE);
+		return decompress(blockOffset, compressed, header.getInt(4));
+	}
+
+	/**
+	 * @return the uncompressed data of the block at the given offset. Must not be changed.
+	 */
+	private byte[] readBlock(RandomAccessFile dataFile, long blockOffset)
+		throws IOException
+	{
+		byte[] result = blockCache.get(blockOffset);
+		if(result != null)
+		{
+			return result;
+		}
+		long dataLength = dataFile.length();
+		checkBlockHeader(blockOffset, dataLength);
+		ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+		RandomAccessFiles.readFully(dataFile, header, blockOffset);
+		byte[] compressed = new byte[getCompressedLength(header, blockOffset, dataLength)];
+		RandomAccessFiles.readFully(dataFile, ByteBuffer.wrap(compressed), blockOffset + BLOCK_HEADER_SIZE);
+		return decompress(blockOffset, compressed, header.getInt(4));
+	}
+
+	private static void checkBlockHeader(long blockOffset, long dataLength)
+	{
+		if(dataLength < blockOffset + BLOCK_HEADER_SIZE)
+		{
+			throw new IndexOutOfBoundsException("Invalid block offset: " + blockOffset + "! Couldn't read block header!");
+		}
+	}
+
+	/**
+	 * @return the compressed length contained in the block header, after checking both lengths.
+	 */
+	private static int getCompressedLength(ByteBuffer header, long blockOffset, long dataLength)
+	{
+		int compressedLength = header.getInt(0);
+		int uncompressedLength = header.getInt(4);
+		if(compressedLength < 0 || uncompressedLength < 0 || dataLength < blockOffset + BLOCK_HEADER_SIZE + compressedLength)
+		{
+			throw new IndexOutOfBoundsException("Invalid block lengths (" + compressedLength + ", " + uncompressedLength + ") at offset: " + blockOffset + "!");
+		}
+		return compressedLength;
+	}
+
+	private byte[] decompress(long blockOffset, byte[] compressed, int uncompressedLength)
+		throws IOException
+	{
+		byte[] result = new byte[uncompressedLength];
+		compressor.decompress(compressed, 0, compressed.length, result);
+		blockCache.put(blockOffset, result, uncompressedLength);
+		return result;
+	}
+
+	/**
+	 * @return the block header followed by the compressed data, ready to be written.
+	 */
+	private ByteBuffer createBlock(byte[] block, int blockLength)
+	{
+		byte[] compressed = compressor.compress(block, blockLength);
+		ByteBuffer result = ByteBuffer.allocate(BLOCK_HEADER_SIZE + compressed.length);
+		result.putInt(compressed.length);
+		result.putInt(blockLength);
+		result.put(compressed);
+		result.flip();
+		return result;
+	}
+}
@@ -39,6 +39,9 @@ import de.huxhorn.sulky.buffers.Dispose;
 import de.huxhorn.sulky.buffers.DisposeOperation;
 import de.huxhorn.sulky.buffers.ElementProcessor;
 import de.huxhorn.sulky.buffers.FileBuffer;
+import de.huxhorn.sulky.buffers.FlushOperation;
+import de.huxhorn.sulky.buffers.RangeRead;
+import de.huxhorn.sulky.buffers.RangeReadOperation;
 import de.huxhorn.sulky.buffers.Reset;
 import de.huxhorn.sulky.buffers.SetOperation;
 import de.huxhorn.sulky.codec.Codec;
@@ -46,13 +49,24 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InvalidClassException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -82,7 +96,7 @@ import org.slf4j.LoggerFactory;
  * @param <E> the type of objects that are stored in this buffer.
  */
 public class CodecFileBuffer<E>
-	implements FileBuffer<E>, SetOperation<E>, DisposeOperation
+	implements FileBuffer<E>, SetOperation<E>, FlushOperation, DisposeOperation, RangeReadOperation<E>
 {
 	private final Logger logger = LoggerFactory.getLogger(CodecFileBuffer.class);
 
@@ -99,6 +113,7 @@ public class CodecFileBuffer<E>
 	 */
 	private File indexFile;
 	private static final String INDEX_EXTENSION = ".index";
+	private static final String COMPACTION_EXTENSION = ".compacting";
 	private Map<String, String> preferredMetaData;
 
 	private Codec<E> codec;
@@ -108,7 +123,49 @@ public class CodecFileBuffer<E>
 	private FileHeader fileHeader;
 	private boolean preferredSparse;
 	private DataStrategy<E> dataStrategy;
-	private IndexStrategy indexStrategy;
+	private final IndexStrategy indexStrategy;
+
+	/**
+	 * Keeps the files open if channelPoolSize is larger than zero, null otherwise.
+	 */
+	private FileChannelPool channelPool;
+	private int channelPoolSize;
+	private boolean mappingData;
+
+	/**
+	 * Coalesces concurrent calls of add if groupCommitSize is larger than zero, null otherwise.
+	 */
+	private volatile GroupCommitter<E> groupCommitter;
+	private int groupCommitSize;
+	private int groupCommitDelay;
+
+	private volatile int parallelEncodingThreshold;
+	private volatile ForkJoinPool encodingPool;
+
+	/**
+	 * Caches decoded elements if elementCacheSize or elementCacheBytes is larger than zero, null otherwise.
+	 */
+	private volatile ElementCache<E> elementCache;
+	private int elementCacheSize;
+	private long elementCacheBytes;
+	private final AtomicLong elementCacheHits = new AtomicLong();
+	private final AtomicLong elementCacheMisses = new AtomicLong();
+
+	/**
+	 * If exclusive, existence of the files and the number of elements are tracked in memory.
+	 */
+	private volatile boolean exclusive;
+	private volatile boolean filesInitialized;
+
+	/**
+	 * The number of elements or -1 if unknown. Changed while holding the write lock.
+	 */
+	private final AtomicLong cachedSize = new AtomicLong(-1);
+
+	/**
+	 * Contains the indices set to null while compact is running, null otherwise.
+	 */
+	private Set<Long> compactionRemovals;
 
 	/**
 	 * TODO: add description :p
@@ -127,7 +184,29 @@ public class CodecFileBuffer<E>
 
 	public CodecFileBuffer(int magicValue, boolean preferredSparse, Map<String, String> preferredMetaData, Codec<E> codec, File dataFile, File indexFile, FileHeaderStrategy fileHeaderStrategy)
 	{
-		this.indexStrategy = new DefaultIndexStrategy();
+		this(magicValue, preferredSparse, preferredMetaData, codec, dataFile, indexFile, fileHeaderStrategy, new DefaultIndexStrategy());
+	}
+
+	/**
+	 * The indexStrategy must not be shared with any other buffer.
+	 * If it implements ResetOperation, it is reset whenever the index file is deleted by this buffer.
+	 *
+	 * @param magicValue         the magic value of the buffer.
+	 * @param preferredSparse    whether or not this buffer is sparse, i.e. not continuous.
+	 * @param preferredMetaData  the meta data of the buffer. Might be null.
+	 * @param codec              the codec used by this buffer. Might be null.
+	 * @param dataFile           the data file.
+	 * @param indexFile          the index file of the buffer.
+	 * @param fileHeaderStrategy the strategy used to read and write the file header.
+	 * @param indexStrategy      the strategy used to read and write the index file, e.g. MappedIndexStrategy.
+	 */
+	public CodecFileBuffer(int magicValue, boolean preferredSparse, Map<String, String> preferredMetaData, Codec<E> codec, File dataFile, File indexFile, FileHeaderStrategy fileHeaderStrategy, IndexStrategy indexStrategy)
+	{
+		if(indexStrategy == null)
+		{
+			throw new IllegalArgumentException("indexStrategy must not be null!");
+		}
+		this.indexStrategy = indexStrategy;
 		this.magicValue = magicValue;
 		this.fileHeaderStrategy = fileHeaderStrategy;
 		this.readWriteLock = new ReentrantReadWriteLock(true);
@@ -166,10 +245,20 @@ public class CodecFileBuffer<E>
 		}
 	}
 
+	/**
+	 * Checks the header of an existing data file.
+	 *
+	 * If the buffer is using DefaultDataStrategy and the index format of DefaultIndexStrategy, the end of the
+	 * data file is also checked against the index. Neither file is changed by this check since another buffer
+	 * might still be appending to them. An inconsistency is only logged, recover() has to be called explicitly.
+	 *
+	 * @see IndexRecovery#isConsistent(FileChannel, FileChannel, FileHeader)
+	 */
 	private void validateHeader()
 	{
-		Lock lock = readWriteLock.readLock();
+		Lock lock = readWriteLock.writeLock();
 		lock.lock();
+		boolean consistent = true;
 		try
 		{
 			this.fileHeader = null;
@@ -187,6 +276,14 @@ public class CodecFileBuffer<E>
 				throw new IllegalArgumentException("dataFile contains data but indexFile " + indexFile.getAbsolutePath() + " is not valid!");
 			}
 			setFileHeader(header);
+			if(dataStrategy instanceof DefaultDataStrategy && isUsingDefaultIndexFormat(indexStrategy) && indexFile.exists())
+			{
+				try(FileChannel dataChannel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+					FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ))
+				{
+					consistent = IndexRecovery.isConsistent(dataChannel, indexChannel, header);
+				}
+			}
 		}
 		catch(IOException ex)
 		{
@@ -196,6 +293,28 @@ public class CodecFileBuffer<E>
 		{
 			lock.unlock();
 		}
+		if(!consistent)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Index of {} does not match the end of the data file. Call recover() if no other buffer is writing to it.", dataFile.getAbsolutePath()); // NOPMD
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock.
+	 *
+	 * @return true if the data strategy is accessed using the channels of the pool, false if RandomAccessFiles are used.
+	 */
+	private boolean isUsingChannels()
+	{
+		return channelPool != null && dataStrategy.isFileChannelSupported();
+	}
+
+	/**
+	 * IndexRecovery only supports index files written by DefaultIndexStrategy or MappedIndexStrategy.
+	 */
+	private static boolean isUsingDefaultIndexFormat(IndexStrategy indexStrategy)
+	{
+		return indexStrategy instanceof DefaultIndexStrategy || indexStrategy instanceof MappedIndexStrategy;
 	}
 
 	public Codec<E> getCodec()
@@ -208,229 +327,880 @@ public class CodecFileBuffer<E>
 		this.codec = codec;
 	}
 
-	public List<ElementProcessor<E>> getElementProcessors()
+	public int getChannelPoolSize()
 	{
-		if(elementProcessors == null)
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
 		{
-			return null;
+			return channelPoolSize;
 		}
-		return Collections.unmodifiableList(elementProcessors);
-	}
-
-	public void setElementProcessors(List<ElementProcessor<E>> elementProcessors)
-	{
-		if(elementProcessors != null)
+		finally
 		{
-			if(elementProcessors.isEmpty())
-			{
-				// performance enhancement
-				elementProcessors = null;
-			}
-			else
-			{
-				elementProcessors = new ArrayList<>(elementProcessors);
-			}
+			lock.unlock();
 		}
-		this.elementProcessors = elementProcessors;
 	}
 
-	private boolean initFilesIfNecessary()
+	/**
+	 * Defines whether or not this buffer keeps its files open.
+	 *
+	 * By default, i.e. if channelPoolSize is 0, both data and index file are opened and closed
+	 * for every single call of get, getSize, add, addAll and set.
+	 *
+	 * If channelPoolSize is larger than 0, the buffer keeps one pair of channels open for writing and up to
+	 * channelPoolSize pairs of channels for reading. Those are closed by dispose().
+	 * Reads are executed concurrently using positional reads.
+	 *
+	 * @param channelPoolSize the maximum number of idle read channel pairs, 0 to disable keeping files open.
+	 */
+	public void setChannelPoolSize(int channelPoolSize)
 	{
-		if(!dataFile.exists() || dataFile.length() < fileHeaderStrategy.getMinimalSize())
+		if(channelPoolSize < 0)
 		{
-			Throwable t=null;
-			boolean dataDeleted=false;
-			boolean indexDeleted=false;
-			Lock lock = readWriteLock.writeLock();
-			lock.lock();
-			try
-			{
-				dataDeleted=dataFile.delete();
-				setFileHeader(fileHeaderStrategy.writeFileHeader(dataFile, magicValue, preferredMetaData, preferredSparse));
-				indexDeleted=indexFile.delete();
-			}
-			catch(IOException e)
-			{
-				t=e;
-			}
-			finally
-			{
-				lock.unlock();
-			}
-			if(!indexDeleted)
-			{
-				if(logger.isDebugEnabled()) logger.debug("Couldn't delete index file {}.", indexFile.getAbsolutePath()); // NOPMD
-			}
-			if(!dataDeleted)
+			throw new IllegalArgumentException("channelPoolSize must not be negative but was " + channelPoolSize + "!");
+		}
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
+		{
+			if(channelPool != null)
 			{
-				if(logger.isDebugEnabled()) logger.debug("Couldn't delete data file {}.", dataFile.getAbsolutePath()); // NOPMD
+				channelPool.close();
+				channelPool = null;
 			}
-			if(t!=null)
+			this.channelPoolSize = channelPoolSize;
+			if(channelPoolSize > 0)
 			{
-				if(logger.isWarnEnabled()) logger.warn("Exception while initializing files!", t);
-				return false;
+				channelPool = new FileChannelPool(dataFile, indexFile, channelPoolSize);
 			}
-			return true;
 		}
-		return false;
+		finally
+		{
+			lock.unlock();
+		}
 	}
 
-	public FileHeader getFileHeader()
+	public boolean isMappingData()
 	{
-		return fileHeader;
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
+		{
+			return mappingData;
+		}
+		finally
+		{
+			lock.unlock();
+		}
 	}
 
 	/**
-	 * @return the preferred meta data of the buffer, as defined by c'tor.
+	 * Defines whether or not elements are read from a read-only mapping of the data file.
+	 *
+	 * If the codec is a ByteBufferDecoder, elements are decoded directly from the mapped file without copying.
+	 * Block-compressed buffers ignore this setting and keep their pending elements.
+	 *
+	 * @param mappingData whether or not elements are read from a read-only mapping of the data file.
+	 * @see DefaultDataStrategy#setMappingData(boolean)
+	 * @see SparseDataStrategy#setMappingData(boolean)
 	 */
-	public Map<String, String> getPreferredMetaData()
+	public void setMappingData(boolean mappingData)
 	{
-		if(preferredMetaData == null)
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
 		{
-			return null;
+			this.mappingData = mappingData;
+			if(fileHeader != null && !(dataStrategy instanceof BlockCompressingDataStrategy))
+			{
+				setFileHeader(fileHeader);
+			}
+		}
+		finally
+		{
+			lock.unlock();
 		}
-		return Collections.unmodifiableMap(preferredMetaData);
-	}
-
-	@Override
-	public File getDataFile()
-	{
-		return dataFile;
 	}
 
-	public File getIndexFile()
+	public boolean isExclusive()
 	{
-		return indexFile;
+		return exclusive;
 	}
 
-	@Override
-	public long getSize()
+	/**
+	 * Defines whether or not the files are owned exclusively by this buffer.
+	 *
+	 * If exclusive, the existence of the files is only checked once and the number of elements is tracked
+	 * in memory, so getSize() and the bounds check of get don't access the file system.
+	 * The files must not be changed by anything else while the buffer is exclusive.
+	 *
+	 * @param exclusive whether or not the files are owned exclusively by this buffer.
+	 */
+	public void setExclusive(boolean exclusive)
 	{
-		if(!indexFile.canRead())
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
 		{
-			return 0;
+			this.exclusive = exclusive;
+			filesInitialized = false;
+			cachedSize.set(-1);
 		}
-
-		Throwable throwable;
-		Lock lock = readWriteLock.readLock();
-		lock.lock(); // FindBugs "Multithreaded correctness - Method does not release lock on all exception paths" is a false positive
-		try(RandomAccessFile raf = new RandomAccessFile(indexFile, "r"))
+		finally
 		{
-			return indexStrategy.getSize(raf);
+			lock.unlock();
 		}
-		catch(Throwable e)
+	}
+
+	public int getGroupCommitSize()
+	{
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
 		{
-			throwable = e;
+			return groupCommitSize;
 		}
 		finally
 		{
 			lock.unlock();
 		}
-		// it's a really bad idea to log while locked *sigh*
-		if(logger.isDebugEnabled()) logger.debug("Couldn't retrieve size!", throwable);
-		return 0;
 	}
 
 	/**
-	 * If no element is found, null is returned.
+	 * Defines whether or not concurrent calls of add are coalesced into group commits.
 	 *
-	 * @param index must be in the range <code>[0..(getSize()-1)]</code>.
-	 * @return the element at the given index.
-	 * @throws IllegalStateException if no Decoder has been set.
+	 * By default, i.e. if groupCommitSize is 0, every call of add writes its element on its own.
+	 *
+	 * If groupCommitSize is larger than 0, elements added concurrently are collected and written by a single
+	 * call of addAll containing up to groupCommitSize elements. The thread executing such a group commit waits
+	 * up to groupCommitDelay milliseconds for more elements before writing them.
+	 * add returns after the element has been written, either by the calling or by another thread.
+	 *
+	 * @param groupCommitSize the maximum number of elements in a group commit, 0 to disable group commits.
+	 * @see #setGroupCommitDelay(int)
 	 */
-	@Override
-	public E get(long index)
+	public void setGroupCommitSize(int groupCommitSize)
 	{
-		if(!dataFile.canRead() || !indexFile.canRead())
+		if(groupCommitSize < 0)
 		{
-			return null;
+			throw new IllegalArgumentException("groupCommitSize must not be negative but was " + groupCommitSize + "!");
 		}
-
-		Lock lock = readWriteLock.readLock();
+		Lock lock = readWriteLock.writeLock();
 		lock.lock();
-		Throwable throwable;
-		try(RandomAccessFile randomSerializeIndexFile = new RandomAccessFile(indexFile, "r");
-			RandomAccessFile randomSerializeFile = new RandomAccessFile(dataFile, "r"))
-		{
-			return dataStrategy.get(index, randomSerializeIndexFile, randomSerializeFile, codec, indexStrategy);
-		}
-		catch(Throwable e)
+		try
 		{
-			throwable = e;
+			this.groupCommitSize = groupCommitSize;
+			initGroupCommitter();
 		}
 		finally
 		{
 			lock.unlock();
 		}
+	}
 
-		// it's a really bad idea to log while locked *sigh*
-		if(throwable instanceof ClassNotFoundException
-			|| throwable instanceof InvalidClassException)
-		{
-			if(logger.isWarnEnabled()) logger.warn("Couldn't deserialize object at index {}!\n{}", index, throwable);
-		}
-		else if(throwable instanceof ClassCastException)
+	public int getGroupCommitDelay()
+	{
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
 		{
-			if(logger.isWarnEnabled()) logger.warn("Couldn't cast deserialized object at index {}!\n{}", index, throwable);
+			return groupCommitDelay;
 		}
-		else
+		finally
 		{
-			if(logger.isWarnEnabled()) logger.warn("Couldn't retrieve element at index {}!", index, throwable);
+			lock.unlock();
 		}
-		return null;
 	}
 
 	/**
-	 * Adds the element to the end of the buffer.
+	 * The maximum time in milliseconds a group commit waits for more elements, 0 (the default) to write
+	 * all elements that accumulated while the previous group commit was executed without waiting.
 	 *
-	 * @param element to add.
-	 * @throws IllegalStateException if no Encoder has been set.
+	 * This has no effect if groupCommitSize is 0.
+	 *
+	 * @param groupCommitDelay the maximum time in milliseconds a group commit waits for more elements.
+	 * @see #setGroupCommitSize(int)
 	 */
-	@Override
-	public void add(E element)
+	public void setGroupCommitDelay(int groupCommitDelay)
 	{
-		initFilesIfNecessary();
-
-		Lock lock = readWriteLock.writeLock();
-		lock.lock();
-		Throwable throwable = null;
-		try(RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw");
-			RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw"))
+		if(groupCommitDelay < 0)
 		{
-			dataStrategy.add(element, randomIndexFile, randomDataFile, codec, indexStrategy);
-			// call processors if available
-			List<ElementProcessor<E>> localProcessors = elementProcessors;
-			if(localProcessors != null)
-			{
-				for(ElementProcessor<E> current : elementProcessors)
-				{
-					current.processElement(element);
-				}
-			}
+			throw new IllegalArgumentException("groupCommitDelay must not be negative but was " + groupCommitDelay + "!");
 		}
-		catch(IOException e)
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
 		{
-			throwable = e;
+			this.groupCommitDelay = groupCommitDelay;
+			initGroupCommitter();
 		}
 		finally
 		{
 			lock.unlock();
 		}
-		if(throwable != null)
-		{
-			// it's a really bad idea to log while locked *sigh*
-			if(logger.isWarnEnabled()) logger.warn("Couldn't write element!", throwable); // NOPMD
-		}
 	}
 
 	/**
-	 * Adds all elements to the end of the buffer.
-	 *
-	 * @param elements to add.
-	 * @throws IllegalStateException if no Encoder has been set.
+	 * Must be called while holding the write lock.
+	 * Threads that already entered the previous GroupCommitter are still served by it.
 	 */
-	@Override
+	private void initGroupCommitter()
+	{
+		if(groupCommitSize > 0)
+		{
+			groupCommitter = new GroupCommitter<>(this, groupCommitSize, groupCommitDelay);
+		}
+		else
+		{
+			groupCommitter = null;
+		}
+	}
+
+	public int getElementCacheSize()
+	{
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
+		{
+			return elementCacheSize;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Defines the maximum number of decoded elements kept in the element cache.
+	 *
+	 * By default, i.e. if both elementCacheSize and elementCacheBytes are 0, get decodes the element every time
+	 * it is called. Otherwise, elements returned by get are cached and the least recently used elements are
+	 * evicted as soon as one of the bounds is exceeded. A bound of 0 means that the respective dimension is unbounded.
+	 *
+	 * Cached elements are invalidated by set and reset. Changing the bounds discards all cached elements.
+	 * Elements returned by get(from, count) do not use the cache.
+	 *
+	 * @param elementCacheSize the maximum number of cached elements, 0 for no limit.
+	 * @see #setElementCacheBytes(long)
+	 */
+	public void setElementCacheSize(int elementCacheSize)
+	{
+		if(elementCacheSize < 0)
+		{
+			throw new IllegalArgumentException("elementCacheSize must not be negative but was " + elementCacheSize + "!");
+		}
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
+		{
+			this.elementCacheSize = elementCacheSize;
+			initElementCache();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	public long getElementCacheBytes()
+	{
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
+		{
+			return elementCacheBytes;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Defines the maximum sum of the encoded sizes of the elements kept in the element cache.
+	 * Elements that are larger than this on their own aren't cached at all.
+	 *
+	 * @param elementCacheBytes the maximum sum of the encoded sizes of cached elements, 0 for no limit.
+	 * @see #setElementCacheSize(int)
+	 */
+	public void setElementCacheBytes(long elementCacheBytes)
+	{
+		if(elementCacheBytes < 0)
+		{
+			throw new IllegalArgumentException("elementCacheBytes must not be negative but was " + elementCacheBytes + "!");
+		}
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
+		{
+			this.elementCacheBytes = elementCacheBytes;
+			initElementCache();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of calls of get that were served by the element cache.
+	 */
+	public long getElementCacheHits()
+	{
+		return elementCacheHits.get();
+	}
+
+	/**
+	 * @return the number of calls of get that had to decode the element while the element cache was enabled.
+	 */
+	public long getElementCacheMisses()
+	{
+		return elementCacheMisses.get();
+	}
+
+	/**
+	 * Must be called while holding the write lock.
+	 */
+	private void initElementCache()
+	{
+		if(elementCacheSize > 0 || elementCacheBytes > 0)
+		{
+			elementCache = new ElementCache<>(elementCacheSize, elementCacheBytes);
+		}
+		else
+		{
+			elementCache = null;
+		}
+	}
+
+	/**
+	 * Must be called while holding the write lock.
+	 */
+	private void clearElementCache()
+	{
+		ElementCache<E> cache = elementCache;
+		if(cache != null)
+		{
+			cache.clear();
+		}
+	}
+
+	public int getParallelEncodingThreshold()
+	{
+		return parallelEncodingThreshold;
+	}
+
+	/**
+	 * Defines whether or not addAll encodes the elements in parallel.
+	 *
+	 * By default, i.e. if parallelEncodingThreshold is 0, elements are encoded one after the other
+	 * while holding the write lock.
+	 *
+	 * If parallelEncodingThreshold is larger than 0, calls of addAll with at least parallelEncodingThreshold elements
+	 * encode the elements using the encodingPool before taking the write lock. The lock is then only held
+	 * while the already encoded elements are written. The codec must be thread-safe in that case.
+	 *
+	 * @param parallelEncodingThreshold the minimum number of elements encoded in parallel, 0 to disable parallel encoding.
+	 * @see #setEncodingPool(ForkJoinPool)
+	 */
+	public void setParallelEncodingThreshold(int parallelEncodingThreshold)
+	{
+		if(parallelEncodingThreshold < 0)
+		{
+			throw new IllegalArgumentException("parallelEncodingThreshold must not be negative but was " + parallelEncodingThreshold + "!");
+		}
+		this.parallelEncodingThreshold = parallelEncodingThreshold;
+	}
+
+	public ForkJoinPool getEncodingPool()
+	{
+		return encodingPool;
+	}
+
+	/**
+	 * @param encodingPool the pool used for parallel encoding, null to use the common pool.
+	 * @see #setParallelEncodingThreshold(int)
+	 */
+	public void setEncodingPool(ForkJoinPool encodingPool)
+	{
+		this.encodingPool = encodingPool;
+	}
+
+	public List<ElementProcessor<E>> getElementProcessors()
+	{
+		if(elementProcessors == null)
+		{
+			return null;
+		}
+		return Collections.unmodifiableList(elementProcessors);
+	}
+
+	public void setElementProcessors(List<ElementProcessor<E>> elementProcessors)
+	{
+		if(elementProcessors != null)
+		{
+			if(elementProcessors.isEmpty())
+			{
+				// performance enhancement
+				elementProcessors = null;
+			}
+			else
+			{
+				elementProcessors = new ArrayList<>(elementProcessors);
+			}
+		}
+		this.elementProcessors = elementProcessors;
+	}
+
+	private boolean initFilesIfNecessary()
+	{
+		if(exclusive && filesInitialized)
+		{
+			return false;
+		}
+		if(!dataFile.exists() || dataFile.length() < fileHeaderStrategy.getMinimalSize())
+		{
+			Throwable t=null;
+			boolean dataDeleted=false;
+			boolean indexDeleted=false;
+			Lock lock = readWriteLock.writeLock();
+			lock.lock();
+			try
+			{
+				closeChannels();
+				clearElementCache();
+				compactionRemovals = null;
+				dataDeleted=dataFile.delete();
+				setFileHeader(fileHeaderStrategy.writeFileHeader(dataFile, magicValue, preferredMetaData, preferredSparse));
+				indexDeleted=indexFile.delete();
+				Reset.reset(indexStrategy);
+				cachedSize.set(0);
+				filesInitialized = true;
+			}
+			catch(IOException e)
+			{
+				t=e;
+			}
+			finally
+			{
+				lock.unlock();
+			}
+			if(!indexDeleted)
+			{
+				if(logger.isDebugEnabled()) logger.debug("Couldn't delete index file {}.", indexFile.getAbsolutePath()); // NOPMD
+			}
+			if(!dataDeleted)
+			{
+				if(logger.isDebugEnabled()) logger.debug("Couldn't delete data file {}.", dataFile.getAbsolutePath()); // NOPMD
+			}
+			if(t!=null)
+			{
+				if(logger.isWarnEnabled()) logger.warn("Exception while initializing files!", t);
+				return false;
+			}
+			return true;
+		}
+		filesInitialized = true;
+		return false;
+	}
+
+	public FileHeader getFileHeader()
+	{
+		return fileHeader;
+	}
+
+	/**
+	 * @return the preferred meta data of the buffer, as defined by c'tor.
+	 */
+	public Map<String, String> getPreferredMetaData()
+	{
+		if(preferredMetaData == null)
+		{
+			return null;
+		}
+		return Collections.unmodifiableMap(preferredMetaData);
+	}
+
+	@Override
+	public File getDataFile()
+	{
+		return dataFile;
+	}
+
+	public File getIndexFile()
+	{
+		return indexFile;
+	}
+
+	public IndexStrategy getIndexStrategy()
+	{
+		return indexStrategy;
+	}
+
+	@Override
+	public long getSize()
+	{
+		if(exclusive)
+		{
+			long result = cachedSize.get();
+			if(result >= 0)
+			{
+				return result;
+			}
+		}
+		if(!indexFile.canRead())
+		{
+			return 0;
+		}
+
+		Throwable throwable;
+		Lock lock = readWriteLock.readLock();
+		lock.lock(); // FindBugs "Multithreaded correctness - Method does not release lock on all exception paths" is a false positive
+		try
+		{
+			long result;
+			if(channelPool != null)
+			{
+				FileChannelPool.ChannelPair channels = channelPool.borrowReadChannels();
+				try
+				{
+					result = indexStrategy.getSize(channels.getIndexChannel());
+				}
+				finally
+				{
+					channelPool.returnReadChannels(channels);
+				}
+			}
+			else
+			{
+				try(RandomAccessFile raf = new RandomAccessFile(indexFile, "r"))
+				{
+					result = indexStrategy.getSize(raf);
+				}
+			}
+			result += getPendingCount();
+			if(exclusive)
+			{
+				// no writer can be active while holding the read lock
+				cachedSize.set(result);
+			}
+			return result;
+		}
+		catch(Throwable e)
+		{
+			throwable = e;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		// it's a really bad idea to log while locked *sigh*
+		if(logger.isDebugEnabled()) logger.debug("Couldn't retrieve size!", throwable);
+		return 0;
+	}
+
+	/**
+	 * If no element is found, null is returned.
+	 *
+	 * @param index must be in the range <code>[0..(getSize()-1)]</code>.
+	 * @return the element at the given index.
+	 * @throws IllegalStateException if no Decoder has been set.
+	 */
+	@Override
+	public E get(long index)
+	{
+		if(exclusive)
+		{
+			if(index < 0 || index >= getSize())
+			{
+				return null;
+			}
+		}
+		else if(!dataFile.canRead() || !indexFile.canRead())
+		{
+			return null;
+		}
+
+		ElementCache<E> cache = elementCache;
+		if(cache != null)
+		{
+			E result = cache.get(index);
+			if(result != null)
+			{
+				elementCacheHits.incrementAndGet();
+				return result;
+			}
+			elementCacheMisses.incrementAndGet();
+		}
+
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		Throwable throwable;
+		try
+		{
+			if(isUsingChannels())
+			{
+				FileChannelPool.ChannelPair channels = channelPool.borrowReadChannels();
+				try
+				{
+					if(cache != null && dataStrategy.isEncodedAccessSupported())
+					{
+						return getCached(index, channels.getIndexChannel(), channels.getDataChannel(), cache);
+					}
+					return dataStrategy.getUsingChannels(index, channels.getIndexChannel(), channels.getDataChannel(), codec, indexStrategy);
+				}
+				finally
+				{
+					channelPool.returnReadChannels(channels);
+				}
+			}
+			try(RandomAccessFile randomSerializeIndexFile = new RandomAccessFile(indexFile, "r");
+				RandomAccessFile randomSerializeFile = new RandomAccessFile(dataFile, "r"))
+			{
+				if(cache != null && dataStrategy.isEncodedAccessSupported())
+				{
+					return getCached(index, randomSerializeIndexFile, randomSerializeFile, cache);
+				}
+				return dataStrategy.get(index, randomSerializeIndexFile, randomSerializeFile, codec, indexStrategy);
+			}
+		}
+		catch(Throwable e)
+		{
+			throwable = e;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		// it's a really bad idea to log while locked *sigh*
+		if(throwable instanceof ClassNotFoundException
+			|| throwable instanceof InvalidClassException)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Couldn't deserialize object at index {}!\n{}", index, throwable);
+		}
+		else if(throwable instanceof ClassCastException)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Couldn't cast deserialized object at index {}!\n{}", index, throwable);
+		}
+		else
+		{
+			if(logger.isWarnEnabled()) logger.warn("Couldn't retrieve element at index {}!", index, throwable);
+		}
+		return null;
+	}
+
+	/**
+	 * Must be called while holding the read lock so a concurrent set can't be overtaken by the cached element.
+	 */
+	private E getCached(long index, FileChannel indexChannel, FileChannel dataChannel, ElementCache<E> cache)
+		throws IOException
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		return cacheEncoded(index, dataStrategy.getEncodedUsingChannels(index, indexChannel, dataChannel, indexStrategy), cache);
+	}
+
+	private E getCached(long index, RandomAccessFile indexFile, RandomAccessFile dataFile, ElementCache<E> cache)
+		throws IOException
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		return cacheEncoded(index, dataStrategy.getEncoded(index, indexFile, dataFile, indexStrategy), cache);
+	}
+
+	private E cacheEncoded(long index, ByteBuffer encoded, ElementCache<E> cache)
+	{
+		if(encoded == null)
+		{
+			return null;
+		}
+		int encodedSize = encoded.remaining();
+		E result = DefaultDataStrategy.decode(encoded, codec);
+		cache.put(index, result, encodedSize);
+		return result;
+	}
+
+	/**
+	 * Reads the offsets as well as the data covering the elements at once, using a single lock.
+	 * Falls back to get(index) for every element in case of an error.
+	 *
+	 * @param from the index of the first element.
+	 * @param count the maximum number of elements.
+	 * @return the elements in the given range.
+	 */
+	@Override
+	public List<E> get(long from, int count)
+	{
+		if(exclusive)
+		{
+			if(from < 0 || from >= getSize())
+			{
+				return Collections.emptyList();
+			}
+		}
+		else if(!dataFile.canRead() || !indexFile.canRead())
+		{
+			return Collections.emptyList();
+		}
+
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		Throwable throwable;
+		try
+		{
+			if(isUsingChannels())
+			{
+				FileChannelPool.ChannelPair channels = channelPool.borrowReadChannels();
+				try
+				{
+					return dataStrategy.getRangeUsingChannels(from, count, channels.getIndexChannel(), channels.getDataChannel(), codec, indexStrategy);
+				}
+				finally
+				{
+					channelPool.returnReadChannels(channels);
+				}
+			}
+			try(RandomAccessFile randomSerializeIndexFile = new RandomAccessFile(indexFile, "r");
+				RandomAccessFile randomSerializeFile = new RandomAccessFile(dataFile, "r"))
+			{
+				return dataStrategy.getRange(from, count, randomSerializeIndexFile, randomSerializeFile, codec, indexStrategy);
+			}
+		}
+		catch(Throwable e)
+		{
+			throwable = e;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		// it's a really bad idea to log while locked *sigh*
+		if(logger.isDebugEnabled()) logger.debug("Couldn't retrieve range of {} elements at index {}, retrieving them one by one.", count, from, throwable);
+		return RangeRead.get(this, from, count, getSize());
+	}
+
+	/**
+	 * Adds the element to the end of the buffer.
+	 *
+	 * If group commits are enabled, the element is written together with elements added concurrently
+	 * by other threads.
+	 *
+	 * @param element to add.
+	 * @throws IllegalStateException if no Encoder has been set.
+	 */
+	@Override
+	public void add(E element)
+	{
+		GroupCommitter<E> committer = groupCommitter;
+		if(committer != null)
+		{
+			committer.add(element);
+			return;
+		}
+
+		initFilesIfNecessary();
+
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		Throwable throwable = null;
+		try
+		{
+			if(isUsingChannels())
+			{
+				FileChannelPool.ChannelPair channels = channelPool.getWriteChannels();
+				dataStrategy.addUsingChannels(element, channels.getIndexChannel(), channels.getDataChannel(), codec, indexStrategy);
+			}
+			else
+			{
+				try(RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw");
+					RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw"))
+				{
+					dataStrategy.add(element, randomIndexFile, randomDataFile, codec, indexStrategy);
+				}
+			}
+			addCachedSize(1);
+			// call processors if available
+			List<ElementProcessor<E>> localProcessors = elementProcessors;
+			if(localProcessors != null)
+			{
+				for(ElementProcessor<E> current : elementProcessors)
+				{
+					current.processElement(element);
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			throwable = e;
+			cachedSize.set(-1);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		if(throwable != null)
+		{
+			// it's a really bad idea to log while locked *sigh*
+			if(logger.isWarnEnabled()) logger.warn("Couldn't write element!", throwable); // NOPMD
+		}
+	}
+
+	/**
+	 * Adds all elements to the end of the buffer.
+	 *
+	 * @param elements to add.
+	 * @throws IllegalStateException if no Encoder has been set.
+	 */
+	@Override
 	public void addAll(List<E> elements)
+	{
+		List<byte[]> encodedElements = null;
+		int threshold = parallelEncodingThreshold;
+		if(elements != null && threshold > 0 && elements.size() >= threshold)
+		{
+			ForkJoinPool pool = encodingPool;
+			if(pool == null)
+			{
+				pool = ForkJoinPool.commonPool();
+			}
+			Throwable throwable;
+			try
+			{
+				encodedElements = ParallelEncoder.encode(elements, codec, pool);
+				throwable = null;
+			}
+			catch(Throwable e)
+			{
+				throwable = e;
+			}
+			if(throwable != null)
+			{
+				if(logger.isWarnEnabled()) logger.warn("Couldn't encode elements!", throwable); // NOPMD
+				return;
+			}
+		}
+		internalAddAll(elements, encodedElements);
+	}
+
+	/**
+	 * Adds all elements to the end of the buffer that have already been encoded using the codec of this buffer,
+	 * e.g. by AsyncCodecFileBuffer, so encoding does not happen while holding the write lock.
+	 *
+	 * @param elements the elements, passed to the element processors.
+	 * @param encodedElements the encoded elements, in the same order as elements.
+	 */
+	void addAllEncoded(List<E> elements, List<byte[]> encodedElements)
+	{
+		internalAddAll(elements, encodedElements);
+	}
+
+	private void internalAddAll(List<E> elements, List<byte[]> encodedElements)
 	{
 		if(elements != null)
 		{
@@ -441,11 +1211,36 @@ public class CodecFileBuffer<E>
 				Lock lock = readWriteLock.writeLock();
 				lock.lock();
 				Throwable throwable;
-				try(RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw");
-					RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw")
-				)
+				try
 				{
-					dataStrategy.addAll(elements, randomIndexFile, randomDataFile, codec, indexStrategy);
+					if(isUsingChannels())
+					{
+						FileChannelPool.ChannelPair channels = channelPool.getWriteChannels();
+						if(encodedElements != null && dataStrategy.isEncodedAccessSupported())
+						{
+							dataStrategy.addAllEncodedUsingChannels(encodedElements, channels.getIndexChannel(), channels.getDataChannel(), indexStrategy);
+						}
+						else
+						{
+							dataStrategy.addAllUsingChannels(elements, channels.getIndexChannel(), channels.getDataChannel(), codec, indexStrategy);
+						}
+					}
+					else
+					{
+						try(RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw");
+							RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw"))
+						{
+							if(encodedElements != null && dataStrategy.isEncodedAccessSupported())
+							{
+								dataStrategy.addAllEncoded(encodedElements, randomIndexFile, randomDataFile, indexStrategy);
+							}
+							else
+							{
+								dataStrategy.addAll(elements, randomIndexFile, randomDataFile, codec, indexStrategy);
+							}
+						}
+					}
+					addCachedSize(newElementCount);
 
 					// call processors if available
 					if(elementProcessors != null)
@@ -460,6 +1255,7 @@ public class CodecFileBuffer<E>
 				catch(Throwable e)
 				{
 					throwable = e;
+					cachedSize.set(-1);
 				}
 				finally
 				{
@@ -471,33 +1267,232 @@ public class CodecFileBuffer<E>
 		}
 	}
 
-	@Override
-	public void addAll(E[] elements)
+	@Override
+	public void addAll(E[] elements)
+	{
+		addAll(Arrays.asList(elements));
+	}
+
+	/**
+	 * Must be called while holding the write lock.
+	 */
+	private void addCachedSize(long count)
+	{
+		long size = cachedSize.get();
+		if(size >= 0)
+		{
+			cachedSize.set(size + count);
+		}
+	}
+
+
+	@Override
+	public void reset()
+	{
+		Throwable t=null;
+		boolean indexDeleted=false;
+		boolean dataDeleted=false;
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
+		{
+			closeChannels();
+			clearElementCache();
+			compactionRemovals = null;
+			indexDeleted=indexFile.delete();
+			Reset.reset(indexStrategy);
+			cachedSize.set(-1);
+			dataDeleted=dataFile.delete();
+			Reset.reset(dataStrategy);
+			fileHeaderStrategy.writeFileHeader(dataFile, magicValue, preferredMetaData, preferredSparse);
+			if(elementProcessors != null)
+			{
+				for(ElementProcessor<E> current : elementProcessors)
+				{
+					Reset.reset(current);
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			t=e;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		if(!indexDeleted)
+		{
+			if(logger.isDebugEnabled()) logger.debug("Couldn't delete index file {}.", indexFile.getAbsolutePath()); // NOPMD
+		}
+		if(!dataDeleted)
+		{
+			if(logger.isDebugEnabled()) logger.debug("Couldn't delete data file {}.", dataFile.getAbsolutePath()); // NOPMD
+		}
+		if(t != null)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Exception while resetting file!", t); // NOPMD
+		}
+	}
+
+	/**
+	 * Replaces the index file with an index created by scanning all records of the data file,
+	 * e.g. if the index file has been lost or corrupted.
+	 *
+	 * @return the number of elements contained in the new index or -1 if the index could not be rebuilt.
+	 * @throws IllegalArgumentException if the buffer is block-compressed.
+	 * @see IndexRecovery#rebuildIndex(FileChannel, FileChannel, FileHeader, IndexStrategy)
+	 */
+	public long rebuildIndex()
+	{
+		initFilesIfNecessary();
+		Throwable t=null;
+		long result=-1;
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
+		{
+			closeChannels();
+			clearElementCache();
+			cachedSize.set(-1);
+			try(FileChannel dataChannel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+				FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE))
+			{
+				result = IndexRecovery.rebuildIndex(dataChannel, indexChannel, fileHeader, indexStrategy);
+			}
+			Reset.reset(dataStrategy);
+		}
+		catch(IOException e)
+		{
+			t=e;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		if(t != null)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Exception while rebuilding index!", t); // NOPMD
+		}
+		return result;
+	}
+
+	/**
+	 * Restores the consistency of data and index file of a non-sparse buffer, e.g. after the process died
+	 * between writing a record and its offset. Torn writes at the end of the data file are truncated.
+	 *
+	 * This must only be called if no other buffer or process is writing to the files.
+	 *
+	 * @return the number of elements contained in the index after recovery or -1 if the index could not be recovered.
+	 * @throws IllegalArgumentException if the buffer isn't using DefaultDataStrategy and the index format of DefaultIndexStrategy.
+	 * @see IndexRecovery#recover(FileChannel, FileChannel, FileHeader, IndexStrategy)
+	 */
+	public long recover()
+	{
+		initFilesIfNecessary();
+		Throwable t=null;
+		long result=-1;
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
+		{
+			if(!(dataStrategy instanceof DefaultDataStrategy) || !isUsingDefaultIndexFormat(indexStrategy))
+			{
+				throw new IllegalArgumentException("Only non-sparse buffers using the index format of DefaultIndexStrategy can be recovered!");
+			}
+			closeChannels();
+			clearElementCache();
+			cachedSize.set(-1);
+			try(FileChannel dataChannel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+				FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE))
+			{
+				result = IndexRecovery.recover(dataChannel, indexChannel, fileHeader, indexStrategy);
+			}
+			Reset.reset(dataStrategy);
+		}
+		catch(IOException e)
+		{
+			t=e;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		if(t != null)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Exception while recovering index!", t); // NOPMD
+		}
+		return result;
+	}
+
+	/**
+	 * Removes the records of replaced elements from the data file of a sparse buffer.
+	 *
+	 * @return the number of bytes reclaimed.
+	 * @see #compact(double)
+	 */
+	public long compact()
 	{
-		addAll(Arrays.asList(elements));
+		return compact(0);
 	}
 
-
-	@Override
-	public void reset()
+	/**
+	 * Removes the records of replaced elements from the data file of a sparse buffer if the ratio of
+	 * garbage bytes to the size of the data is at least minimumGarbageRatio.
+	 *
+	 * The live records are copied into a new data file while the buffer stays fully accessible.
+	 * Afterwards, records written in the meantime are copied and the new files replace the old ones
+	 * while holding the write lock.
+	 *
+	 * The old index file is deleted before the new files are moved into place. If the process dies
+	 * during the switch-over, the index can be restored using IndexRecovery.rebuildIndex.
+	 *
+	 * @param minimumGarbageRatio the minimum ratio of garbage bytes, 0 to compact unconditionally.
+	 * @return the number of bytes reclaimed, 0 if the buffer isn't sparse, the garbage ratio was below
+	 * minimumGarbageRatio, another compaction is running or the buffer has been reset meanwhile.
+	 * @throws IllegalArgumentException if minimumGarbageRatio isn't in the range [0, 1] or if the buffer
+	 * isn't using the index format of DefaultIndexStrategy.
+	 */
+	public long compact(double minimumGarbageRatio)
 	{
-		Throwable t=null;
-		boolean indexDeleted=false;
-		boolean dataDeleted=false;
+		if(minimumGarbageRatio < 0 || minimumGarbageRatio > 1)
+		{
+			throw new IllegalArgumentException("minimumGarbageRatio must be in the range [0, 1] but was " + minimumGarbageRatio + "!");
+		}
+		initFilesIfNecessary();
+		Set<Long> removals = new HashSet<>();
+		FileHeader header;
+		long count;
+		long limit;
 		Lock lock = readWriteLock.writeLock();
 		lock.lock();
 		try
 		{
-			indexDeleted=indexFile.delete();
-			dataDeleted=dataFile.delete();
-			fileHeaderStrategy.writeFileHeader(dataFile, magicValue, preferredMetaData, preferredSparse);
-			if(elementProcessors != null)
+			if(!(dataStrategy instanceof SparseDataStrategy) || compactionRemovals != null)
 			{
-				for(ElementProcessor<E> current : elementProcessors)
-				{
-					Reset.reset(current);
-				}
+				return 0;
+			}
+			if(!isUsingDefaultIndexFormat(indexStrategy))
+			{
+				throw new IllegalArgumentException("Only buffers using the index format of DefaultIndexStrategy can be compacted!");
 			}
+			compactionRemovals = removals;
+			header = fileHeader;
+			count = getSize();
+			limit = dataFile.length();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		File compactedDataFile = new File(dataFile.getPath() + COMPACTION_EXTENSION);
+		File compactedIndexFile = new File(indexFile.getPath() + COMPACTION_EXTENSION);
+		Throwable t=null;
+		long result=0;
+		try
+		{
+			result = compact(header, count, limit, removals, compactedDataFile, compactedIndexFile, minimumGarbageRatio);
 		}
 		catch(IOException e)
 		{
@@ -505,19 +1500,107 @@ public class CodecFileBuffer<E>
 		}
 		finally
 		{
-			lock.unlock();
+			lock.lock();
+			try
+			{
+				if(compactionRemovals == removals) // NOPMD identity is intended
+				{
+					compactionRemovals = null;
+				}
+			}
+			finally
+			{
+				lock.unlock();
+			}
 		}
-		if(!indexDeleted)
+		if(compactedDataFile.exists() && !compactedDataFile.delete())
 		{
-			if(logger.isDebugEnabled()) logger.debug("Couldn't delete index file {}.", indexFile.getAbsolutePath()); // NOPMD
+			if(logger.isDebugEnabled()) logger.debug("Couldn't delete file {}.", compactedDataFile.getAbsolutePath()); // NOPMD
 		}
-		if(!dataDeleted)
+		if(compactedIndexFile.exists() && !compactedIndexFile.delete())
 		{
-			if(logger.isDebugEnabled()) logger.debug("Couldn't delete data file {}.", dataFile.getAbsolutePath()); // NOPMD
+			if(logger.isDebugEnabled()) logger.debug("Couldn't delete file {}.", compactedIndexFile.getAbsolutePath()); // NOPMD
 		}
 		if(t != null)
 		{
-			if(logger.isWarnEnabled()) logger.warn("Exception while resetting file!", t); // NOPMD
+			if(logger.isWarnEnabled()) logger.warn("Exception while compacting file!", t); // NOPMD
+		}
+		else if(result > 0)
+		{
+			if(logger.isDebugEnabled()) logger.debug("Compacted {}, reclaiming {} bytes.", dataFile.getAbsolutePath(), result); // NOPMD
+		}
+		return result;
+	}
+
+	private long compact(FileHeader header, long count, long limit, Set<Long> removals, File compactedDataFile, File compactedIndexFile, double minimumGarbageRatio)
+		throws IOException
+	{
+		Files.deleteIfExists(compactedDataFile.toPath());
+		Files.deleteIfExists(compactedIndexFile.toPath());
+		FileHeader compactedHeader = fileHeaderStrategy.writeFileHeader(compactedDataFile, magicValue, header.getMetaData().getData(), header.getMetaData().isSparse());
+		Lock lock = readWriteLock.writeLock();
+		boolean locked = false;
+		try
+		{
+			long reclaimed;
+			try(FileChannel dataChannel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+				FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+				FileChannel compactedDataChannel = FileChannel.open(compactedDataFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+				FileChannel compactedIndexChannel = FileChannel.open(compactedIndexFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE))
+			{
+				long dataLength = limit - header.getDataOffset();
+				if(minimumGarbageRatio > 0)
+				{
+					long garbageBytes = dataLength - SparseCompaction.getLiveBytes(dataChannel, indexChannel, count, limit);
+					if(dataLength <= 0 || garbageBytes < minimumGarbageRatio * dataLength)
+					{
+						return 0;
+					}
+				}
+				compactedDataChannel.position(compactedHeader.getDataOffset());
+				SparseCompaction.copyLiveRecords(dataChannel, indexChannel, count, limit, compactedDataChannel, compactedIndexChannel);
+
+				lock.lock();
+				locked = true;
+				if(compactionRemovals != removals) // NOPMD identity is intended
+				{
+					// reset or disposed meanwhile
+					return 0;
+				}
+				SparseCompaction.copyRecords(dataChannel, limit, compactedDataChannel, compactedIndexChannel);
+				// SparseCompaction wrote the index format of DefaultIndexStrategy, checked by compact(double)
+				DefaultIndexStrategy compactedIndexStrategy = new DefaultIndexStrategy();
+				long size = getSize();
+				if(compactedIndexStrategy.getSize(compactedIndexChannel) < size)
+				{
+					compactedIndexStrategy.setOffset(compactedIndexChannel, size - 1, -1);
+				}
+				for(Long current : removals)
+				{
+					compactedIndexStrategy.setOffset(compactedIndexChannel, current, -1);
+				}
+				compactedDataChannel.force(true);
+				compactedIndexChannel.force(true);
+				reclaimed = dataChannel.size() - compactedDataChannel.size();
+			}
+
+			// all channels are closed at this point, still holding the write lock
+			closeChannels();
+			Files.deleteIfExists(indexFile.toPath());
+			Files.move(compactedDataFile.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			Files.move(compactedIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			Reset.reset(indexStrategy);
+			Reset.reset(dataStrategy);
+			cachedSize.set(-1);
+			fileHeader = compactedHeader;
+			return reclaimed;
+		}
+		finally
+		{
+			if(locked)
+			{
+				lock.unlock();
+			}
 		}
 	}
 
@@ -530,12 +1613,91 @@ public class CodecFileBuffer<E>
 		return false;
 	}
 
+	/**
+	 * Returns an iterator reading the data file sequentially if the buffer is neither sparse nor block-compressed.
+	 *
+	 * @return an iterator over the elements of this buffer.
+	 * @see #spliterator()
+	 */
 	@Override
 	public Iterator<E> iterator()
 	{
+		if(isSequential())
+		{
+			return Spliterators.iterator(spliterator());
+		}
 		return new BasicBufferIterator<>(this);
 	}
 
+	/**
+	 * Returns a spliterator reading the data file sequentially, using a read-ahead buffer, if the buffer
+	 * is neither sparse nor block-compressed. Records of sparse buffers aren't stored in index order and
+	 * records of block-compressed buffers have to be decompressed first so those are read using the index.
+	 *
+	 * The spliterator covers the elements contained in the buffer at the time of this call.
+	 *
+	 * @return a spliterator over the elements of this buffer.
+	 */
+	@Override
+	public Spliterator<E> spliterator()
+	{
+		if(isSequential())
+		{
+			long size = getSize();
+			boolean usingChecksums = ((DefaultDataStrategy<E>) dataStrategy).isUsingChecksums();
+			return new SequentialSpliterator<>(this, dataFile, codec, usingChecksums, 0, size, fileHeader.getDataOffset());
+		}
+		return Spliterators.spliterator(new BasicBufferIterator<>(this), getSize(), Spliterator.ORDERED);
+	}
+
+	private boolean isSequential()
+	{
+		initFilesIfNecessary();
+		return dataStrategy instanceof DefaultDataStrategy;
+	}
+
+	/**
+	 * Returns the offset of the record of the element at the given index in the data file.
+	 *
+	 * @param index the index of the element.
+	 * @return the offset of the record or -1 if there is no such element.
+	 * @throws IOException if the index could not be read.
+	 */
+	long getDataOffset(long index)
+		throws IOException
+	{
+		if(!indexFile.canRead())
+		{
+			return -1;
+		}
+
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
+		{
+			if(channelPool != null)
+			{
+				FileChannelPool.ChannelPair channels = channelPool.borrowReadChannels();
+				try
+				{
+					return indexStrategy.getOffset(channels.getIndexChannel(), index);
+				}
+				finally
+				{
+					channelPool.returnReadChannels(channels);
+				}
+			}
+			try(RandomAccessFile raf = new RandomAccessFile(indexFile, "r"))
+			{
+				return indexStrategy.getOffset(raf, index);
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
 
 	private void setDataFile(File dataFile)
 	{
@@ -601,9 +1763,111 @@ public class CodecFileBuffer<E>
 		return result.toString();
 	}
 
+	/**
+	 * Writes the elements that are still kept in memory, i.e. the open block of a block-compressed buffer.
+	 * Does nothing otherwise.
+	 */
+	@Override
+	public void flush()
+	{
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		Throwable throwable = null;
+		try
+		{
+			flushPending();
+		}
+		catch(IOException e)
+		{
+			throwable = e;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		if(throwable != null)
+		{
+			// it's a really bad idea to log while locked *sigh*
+			if(logger.isWarnEnabled()) logger.warn("Couldn't write pending elements!", throwable); // NOPMD
+		}
+	}
+
+	/**
+	 * Must be called while holding the write lock.
+	 */
+	private void flushPending()
+		throws IOException
+	{
+		if(getPendingCount() == 0)
+		{
+			return;
+		}
+		BlockCompressingDataStrategy<E> strategy = (BlockCompressingDataStrategy<E>) dataStrategy;
+		if(isUsingChannels())
+		{
+			FileChannelPool.ChannelPair channels = channelPool.getWriteChannels();
+			strategy.flushUsingChannels(channels.getIndexChannel(), channels.getDataChannel(), indexStrategy);
+			return;
+		}
+		try(RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw");
+			RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw"))
+		{
+			strategy.flush(randomIndexFile, randomDataFile, indexStrategy);
+		}
+	}
+
+	/**
+	 * @return the number of elements added to a block-compressed buffer that haven't been written yet.
+	 */
+	private long getPendingCount()
+	{
+		DataStrategy<E> strategy = dataStrategy;
+		if(strategy instanceof BlockCompressingDataStrategy)
+		{
+			return ((BlockCompressingDataStrategy<E>) strategy).getPendingCount();
+		}
+		return 0;
+	}
+
+	/**
+	 * Writes pending elements and closes the channels of the pool, if available.
+	 */
 	@Override
 	public void dispose()
 	{
+		Throwable throwable = null;
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
+		{
+			try
+			{
+				flushPending();
+			}
+			catch(IOException e)
+			{
+				throwable = e;
+			}
+			if(channelPool != null)
+			{
+				channelPool.close();
+				channelPool = null;
+			}
+			channelPoolSize = 0;
+			clearElementCache();
+			compactionRemovals = null;
+			cachedSize.set(-1);
+			Reset.reset(indexStrategy);
+			Reset.reset(dataStrategy);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		if(throwable != null)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Couldn't write pending elements!", throwable); // NOPMD
+		}
 
 		if(elementProcessors != null)
 		{
@@ -612,7 +1876,6 @@ public class CodecFileBuffer<E>
 				Dispose.dispose(current);
 			}
 		}
-		// TODO: implement dispose()
 	}
 
 	@Override
@@ -621,16 +1884,33 @@ public class CodecFileBuffer<E>
 		return false;  // TODO: implement isDisposed()
 	}
 
+	/**
+	 * Closes the channels of the pool, if available, so the files can be deleted.
+	 * They are reopened on demand. Must be called while holding the write lock.
+	 */
+	private void closeChannels()
+	{
+		if(channelPool != null)
+		{
+			channelPool.close();
+		}
+	}
+
 	private void setFileHeader(FileHeader fileHeader)
 	{
 		MetaData metaData = fileHeader.getMetaData();
+		BlockCompressor compressor = BlockCompressingDataStrategy.resolveCompressor(metaData);
 		if(metaData.isSparse())
 		{
-			dataStrategy = new SparseDataStrategy<>();
+			dataStrategy = new SparseDataStrategy<>(true, mappingData);
+		}
+		else if(compressor != null)
+		{
+			dataStrategy = new BlockCompressingDataStrategy<>(compressor);
 		}
 		else
 		{
-			dataStrategy = new DefaultDataStrategy<>();
+			dataStrategy = new DefaultDataStrategy<>(mappingData, DefaultDataStrategy.isUsingChecksums(metaData));
 		}
 		this.fileHeader = fileHeader;
 	}
@@ -644,10 +1924,43 @@ public class CodecFileBuffer<E>
 		lock.lock();
 		Throwable throwable = null;
 		boolean result = false;
-		try(RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw");
-			RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw"))
+		try
 		{
-			result = dataStrategy.set(index, element, randomIndexFile, randomDataFile, codec, indexStrategy);
+			ElementCache<E> cache = elementCache;
+			if(cache != null)
+			{
+				cache.remove(index);
+			}
+			if(compactionRemovals != null)
+			{
+				if(element == null)
+				{
+					compactionRemovals.add(index);
+				}
+				else
+				{
+					compactionRemovals.remove(index);
+				}
+			}
+			if(isUsingChannels())
+			{
+				FileChannelPool.ChannelPair channels = channelPool.getWriteChannels();
+				result = dataStrategy.setUsingChannels(index, element, channels.getIndexChannel(), channels.getDataChannel(), codec, indexStrategy);
+			}
+			else
+			{
+				try(RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw");
+					RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw"))
+				{
+					result = dataStrategy.set(index, element, randomIndexFile, randomDataFile, codec, indexStrategy);
+				}
+			}
+			long size = cachedSize.get();
+			if(size >= 0 && index >= size)
+			{
+				// set may extend the index, even if it fails
+				cachedSize.set(-1);
+			}
 			// call processors if available
 			List<ElementProcessor<E>> localProcessors = elementProcessors;
 			if(localProcessors != null)
@@ -661,6 +1974,7 @@ public class CodecFileBuffer<E>
 		catch(IOException e)
 		{
 			throwable = e;
+			cachedSize.set(-1);
 		}
 		finally
 		{
@@ -0,0 +1,89 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.codec.compression.Compressor;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * BlockCompressor using a Compressor. The name of the compressor is stored in the meta data of the buffer.
+ */
+public class CompressorBlockCompressor
+	implements BlockCompressor
+{
+	private final Compressor compressor;
+
+	public CompressorBlockCompressor(Compressor compressor)
+	{
+		if(compressor == null)
+		{
+			throw new IllegalArgumentException("compressor must not be null!");
+		}
+		this.compressor = compressor;
+	}
+
+	public Compressor getCompressor()
+	{
+		return compressor;
+	}
+
+	@Override
+	public String getName()
+	{
+		return compressor.getName();
+	}
+
+	@Override
+	public byte[] compress(byte[] input, int length)
+	{
+		byte[] output = new byte[compressor.maxCompressedLength(length)];
+		int compressedLength = compressor.compress(input, 0, length, output, 0);
+		return Arrays.copyOf(output, compressedLength);
+	}
+
+	@Override
+	public void decompress(byte[] input, int offset, int length, byte[] output)
+		throws IOException
+	{
+		compressor.decompress(input, offset, length, output, 0, output.length);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CompressorBlockCompressor[compressor=" + compressor + "]";
+	}
+}
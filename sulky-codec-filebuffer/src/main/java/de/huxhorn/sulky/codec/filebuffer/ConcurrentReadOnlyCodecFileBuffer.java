@@ -0,0 +1,512 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.buffers.BasicBufferIterator;
+import de.huxhorn.sulky.buffers.Buffer;
+import de.huxhorn.sulky.buffers.RangeRead;
+import de.huxhorn.sulky.buffers.RangeReadOperation;
+import de.huxhorn.sulky.buffers.Reset;
+import de.huxhorn.sulky.codec.Codec;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-only buffer that can be used by multiple threads at the same time.
+ *
+ * <p>In contrast to ReadOnlyExclusiveCodecFileBuffer, elements are read using positional reads of shared
+ * FileChannels, so readers don't have to wait for each other. The channels are reopened if they have been
+ * closed by interrupting a reader.</p>
+ *
+ * <p>getSize() returns the size determined by the last call of refreshSize(). If a tailing interval is set,
+ * refreshSize() is called periodically, so files that are still written by another buffer or process can be
+ * followed. Size listeners are notified whenever the size changes.</p>
+ *
+ * <p>The index strategy must support concurrent reads. The default DefaultIndexStrategy should be used if the
+ * files are written by another process since MappedIndexStrategy caches the size of the index file.</p>
+ *
+ * @param <E> the type of objects that are stored in this buffer.
+ */
+public class ConcurrentReadOnlyCodecFileBuffer<E>
+	implements Buffer<E>, RangeReadOperation<E>
+{
+	private final Logger logger = LoggerFactory.getLogger(ConcurrentReadOnlyCodecFileBuffer.class);
+
+	private final IndexStrategy indexStrategy;
+	private final DataStrategy<E> dataStrategy;
+	private final FileHeader fileHeader;
+	private final Path indexPath;
+	private final Path dataPath;
+	private final Object channelLock = new Object();
+	private final List<LongConsumer> sizeListeners = new CopyOnWriteArrayList<>();
+	private final Object sizeLock = new Object();
+	private final Object tailingLock = new Object();
+
+	private volatile FileChannelPool.ChannelPair channels;
+	private volatile Codec<E> codec;
+	private volatile long size;
+	private volatile boolean closed;
+
+	//@GuardedBy("tailingLock")
+	private long tailingInterval;
+	//@GuardedBy("tailingLock")
+	private ScheduledExecutorService tailingExecutor;
+	//@GuardedBy("tailingLock")
+	private ScheduledFuture<?> tailingFuture;
+
+	public ConcurrentReadOnlyCodecFileBuffer(File dataFile, File indexFile)
+			throws IOException
+	{
+		this(dataFile, indexFile, new DefaultFileHeaderStrategy());
+	}
+
+	public ConcurrentReadOnlyCodecFileBuffer(File dataFile, File indexFile, FileHeaderStrategy fileHeaderStrategy)
+			throws IOException
+	{
+		this(dataFile, indexFile, fileHeaderStrategy, new DefaultIndexStrategy());
+	}
+
+	/**
+	 * The indexStrategy must not be shared with any other buffer.
+	 * If it implements ResetOperation, it is reset by close().
+	 *
+	 * @param dataFile           the data file.
+	 * @param indexFile          the index file of the buffer.
+	 * @param fileHeaderStrategy the strategy used to read the file header.
+	 * @param indexStrategy      the strategy used to read the index file.
+	 * @throws IOException in case of IOException :p
+	 */
+	public ConcurrentReadOnlyCodecFileBuffer(File dataFile, File indexFile, FileHeaderStrategy fileHeaderStrategy, IndexStrategy indexStrategy)
+			throws IOException
+	{
+		if(indexStrategy == null)
+		{
+			throw new IllegalArgumentException("indexStrategy must not be null!");
+		}
+		if(!dataFile.canRead())
+		{
+			throw new IllegalArgumentException("'"+dataFile.getAbsolutePath()+"' is not readable.");
+		}
+		if(!indexFile.canRead())
+		{
+			throw new IllegalArgumentException("'"+indexFile.getAbsolutePath()+"' is not readable.");
+		}
+		FileHeader header = fileHeaderStrategy.readFileHeader(dataFile);
+		if(header == null)
+		{
+			throw new IllegalArgumentException("Could not read file header from file '" + dataFile.getAbsolutePath() + "'. File isn't compatible.");
+		}
+		this.indexStrategy = indexStrategy;
+		this.fileHeader = header;
+		MetaData metaData = header.getMetaData();
+		BlockCompressor compressor = BlockCompressingDataStrategy.resolveCompressor(metaData);
+		if(metaData.isSparse())
+		{
+			dataStrategy = new SparseDataStrategy<>(true);
+		}
+		else if(compressor != null)
+		{
+			dataStrategy = new BlockCompressingDataStrategy<>(compressor);
+		}
+		else
+		{
+			dataStrategy = new DefaultDataStrategy<>(false, DefaultDataStrategy.isUsingChecksums(metaData));
+		}
+		this.indexPath = indexFile.toPath();
+		this.dataPath = dataFile.toPath();
+		FileChannelPool.ChannelPair opened = FileChannelPool.open(indexPath, dataPath, StandardOpenOption.READ);
+		try
+		{
+			this.size = indexStrategy.getSize(opened.getIndexChannel());
+		}
+		catch(IOException ex)
+		{
+			opened.close();
+			throw ex;
+		}
+		this.channels = opened;
+	}
+
+	public Codec<E> getCodec()
+	{
+		return codec;
+	}
+
+	public void setCodec(Codec<E> codec)
+	{
+		this.codec = codec;
+	}
+
+	public FileHeader getFileHeader()
+	{
+		return fileHeader;
+	}
+
+	public long getTailingInterval()
+	{
+		synchronized(tailingLock)
+		{
+			return tailingInterval;
+		}
+	}
+
+	/**
+	 * Defines how often the size of the index file is checked by a daemon thread.
+	 *
+	 * @param tailingInterval the interval in milliseconds, 0 to disable tailing.
+	 */
+	public void setTailingInterval(long tailingInterval)
+	{
+		if(tailingInterval < 0)
+		{
+			throw new IllegalArgumentException("tailingInterval must not be negative but was " + tailingInterval + "!");
+		}
+		synchronized(tailingLock)
+		{
+			if(closed)
+			{
+				throw new IllegalStateException("Buffer has already been closed!");
+			}
+			this.tailingInterval = tailingInterval;
+			if(tailingFuture != null)
+			{
+				tailingFuture.cancel(false);
+				tailingFuture = null;
+			}
+			if(tailingInterval == 0)
+			{
+				return;
+			}
+			if(tailingExecutor == null)
+			{
+				tailingExecutor = Executors.newSingleThreadScheduledExecutor(new TailingThreadFactory());
+			}
+			tailingFuture = tailingExecutor.scheduleWithFixedDelay(new TailingRunnable(), tailingInterval, tailingInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * The listener is called with the new size whenever refreshSize() detects a change.
+	 * It's executed by the thread calling refreshSize(), i.e. the tailing thread if tailing is enabled.
+	 *
+	 * @param listener the listener to add.
+	 */
+	public void addSizeListener(LongConsumer listener)
+	{
+		if(listener == null)
+		{
+			throw new IllegalArgumentException("listener must not be null!");
+		}
+		sizeListeners.add(listener);
+	}
+
+	public void removeSizeListener(LongConsumer listener)
+	{
+		sizeListeners.remove(listener);
+	}
+
+	/**
+	 * Reads the current size of the index file and notifies the size listeners if it has changed.
+	 *
+	 * @return the current size.
+	 */
+	public long refreshSize()
+	{
+		if(closed)
+		{
+			return size;
+		}
+		long newSize;
+		FileChannelPool.ChannelPair currentChannels = channels;
+		try
+		{
+			try
+			{
+				newSize = indexStrategy.getSize(currentChannels.getIndexChannel());
+			}
+			catch(ClosedChannelException ex)
+			{
+				currentChannels = reopen(currentChannels, ex);
+				newSize = indexStrategy.getSize(currentChannels.getIndexChannel());
+			}
+		}
+		catch(IOException ex)
+		{
+			if(logger.isDebugEnabled()) logger.debug("Couldn't retrieve size!", ex);
+			return size;
+		}
+		long previousSize;
+		synchronized(sizeLock)
+		{
+			previousSize = size;
+			size = newSize;
+		}
+		if(newSize != previousSize)
+		{
+			for(LongConsumer current : sizeListeners)
+			{
+				current.accept(newSize);
+			}
+		}
+		return newSize;
+	}
+
+	/**
+	 * Returns the size determined by the last call of refreshSize().
+	 *
+	 * @return the size of the buffer.
+	 */
+	@Override
+	public long getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * If no element is found, null is returned.
+	 *
+	 * @param index must be in the range <code>[0..(getSize()-1)]</code>.
+	 * @return the element at the given index.
+	 * @throws IllegalStateException if no Decoder has been set.
+	 */
+	@Override
+	public E get(long index)
+	{
+		Codec<E> localCodec = codec;
+		if(localCodec == null)
+		{
+			throw new IllegalStateException("codec must not be null!");
+		}
+		if(closed)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Buffer has already been closed.");
+			return null;
+		}
+		FileChannelPool.ChannelPair current = channels;
+		try
+		{
+			try
+			{
+				return dataStrategy.getUsingChannels(index, current.getIndexChannel(), current.getDataChannel(), localCodec, indexStrategy);
+			}
+			catch(ClosedChannelException ex)
+			{
+				current = reopen(current, ex);
+				return dataStrategy.getUsingChannels(index, current.getIndexChannel(), current.getDataChannel(), localCodec, indexStrategy);
+			}
+		}
+		catch(InvalidClassException ex)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Couldn't deserialize object at index {}!\n{}", index, ex);
+		}
+		catch(ClassCastException ex)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Couldn't cast deserialized object at index {}!\n{}", index, ex);
+		}
+		catch(Throwable ex)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Couldn't retrieve element at index {}!", index, ex);
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the offsets as well as the data covering the elements at once.
+	 * Falls back to get(index) for every element in case of an error.
+	 *
+	 * @param from the index of the first element.
+	 * @param count the maximum number of elements.
+	 * @return the elements in the given range.
+	 * @throws IllegalStateException if no Decoder has been set.
+	 */
+	@Override
+	public List<E> get(long from, int count)
+	{
+		Codec<E> localCodec = codec;
+		if(localCodec == null)
+		{
+			throw new IllegalStateException("codec must not be null!");
+		}
+		if(closed)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Buffer has already been closed.");
+			return Collections.emptyList();
+		}
+		FileChannelPool.ChannelPair current = channels;
+		try
+		{
+			try
+			{
+				return dataStrategy.getRangeUsingChannels(from, count, current.getIndexChannel(), current.getDataChannel(), localCodec, indexStrategy);
+			}
+			catch(ClosedChannelException ex)
+			{
+				current = reopen(current, ex);
+				return dataStrategy.getRangeUsingChannels(from, count, current.getIndexChannel(), current.getDataChannel(), localCodec, indexStrategy);
+			}
+		}
+		catch(Throwable ex)
+		{
+			if(logger.isDebugEnabled()) logger.debug("Couldn't retrieve range of {} elements at index {}, retrieving them one by one.", count, from, ex);
+		}
+		return RangeRead.get(this, from, count, getSize());
+	}
+
+	@Override
+	public Iterator<E> iterator()
+	{
+		return new BasicBufferIterator<>(this);
+	}
+
+	/**
+	 * Stops tailing and closes the files. Elements can't be retrieved afterwards.
+	 */
+	public void close()
+	{
+		synchronized(tailingLock)
+		{
+			if(closed)
+			{
+				return;
+			}
+			closed = true;
+			if(tailingExecutor != null)
+			{
+				tailingExecutor.shutdownNow();
+				tailingExecutor = null;
+				tailingFuture = null;
+			}
+		}
+		synchronized(channelLock)
+		{
+			channels.close();
+		}
+		Reset.reset(indexStrategy);
+		Reset.reset(dataStrategy);
+	}
+
+	public boolean isClosed()
+	{
+		return closed;
+	}
+
+	/**
+	 * The shared channels are closed for every reader if any of them is interrupted during a read.
+	 * In that case, they are replaced by new channels so the other readers can retry.
+	 *
+	 * @param previous the channels that have been used by the failed read.
+	 * @param cause the exception thrown by the failed read.
+	 * @return the channels to be used for a retry.
+	 * @throws ClosedChannelException cause, if the buffer has been closed or the current thread has been interrupted.
+	 * @throws IOException if the files couldn't be opened again.
+	 */
+	private FileChannelPool.ChannelPair reopen(FileChannelPool.ChannelPair previous, ClosedChannelException cause)
+		throws IOException
+	{
+		synchronized(channelLock)
+		{
+			if(closed)
+			{
+				throw cause;
+			}
+			FileChannelPool.ChannelPair current = channels;
+			if(current == previous && !current.isOpen()) // NOPMD identity is intended
+			{
+				if(logger.isInfoEnabled()) logger.info("Reopening channels closed by an interrupted reader.");
+				current.close();
+				current = FileChannelPool.open(indexPath, dataPath, StandardOpenOption.READ);
+				channels = current;
+			}
+			if(Thread.currentThread().isInterrupted())
+			{
+				// would just close the channels again
+				throw cause;
+			}
+			return current;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ConcurrentReadOnlyCodecFileBuffer[fileHeader=" + fileHeader + ", size=" + size + ", closed=" + closed + "]";
+	}
+
+	private static class TailingThreadFactory
+		implements ThreadFactory
+	{
+		@Override
+		public Thread newThread(Runnable runnable)
+		{
+			Thread result = new Thread(runnable, "ConcurrentReadOnlyCodecFileBuffer-Tailing");
+			result.setDaemon(true);
+			return result;
+		}
+	}
+
+	private class TailingRunnable
+		implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			try
+			{
+				refreshSize();
+			}
+			catch(RuntimeException ex)
+			{
+				// keep tailing even if a listener fails
+				if(logger.isWarnEnabled()) logger.warn("Exception while refreshing size!", ex); // NOPMD
+			}
+		}
+	}
+}
@@ -37,6 +37,10 @@ package de.huxhorn.sulky.codec.filebuffer;
 import de.huxhorn.sulky.codec.Codec;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public interface DataStrategy<E>
@@ -56,6 +60,27 @@ public interface DataStrategy<E>
 	            IndexStrategy indexStrategy)
 		throws IOException;
 
+	/**
+	 * Adds elements that have already been encoded, e.g. by the Codec of the buffer.
+	 *
+	 * Only called if isEncodedAccessSupported() returns true.
+	 * The default implementation throws an UnsupportedOperationException.
+	 *
+	 * @param encodedElements the encoded elements.
+	 * @param indexFile the index file.
+	 * @param dataFile the data file.
+	 * @param indexStrategy the index strategy.
+	 * @throws IOException in case of IOException :p
+	 */
+	default void addAllEncoded(List<byte[]> encodedElements,
+	                           RandomAccessFile indexFile,
+	                           RandomAccessFile dataFile,
+	                           IndexStrategy indexStrategy)
+		throws IOException
+	{
+		throw new UnsupportedOperationException(getClass().getName() + " does not support encoded access!");
+	}
+
 	boolean set(long index, E element,
 	            RandomAccessFile indexFile,
 	            RandomAccessFile dataFile,
@@ -71,4 +96,174 @@ public interface DataStrategy<E>
 	      Codec<E> codec,
 	      IndexStrategy indexStrategy)
 		throws IOException, ClassNotFoundException;
+
+	/**
+	 * Returns up to count consecutive elements, starting at the given index.
+	 *
+	 * Implementations are supposed to read the offsets as well as the data covering the elements at once.
+	 * The default implementation calls get for every element.
+	 *
+	 * @param index the index of the first element.
+	 * @param count the maximum number of elements.
+	 * @param indexFile the index file.
+	 * @param dataFile the data file.
+	 * @param codec the codec used to decode the elements.
+	 * @param indexStrategy the index strategy.
+	 * @return the elements, shorter than count if the buffer does not contain that many elements.
+	 * Contains null for every element that isn't available.
+	 * @throws IOException in case of IOException :p
+	 * @throws ClassNotFoundException if an element couldn't be decoded.
+	 */
+	default List<E> getRange(long index, int count,
+	                         RandomAccessFile indexFile,
+	                         RandomAccessFile dataFile,
+	                         Codec<E> codec,
+	                         IndexStrategy indexStrategy)
+		throws IOException, ClassNotFoundException
+	{
+		long available = indexStrategy.getSize(indexFile) - index;
+		if(index < 0 || count <= 0 || available <= 0)
+		{
+			return Collections.emptyList();
+		}
+		int resultCount = (int) Math.min(count, available);
+		List<E> result = new ArrayList<>(resultCount);
+		for(int i = 0; i < resultCount; i++)
+		{
+			result.add(get(index + i, indexFile, dataFile, codec, indexStrategy));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the encoded element at the given index without decoding it.
+	 *
+	 * Only called if isEncodedAccessSupported() returns true.
+	 * The default implementation throws an UnsupportedOperationException.
+	 *
+	 * @param index the index of the element.
+	 * @param indexFile the index file.
+	 * @param dataFile the data file.
+	 * @param indexStrategy the index strategy.
+	 * @return the encoded element, between position and limit, or null if the element isn't available.
+	 * @throws IOException in case of IOException :p
+	 */
+	default ByteBuffer getEncoded(long index,
+	                              RandomAccessFile indexFile,
+	                              RandomAccessFile dataFile,
+	                              IndexStrategy indexStrategy)
+		throws IOException
+	{
+		throw new UnsupportedOperationException(getClass().getName() + " does not support encoded access!");
+	}
+
+	/**
+	 * @return true if addAllEncoded and getEncoded are implemented.
+	 */
+	default boolean isEncodedAccessSupported()
+	{
+		return false;
+	}
+
+	/**
+	 * @return true if the methods using FileChannels are implemented.
+	 */
+	default boolean isFileChannelSupported()
+	{
+		return false;
+	}
+
+	/*
+	 * The FileChannel variants below must only use positional reads and writes,
+	 * i.e. they must not depend on or change the position of the channels.
+	 * This enables concurrent reads on the same channels.
+	 *
+	 * They are only called if isFileChannelSupported() returns true, i.e. by CodecFileBuffer instances
+	 * using a channel pool and by ConcurrentReadOnlyCodecFileBuffer. CodecFileBuffer falls back to
+	 * RandomAccessFile access otherwise.
+	 * The defaults of addAllUsingChannels and getRangeUsingChannels are implemented using the single
+	 * element methods, the other defaults throw an UnsupportedOperationException.
+	 */
+
+	default void addUsingChannels(E element,
+	                              FileChannel indexChannel,
+	                              FileChannel dataChannel,
+	                              Codec<E> codec,
+	                              IndexStrategy indexStrategy)
+		throws IOException
+	{
+		throw new UnsupportedOperationException(getClass().getName() + " does not support FileChannel access!");
+	}
+
+	default void addAllUsingChannels(List<E> elements,
+	                                 FileChannel indexChannel,
+	                                 FileChannel dataChannel,
+	                                 Codec<E> codec,
+	                                 IndexStrategy indexStrategy)
+		throws IOException
+	{
+		for(E element : elements)
+		{
+			addUsingChannels(element, indexChannel, dataChannel, codec, indexStrategy);
+		}
+	}
+
+	default void addAllEncodedUsingChannels(List<byte[]> encodedElements,
+	                                        FileChannel indexChannel,
+	                                        FileChannel dataChannel,
+	                                        IndexStrategy indexStrategy)
+		throws IOException
+	{
+		throw new UnsupportedOperationException(getClass().getName() + " does not support encoded access!");
+	}
+
+	default boolean setUsingChannels(long index, E element,
+	                                 FileChannel indexChannel,
+	                                 FileChannel dataChannel,
+	                                 Codec<E> codec,
+	                                 IndexStrategy indexStrategy)
+		throws IOException
+	{
+		throw new UnsupportedOperationException(getClass().getName() + " does not support FileChannel access!");
+	}
+
+	default E getUsingChannels(long index,
+	                           FileChannel indexChannel,
+	                           FileChannel dataChannel,
+	                           Codec<E> codec,
+	                           IndexStrategy indexStrategy)
+		throws IOException, ClassNotFoundException
+	{
+		throw new UnsupportedOperationException(getClass().getName() + " does not support FileChannel access!");
+	}
+
+	default List<E> getRangeUsingChannels(long index, int count,
+	                                      FileChannel indexChannel,
+	                                      FileChannel dataChannel,
+	                                      Codec<E> codec,
+	                                      IndexStrategy indexStrategy)
+		throws IOException, ClassNotFoundException
+	{
+		long available = indexStrategy.getSize(indexChannel) - index;
+		if(index < 0 || count <= 0 || available <= 0)
+		{
+			return Collections.emptyList();
+		}
+		int resultCount = (int) Math.min(count, available);
+		List<E> result = new ArrayList<>(resultCount);
+		for(int i = 0; i < resultCount; i++)
+		{
+			result.add(getUsingChannels(index + i, indexChannel, dataChannel, codec, indexStrategy));
+		}
+		return result;
+	}
+
+	default ByteBuffer getEncodedUsingChannels(long index,
+	                                           FileChannel indexChannel,
+	                                           FileChannel dataChannel,
+	                                           IndexStrategy indexStrategy)
+		throws IOException
+	{
+		throw new UnsupportedOperationException(getClass().getName() + " does not support encoded access!");
+	}
 }
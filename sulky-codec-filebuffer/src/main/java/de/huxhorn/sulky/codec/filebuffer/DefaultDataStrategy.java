@@ -34,19 +34,164 @@
 
 package de.huxhorn.sulky.codec.filebuffer;
 
+import de.huxhorn.sulky.buffers.ResetOperation;
+import de.huxhorn.sulky.codec.ByteBufferDecoder;
+import de.huxhorn.sulky.codec.ByteBufferEncoder;
 import de.huxhorn.sulky.codec.Codec;
+import de.huxhorn.sulky.codec.EncodingBuffers;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.CRC32;
 
 public class DefaultDataStrategy<E>
-	implements DataStrategy<E>
+	implements DataStrategy<E>, ResetOperation
 {
 	/**
 	 * The size of the data size, i.e. an int.
 	 */
 	public static final long DATA_LENGTH_SIZE = 4;
 
+	/**
+	 * The size of the checksum of a record, i.e. an int.
+	 */
+	public static final long CHECKSUM_SIZE = 4;
+
+	/**
+	 * Key of the meta data entry defining the checksum stored with every record of a non-sparse buffer.
+	 *
+	 * @see #CHECKSUM_CRC32
+	 */
+	public static final String CHECKSUM_KEY = "sulky.checksum";
+
+	/**
+	 * The CRC-32 of the encoded element is stored between its length and the encoded element.
+	 */
+	public static final String CHECKSUM_CRC32 = "crc32";
+
+	/**
+	 * 1MB. The number of bytes collected by addAll and addAllEncoded before they are written at once.
+	 */
+	public static final int WRITE_BATCH_SIZE = 1024 * 1024;
+
+	/**
+	 * 128MB. Elements crossing the border between two segments are read without mapping.
+	 */
+	public static final int MAPPED_SEGMENT_SIZE = 128 * 1024 * 1024;
+
+	/**
+	 * The batch size used for codecs that are a ByteBufferEncoder.
+	 * Half of EncodingBuffers.MAX_REUSED_CAPACITY so the grown batch buffer is still reused.
+	 */
+	static final int ENCODED_BATCH_SIZE = Math.min(WRITE_BATCH_SIZE, EncodingBuffers.MAX_REUSED_CAPACITY / 2);
+
+	private final boolean usingChecksums;
+	private final int recordHeaderSize;
+	private volatile MappedSegments mappedData;
+
+	public DefaultDataStrategy()
+	{
+		this(false);
+	}
+
+	/**
+	 * @param mappingData whether or not elements are read from a read-only mapping of the data file.
+	 * @see #setMappingData(boolean)
+	 */
+	public DefaultDataStrategy(boolean mappingData)
+	{
+		this(mappingData, false);
+	}
+
+	/**
+	 * @param mappingData whether or not elements are read from a read-only mapping of the data file.
+	 * @param usingChecksums whether or not every record contains the CRC-32 of its element.
+	 * @see #setMappingData(boolean)
+	 */
+	public DefaultDataStrategy(boolean mappingData, boolean usingChecksums)
+	{
+		this.mappedData = mappingData ? new MappedSegments(MAPPED_SEGMENT_SIZE) : null;
+		this.usingChecksums = usingChecksums;
+		this.recordHeaderSize = getRecordHeaderSize(usingChecksums);
+	}
+
+	/**
+	 * Returns whether or not the records of a buffer with the given meta data contain checksums.
+	 *
+	 * @param metaData the meta data of a buffer.
+	 * @return true, if the CHECKSUM_KEY entry of the meta data of a non-sparse buffer is CHECKSUM_CRC32.
+	 * @throws IllegalArgumentException if the checksum is unknown.
+	 */
+	public static boolean isUsingChecksums(MetaData metaData)
+	{
+		if(metaData == null || metaData.isSparse())
+		{
+			return false;
+		}
+		String checksum = metaData.getData().get(CHECKSUM_KEY);
+		if(checksum == null)
+		{
+			return false;
+		}
+		if(CHECKSUM_CRC32.equals(checksum))
+		{
+			return true;
+		}
+		throw new IllegalArgumentException("Unknown checksum '" + checksum + "'!");
+	}
+
+	public boolean isUsingChecksums()
+	{
+		return usingChecksums;
+	}
+
+	public boolean isMappingData()
+	{
+		return mappedData != null;
+	}
+
+	/**
+	 * If enabled, elements are read from a read-only mapping of the data file and decoded without copying
+	 * if the codec is a ByteBufferDecoder.
+	 *
+	 * The mapping is kept by this instance, i.e. it must only be used for a single data file
+	 * and reset() must be called if that file is deleted or replaced.
+	 *
+	 * Segments of the file are mapped using its FileChannel, even if it is accessed using a RandomAccessFile.
+	 *
+	 * @param mappingData whether or not elements are read from a read-only mapping of the data file.
+	 */
+	public void setMappingData(boolean mappingData)
+	{
+		if(mappingData)
+		{
+			if(mappedData == null)
+			{
+				mappedData = new MappedSegments(MAPPED_SEGMENT_SIZE);
+			}
+		}
+		else
+		{
+			mappedData = null;
+		}
+	}
+
+	/**
+	 * Forgets the mapping of the data file, if any.
+	 */
+	@Override
+	public void reset()
+	{
+		MappedSegments segments = mappedData;
+		if(segments != null)
+		{
+			segments.clear();
+		}
+	}
+
 	@Override
 	public void add(E element,
 	                RandomAccessFile indexFile,
@@ -62,7 +207,6 @@ public class DefaultDataStrategy<E>
 		internalWriteElement(dataFile, offset, element, codec);
 
 		indexStrategy.setOffset(indexFile, elementsCount, offset);
-
 	}
 
 	@Override
@@ -73,31 +217,42 @@ public class DefaultDataStrategy<E>
 	                   IndexStrategy indexStrategy)
 		throws IOException
 	{
-		if(elements != null)
+		if(elements != null && !elements.isEmpty())
 		{
-			int newElementCount = elements.size();
-			if(newElementCount > 0)
+			if(codec instanceof ByteBufferEncoder)
 			{
+				@SuppressWarnings("unchecked")
+				ByteBufferEncoder<E> encoder = (ByteBufferEncoder<E>) codec;
+
 				long elementsCount = indexStrategy.getSize(indexFile);
 
 				long offset = dataFile.length();
-				long[] offsets = new long[newElementCount];
-				int index = 0;
-				for(E element : elements)
-				{
-					offsets[index] = offset;
-					offset = offset + internalWriteElement(dataFile, offset, element, codec) + DATA_LENGTH_SIZE;
-					index++;
-				}
 
-				index = 0;
-				for(long curOffset : offsets)
-				{
-					indexStrategy.setOffset(indexFile, elementsCount + index, curOffset);
-					index++;
-				}
+				long[] offsets = internalWriteElements(dataFile, offset, elements, encoder);
+
+				indexStrategy.setOffsets(indexFile, elementsCount, offsets);
+				return;
 			}
+			addAllEncoded(encode(elements, codec), indexFile, dataFile, indexStrategy);
+		}
+	}
+
+	@Override
+	public void addAllEncoded(List<byte[]> encodedElements,
+	                          RandomAccessFile indexFile,
+	                          RandomAccessFile dataFile,
+	                          IndexStrategy indexStrategy)
+		throws IOException
+	{
+		if(encodedElements != null && !encodedElements.isEmpty())
+		{
+			long elementsCount = indexStrategy.getSize(indexFile);
+
+			long offset = dataFile.length();
+
+			long[] offsets = internalWriteEncoded(dataFile, offset, encodedElements);
 
+			indexStrategy.setOffsets(indexFile, elementsCount, offsets);
 		}
 	}
 
@@ -113,6 +268,18 @@ public class DefaultDataStrategy<E>
 		return false;
 	}
 
+	@Override
+	public boolean isEncodedAccessSupported()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean isFileChannelSupported()
+	{
+		return true;
+	}
+
 	@Override
 	public E get(long index,
 	             RandomAccessFile indexFile,
@@ -130,49 +297,657 @@ public class DefaultDataStrategy<E>
 				return null;
 			}
 
-			return internalReadElement(dataFile, offset, codec);
+			if(codec == null)
+			{
+				throw new IllegalStateException("Codec has not been initialized!");
+			}
+			return decode(internalReadEncoded(mappedData, dataFile, offset), codec);
+		}
+		return null;
+	}
+
+	@Override
+	public List<E> getRange(long index, int count,
+	                        RandomAccessFile indexFile,
+	                        RandomAccessFile dataFile,
+	                        Codec<E> codec,
+	                        IndexStrategy indexStrategy)
+		throws IOException, ClassNotFoundException
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		long[] offsets = indexStrategy.getOffsets(indexFile, index, count);
+		MappedSegments segments = mappedData;
+		RecordRegion region = null;
+		if(segments == null)
+		{
+			region = RecordRegion.read(dataFile, offsets, recordHeaderSize);
+		}
+		List<E> result = new ArrayList<>(offsets.length);
+		for(long offset : offsets)
+		{
+			if(offset < 0)
+			{
+				result.add(null);
+				continue;
+			}
+			ByteBuffer payload = null;
+			if(region != null)
+			{
+				payload = region.getPayload(offset);
+			}
+			if(payload != null)
+			{
+				if(usingChecksums)
+				{
+					verifyChecksum(payload, region.getHeaderInt(offset, (int) DATA_LENGTH_SIZE), offset);
+				}
+				result.add(decode(payload, codec));
+			}
+			else
+			{
+				result.add(decode(internalReadEncoded(segments, dataFile, offset), codec));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public ByteBuffer getEncoded(long index,
+	                             RandomAccessFile indexFile,
+	                             RandomAccessFile dataFile,
+	                             IndexStrategy indexStrategy)
+		throws IOException
+	{
+		long elementsCount = indexStrategy.getSize(indexFile);
+		if(index >= 0 && index < elementsCount)
+		{
+			long offset = indexStrategy.getOffset(indexFile, index);
+			if(offset < 0)
+			{
+				return null;
+			}
+
+			return internalReadEncoded(mappedData, dataFile, offset);
+		}
+		return null;
+	}
+
+
+	@Override
+	public void addUsingChannels(E element,
+	                             FileChannel indexChannel,
+	                             FileChannel dataChannel,
+	                             Codec<E> codec,
+	                             IndexStrategy indexStrategy)
+		throws IOException
+	{
+		long elementsCount = indexStrategy.getSize(indexChannel);
+
+		long offset = dataChannel.size();
+
+		internalWriteElement(dataChannel, offset, element, codec);
+
+		indexStrategy.setOffset(indexChannel, elementsCount, offset);
+	}
+
+	@Override
+	public void addAllUsingChannels(List<E> elements,
+	                                FileChannel indexChannel,
+	                                FileChannel dataChannel,
+	                                Codec<E> codec,
+	                                IndexStrategy indexStrategy)
+		throws IOException
+	{
+		if(elements != null && !elements.isEmpty())
+		{
+			if(codec instanceof ByteBufferEncoder)
+			{
+				@SuppressWarnings("unchecked")
+				ByteBufferEncoder<E> encoder = (ByteBufferEncoder<E>) codec;
+
+				long elementsCount = indexStrategy.getSize(indexChannel);
+
+				long offset = dataChannel.size();
+
+				long[] offsets = internalWriteElements(dataChannel, offset, elements, encoder);
+
+				indexStrategy.setOffsets(indexChannel, elementsCount, offsets);
+				return;
+			}
+			addAllEncodedUsingChannels(encode(elements, codec), indexChannel, dataChannel, indexStrategy);
+		}
+	}
+
+	@Override
+	public void addAllEncodedUsingChannels(List<byte[]> encodedElements,
+	                                       FileChannel indexChannel,
+	                                       FileChannel dataChannel,
+	                                       IndexStrategy indexStrategy)
+		throws IOException
+	{
+		if(encodedElements != null && !encodedElements.isEmpty())
+		{
+			long elementsCount = indexStrategy.getSize(indexChannel);
+
+			long offset = dataChannel.size();
+
+			long[] offsets = internalWriteEncoded(dataChannel, offset, encodedElements);
+
+			indexStrategy.setOffsets(indexChannel, elementsCount, offsets);
+		}
+	}
+
+	@Override
+	public boolean setUsingChannels(long index, E element, FileChannel indexChannel, FileChannel dataChannel, Codec<E> codec, IndexStrategy indexStrategy)
+	{
+		throw new UnsupportedOperationException("DefaultDataStrategy does not support set!");
+	}
+
+	@Override
+	public E getUsingChannels(long index,
+	                          FileChannel indexChannel,
+	                          FileChannel dataChannel,
+	                          Codec<E> codec,
+	                          IndexStrategy indexStrategy)
+		throws IOException, ClassNotFoundException
+	{
+		long elementsCount = indexStrategy.getSize(indexChannel);
+		if(index >= 0 && index < elementsCount)
+		{
+			long offset = indexStrategy.getOffset(indexChannel, index);
+			if(offset < 0)
+			{
+				return null;
+			}
+
+			MappedSegments segments = mappedData;
+			if(segments != null)
+			{
+				return internalReadMappedElement(segments, dataChannel, offset, codec);
+			}
+			return internalReadElement(dataChannel, offset, codec);
+		}
+		return null;
+	}
+
+	@Override
+	public List<E> getRangeUsingChannels(long index, int count,
+	                                     FileChannel indexChannel,
+	                                     FileChannel dataChannel,
+	                                     Codec<E> codec,
+	                                     IndexStrategy indexStrategy)
+		throws IOException, ClassNotFoundException
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		long[] offsets = indexStrategy.getOffsets(indexChannel, index, count);
+		MappedSegments segments = mappedData;
+		RecordRegion region = null;
+		if(segments == null)
+		{
+			region = RecordRegion.read(dataChannel, offsets, recordHeaderSize);
+		}
+		List<E> result = new ArrayList<>(offsets.length);
+		for(long offset : offsets)
+		{
+			if(offset < 0)
+			{
+				result.add(null);
+				continue;
+			}
+			ByteBuffer payload = null;
+			if(region != null)
+			{
+				payload = region.getPayload(offset);
+			}
+			if(payload != null)
+			{
+				if(usingChecksums)
+				{
+					verifyChecksum(payload, region.getHeaderInt(offset, (int) DATA_LENGTH_SIZE), offset);
+				}
+				result.add(decode(payload, codec));
+			}
+			else if(segments != null)
+			{
+				result.add(internalReadMappedElement(segments, dataChannel, offset, codec));
+			}
+			else
+			{
+				result.add(internalReadElement(dataChannel, offset, codec));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public ByteBuffer getEncodedUsingChannels(long index,
+	                                          FileChannel indexChannel,
+	                                          FileChannel dataChannel,
+	                                          IndexStrategy indexStrategy)
+		throws IOException
+	{
+		long elementsCount = indexStrategy.getSize(indexChannel);
+		if(index >= 0 && index < elementsCount)
+		{
+			long offset = indexStrategy.getOffset(indexChannel, index);
+			if(offset < 0)
+			{
+				return null;
+			}
+
+			MappedSegments segments = mappedData;
+			if(segments != null)
+			{
+				return internalReadMappedEncoded(segments, dataChannel, offset);
+			}
+			return internalReadEncoded(dataChannel, offset);
 		}
 		return null;
 	}
 
 
-	private int internalWriteElement(RandomAccessFile dataFile, long offset, E element, Codec<E> codec)
+	private int internalWriteElement(FileChannel dataChannel, long offset, E element, Codec<E> codec)
 		throws IOException
 	{
 		if(codec == null)
 		{
 			throw new IllegalStateException("Codec has not been initialized!");
 		}
+		if(codec instanceof ByteBufferEncoder)
+		{
+			@SuppressWarnings("unchecked")
+			ByteBufferEncoder<E> encoder = (ByteBufferEncoder<E>) codec;
+			ByteBuffer record = putRecord(EncodingBuffers.acquire(), element, encoder);
+			record.flip();
+			FileChannels.writeFully(dataChannel, record, offset);
+			EncodingBuffers.release(record);
+			return record.limit() - recordHeaderSize;
+		}
 		byte[] buffer = codec.encode(element);
 
 		int bufferSize = buffer.length;
 
-		dataFile.seek(offset);
-		dataFile.writeInt(bufferSize);
-		dataFile.write(buffer);
+		ByteBuffer record = ByteBuffer.allocate(recordHeaderSize + bufferSize);
+		putRecord(record, buffer);
+		record.flip();
+		FileChannels.writeFully(dataChannel, record, offset);
 		return bufferSize;
 	}
 
-	private E internalReadElement(RandomAccessFile dataFile, long offset, Codec<E> codec)
+	private void internalWriteElement(RandomAccessFile dataFile, long offset, E element, Codec<E> codec)
+		throws IOException
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		if(codec instanceof ByteBufferEncoder)
+		{
+			@SuppressWarnings("unchecked")
+			ByteBufferEncoder<E> encoder = (ByteBufferEncoder<E>) codec;
+			ByteBuffer record = putRecord(EncodingBuffers.acquire(), element, encoder);
+			record.flip();
+			RandomAccessFiles.writeFully(dataFile, record, offset);
+			EncodingBuffers.release(record);
+			return;
+		}
+		byte[] buffer = codec.encode(element);
+
+		ByteBuffer record = ByteBuffer.allocate(recordHeaderSize + buffer.length);
+		putRecord(record, buffer);
+		record.flip();
+		RandomAccessFiles.writeFully(dataFile, record, offset);
+	}
+
+	static <E> List<byte[]> encode(List<E> elements, Codec<E> codec)
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		List<byte[]> result = new ArrayList<>(elements.size());
+		for(E element : elements)
+		{
+			result.add(codec.encode(element));
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the records of all encoded elements using one positional write per
+	 * WRITE_BATCH_SIZE bytes instead of separate writes for every single element.
+	 *
+	 * @return the offsets of the written records.
+	 */
+	private long[] internalWriteEncoded(FileChannel dataChannel, long offset, List<byte[]> encodedElements)
+		throws IOException
+	{
+		long[] offsets = new long[encodedElements.size()];
+		List<byte[]> batch = new ArrayList<>();
+		long batchOffset = offset;
+		long batchSize = 0;
+		int count = 0;
+		for(byte[] buffer : encodedElements)
+		{
+			offsets[count] = batchOffset + batchSize;
+			batch.add(buffer);
+			batchSize += recordHeaderSize + buffer.length;
+			count++;
+			if(batchSize >= WRITE_BATCH_SIZE || count == offsets.length)
+			{
+				internalWriteBatch(dataChannel, batchOffset, batch, (int) batchSize);
+				batch.clear();
+				batchOffset += batchSize;
+				batchSize = 0;
+			}
+		}
+		return offsets;
+	}
+
+	/**
+	 * Encodes the records of all elements directly into the buffer reused by the calling thread,
+	 * writing it whenever it exceeds ENCODED_BATCH_SIZE bytes.
+	 *
+	 * @return the offsets of the written records.
+	 */
+	private long[] internalWriteElements(FileChannel dataChannel, long offset, List<E> elements, ByteBufferEncoder<E> encoder)
+		throws IOException
+	{
+		long[] offsets = new long[elements.size()];
+		ByteBuffer batch = EncodingBuffers.acquire();
+		long batchOffset = offset;
+		int count = 0;
+		for(E element : elements)
+		{
+			offsets[count] = batchOffset + batch.position();
+			batch = putRecord(batch, element, encoder);
+			count++;
+			if(batch.position() >= ENCODED_BATCH_SIZE || count == offsets.length)
+			{
+				batch.flip();
+				FileChannels.writeFully(dataChannel, batch, batchOffset);
+				batchOffset += batch.limit();
+				batch.clear();
+			}
+		}
+		EncodingBuffers.release(batch);
+		return offsets;
+	}
+
+	/**
+	 * RandomAccessFile variant of internalWriteEncoded.
+	 *
+	 * @return the offsets of the written records.
+	 */
+	private long[] internalWriteEncoded(RandomAccessFile dataFile, long offset, List<byte[]> encodedElements)
+		throws IOException
+	{
+		long[] offsets = new long[encodedElements.size()];
+		List<byte[]> batch = new ArrayList<>();
+		long batchOffset = offset;
+		long batchSize = 0;
+		int count = 0;
+		for(byte[] buffer : encodedElements)
+		{
+			offsets[count] = batchOffset + batchSize;
+			batch.add(buffer);
+			batchSize += recordHeaderSize + buffer.length;
+			count++;
+			if(batchSize >= WRITE_BATCH_SIZE || count == offsets.length)
+			{
+				RandomAccessFiles.writeFully(dataFile, createBatch(batch, (int) batchSize), batchOffset);
+				batch.clear();
+				batchOffset += batchSize;
+				batchSize = 0;
+			}
+		}
+		return offsets;
+	}
+
+	/**
+	 * RandomAccessFile variant of internalWriteElements.
+	 *
+	 * @return the offsets of the written records.
+	 */
+	private long[] internalWriteElements(RandomAccessFile dataFile, long offset, List<E> elements, ByteBufferEncoder<E> encoder)
+		throws IOException
+	{
+		long[] offsets = new long[elements.size()];
+		ByteBuffer batch = EncodingBuffers.acquire();
+		long batchOffset = offset;
+		int count = 0;
+		for(E element : elements)
+		{
+			offsets[count] = batchOffset + batch.position();
+			batch = putRecord(batch, element, encoder);
+			count++;
+			if(batch.position() >= ENCODED_BATCH_SIZE || count == offsets.length)
+			{
+				batch.flip();
+				RandomAccessFiles.writeFully(dataFile, batch, batchOffset);
+				batchOffset += batch.limit();
+				batch.clear();
+			}
+		}
+		EncodingBuffers.release(batch);
+		return offsets;
+	}
+
+	private void internalWriteBatch(FileChannel dataChannel, long offset, List<byte[]> encoded, int batchSize)
+		throws IOException
+	{
+		FileChannels.writeFully(dataChannel, createBatch(encoded, batchSize), offset);
+	}
+
+	private ByteBuffer createBatch(List<byte[]> encoded, int batchSize)
+	{
+		ByteBuffer batch = ByteBuffer.allocate(batchSize);
+		for(byte[] buffer : encoded)
+		{
+			putRecord(batch, buffer);
+		}
+		batch.flip();
+		return batch;
+	}
+
+	private E internalReadElement(FileChannel dataChannel, long offset, Codec<E> codec)
 		throws IOException
 	{
 		if(codec == null)
 		{
 			throw new IllegalStateException("Codec has not been initialized!");
 		}
+		return codec.decode(internalReadEncoded(dataChannel, offset).array());
+	}
+
+	private ByteBuffer internalReadEncoded(FileChannel dataChannel, long offset)
+		throws IOException
+	{
+		long dataLength = dataChannel.size();
+		if(dataLength < offset + recordHeaderSize)
+		{
+			throw new IndexOutOfBoundsException("Invalid offset: " + offset + "! Couldn't read length of data!");
+		}
+		ByteBuffer header = ByteBuffer.allocate(recordHeaderSize);
+		FileChannels.readFully(dataChannel, header, offset);
+		int bufferSize = header.getInt(0);
+		if(bufferSize < 0 || dataLength < offset + recordHeaderSize + bufferSize)
+		{
+			throw new IndexOutOfBoundsException("Invalid length (" + bufferSize + ") at offset: " + offset + "!");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+		FileChannels.readFully(dataChannel, buffer, offset + recordHeaderSize);
+		buffer.flip();
+		if(usingChecksums)
+		{
+			verifyChecksum(buffer, header.getInt((int) DATA_LENGTH_SIZE), offset);
+		}
+		return buffer;
+	}
 
-		if(dataFile.length() < offset + DATA_LENGTH_SIZE)
+	/**
+	 * RandomAccessFile variant of internalReadEncoded, using the mapping of the data file if segments isn't null.
+	 *
+	 * Mapping a segment requires the FileChannel of the file. Everything else is read using seek.
+	 */
+	private ByteBuffer internalReadEncoded(MappedSegments segments, RandomAccessFile dataFile, long offset)
+		throws IOException
+	{
+		if(segments != null)
+		{
+			ByteBuffer mapped = internalSliceMapped(segments, dataFile.getChannel(), offset);
+			if(mapped != null)
+			{
+				return mapped;
+			}
+		}
+		long dataLength = dataFile.length();
+		if(dataLength < offset + recordHeaderSize)
 		{
 			throw new IndexOutOfBoundsException("Invalid offset: " + offset + "! Couldn't read length of data!");
 		}
-		dataFile.seek(offset);
-		int bufferSize = dataFile.readInt();
-		if(dataFile.length() < offset + DATA_LENGTH_SIZE + bufferSize)
+		ByteBuffer header = ByteBuffer.allocate(recordHeaderSize);
+		RandomAccessFiles.readFully(dataFile, header, offset);
+		int bufferSize = header.getInt(0);
+		if(bufferSize < 0 || dataLength < offset + recordHeaderSize + bufferSize)
 		{
 			throw new IndexOutOfBoundsException("Invalid length (" + bufferSize + ") at offset: " + offset + "!");
 		}
-		byte[] buffer = new byte[bufferSize];
-		dataFile.readFully(buffer);
-		return codec.decode(buffer);
+		ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+		RandomAccessFiles.readFully(dataFile, buffer, offset + recordHeaderSize);
+		buffer.flip();
+		if(usingChecksums)
+		{
+			verifyChecksum(buffer, header.getInt((int) DATA_LENGTH_SIZE), offset);
+		}
+		return buffer;
+	}
+
+	private E internalReadMappedElement(MappedSegments segments, FileChannel dataChannel, long offset, Codec<E> codec)
+		throws IOException
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		return decode(internalReadMappedEncoded(segments, dataChannel, offset), codec);
+	}
+
+	private ByteBuffer internalReadMappedEncoded(MappedSegments segments, FileChannel dataChannel, long offset)
+		throws IOException
+	{
+		ByteBuffer result = internalSliceMapped(segments, dataChannel, offset);
+		if(result != null)
+		{
+			return result;
+		}
+		// element crosses segments or is invalid
+		return internalReadEncoded(dataChannel, offset);
+	}
+
+	/**
+	 * @return the mapped payload of the record at the given offset or null if it crosses segments or is invalid.
+	 */
+	private ByteBuffer internalSliceMapped(MappedSegments segments, FileChannel dataChannel, long offset)
+		throws IOException
+	{
+		ByteBuffer header = segments.slice(dataChannel, offset, recordHeaderSize);
+		if(header != null)
+		{
+			int bufferSize = header.getInt(0);
+			ByteBuffer buffer = segments.slice(dataChannel, offset + recordHeaderSize, bufferSize);
+			if(buffer != null)
+			{
+				if(usingChecksums)
+				{
+					verifyChecksum(buffer, header.getInt((int) DATA_LENGTH_SIZE), offset);
+				}
+				return buffer;
+			}
+		}
+		return null;
+	}
+
+	private void putRecord(ByteBuffer target, byte[] encoded)
+	{
+		target.putInt(encoded.length);
+		if(usingChecksums)
+		{
+			target.putInt(checksum(ByteBuffer.wrap(encoded)));
+		}
+		target.put(encoded);
+	}
+
+	/**
+	 * Encodes the element as record at the position of target.
+	 *
+	 * @return either target or a larger buffer, positioned directly after the record.
+	 */
+	private ByteBuffer putRecord(ByteBuffer target, E element, ByteBufferEncoder<E> encoder)
+	{
+		int start = target.position();
+		int payloadStart = start + recordHeaderSize;
+		ByteBuffer result = EncodingBuffers.ensureRemaining(target, recordHeaderSize);
+		result.position(payloadStart);
+		result = EncodingBuffers.encode(encoder, element, result);
+		int end = result.position();
+		result.putInt(start, end - payloadStart);
+		if(usingChecksums)
+		{
+			ByteBuffer payload = result.duplicate();
+			payload.limit(end);
+			payload.position(payloadStart);
+			result.putInt(start + (int) DATA_LENGTH_SIZE, checksum(payload));
+		}
+		return result;
+	}
+
+	static int getRecordHeaderSize(boolean usingChecksums)
+	{
+		return (int) (usingChecksums ? DATA_LENGTH_SIZE + CHECKSUM_SIZE : DATA_LENGTH_SIZE);
+	}
+
+	/**
+	 * @param payload the encoded element, between position and limit. The buffer itself isn't changed.
+	 * @return the CRC-32 of the encoded element.
+	 */
+	static int checksum(ByteBuffer payload)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(payload.duplicate());
+		return (int) crc.getValue();
+	}
+
+	static void verifyChecksum(ByteBuffer payload, int expected, long offset)
+		throws IOException
+	{
+		int actual = checksum(payload);
+		if(actual != expected)
+		{
+			throw new IOException("Invalid checksum of record at offset " + offset + "! Expected 0x" + Integer.toHexString(expected) + " but was 0x" + Integer.toHexString(actual) + "!");
+		}
+	}
+
+	static <E> E decode(ByteBuffer buffer, Codec<E> codec)
+	{
+		if(codec instanceof ByteBufferDecoder)
+		{
+			@SuppressWarnings("unchecked")
+			ByteBufferDecoder<E> decoder = (ByteBufferDecoder<E>) codec;
+			return decoder.decode(buffer);
+		}
+		if(buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == buffer.array().length)
+		{
+			return codec.decode(buffer.array());
+		}
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return codec.decode(bytes);
 	}
 }
@@ -36,12 +36,20 @@ package de.huxhorn.sulky.codec.filebuffer;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 public class DefaultIndexStrategy
 	implements IndexStrategy
 {
 	public static final long DATA_OFFSET_SIZE = 8;
 
+	/**
+	 * The number of -1 entries written at once while extending a file using setOffsets or a FileChannel.
+	 */
+	private static final int FILL_CHUNK_ENTRIES = 512;
+
 	@Override
 	public void setOffset(RandomAccessFile indexFile, long index, long offset)
 		throws IOException
@@ -87,4 +95,155 @@ public class DefaultIndexStrategy
 		return indexFile.length() / DATA_OFFSET_SIZE;
 	}
 
+	@Override
+	public long[] getOffsets(RandomAccessFile indexFile, long index, int count)
+		throws IOException
+	{
+		if(index < 0 || count <= 0)
+		{
+			return new long[0];
+		}
+		long available = getSize(indexFile) - index;
+		if(available <= 0)
+		{
+			return new long[0];
+		}
+		long[] result = new long[(int) Math.min(count, available)];
+		ByteBuffer buffer = ByteBuffer.allocate((int) DATA_OFFSET_SIZE * result.length);
+		RandomAccessFiles.readFully(indexFile, buffer, DATA_OFFSET_SIZE * index);
+		buffer.flip();
+		buffer.asLongBuffer().get(result);
+		return result;
+	}
+
+	@Override
+	public void setOffsets(RandomAccessFile indexFile, long index, long[] offsets)
+		throws IOException
+	{
+		if(offsets.length == 0)
+		{
+			return;
+		}
+		long offsetOffset = DATA_OFFSET_SIZE * index;
+		long fileLength = indexFile.length();
+		if(fileLength < offsetOffset)
+		{
+			// extend file, filling with -1
+			long lastIndex = fileLength / DATA_OFFSET_SIZE;
+			long[] filler = new long[(int) Math.min(index - lastIndex, FILL_CHUNK_ENTRIES)];
+			Arrays.fill(filler, -1L);
+			// starting at lastIndex copes with malformed files
+			for(long i = lastIndex; i < index; i += filler.length)
+			{
+				writeOffsets(indexFile, i, filler, (int) Math.min(index - i, filler.length));
+			}
+		}
+		writeOffsets(indexFile, index, offsets, offsets.length);
+	}
+
+	private static void writeOffsets(RandomAccessFile indexFile, long index, long[] offsets, int count)
+		throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate((int) DATA_OFFSET_SIZE * count);
+		buffer.asLongBuffer().put(offsets, 0, count);
+		RandomAccessFiles.writeFully(indexFile, buffer, DATA_OFFSET_SIZE * index);
+	}
+
+	@Override
+	public void setOffset(FileChannel indexChannel, long index, long offset)
+		throws IOException
+	{
+		extendIfNecessary(indexChannel, index);
+		ByteBuffer buffer = ByteBuffer.allocate((int) DATA_OFFSET_SIZE);
+		buffer.putLong(offset);
+		buffer.flip();
+		FileChannels.writeFully(indexChannel, buffer, DATA_OFFSET_SIZE * index);
+	}
+
+	@Override
+	public void setOffsets(FileChannel indexChannel, long index, long[] offsets)
+		throws IOException
+	{
+		if(offsets.length == 0)
+		{
+			return;
+		}
+		extendIfNecessary(indexChannel, index);
+		ByteBuffer buffer = ByteBuffer.allocate((int) DATA_OFFSET_SIZE * offsets.length);
+		buffer.asLongBuffer().put(offsets);
+		FileChannels.writeFully(indexChannel, buffer, DATA_OFFSET_SIZE * index);
+	}
+
+	private static void extendIfNecessary(FileChannel indexChannel, long index)
+		throws IOException
+	{
+		long fileLength = indexChannel.size();
+		if(fileLength < DATA_OFFSET_SIZE * index)
+		{
+			// extend file, filling with -1
+			long lastIndex = fileLength / DATA_OFFSET_SIZE;
+			long remaining = index - lastIndex;
+			ByteBuffer filler = ByteBuffer.allocate((int) (DATA_OFFSET_SIZE * Math.min(remaining, FILL_CHUNK_ENTRIES)));
+			while(filler.hasRemaining())
+			{
+				filler.putLong(-1L);
+			}
+			long position = lastIndex * DATA_OFFSET_SIZE; // this copes with malformed files
+			while(remaining > 0)
+			{
+				int entries = (int) Math.min(remaining, FILL_CHUNK_ENTRIES);
+				filler.clear();
+				filler.limit((int) (entries * DATA_OFFSET_SIZE));
+				FileChannels.writeFully(indexChannel, filler, position);
+				position += filler.limit();
+				remaining -= entries;
+			}
+		}
+	}
+
+	@Override
+	public long getOffset(FileChannel indexChannel, long index)
+		throws IOException
+	{
+		if(index < 0)
+		{
+			return -1;
+		}
+		long offsetOffset = DATA_OFFSET_SIZE * index;
+		if(indexChannel.size() < offsetOffset + DATA_OFFSET_SIZE)
+		{
+			return -1;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) DATA_OFFSET_SIZE);
+		FileChannels.readFully(indexChannel, buffer, offsetOffset);
+		return buffer.getLong(0);
+	}
+
+	@Override
+	public long getSize(FileChannel indexChannel)
+		throws IOException
+	{
+		return indexChannel.size() / DATA_OFFSET_SIZE;
+	}
+
+	@Override
+	public long[] getOffsets(FileChannel indexChannel, long index, int count)
+		throws IOException
+	{
+		if(index < 0 || count <= 0)
+		{
+			return new long[0];
+		}
+		long available = getSize(indexChannel) - index;
+		if(available <= 0)
+		{
+			return new long[0];
+		}
+		long[] result = new long[(int) Math.min(count, available)];
+		ByteBuffer buffer = ByteBuffer.allocate((int) DATA_OFFSET_SIZE * result.length);
+		FileChannels.readFully(indexChannel, buffer, DATA_OFFSET_SIZE * index);
+		buffer.flip();
+		buffer.asLongBuffer().get(result);
+		return result;
+	}
 }
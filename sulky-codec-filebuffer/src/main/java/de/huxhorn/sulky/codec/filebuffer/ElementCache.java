@@ -0,0 +1,141 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of decoded elements, bounded by number of entries and/or by the sum of their encoded sizes.
+ *
+ * A bound of 0 means that the respective dimension is unbounded.
+ *
+ * @param <E> the type of the cached elements.
+ */
+final class ElementCache<E>
+{
+	private final int maxEntries;
+	private final long maxBytes;
+	private final Map<Long, Entry<E>> entries;
+	private long bytes;
+
+	ElementCache(int maxEntries, long maxBytes)
+	{
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	public synchronized E get(long index)
+	{
+		Entry<E> entry = entries.get(index);
+		if(entry == null)
+		{
+			return null;
+		}
+		return entry.element;
+	}
+
+	/**
+	 * Adds the element to the cache, evicting the least recently used entries if necessary.
+	 * null elements and elements that are larger than maxBytes on their own are ignored.
+	 *
+	 * @param index the index of the element.
+	 * @param element the decoded element.
+	 * @param encodedSize the encoded size of the element.
+	 */
+	public synchronized void put(long index, E element, int encodedSize)
+	{
+		if(element == null || maxBytes > 0 && encodedSize > maxBytes)
+		{
+			return;
+		}
+		Entry<E> previous = entries.put(index, new Entry<>(element, encodedSize));
+		if(previous != null)
+		{
+			bytes -= previous.encodedSize;
+		}
+		bytes += encodedSize;
+		evict();
+	}
+
+	public synchronized void remove(long index)
+	{
+		Entry<E> previous = entries.remove(index);
+		if(previous != null)
+		{
+			bytes -= previous.encodedSize;
+		}
+	}
+
+	public synchronized void clear()
+	{
+		entries.clear();
+		bytes = 0;
+	}
+
+	public synchronized int getEntryCount()
+	{
+		return entries.size();
+	}
+
+	public synchronized long getBytes()
+	{
+		return bytes;
+	}
+
+	private void evict()
+	{
+		Iterator<Map.Entry<Long, Entry<E>>> iterator = entries.entrySet().iterator();
+		while(iterator.hasNext() && (maxEntries > 0 && entries.size() > maxEntries || maxBytes > 0 && bytes > maxBytes))
+		{
+			bytes -= iterator.next().getValue().encodedSize;
+			iterator.remove();
+		}
+	}
+
+	private static class Entry<E>
+	{
+		final E element;
+		final int encodedSize;
+
+		Entry(E element, int encodedSize)
+		{
+			this.element = element;
+			this.encodedSize = encodedSize;
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Keeps the data and index files of a buffer open.
+ *
+ * There is a single pair of channels used for writing and a bounded number of idle pairs used for reading.
+ * Reading pairs are created on demand if no idle pair is available. Returned pairs exceeding the
+ * maximum number of idle pairs are closed.
+ *
+ * Synchronization is the responsibility of the user of this class, i.e. write channels must only be used
+ * while holding a write lock and close() must only be called while holding a write lock.
+ * Read channels may be borrowed and returned concurrently while holding a read lock.
+ */
+final class FileChannelPool
+{
+	private final Path dataPath;
+	private final Path indexPath;
+	private final BlockingQueue<ChannelPair> idleReadChannels;
+	private ChannelPair writeChannels;
+
+	FileChannelPool(File dataFile, File indexFile, int maximumIdleReadChannels)
+	{
+		if(maximumIdleReadChannels < 1)
+		{
+			throw new IllegalArgumentException("maximumIdleReadChannels must be at least 1 but was " + maximumIdleReadChannels + "!");
+		}
+		this.dataPath = dataFile.toPath();
+		this.indexPath = indexFile.toPath();
+		this.idleReadChannels = new ArrayBlockingQueue<>(maximumIdleReadChannels);
+	}
+
+	ChannelPair getWriteChannels()
+		throws IOException
+	{
+		ChannelPair result = writeChannels;
+		if(result == null || !result.isOpen())
+		{
+			if(result != null)
+			{
+				result.close();
+			}
+			result = open(indexPath, dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+			writeChannels = result;
+		}
+		return result;
+	}
+
+	ChannelPair borrowReadChannels()
+		throws IOException
+	{
+		for(;;)
+		{
+			ChannelPair result = idleReadChannels.poll();
+			if(result == null)
+			{
+				return open(indexPath, dataPath, StandardOpenOption.READ);
+			}
+			if(result.isOpen())
+			{
+				return result;
+			}
+			// channel was closed, e.g. because of an interrupt
+			result.close();
+		}
+	}
+
+	void returnReadChannels(ChannelPair channels)
+	{
+		if(!channels.isOpen() || !idleReadChannels.offer(channels))
+		{
+			channels.close();
+		}
+	}
+
+	/**
+	 * Closes all channels. The pool can still be used afterwards, reopening the channels on demand.
+	 */
+	void close()
+	{
+		if(writeChannels != null)
+		{
+			writeChannels.close();
+			writeChannels = null;
+		}
+		for(;;)
+		{
+			ChannelPair current = idleReadChannels.poll();
+			if(current == null)
+			{
+				break;
+			}
+			current.close();
+		}
+	}
+
+	/**
+	 * Opens a pair of channels using the given options, closing the index channel if the data channel
+	 * can't be opened.
+	 *
+	 * @param indexPath the path of the index file.
+	 * @param dataPath the path of the data file.
+	 * @param options the options used to open both channels.
+	 * @return the opened channels.
+	 * @throws IOException in case of IOException :p
+	 */
+	static ChannelPair open(Path indexPath, Path dataPath, StandardOpenOption... options)
+		throws IOException
+	{
+		FileChannel indexChannel = FileChannel.open(indexPath, options);
+		try
+		{
+			return new ChannelPair(indexChannel, FileChannel.open(dataPath, options));
+		}
+		catch(IOException | RuntimeException e)
+		{
+			closeQuietly(indexChannel);
+			throw e;
+		}
+	}
+
+	private static void closeQuietly(FileChannel channel)
+	{
+		try
+		{
+			channel.close();
+		}
+		catch(IOException e)
+		{
+			// ignore
+		}
+	}
+
+	static final class ChannelPair
+	{
+		private final FileChannel indexChannel;
+		private final FileChannel dataChannel;
+
+		ChannelPair(FileChannel indexChannel, FileChannel dataChannel)
+		{
+			this.indexChannel = indexChannel;
+			this.dataChannel = dataChannel;
+		}
+
+		FileChannel getIndexChannel()
+		{
+			return indexChannel;
+		}
+
+		FileChannel getDataChannel()
+		{
+			return dataChannel;
+		}
+
+		boolean isOpen()
+		{
+			return indexChannel.isOpen() && dataChannel.isOpen();
+		}
+
+		void close()
+		{
+			closeQuietly(indexChannel);
+			closeQuietly(dataChannel);
+		}
+	}
+}
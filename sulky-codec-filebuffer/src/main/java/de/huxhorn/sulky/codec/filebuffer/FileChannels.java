@@ -0,0 +1,93 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Positional read and write helpers for FileChannel.
+ *
+ * None of the methods change the position of the given channel.
+ */
+final class FileChannels
+{
+	private FileChannels()
+	{}
+
+	/**
+	 * Reads bytes from the channel until the buffer is full.
+	 *
+	 * @param channel the channel to read from.
+	 * @param buffer the buffer to fill.
+	 * @param position the file position to start reading at.
+	 * @throws EOFException if the end of the file is reached before the buffer is full.
+	 * @throws IOException in case of IOException :p
+	 */
+	static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+		throws IOException
+	{
+		long currentPosition = position;
+		while(buffer.hasRemaining())
+		{
+			int read = channel.read(buffer, currentPosition);
+			if(read < 0)
+			{
+				throw new EOFException("Reached end of file while reading " + buffer.remaining() + " more bytes at position " + currentPosition + "!");
+			}
+			currentPosition += read;
+		}
+	}
+
+	/**
+	 * Writes all remaining bytes of the buffer to the channel.
+	 *
+	 * @param channel the channel to write to.
+	 * @param buffer the buffer to write.
+	 * @param position the file position to start writing at.
+	 * @throws IOException in case of IOException :p
+	 */
+	static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+		throws IOException
+	{
+		long currentPosition = position;
+		while(buffer.hasRemaining())
+		{
+			currentPosition += channel.write(buffer, currentPosition);
+		}
+	}
+}
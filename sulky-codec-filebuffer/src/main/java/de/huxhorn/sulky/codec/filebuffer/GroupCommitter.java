@@ -0,0 +1,260 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.buffers.AppendOperation;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces elements added concurrently by several threads into group commits.
+ *
+ * <p>The first thread that finds no commit in progress becomes the leader. It waits up to delay milliseconds
+ * for more elements unless maxBatchSize elements are already pending, removes up to maxBatchSize pending
+ * elements and writes them using a single call of addAll of the target. All other threads wait until their
+ * element has been written by a leader. The leadership is passed on after every commit.</p>
+ *
+ * <p>Elements are written in the order they have been added. A call of add returns after the element
+ * has been written. If addAll of the target fails, the exception is rethrown by every thread whose element
+ * was part of the failed batch.</p>
+ *
+ * @param <E> the type of the elements.
+ */
+final class GroupCommitter<E>
+{
+	private final Object lock = new Object();
+	private final AppendOperation<E> target;
+	private final int maxBatchSize;
+	private final int delay;
+	private final List<E> pending;
+
+	/**
+	 * The number of elements that have been added. Guarded by lock.
+	 */
+	private long addedCount;
+
+	/**
+	 * The number of elements that have been written. Guarded by lock.
+	 */
+	private long committedCount;
+
+	/**
+	 * Whether or not a leader is currently collecting or writing a batch. Guarded by lock.
+	 */
+	private boolean committing;
+
+	/**
+	 * The exceptions thrown while writing the elements of the contained tickets. Guarded by lock.
+	 * Every entry is removed by the thread that added the element.
+	 */
+	private final Map<Long, Throwable> failures = new HashMap<>();
+
+	/**
+	 * @param target the target of the group commits.
+	 * @param maxBatchSize the maximum number of elements written at once. Must be positive.
+	 * @param delay the maximum time in milliseconds a leader waits for more elements. Must not be negative.
+	 */
+	GroupCommitter(AppendOperation<E> target, int maxBatchSize, int delay)
+	{
+		if(target == null)
+		{
+			throw new IllegalArgumentException("target must not be null!");
+		}
+		if(maxBatchSize <= 0)
+		{
+			throw new IllegalArgumentException("maxBatchSize must be positive but was " + maxBatchSize + "!");
+		}
+		if(delay < 0)
+		{
+			throw new IllegalArgumentException("delay must not be negative but was " + delay + "!");
+		}
+		this.target = target;
+		this.maxBatchSize = maxBatchSize;
+		this.delay = delay;
+		this.pending = new ArrayList<>();
+	}
+
+	int getMaxBatchSize()
+	{
+		return maxBatchSize;
+	}
+
+	int getDelay()
+	{
+		return delay;
+	}
+
+	/**
+	 * Adds the element and returns after it has been written by this or another thread.
+	 *
+	 * An interrupt does not cancel the write. The interrupted status of the thread is restored before returning.
+	 *
+	 * @param element the element to add.
+	 * @throws RuntimeException if addAll of the target threw it while writing the element.
+	 * @throws Error if addAll of the target threw it while writing the element.
+	 */
+	void add(E element)
+	{
+		boolean interrupted = false;
+		Throwable failure = null;
+		long ticket;
+		synchronized(lock)
+		{
+			pending.add(element);
+			addedCount++;
+			ticket = addedCount;
+			if(committing && pending.size() >= maxBatchSize)
+			{
+				// wake up a waiting leader
+				lock.notifyAll();
+			}
+		}
+
+		for(;;)
+		{
+			List<E> batch;
+			synchronized(lock)
+			{
+				while(committing && committedCount < ticket)
+				{
+					try
+					{
+						lock.wait();
+					}
+					catch(InterruptedException e)
+					{
+						interrupted = true;
+					}
+				}
+				if(committedCount >= ticket)
+				{
+					failure = failures.remove(ticket);
+					break;
+				}
+				committing = true;
+				if(delay > 0)
+				{
+					interrupted = awaitBatch() || interrupted;
+				}
+				batch = removeBatch();
+			}
+
+			Throwable batchFailure = null;
+			try
+			{
+				target.addAll(batch);
+			}
+			catch(Throwable t)
+			{
+				batchFailure = t;
+			}
+			synchronized(lock)
+			{
+				if(batchFailure != null)
+				{
+					for(int i = 1; i <= batch.size(); i++)
+					{
+						failures.put(committedCount + i, batchFailure);
+					}
+				}
+				committedCount += batch.size();
+				committing = false;
+				lock.notifyAll();
+			}
+		}
+
+		if(interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+		if(failure instanceof RuntimeException)
+		{
+			throw (RuntimeException) failure;
+		}
+		if(failure instanceof Error)
+		{
+			throw (Error) failure;
+		}
+		if(failure != null)
+		{
+			// only possible if addAll sneakily threw a checked exception
+			throw new IllegalStateException("Couldn't write element!", failure);
+		}
+	}
+
+	/**
+	 * Removes up to maxBatchSize pending elements. Must be called while holding lock.
+	 *
+	 * @return the removed elements.
+	 */
+	private List<E> removeBatch()
+	{
+		List<E> head = pending.subList(0, Math.min(pending.size(), maxBatchSize));
+		List<E> result = new ArrayList<>(head);
+		head.clear();
+		return result;
+	}
+
+	/**
+	 * Waits until either maxBatchSize elements are pending or delay has elapsed.
+	 * Must be called while holding lock.
+	 *
+	 * @return true if the waiting thread has been interrupted.
+	 */
+	private boolean awaitBatch()
+	{
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+		while(pending.size() < maxBatchSize)
+		{
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0)
+			{
+				break;
+			}
+			try
+			{
+				TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+			}
+			catch(InterruptedException e)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,435 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.buffers.Reset;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Restores the consistency of data and index file of buffers written by DefaultDataStrategy or
+ * SparseDataStrategy, e.g. after the process died between writing a record and its offset.
+ *
+ * The data file is read sequentially in chunks of up to SCAN_BUFFER_SIZE bytes. Incomplete records at the end of the
+ * data file, as well as records with an invalid checksum if the buffer is using checksums, are considered
+ * torn writes and are truncated together with all following bytes.
+ *
+ * Records of sparse buffers contain the index of their element. If an element has been replaced, the record
+ * written last, i.e. the one with the highest offset, is used. Elements that have been set to null can't be
+ * restored since set(index, null) does not write a record.
+ *
+ * The index file is expected to use the format of DefaultIndexStrategy. The given IndexStrategy is reset
+ * after the index file has been truncated.
+ */
+public final class IndexRecovery
+{
+	/**
+	 * 8MB. The size of the chunks read while scanning the data file.
+	 */
+	public static final int SCAN_BUFFER_SIZE = 8 * 1024 * 1024;
+
+	/**
+	 * The number of offsets written at once.
+	 */
+	private static final int OFFSET_BATCH_SIZE = 64 * 1024;
+
+	private static final int DATA_LENGTH_SIZE = (int) DefaultDataStrategy.DATA_LENGTH_SIZE;
+
+	private IndexRecovery()
+	{}
+
+	/**
+	 * Replaces the index file with an index created by scanning all records of the data file.
+	 *
+	 * The data file must not be changed while the index is rebuilt.
+	 *
+	 * @param dataFile the data file.
+	 * @param indexFile the index file.
+	 * @param fileHeaderStrategy the strategy used to read the header of the data file.
+	 * @param indexStrategy the index strategy.
+	 * @return the number of elements contained in the new index.
+	 * @throws IOException in case of IOException :p
+	 * @throws IllegalArgumentException if the header can't be read or the buffer is block-compressed.
+	 */
+	public static long rebuildIndex(File dataFile, File indexFile, FileHeaderStrategy fileHeaderStrategy, IndexStrategy indexStrategy)
+		throws IOException
+	{
+		FileHeader header = fileHeaderStrategy.readFileHeader(dataFile);
+		if(header == null)
+		{
+			throw new IllegalArgumentException("Could not read file header from file '" + dataFile.getAbsolutePath() + "'!");
+		}
+		try(FileChannel dataChannel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE))
+		{
+			return rebuildIndex(dataChannel, indexChannel, header, indexStrategy);
+		}
+	}
+
+	/**
+	 * Replaces the content of the index with an index created by scanning all records of the data file.
+	 *
+	 * @param dataChannel the channel of the data file, opened for reading and writing.
+	 * @param indexChannel the channel of the index file, opened for reading and writing.
+	 * @param header the header of the data file.
+	 * @param indexStrategy the index strategy.
+	 * @return the number of elements contained in the new index.
+	 * @throws IOException in case of IOException :p
+	 * @throws IllegalArgumentException if the buffer is block-compressed.
+	 */
+	public static long rebuildIndex(FileChannel dataChannel, FileChannel indexChannel, FileHeader header, IndexStrategy indexStrategy)
+		throws IOException
+	{
+		MetaData metaData = header.getMetaData();
+		if(metaData.isSparse())
+		{
+			truncateIndex(indexChannel, 0, indexStrategy);
+			return scanSparse(dataChannel, header.getDataOffset(), indexChannel, indexStrategy);
+		}
+		boolean usingChecksums = checkMetaData(metaData);
+		truncateIndex(indexChannel, 0, indexStrategy);
+		return scan(dataChannel, header.getDataOffset(), indexChannel, 0, indexStrategy, usingChecksums);
+	}
+
+	/**
+	 * Checks the last records of the data file against the index, removing offsets of invalid records
+	 * from the index, adding offsets of valid records that are missing in the index and truncating
+	 * torn writes from the data file.
+	 *
+	 * Only the records following the last valid record contained in the index are scanned.
+	 * Without checksums, unindexed records can't be told apart from garbage, so everything following the
+	 * last valid record contained in the index is truncated instead.
+	 *
+	 * Both files must not be changed by anyone else during recovery.
+	 *
+	 * @param dataChannel the channel of the data file, opened for reading and writing.
+	 * @param indexChannel the channel of the index file, opened for reading and writing.
+	 * @param header the header of the data file.
+	 * @param indexStrategy the index strategy.
+	 * @return the number of elements contained in the index after recovery.
+	 * @throws IOException in case of IOException :p
+	 * @throws IllegalArgumentException if the buffer isn't using DefaultDataStrategy.
+	 */
+	public static long recover(FileChannel dataChannel, FileChannel indexChannel, FileHeader header, IndexStrategy indexStrategy)
+		throws IOException
+	{
+		boolean usingChecksums = checkMetaData(header.getMetaData());
+		long dataOffset = header.getDataOffset();
+		long count = indexChannel.size() / DefaultIndexStrategy.DATA_OFFSET_SIZE;
+		long start = dataOffset;
+		while(count > 0)
+		{
+			long offset = indexStrategy.getOffset(indexChannel, count - 1);
+			long end = -1;
+			if(offset >= dataOffset)
+			{
+				end = readRecordEnd(dataChannel, offset, usingChecksums);
+			}
+			if(end >= 0)
+			{
+				start = end;
+				break;
+			}
+			count--;
+		}
+		truncateIndex(indexChannel, count, indexStrategy);
+		if(!usingChecksums)
+		{
+			truncateData(dataChannel, start);
+			return count;
+		}
+		return scan(dataChannel, start, indexChannel, count, indexStrategy, usingChecksums);
+	}
+
+	/**
+	 * Checks whether the last record contained in the index ends exactly at the end of the data file.
+	 *
+	 * Neither file is changed, so both channels may be opened read-only.
+	 *
+	 * @param dataChannel the channel of the data file.
+	 * @param indexChannel the channel of the index file.
+	 * @param header the header of the data file.
+	 * @return true, if data and index file are consistent.
+	 * @throws IOException in case of IOException :p
+	 * @throws IllegalArgumentException if the buffer isn't using DefaultDataStrategy.
+	 * @see #recover(FileChannel, FileChannel, FileHeader, IndexStrategy)
+	 */
+	public static boolean isConsistent(FileChannel dataChannel, FileChannel indexChannel, FileHeader header)
+		throws IOException
+	{
+		boolean usingChecksums = checkMetaData(header.getMetaData()); // NOPMD checked first to reject unsupported buffers
+		long indexLength = indexChannel.size();
+		if(indexLength % DefaultIndexStrategy.DATA_OFFSET_SIZE != 0)
+		{
+			return false;
+		}
+		if(indexLength == 0)
+		{
+			return dataChannel.size() == header.getDataOffset();
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) DefaultIndexStrategy.DATA_OFFSET_SIZE);
+		FileChannels.readFully(indexChannel, buffer, indexLength - DefaultIndexStrategy.DATA_OFFSET_SIZE);
+		long offset = buffer.getLong(0);
+		return offset >= header.getDataOffset() && readRecordEnd(dataChannel, offset, usingChecksums) == dataChannel.size();
+	}
+
+	private static boolean checkMetaData(MetaData metaData)
+	{
+		if(metaData.isSparse() || BlockCompressingDataStrategy.resolveCompressor(metaData) != null)
+		{
+			throw new IllegalArgumentException("Only buffers using DefaultDataStrategy are supported but meta data was " + metaData + "!");
+		}
+		return DefaultDataStrategy.isUsingChecksums(metaData);
+	}
+
+	private static void truncateIndex(FileChannel indexChannel, long count, IndexStrategy indexStrategy)
+		throws IOException
+	{
+		long size = count * DefaultIndexStrategy.DATA_OFFSET_SIZE;
+		if(indexChannel.size() > size)
+		{
+			indexChannel.truncate(size);
+		}
+		Reset.reset(indexStrategy);
+	}
+
+	/**
+	 * @return the offset after the record at the given offset or -1 if the record is invalid.
+	 */
+	private static long readRecordEnd(FileChannel dataChannel, long offset, boolean usingChecksums)
+		throws IOException
+	{
+		int headerSize = DefaultDataStrategy.getRecordHeaderSize(usingChecksums);
+		long dataLength = dataChannel.size();
+		if(dataLength < offset + headerSize)
+		{
+			return -1;
+		}
+		ByteBuffer header = ByteBuffer.allocate(headerSize);
+		FileChannels.readFully(dataChannel, header, offset);
+		int length = header.getInt(0);
+		long end = offset + headerSize + length;
+		if(length < 0 || end > dataLength)
+		{
+			return -1;
+		}
+		if(usingChecksums)
+		{
+			ByteBuffer payload = ByteBuffer.allocate(length);
+			FileChannels.readFully(dataChannel, payload, offset + headerSize);
+			payload.flip();
+			if(DefaultDataStrategy.checksum(payload) != header.getInt(DATA_LENGTH_SIZE))
+			{
+				return -1;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Adds the offsets of all valid records starting at the given offset to the index and truncates
+	 * the data file after the last valid record.
+	 *
+	 * @return the number of elements contained in the index.
+	 */
+	private static long scan(FileChannel dataChannel, long offset, FileChannel indexChannel, long index, IndexStrategy indexStrategy, boolean usingChecksums)
+		throws IOException
+	{
+		int headerSize = DefaultDataStrategy.getRecordHeaderSize(usingChecksums);
+		long dataLength = dataChannel.size();
+		long remaining = dataLength - offset;
+		if(remaining < headerSize)
+		{
+			truncateData(dataChannel, offset);
+			return index;
+		}
+		long[] offsets = new long[(int) Math.min(OFFSET_BATCH_SIZE, remaining / headerSize)];
+		int offsetCount = 0;
+		ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(SCAN_BUFFER_SIZE, remaining));
+		long chunkOffset = offset;
+		chunk.limit(0);
+		for(;;)
+		{
+			int position = (int) (offset - chunkOffset);
+			if(chunk.limit() - position < headerSize)
+			{
+				if(dataLength - offset < headerSize)
+				{
+					break;
+				}
+				chunkOffset = offset;
+				position = 0;
+				chunk = fill(dataChannel, chunk, offset, headerSize, dataLength);
+			}
+			int length = chunk.getInt(position);
+			long end = offset + headerSize + length;
+			if(length < 0 || end > dataLength)
+			{
+				break;
+			}
+			if(chunk.limit() - position < headerSize + length)
+			{
+				chunkOffset = offset;
+				position = 0;
+				chunk = fill(dataChannel, chunk, offset, headerSize + length, dataLength);
+			}
+			if(usingChecksums)
+			{
+				ByteBuffer payload = chunk.duplicate();
+				payload.limit(position + headerSize + length);
+				payload.position(position + headerSize);
+				if(DefaultDataStrategy.checksum(payload) != chunk.getInt(position + DATA_LENGTH_SIZE))
+				{
+					break;
+				}
+			}
+			offsets[offsetCount] = offset;
+			offsetCount++;
+			if(offsetCount == offsets.length)
+			{
+				indexStrategy.setOffsets(indexChannel, index, offsets);
+				index += offsetCount;
+				offsetCount = 0;
+			}
+			offset = end;
+		}
+		if(offsetCount > 0)
+		{
+			indexStrategy.setOffsets(indexChannel, index, Arrays.copyOf(offsets, offsetCount));
+			index += offsetCount;
+		}
+		truncateData(dataChannel, offset);
+		return index;
+	}
+
+	/**
+	 * Sets the offsets of all valid records of a sparse data file starting at the given offset and truncates
+	 * the data file after the last valid record.
+	 *
+	 * Offsets of consecutive indices are collected and written at once.
+	 *
+	 * @return the number of elements contained in the index.
+	 */
+	private static long scanSparse(FileChannel dataChannel, long offset, FileChannel indexChannel, IndexStrategy indexStrategy)
+		throws IOException
+	{
+		int headerSize = (int) (SparseDataStrategy.DATA_LENGTH_SIZE + SparseDataStrategy.INDEX_SIZE);
+		long dataLength = dataChannel.size();
+		long remaining = dataLength - offset;
+		if(remaining < headerSize)
+		{
+			truncateData(dataChannel, offset);
+			return indexStrategy.getSize(indexChannel);
+		}
+		long[] offsets = new long[(int) Math.min(OFFSET_BATCH_SIZE, remaining / headerSize)];
+		int offsetCount = 0;
+		long firstIndex = 0;
+		ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(SCAN_BUFFER_SIZE, remaining));
+		long chunkOffset = offset;
+		chunk.limit(0);
+		for(;;)
+		{
+			int position = (int) (offset - chunkOffset);
+			if(chunk.limit() - position < headerSize)
+			{
+				if(dataLength - offset < headerSize)
+				{
+					break;
+				}
+				chunkOffset = offset;
+				position = 0;
+				chunk = fill(dataChannel, chunk, offset, headerSize, dataLength);
+			}
+			int length = chunk.getInt(position);
+			long index = chunk.getLong(position + DATA_LENGTH_SIZE);
+			long end = offset + headerSize + length;
+			if(length < 0 || index < 0 || end > dataLength)
+			{
+				break;
+			}
+			if(offsetCount > 0 && (index != firstIndex + offsetCount || offsetCount == offsets.length))
+			{
+				indexStrategy.setOffsets(indexChannel, firstIndex, Arrays.copyOf(offsets, offsetCount));
+				offsetCount = 0;
+			}
+			if(offsetCount == 0)
+			{
+				firstIndex = index;
+			}
+			offsets[offsetCount] = offset;
+			offsetCount++;
+			offset = end;
+		}
+		if(offsetCount > 0)
+		{
+			indexStrategy.setOffsets(indexChannel, firstIndex, Arrays.copyOf(offsets, offsetCount));
+		}
+		truncateData(dataChannel, offset);
+		return indexStrategy.getSize(indexChannel);
+	}
+
+	private static void truncateData(FileChannel dataChannel, long offset)
+		throws IOException
+	{
+		if(dataChannel.size() > offset)
+		{
+			dataChannel.truncate(offset);
+		}
+	}
+
+	/**
+	 * Reads as much data as possible, but at least the given number of bytes, starting at the given offset.
+	 *
+	 * @return the chunk containing the data, starting at index 0, replaced by a larger one if necessary.
+	 */
+	private static ByteBuffer fill(FileChannel dataChannel, ByteBuffer chunk, long offset, int minimumSize, long dataLength)
+		throws IOException
+	{
+		ByteBuffer result = chunk;
+		if(result.capacity() < minimumSize)
+		{
+			result = ByteBuffer.allocate(minimumSize);
+		}
+		result.clear();
+		result.limit((int) Math.min(result.capacity(), dataLength - offset));
+		FileChannels.readFully(dataChannel, result, offset);
+		result.flip();
+		return result;
+	}
+}
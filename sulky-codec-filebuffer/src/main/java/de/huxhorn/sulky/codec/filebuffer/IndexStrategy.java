@@ -36,6 +36,7 @@ package de.huxhorn.sulky.codec.filebuffer;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
 public interface IndexStrategy
 {
@@ -47,4 +48,133 @@ public interface IndexStrategy
 
 	long getSize(RandomAccessFile indexFile)
 		throws IOException;
+
+	/**
+	 * Returns the offsets of up to count consecutive entries, starting at the given index.
+	 *
+	 * Implementations are supposed to read all offsets at once.
+	 * The default implementation calls getOffset for every entry.
+	 *
+	 * @param indexFile the index file.
+	 * @param index the index of the first entry.
+	 * @param count the maximum number of entries.
+	 * @return the offsets, shorter than count if the index file does not contain that many entries.
+	 * Empty if index is negative or count is not positive.
+	 * @throws IOException in case of IOException :p
+	 */
+	default long[] getOffsets(RandomAccessFile indexFile, long index, int count)
+		throws IOException
+	{
+		if(index < 0 || count <= 0)
+		{
+			return new long[0];
+		}
+		long available = getSize(indexFile) - index;
+		if(available <= 0)
+		{
+			return new long[0];
+		}
+		long[] result = new long[(int) Math.min(count, available)];
+		for(int i = 0; i < result.length; i++)
+		{
+			result[i] = getOffset(indexFile, index + i);
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the offsets of consecutive entries, starting at the given index.
+	 *
+	 * Implementations are supposed to write all offsets at once.
+	 * The default implementation calls setOffset for every entry.
+	 *
+	 * @param indexFile the index file.
+	 * @param index the index of the first entry.
+	 * @param offsets the offsets of the entries.
+	 * @throws IOException in case of IOException :p
+	 */
+	default void setOffsets(RandomAccessFile indexFile, long index, long[] offsets)
+		throws IOException
+	{
+		for(int i = 0; i < offsets.length; i++)
+		{
+			setOffset(indexFile, index + i, offsets[i]);
+		}
+	}
+
+	/*
+	 * The FileChannel variants below must only use positional reads and writes,
+	 * i.e. they must not depend on or change the position of the channel.
+	 * This enables concurrent reads on the same channel.
+	 *
+	 * They are required by CodecFileBuffer instances using a channel pool, ConcurrentReadOnlyCodecFileBuffer,
+	 * IndexRecovery and SparseCompaction. The defaults of the single entry methods throw
+	 * an UnsupportedOperationException.
+	 */
+
+	default void setOffset(FileChannel indexChannel, long index, long offset)
+		throws IOException
+	{
+		throw new UnsupportedOperationException(getClass().getName() + " does not support FileChannel access!");
+	}
+
+	default long getOffset(FileChannel indexChannel, long index)
+		throws IOException
+	{
+		throw new UnsupportedOperationException(getClass().getName() + " does not support FileChannel access!");
+	}
+
+	default long getSize(FileChannel indexChannel)
+		throws IOException
+	{
+		throw new UnsupportedOperationException(getClass().getName() + " does not support FileChannel access!");
+	}
+
+	/**
+	 * FileChannel variant of getOffsets(RandomAccessFile, long, int).
+	 * The default implementation calls getOffset for every entry.
+	 *
+	 * @param indexChannel the channel of the index file.
+	 * @param index the index of the first entry.
+	 * @param count the maximum number of entries.
+	 * @return the offsets, shorter than count if the index file does not contain that many entries.
+	 * @throws IOException in case of IOException :p
+	 */
+	default long[] getOffsets(FileChannel indexChannel, long index, int count)
+		throws IOException
+	{
+		if(index < 0 || count <= 0)
+		{
+			return new long[0];
+		}
+		long available = getSize(indexChannel) - index;
+		if(available <= 0)
+		{
+			return new long[0];
+		}
+		long[] result = new long[(int) Math.min(count, available)];
+		for(int i = 0; i < result.length; i++)
+		{
+			result[i] = getOffset(indexChannel, index + i);
+		}
+		return result;
+	}
+
+	/**
+	 * FileChannel variant of setOffsets(RandomAccessFile, long, long[]).
+	 * The default implementation calls setOffset for every entry.
+	 *
+	 * @param indexChannel the channel of the index file.
+	 * @param index the index of the first entry.
+	 * @param offsets the offsets of the entries.
+	 * @throws IOException in case of IOException :p
+	 */
+	default void setOffsets(FileChannel indexChannel, long index, long[] offsets)
+		throws IOException
+	{
+		for(int i = 0; i < offsets.length; i++)
+		{
+			setOffset(indexChannel, index + i, offsets[i]);
+		}
+	}
 }
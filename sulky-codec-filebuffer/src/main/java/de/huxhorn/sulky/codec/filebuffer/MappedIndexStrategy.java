@@ -0,0 +1,234 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.buffers.ResetOperation;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * IndexStrategy that maps the index file into memory, segment by segment.
+ *
+ * <p>Offsets are read from the mapped segments without any system call. A segment that does not yet cover
+ * the requested entry, e.g. because the file was extended in the meantime, is mapped again on demand.
+ * Offsets are written using the given channel or file so the format of the index file is identical to the
+ * one written by DefaultIndexStrategy.</p>
+ *
+ * <p>The number of entries is read from the file only once and tracked in memory afterwards.
+ * An instance must therefore only be used for a single index file and that file must not be changed by
+ * anything else. reset() must be called if the index file is deleted or replaced.</p>
+ *
+ * <p>This class is thread-safe for concurrent reads. Writes must not be executed concurrently with each other
+ * or with reads, e.g. by using a ReadWriteLock.</p>
+ */
+public class MappedIndexStrategy
+	implements IndexStrategy, ResetOperation
+{
+	public static final long DATA_OFFSET_SIZE = DefaultIndexStrategy.DATA_OFFSET_SIZE;
+
+	/**
+	 * 64MB, i.e. 8M offsets per segment.
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private final IndexStrategy fallbackStrategy = new DefaultIndexStrategy();
+	private final MappedSegments segments;
+	private final Object sizeLock = new Object();
+
+	/**
+	 * The number of entries or -1 if unknown.
+	 */
+	private volatile long size;
+
+	public MappedIndexStrategy()
+	{
+		this(DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param segmentSize the maximum size of a single mapped segment in bytes. Must be a positive multiple of 8.
+	 */
+	public MappedIndexStrategy(int segmentSize)
+	{
+		if(segmentSize <= 0 || segmentSize % DATA_OFFSET_SIZE != 0)
+		{
+			throw new IllegalArgumentException("segmentSize must be a positive multiple of " + DATA_OFFSET_SIZE + " but was " + segmentSize + "!");
+		}
+		this.segments = new MappedSegments(segmentSize);
+		this.size = -1;
+	}
+
+	public int getSegmentSize()
+	{
+		return segments.getSegmentSize();
+	}
+
+	/**
+	 * Forgets both the mapped segments and the number of entries.
+	 *
+	 * This must be called if the index file is deleted or replaced.
+	 */
+	@Override
+	public void reset()
+	{
+		synchronized(sizeLock)
+		{
+			segments.clear();
+			size = -1;
+		}
+	}
+
+	@Override
+	public void setOffset(RandomAccessFile indexFile, long index, long offset)
+		throws IOException
+	{
+		setOffset(indexFile.getChannel(), index, offset);
+	}
+
+	@Override
+	public long getOffset(RandomAccessFile indexFile, long index)
+		throws IOException
+	{
+		return getOffset(indexFile.getChannel(), index);
+	}
+
+	@Override
+	public long getSize(RandomAccessFile indexFile)
+		throws IOException
+	{
+		return getSize(indexFile.getChannel());
+	}
+
+	@Override
+	public long[] getOffsets(RandomAccessFile indexFile, long index, int count)
+		throws IOException
+	{
+		return getOffsets(indexFile.getChannel(), index, count);
+	}
+
+	@Override
+	public void setOffsets(RandomAccessFile indexFile, long index, long[] offsets)
+		throws IOException
+	{
+		setOffsets(indexFile.getChannel(), index, offsets);
+	}
+
+	@Override
+	public void setOffset(FileChannel indexChannel, long index, long offset)
+		throws IOException
+	{
+		long currentSize = getSize(indexChannel);
+		if(index < currentSize)
+		{
+			ByteBuffer buffer = ByteBuffer.allocate((int) DATA_OFFSET_SIZE);
+			buffer.putLong(offset);
+			buffer.flip();
+			FileChannels.writeFully(indexChannel, buffer, DATA_OFFSET_SIZE * index);
+		}
+		else
+		{
+			// extends the file, filling with -1 if necessary.
+			fallbackStrategy.setOffset(indexChannel, index, offset);
+			size = index + 1;
+		}
+	}
+
+	@Override
+	public void setOffsets(FileChannel indexChannel, long index, long[] offsets)
+		throws IOException
+	{
+		long currentSize = getSize(indexChannel);
+		fallbackStrategy.setOffsets(indexChannel, index, offsets);
+		long end = index + offsets.length;
+		if(end > currentSize)
+		{
+			size = end;
+		}
+	}
+
+	@Override
+	public long getOffset(FileChannel indexChannel, long index)
+		throws IOException
+	{
+		if(index < 0 || index >= getSize(indexChannel))
+		{
+			return -1;
+		}
+		return segments.getLong(indexChannel, DATA_OFFSET_SIZE * index);
+	}
+
+	@Override
+	public long[] getOffsets(FileChannel indexChannel, long index, int count)
+		throws IOException
+	{
+		if(index < 0 || count <= 0)
+		{
+			return new long[0];
+		}
+		long available = getSize(indexChannel) - index;
+		if(available <= 0)
+		{
+			return new long[0];
+		}
+		long[] result = new long[(int) Math.min(count, available)];
+		for(int i = 0; i < result.length; i++)
+		{
+			result[i] = segments.getLong(indexChannel, DATA_OFFSET_SIZE * (index + i));
+		}
+		return result;
+	}
+
+	@Override
+	public long getSize(FileChannel indexChannel)
+		throws IOException
+	{
+		long result = size;
+		if(result < 0)
+		{
+			synchronized(sizeLock)
+			{
+				result = size;
+				if(result < 0)
+				{
+					result = fallbackStrategy.getSize(indexChannel);
+					size = result;
+				}
+			}
+		}
+		return result;
+	}
+}
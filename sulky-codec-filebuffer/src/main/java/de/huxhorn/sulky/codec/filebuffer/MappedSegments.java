@@ -0,0 +1,174 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Read-only mapping of a growing file, split into segments of a fixed size.
+ *
+ * A segment is mapped on first access. It is mapped again if the file has grown and the requested
+ * region isn't covered by the current mapping of the segment, yet.
+ * Regions crossing the border between two segments are not supported.
+ *
+ * This class is thread-safe.
+ */
+final class MappedSegments
+{
+	private static final MappedByteBuffer[] NO_SEGMENTS = new MappedByteBuffer[0];
+
+	private final int segmentSize;
+	private final Object mappingLock = new Object();
+	private volatile MappedByteBuffer[] segments;
+
+	MappedSegments(int segmentSize)
+	{
+		if(segmentSize <= 0)
+		{
+			throw new IllegalArgumentException("segmentSize must be positive but was " + segmentSize + "!");
+		}
+		this.segmentSize = segmentSize;
+		this.segments = NO_SEGMENTS;
+	}
+
+	int getSegmentSize()
+	{
+		return segmentSize;
+	}
+
+	/**
+	 * Forgets all mapped segments. They are unmapped by the garbage collector.
+	 */
+	void clear()
+	{
+		synchronized(mappingLock)
+		{
+			segments = NO_SEGMENTS;
+		}
+	}
+
+	/**
+	 * @param channel the channel of the file, used for mapping if necessary.
+	 * @param position the position of the long in the file.
+	 * @return the long at the given position.
+	 * @throws IOException in case of IOException :p
+	 * @throws IndexOutOfBoundsException if the long isn't contained in a single segment of the file.
+	 */
+	long getLong(FileChannel channel, long position)
+		throws IOException
+	{
+		MappedByteBuffer segment = getSegment(channel, position, 8);
+		if(segment == null)
+		{
+			throw new IndexOutOfBoundsException("Can't read long at position " + position + "!");
+		}
+		return segment.getLong((int) (position % segmentSize));
+	}
+
+	/**
+	 * Returns a read-only view of the given region.
+	 *
+	 * @param channel the channel of the file, used for mapping if necessary.
+	 * @param position the start of the region.
+	 * @param length the length of the region.
+	 * @return a view of the region or null if the region isn't contained in a single segment of the file.
+	 * @throws IOException in case of IOException :p
+	 */
+	ByteBuffer slice(FileChannel channel, long position, int length)
+		throws IOException
+	{
+		MappedByteBuffer segment = getSegment(channel, position, length);
+		if(segment == null)
+		{
+			return null;
+		}
+		int segmentPosition = (int) (position % segmentSize);
+		ByteBuffer result = segment.duplicate();
+		result.position(segmentPosition);
+		result.limit(segmentPosition + length);
+		return result.slice();
+	}
+
+	private MappedByteBuffer getSegment(FileChannel channel, long position, int length)
+		throws IOException
+	{
+		if(position < 0 || length < 0)
+		{
+			return null;
+		}
+		long segmentPosition = position % segmentSize;
+		if(segmentPosition + length > segmentSize)
+		{
+			return null;
+		}
+		int segmentIndex = (int) (position / segmentSize);
+		int requiredLimit = (int) segmentPosition + length;
+
+		MappedByteBuffer[] currentSegments = segments;
+		MappedByteBuffer result = segmentIndex < currentSegments.length ? currentSegments[segmentIndex] : null;
+		if(result != null && result.limit() >= requiredLimit)
+		{
+			return result;
+		}
+
+		synchronized(mappingLock)
+		{
+			currentSegments = segments;
+			result = segmentIndex < currentSegments.length ? currentSegments[segmentIndex] : null;
+			if(result != null && result.limit() >= requiredLimit)
+			{
+				return result;
+			}
+
+			long segmentStart = (long) segmentIndex * segmentSize;
+			long mappedSize = Math.min(segmentSize, channel.size() - segmentStart);
+			if(mappedSize < requiredLimit)
+			{
+				// region is beyond the end of the file
+				return null;
+			}
+			result = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, mappedSize);
+			// never modify an array that is already visible to readers
+			currentSegments = Arrays.copyOf(currentSegments, Math.max(currentSegments.length, segmentIndex + 1));
+			currentSegments[segmentIndex] = result;
+			segments = currentSegments;
+			return result;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.codec.Codec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Encodes a list of elements in parallel, keeping their order.
+ *
+ * The list is split recursively until a part contains at most CHUNK_SIZE elements.
+ * The Codec must therefore be thread-safe.
+ *
+ * @param <E> the type of the elements.
+ */
+final class ParallelEncoder<E>
+	extends RecursiveAction
+{
+	private static final long serialVersionUID = 4510186546302406431L;
+
+	/**
+	 * The maximum number of elements encoded by a single task.
+	 */
+	static final int CHUNK_SIZE = 64;
+
+	private final transient List<E> elements;
+	private final transient Codec<E> codec;
+	private final byte[][] result;
+	private final int from;
+	private final int to;
+
+	private ParallelEncoder(List<E> elements, Codec<E> codec, byte[][] result, int from, int to)
+	{
+		this.elements = elements;
+		this.codec = codec;
+		this.result = result;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Encodes all elements using the given pool.
+	 *
+	 * @param elements the elements to encode.
+	 * @param codec the codec used to encode the elements.
+	 * @param pool the pool executing the encoding.
+	 * @param <E> the type of the elements.
+	 * @return the encoded elements, in the same order as elements.
+	 * @throws IllegalStateException if codec is null.
+	 */
+	static <E> List<byte[]> encode(List<E> elements, Codec<E> codec, ForkJoinPool pool)
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		List<E> list = elements;
+		if(!(list instanceof RandomAccess))
+		{
+			list = new ArrayList<>(elements);
+		}
+		byte[][] result = new byte[list.size()][];
+		pool.invoke(new ParallelEncoder<>(list, codec, result, 0, result.length));
+		return Arrays.asList(result);
+	}
+
+	@Override
+	protected void compute()
+	{
+		if(to - from <= CHUNK_SIZE)
+		{
+			for(int i = from; i < to; i++)
+			{
+				result[i] = codec.encode(elements.get(i));
+			}
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		invokeAll(new ParallelEncoder<>(elements, codec, result, from, middle),
+				new ParallelEncoder<>(elements, codec, result, middle, to));
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * Positional read and write helpers for RandomAccessFile.
+ *
+ * Those are implemented using seek instead of the FileChannel of the file since channel I/O is interruptible,
+ * i.e. interrupting a thread during a read or write would close the file for every other user, too.
+ */
+final class RandomAccessFiles
+{
+	private RandomAccessFiles()
+	{}
+
+	/**
+	 * Reads bytes from the file until the buffer is full.
+	 *
+	 * @param file the file to read from.
+	 * @param buffer the buffer to fill.
+	 * @param position the file position to start reading at.
+	 * @throws java.io.EOFException if the end of the file is reached before the buffer is full.
+	 * @throws IOException in case of IOException :p
+	 */
+	static void readFully(RandomAccessFile file, ByteBuffer buffer, long position)
+		throws IOException
+	{
+		int length = buffer.remaining();
+		file.seek(position);
+		if(buffer.hasArray())
+		{
+			file.readFully(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+			buffer.position(buffer.limit());
+			return;
+		}
+		byte[] bytes = new byte[length];
+		file.readFully(bytes);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Writes all remaining bytes of the buffer to the file.
+	 *
+	 * @param file the file to write to.
+	 * @param buffer the buffer to write.
+	 * @param position the file position to start writing at.
+	 * @throws IOException in case of IOException :p
+	 */
+	static void writeFully(RandomAccessFile file, ByteBuffer buffer, long position)
+		throws IOException
+	{
+		int length = buffer.remaining();
+		file.seek(position);
+		if(buffer.hasArray())
+		{
+			file.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+			buffer.position(buffer.limit());
+			return;
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		file.write(bytes);
+	}
+}
@@ -36,27 +36,33 @@ package de.huxhorn.sulky.codec.filebuffer;
 
 import de.huxhorn.sulky.buffers.BasicBufferIterator;
 import de.huxhorn.sulky.buffers.Buffer;
+import de.huxhorn.sulky.buffers.RangeRead;
+import de.huxhorn.sulky.buffers.RangeReadOperation;
+import de.huxhorn.sulky.buffers.Reset;
 import de.huxhorn.sulky.codec.Codec;
 import java.io.File;
 import java.io.IOException;
 import java.io.InvalidClassException;
 import java.io.RandomAccessFile;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class ReadOnlyExclusiveCodecFileBuffer<E>
-	implements Buffer<E>
+	implements Buffer<E>, RangeReadOperation<E>
 {
 	private final Logger logger = LoggerFactory.getLogger(ReadOnlyExclusiveCodecFileBuffer.class);
 	private final Lock lock=new ReentrantLock();
 
 	private Codec<E> codec;
 	private DataStrategy<E> dataStrategy;
-	private IndexStrategy indexStrategy;
+	private final IndexStrategy indexStrategy;
 	private FileHeader fileHeader;
+	private boolean mappingData;
 	private RandomAccessFile randomAccessIndexFile;
 	private RandomAccessFile randomAccessDataFile;
 
@@ -69,7 +75,27 @@ public class ReadOnlyExclusiveCodecFileBuffer<E>
 	public ReadOnlyExclusiveCodecFileBuffer(File dataFile, File indexFile, FileHeaderStrategy fileHeaderStrategy)
 			throws IOException
 	{
-		this.indexStrategy = new DefaultIndexStrategy();
+		this(dataFile, indexFile, fileHeaderStrategy, new DefaultIndexStrategy());
+	}
+
+	/**
+	 * The indexStrategy must not be shared with any other buffer.
+	 * If it implements ResetOperation, it is reset by close().
+	 *
+	 * @param dataFile           the data file.
+	 * @param indexFile          the index file of the buffer.
+	 * @param fileHeaderStrategy the strategy used to read the file header.
+	 * @param indexStrategy      the strategy used to read the index file, e.g. MappedIndexStrategy.
+	 * @throws IOException in case of IOException :p
+	 */
+	public ReadOnlyExclusiveCodecFileBuffer(File dataFile, File indexFile, FileHeaderStrategy fileHeaderStrategy, IndexStrategy indexStrategy)
+			throws IOException
+	{
+		if(indexStrategy == null)
+		{
+			throw new IllegalArgumentException("indexStrategy must not be null!");
+		}
+		this.indexStrategy = indexStrategy;
 		if(!dataFile.canRead())
 		{
 			throw new IllegalArgumentException("'"+dataFile.getAbsolutePath()+"' is not readable.");
@@ -124,6 +150,40 @@ public class ReadOnlyExclusiveCodecFileBuffer<E>
 		}
 	}
 
+	public boolean isMappingData()
+	{
+		lock.lock();
+		try
+		{
+			return mappingData;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Defines whether or not elements are read from a read-only mapping of the data file.
+	 *
+	 * If the codec is a ByteBufferDecoder, elements are decoded directly from the mapped file without copying.
+	 *
+	 * @param mappingData whether or not elements are read from a read-only mapping of the data file.
+	 */
+	public void setMappingData(boolean mappingData)
+	{
+		lock.lock();
+		try
+		{
+			this.mappingData = mappingData;
+			setFileHeader(fileHeader);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
 	/**
 	 * If no element is found, null is returned.
 	 *
@@ -182,6 +242,52 @@ public class ReadOnlyExclusiveCodecFileBuffer<E>
 		return null;
 	}
 
+	/**
+	 * Reads the offsets as well as the data covering the elements at once.
+	 * Falls back to get(index) for every element in case of an error.
+	 *
+	 * @param from the index of the first element.
+	 * @param count the maximum number of elements.
+	 * @return the elements in the given range.
+	 * @throws IllegalStateException if no Decoder has been set.
+	 */
+	@Override
+	public List<E> get(long from, int count)
+	{
+		Throwable throwable = null;
+		lock.lock();
+		try
+		{
+			if(codec == null)
+			{
+				throw new IllegalStateException("codec must not be null!");
+			}
+			if(randomAccessIndexFile != null && randomAccessDataFile != null)
+			{
+				try
+				{
+					return dataStrategy.getRange(from, count, randomAccessIndexFile, randomAccessDataFile, codec, indexStrategy);
+				}
+				catch(Throwable e)
+				{
+					throwable = e;
+				}
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		// it's a really bad idea to log while locked *sigh*
+		if(throwable != null)
+		{
+			if(logger.isDebugEnabled()) logger.debug("Couldn't retrieve range of {} elements at index {}, retrieving them one by one.", count, from, throwable);
+			return RangeRead.get(this, from, count, getSize());
+		}
+		if(logger.isWarnEnabled()) logger.warn("Buffer has already been closed.");
+		return Collections.emptyList();
+	}
+
 	@Override
 	public long getSize()
 	{
@@ -257,6 +363,8 @@ public class ReadOnlyExclusiveCodecFileBuffer<E>
 					randomAccessDataFile = null;
 				}
 			}
+			Reset.reset(indexStrategy);
+			Reset.reset(dataStrategy);
 		}
 		finally
 		{
@@ -283,13 +391,18 @@ public class ReadOnlyExclusiveCodecFileBuffer<E>
 		try
 		{
 			MetaData metaData = fileHeader.getMetaData();
+			BlockCompressor compressor = BlockCompressingDataStrategy.resolveCompressor(metaData);
 			if(metaData.isSparse())
 			{
-				dataStrategy = new SparseDataStrategy<>();
+				dataStrategy = new SparseDataStrategy<>(true, mappingData);
+			}
+			else if(compressor != null)
+			{
+				dataStrategy = new BlockCompressingDataStrategy<>(compressor);
 			}
 			else
 			{
-				dataStrategy = new DefaultDataStrategy<>();
+				dataStrategy = new DefaultDataStrategy<>(mappingData, DefaultDataStrategy.isUsingChecksums(metaData));
 			}
 			this.fileHeader = fileHeader;
 		}
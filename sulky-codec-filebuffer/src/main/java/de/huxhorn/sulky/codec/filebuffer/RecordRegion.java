@@ -0,0 +1,205 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A contiguous region of a data file, read using a single positional read.
+ *
+ * Every record is expected to start with the int length of its payload, followed by the rest of the header
+ * and the payload itself.
+ */
+final class RecordRegion
+{
+	/**
+	 * 8MB. Records spread over a larger region are read one by one instead.
+	 */
+	static final int MAX_REGION_SIZE = 8 * 1024 * 1024;
+
+	private final long start;
+	private final int headerSize;
+	private final ByteBuffer bytes;
+
+	private RecordRegion(long start, int headerSize, ByteBuffer bytes)
+	{
+		this.start = start;
+		this.headerSize = headerSize;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Reads the region covering the records at all valid, i.e. non-negative, offsets.
+	 *
+	 * @param dataChannel the channel of the data file.
+	 * @param offsets the offsets of the records.
+	 * @param headerSize the size of the header of a record, including the length.
+	 * @return the region or null if there is no valid offset, the last record is invalid
+	 * or the region would be larger than MAX_REGION_SIZE.
+	 * @throws IOException in case of IOException :p
+	 */
+	static RecordRegion read(FileChannel dataChannel, long[] offsets, int headerSize)
+		throws IOException
+	{
+		long max = max(offsets);
+		if(max < 0)
+		{
+			return null;
+		}
+		long dataLength = dataChannel.size();
+		if(max + headerSize > dataLength)
+		{
+			return null;
+		}
+		ByteBuffer lengthBuffer = ByteBuffer.allocate((int) DefaultDataStrategy.DATA_LENGTH_SIZE);
+		FileChannels.readFully(dataChannel, lengthBuffer, max);
+		int length = lengthBuffer.getInt(0);
+		long end = max + headerSize + length;
+		long min = min(offsets);
+		if(length < 0 || end > dataLength || end - min > MAX_REGION_SIZE)
+		{
+			return null;
+		}
+		ByteBuffer bytes = ByteBuffer.allocate((int) (end - min));
+		FileChannels.readFully(dataChannel, bytes, min);
+		return new RecordRegion(min, headerSize, bytes);
+	}
+
+	/**
+	 * RandomAccessFile variant of read.
+	 *
+	 * @param dataFile the data file.
+	 * @param offsets the offsets of the records.
+	 * @param headerSize the size of the header of a record, including the length.
+	 * @return the region or null if there is no valid offset, the last record is invalid
+	 * or the region would be larger than MAX_REGION_SIZE.
+	 * @throws IOException in case of IOException :p
+	 */
+	static RecordRegion read(RandomAccessFile dataFile, long[] offsets, int headerSize)
+		throws IOException
+	{
+		long max = max(offsets);
+		if(max < 0)
+		{
+			return null;
+		}
+		long dataLength = dataFile.length();
+		if(max + headerSize > dataLength)
+		{
+			return null;
+		}
+		ByteBuffer lengthBuffer = ByteBuffer.allocate((int) DefaultDataStrategy.DATA_LENGTH_SIZE);
+		RandomAccessFiles.readFully(dataFile, lengthBuffer, max);
+		int length = lengthBuffer.getInt(0);
+		long end = max + headerSize + length;
+		long min = min(offsets);
+		if(length < 0 || end > dataLength || end - min > MAX_REGION_SIZE)
+		{
+			return null;
+		}
+		ByteBuffer bytes = ByteBuffer.allocate((int) (end - min));
+		RandomAccessFiles.readFully(dataFile, bytes, min);
+		return new RecordRegion(min, headerSize, bytes);
+	}
+
+	/**
+	 * @return the smallest valid offset or Long.MAX_VALUE if there is none.
+	 */
+	private static long min(long[] offsets)
+	{
+		long min = Long.MAX_VALUE;
+		for(long offset : offsets)
+		{
+			if(offset >= 0)
+			{
+				min = Math.min(min, offset);
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * @return the largest valid offset or -1 if there is none.
+	 */
+	private static long max(long[] offsets)
+	{
+		long max = -1;
+		for(long offset : offsets)
+		{
+			if(offset >= 0)
+			{
+				max = Math.max(max, offset);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @param offset the offset of the record.
+	 * @param position the position of the int inside of the header of the record.
+	 * @return the int at the given position of the header of the record at the given offset.
+	 * @throws IndexOutOfBoundsException if the header is not contained in this region.
+	 */
+	int getHeaderInt(long offset, int position)
+	{
+		return bytes.getInt((int) (offset - start) + position);
+	}
+
+	/**
+	 * @param offset the offset of the record.
+	 * @return the payload of the record at the given offset or null if it is not contained in this region.
+	 */
+	ByteBuffer getPayload(long offset)
+	{
+		long relative = offset - start;
+		if(relative < 0 || relative + headerSize > bytes.capacity())
+		{
+			return null;
+		}
+		int length = bytes.getInt((int) relative);
+		long payloadStart = relative + headerSize;
+		if(length < 0 || payloadStart + length > bytes.capacity())
+		{
+			return null;
+		}
+		ByteBuffer result = bytes.duplicate();
+		result.limit((int) (payloadStart + length));
+		result.position((int) payloadStart);
+		return result.slice();
+	}
+}
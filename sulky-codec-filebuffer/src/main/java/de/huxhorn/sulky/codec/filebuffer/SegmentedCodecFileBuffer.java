@@ -0,0 +1,738 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.buffers.BasicBufferIterator;
+import de.huxhorn.sulky.buffers.DisposeOperation;
+import de.huxhorn.sulky.buffers.FileBuffer;
+import de.huxhorn.sulky.buffers.FlushOperation;
+import de.huxhorn.sulky.buffers.RangeReadOperation;
+import de.huxhorn.sulky.codec.Codec;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A FileBuffer consisting of multiple non-sparse CodecFileBuffer segments.
+ *
+ * <p>Elements are appended to the last segment. A new segment is started as soon as the last segment contains
+ * maxSegmentElements elements or its data file has a size of at least maxSegmentBytes.</p>
+ *
+ * <p>Every segment is stored in the given directory as a pair of data and index file. The name of the data file
+ * consists of the base name and the global index of the first element of the segment, e.g. events-0000000000000001000,
+ * so the global index of every element is retained if the buffer is reopened.</p>
+ *
+ * <p>The oldest segments are deleted by applyRetention() if there are more than retentionMaxSegments segments,
+ * the data files of all segments are larger than retentionMaxBytes or the last write to the segment is older than
+ * retentionMaxAge milliseconds. applyRetention() is called automatically whenever a new segment is started.
+ * The last segment is never deleted.</p>
+ *
+ * <p>Deleting segments does not change the indices of the remaining elements. get returns null for elements
+ * of deleted segments, getFirstIndex() returns the index of the oldest element that is still available.</p>
+ *
+ * @param <E> the type of objects that are stored in this buffer.
+ */
+public class SegmentedCodecFileBuffer<E>
+	implements FileBuffer<E>, FlushOperation, DisposeOperation, RangeReadOperation<E>
+{
+	private static final String INDEX_EXTENSION = ".index";
+	private static final int INDEX_DIGITS = 19;
+
+	private final Logger logger = LoggerFactory.getLogger(SegmentedCodecFileBuffer.class);
+
+	private final int magicValue;
+	private final Map<String, String> preferredMetaData;
+	private final Codec<E> codec;
+	private final File directory;
+	private final String baseName;
+	private final Pattern segmentPattern;
+
+	/**
+	 * Guards the list of segments.
+	 */
+	private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
+
+	/**
+	 * Serializes adding elements, starting new segments and deleting old ones.
+	 */
+	private final Lock appendLock = new ReentrantLock();
+
+	/**
+	 * Sorted by first index. Never empty.
+	 */
+	private final List<Segment<E>> segments;
+
+	private volatile long maxSegmentElements;
+	private volatile long maxSegmentBytes;
+	private volatile int retentionMaxSegments;
+	private volatile long retentionMaxBytes;
+	private volatile long retentionMaxAge;
+
+	/**
+	 * Opens the segments contained in directory or creates the first segment if there are none.
+	 *
+	 * @param magicValue        the magic value of the segments.
+	 * @param preferredMetaData the meta data of new segments. Might be null.
+	 * @param codec             the codec used by this buffer.
+	 * @param directory         the directory containing the segments.
+	 * @param baseName          the base name of the segment files.
+	 */
+	public SegmentedCodecFileBuffer(int magicValue, Map<String, String> preferredMetaData, Codec<E> codec, File directory, String baseName)
+	{
+		if(directory == null)
+		{
+			throw new IllegalArgumentException("directory must not be null!");
+		}
+		if(baseName == null)
+		{
+			throw new IllegalArgumentException("baseName must not be null!");
+		}
+		if(!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IllegalArgumentException("Could not create directory '" + directory.getAbsolutePath() + "'!");
+		}
+		this.magicValue = magicValue;
+		this.preferredMetaData = preferredMetaData;
+		this.codec = codec;
+		this.directory = directory;
+		this.baseName = baseName;
+		this.segmentPattern = Pattern.compile(Pattern.quote(baseName) + "-(\\d{" + INDEX_DIGITS + "})");
+		this.segments = new ArrayList<>();
+		initSegments();
+	}
+
+	private void initSegments()
+	{
+		List<Long> firstIndices = new ArrayList<>();
+		File[] files = directory.listFiles();
+		if(files != null)
+		{
+			for(File current : files)
+			{
+				Matcher matcher = segmentPattern.matcher(current.getName());
+				if(matcher.matches())
+				{
+					firstIndices.add(Long.parseLong(matcher.group(1)));
+				}
+			}
+		}
+		Collections.sort(firstIndices);
+		for(Long current : firstIndices)
+		{
+			segments.add(createSegment(current));
+		}
+		if(segments.isEmpty())
+		{
+			segments.add(createSegment(0));
+		}
+	}
+
+	private Segment<E> createSegment(long firstIndex)
+	{
+		StringBuilder name = new StringBuilder(baseName.length() + INDEX_DIGITS + 1);
+		name.append(baseName).append('-');
+		String index = Long.toString(firstIndex);
+		for(int i = index.length(); i < INDEX_DIGITS; i++)
+		{
+			name.append('0');
+		}
+		name.append(index);
+		File dataFile = new File(directory, name.toString());
+		File indexFile = new File(directory, name + INDEX_EXTENSION);
+		CodecFileBuffer<E> buffer = new CodecFileBuffer<>(magicValue, false, preferredMetaData, codec, dataFile, indexFile);
+		buffer.setExclusive(true);
+		return new Segment<>(firstIndex, buffer);
+	}
+
+	public long getMaxSegmentElements()
+	{
+		return maxSegmentElements;
+	}
+
+	/**
+	 * @param maxSegmentElements the number of elements after which a new segment is started, 0 for unlimited.
+	 */
+	public void setMaxSegmentElements(long maxSegmentElements)
+	{
+		if(maxSegmentElements < 0)
+		{
+			throw new IllegalArgumentException("maxSegmentElements must not be negative but was " + maxSegmentElements + "!");
+		}
+		this.maxSegmentElements = maxSegmentElements;
+	}
+
+	public long getMaxSegmentBytes()
+	{
+		return maxSegmentBytes;
+	}
+
+	/**
+	 * A segment may become larger than maxSegmentBytes since the size is only checked before elements are added.
+	 *
+	 * @param maxSegmentBytes the data file size after which a new segment is started, 0 for unlimited.
+	 */
+	public void setMaxSegmentBytes(long maxSegmentBytes)
+	{
+		if(maxSegmentBytes < 0)
+		{
+			throw new IllegalArgumentException("maxSegmentBytes must not be negative but was " + maxSegmentBytes + "!");
+		}
+		this.maxSegmentBytes = maxSegmentBytes;
+	}
+
+	public int getRetentionMaxSegments()
+	{
+		return retentionMaxSegments;
+	}
+
+	/**
+	 * @param retentionMaxSegments the maximum number of retained segments, 0 for unlimited.
+	 */
+	public void setRetentionMaxSegments(int retentionMaxSegments)
+	{
+		if(retentionMaxSegments < 0)
+		{
+			throw new IllegalArgumentException("retentionMaxSegments must not be negative but was " + retentionMaxSegments + "!");
+		}
+		this.retentionMaxSegments = retentionMaxSegments;
+	}
+
+	public long getRetentionMaxBytes()
+	{
+		return retentionMaxBytes;
+	}
+
+	/**
+	 * @param retentionMaxBytes the maximum size of the data files of all retained segments, 0 for unlimited.
+	 */
+	public void setRetentionMaxBytes(long retentionMaxBytes)
+	{
+		if(retentionMaxBytes < 0)
+		{
+			throw new IllegalArgumentException("retentionMaxBytes must not be negative but was " + retentionMaxBytes + "!");
+		}
+		this.retentionMaxBytes = retentionMaxBytes;
+	}
+
+	public long getRetentionMaxAge()
+	{
+		return retentionMaxAge;
+	}
+
+	/**
+	 * @param retentionMaxAge the maximum age of the last write to a retained segment in milliseconds, 0 for unlimited.
+	 */
+	public void setRetentionMaxAge(long retentionMaxAge)
+	{
+		if(retentionMaxAge < 0)
+		{
+			throw new IllegalArgumentException("retentionMaxAge must not be negative but was " + retentionMaxAge + "!");
+		}
+		this.retentionMaxAge = retentionMaxAge;
+	}
+
+	/**
+	 * @return the number of segments.
+	 */
+	public int getSegmentCount()
+	{
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
+		{
+			return segments.size();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the index of the first element that has not been deleted by applyRetention().
+	 */
+	public long getFirstIndex()
+	{
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
+		{
+			return segments.get(0).getFirstIndex();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the data file of the last segment.
+	 */
+	@Override
+	public File getDataFile()
+	{
+		return getLastSegment().getBuffer().getDataFile();
+	}
+
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	@Override
+	public E get(long index)
+	{
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
+		{
+			int segmentIndex = findSegment(index);
+			if(segmentIndex < 0)
+			{
+				return null;
+			}
+			Segment<E> segment = segments.get(segmentIndex);
+			return segment.getBuffer().get(index - segment.getFirstIndex());
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public List<E> get(long from, int count)
+	{
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
+		{
+			Segment<E> last = segments.get(segments.size() - 1);
+			long size = last.getFirstIndex() + last.getBuffer().getSize();
+			if(from < 0 || from >= size || count <= 0)
+			{
+				return Collections.emptyList();
+			}
+			int remaining = (int) Math.min(count, size - from);
+			List<E> result = new ArrayList<>(remaining);
+			long index = from;
+			long firstIndex = segments.get(0).getFirstIndex();
+			while(index < firstIndex && remaining > 0)
+			{
+				result.add(null);
+				index++;
+				remaining--;
+			}
+			int segmentIndex = findSegment(index);
+			while(remaining > 0 && segmentIndex >= 0 && segmentIndex < segments.size())
+			{
+				Segment<E> segment = segments.get(segmentIndex);
+				List<E> elements = segment.getBuffer().get(index - segment.getFirstIndex(), remaining);
+				if(elements.isEmpty())
+				{
+					break;
+				}
+				result.addAll(elements);
+				index += elements.size();
+				remaining -= elements.size();
+				segmentIndex++;
+			}
+			return result;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long getSize()
+	{
+		Segment<E> last = getLastSegment();
+		return last.getFirstIndex() + last.getBuffer().getSize();
+	}
+
+	@Override
+	public Iterator<E> iterator()
+	{
+		return new BasicBufferIterator<>(this);
+	}
+
+	@Override
+	public void add(E element)
+	{
+		appendLock.lock();
+		try
+		{
+			rollIfNecessary().getBuffer().add(element);
+		}
+		finally
+		{
+			appendLock.unlock();
+		}
+	}
+
+	@Override
+	public void addAll(List<E> elements)
+	{
+		appendLock.lock();
+		try
+		{
+			int offset = 0;
+			while(offset < elements.size())
+			{
+				CodecFileBuffer<E> buffer = rollIfNecessary().getBuffer();
+				int count = elements.size() - offset;
+				long maxElements = maxSegmentElements;
+				if(maxElements > 0)
+				{
+					count = (int) Math.min(count, maxElements - buffer.getSize());
+				}
+				buffer.addAll(elements.subList(offset, offset + count));
+				offset += count;
+			}
+		}
+		finally
+		{
+			appendLock.unlock();
+		}
+	}
+
+	@Override
+	public void addAll(E[] elements)
+	{
+		addAll(Arrays.asList(elements));
+	}
+
+	@Override
+	public boolean isFull()
+	{
+		return false;
+	}
+
+	/**
+	 * Deletes the oldest segments that are violating the retention settings. The last segment is never deleted.
+	 *
+	 * @return the number of deleted segments.
+	 */
+	public int applyRetention()
+	{
+		appendLock.lock();
+		try
+		{
+			int maxSegments = retentionMaxSegments;
+			long maxBytes = retentionMaxBytes;
+			long maxAge = retentionMaxAge;
+			List<Segment<E>> current = getSegments();
+			long totalBytes = 0;
+			for(Segment<E> segment : current)
+			{
+				totalBytes += segment.getBuffer().getDataFile().length();
+			}
+			long now = System.currentTimeMillis();
+			int count = 0;
+			while(count < current.size() - 1)
+			{
+				File dataFile = current.get(count).getBuffer().getDataFile();
+				boolean exceedingSegments = maxSegments > 0 && current.size() - count > maxSegments;
+				boolean exceedingBytes = maxBytes > 0 && totalBytes > maxBytes;
+				boolean exceedingAge = maxAge > 0 && now - dataFile.lastModified() > maxAge;
+				if(!exceedingSegments && !exceedingBytes && !exceedingAge)
+				{
+					break;
+				}
+				totalBytes -= dataFile.length();
+				count++;
+			}
+			if(count > 0)
+			{
+				deleteSegments(count);
+			}
+			return count;
+		}
+		finally
+		{
+			appendLock.unlock();
+		}
+	}
+
+	/**
+	 * Must be called while holding appendLock.
+	 *
+	 * @return the segment that should be used to add the next element.
+	 */
+	private Segment<E> rollIfNecessary()
+	{
+		Segment<E> last = getLastSegment();
+		CodecFileBuffer<E> buffer = last.getBuffer();
+		long size = buffer.getSize();
+		long maxElements = maxSegmentElements;
+		long maxBytes = maxSegmentBytes;
+		boolean exceedingElements = maxElements > 0 && size >= maxElements;
+		boolean exceedingBytes = maxBytes > 0 && size > 0 && buffer.getDataFile().length() >= maxBytes;
+		if(!exceedingElements && !exceedingBytes)
+		{
+			return last;
+		}
+		buffer.flush();
+		Segment<E> segment = createSegment(last.getFirstIndex() + size);
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
+		{
+			segments.add(segment);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		if(logger.isDebugEnabled()) logger.debug("Started segment {}.", segment.getBuffer().getDataFile().getAbsolutePath());
+		applyRetention();
+		return segment;
+	}
+
+	/**
+	 * Must be called while holding appendLock.
+	 */
+	private void deleteSegments(int count)
+	{
+		List<Segment<E>> deleted;
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
+		{
+			List<Segment<E>> oldest = segments.subList(0, count);
+			deleted = new ArrayList<>(oldest);
+			oldest.clear();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		logUndeletedFiles(deleteFiles(deleted));
+	}
+
+	/**
+	 * @return the files that couldn't be deleted.
+	 */
+	private static <E> List<File> deleteFiles(List<Segment<E>> deleted)
+	{
+		List<File> result = new ArrayList<>();
+		for(Segment<E> current : deleted)
+		{
+			CodecFileBuffer<E> buffer = current.getBuffer();
+			buffer.dispose();
+			File dataFile = buffer.getDataFile();
+			File indexFile = buffer.getIndexFile();
+			if(dataFile.exists() && !dataFile.delete())
+			{
+				result.add(dataFile);
+			}
+			if(indexFile.exists() && !indexFile.delete())
+			{
+				result.add(indexFile);
+			}
+		}
+		return result;
+	}
+
+	private void logUndeletedFiles(List<File> files)
+	{
+		for(File current : files)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Couldn't delete file {}.", current.getAbsolutePath()); // NOPMD
+		}
+	}
+
+	/**
+	 * Deletes all segments and starts again with a single empty segment at index 0.
+	 */
+	@Override
+	public void reset()
+	{
+		List<File> undeletedFiles;
+		appendLock.lock();
+		try
+		{
+			Lock lock = readWriteLock.writeLock();
+			lock.lock();
+			try
+			{
+				undeletedFiles = deleteFiles(segments);
+				segments.clear();
+				segments.add(createSegment(0));
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+		finally
+		{
+			appendLock.unlock();
+		}
+		logUndeletedFiles(undeletedFiles);
+	}
+
+	/**
+	 * Writes the elements of the last segment that are still kept in memory.
+	 *
+	 * @see CodecFileBuffer#flush()
+	 */
+	@Override
+	public void flush()
+	{
+		appendLock.lock();
+		try
+		{
+			getLastSegment().getBuffer().flush();
+		}
+		finally
+		{
+			appendLock.unlock();
+		}
+	}
+
+	@Override
+	public void dispose()
+	{
+		for(Segment<E> current : getSegments())
+		{
+			current.getBuffer().dispose();
+		}
+	}
+
+	@Override
+	public boolean isDisposed()
+	{
+		return false;
+	}
+
+	private Segment<E> getLastSegment()
+	{
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
+		{
+			return segments.get(segments.size() - 1);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private List<Segment<E>> getSegments()
+	{
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
+		{
+			return new ArrayList<>(segments);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Must be called while holding the read lock.
+	 *
+	 * @return the index of the segment containing the given index or -1 if there is none.
+	 */
+	private int findSegment(long index)
+	{
+		if(index < segments.get(0).getFirstIndex())
+		{
+			return -1;
+		}
+		int low = 0;
+		int high = segments.size() - 1;
+		while(low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if(segments.get(mid).getFirstIndex() <= index)
+			{
+				low = mid;
+			}
+			else
+			{
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "SegmentedCodecFileBuffer[directory=" + directory.getAbsolutePath() + ", baseName=" + baseName + ", segments=" + getSegmentCount() + "]";
+	}
+
+	private static class Segment<E>
+	{
+		private final long firstIndex;
+		private final CodecFileBuffer<E> buffer;
+
+		Segment(long firstIndex, CodecFileBuffer<E> buffer)
+		{
+			this.firstIndex = firstIndex;
+			this.buffer = buffer;
+		}
+
+		long getFirstIndex()
+		{
+			return firstIndex;
+		}
+
+		CodecFileBuffer<E> getBuffer()
+		{
+			return buffer;
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.codec.Codec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spliterator reading the records of a non-sparse data file sequentially.
+ *
+ * <p>Records are read through a read-ahead buffer of READ_AHEAD_SIZE bytes, one positional read per refill.
+ * The next record is found using the length of the current one, so the index is only used to find
+ * the first record of a part created by trySplit().</p>
+ *
+ * <p>The spliterator covers the elements the buffer contained at the time of its creation. It does not keep
+ * any file open between two refills. Iteration ends early if a record can't be read, e.g. because the buffer
+ * has been reset in the meantime.</p>
+ *
+ * @param <E> the type of the elements.
+ */
+final class SequentialSpliterator<E>
+	implements Spliterator<E>
+{
+	private final Logger logger = LoggerFactory.getLogger(SequentialSpliterator.class);
+
+	/**
+	 * 1MB. Records larger than this are read using a buffer of their own size.
+	 */
+	static final int READ_AHEAD_SIZE = 1024 * 1024;
+
+	/**
+	 * trySplit() does not split parts containing less than twice this number of elements.
+	 */
+	static final long MIN_SPLIT_SIZE = 1024;
+
+	private static final int DATA_LENGTH_SIZE = (int) DefaultDataStrategy.DATA_LENGTH_SIZE;
+
+	private final CodecFileBuffer<E> buffer;
+	private final File dataFile;
+	private final Codec<E> codec;
+	private final boolean usingChecksums;
+	private final int recordHeaderSize;
+	private long index;
+	private final long end;
+
+	/**
+	 * The offset of the record at index or -1 if it has to be resolved using the index.
+	 */
+	private long offset;
+
+	private ByteBuffer readAhead;
+	private long readAheadOffset;
+
+	/**
+	 * @param buffer the buffer, used to resolve the offset of the first record if offset is -1.
+	 * @param dataFile the data file.
+	 * @param codec the codec used to decode the elements.
+	 * @param usingChecksums whether or not the records contain checksums.
+	 * @param index the index of the first element.
+	 * @param end the index after the last element.
+	 * @param offset the offset of the record at index or -1 if unknown.
+	 */
+	SequentialSpliterator(CodecFileBuffer<E> buffer, File dataFile, Codec<E> codec, boolean usingChecksums, long index, long end, long offset)
+	{
+		this.buffer = buffer;
+		this.dataFile = dataFile;
+		this.codec = codec;
+		this.usingChecksums = usingChecksums;
+		this.recordHeaderSize = DefaultDataStrategy.getRecordHeaderSize(usingChecksums);
+		this.index = index;
+		this.end = end;
+		this.offset = offset;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super E> action)
+	{
+		if(index >= end)
+		{
+			return false;
+		}
+		ByteBuffer payload;
+		try
+		{
+			if(offset < 0)
+			{
+				offset = buffer.getDataOffset(index);
+			}
+			payload = readPayload();
+		}
+		catch(IOException e)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Couldn't read element at index {}!", index, e);
+			payload = null;
+		}
+		if(payload == null)
+		{
+			if(logger.isInfoEnabled()) logger.info("Stopping iteration at index {} of {}.", index, end);
+			index = end;
+			return false;
+		}
+		E element = null;
+		int payloadSize = payload.remaining();
+		try
+		{
+			if(usingChecksums)
+			{
+				DefaultDataStrategy.verifyChecksum(payload, readAhead.getInt((int) (offset - readAheadOffset) + DATA_LENGTH_SIZE), offset);
+			}
+			element = DefaultDataStrategy.decode(payload, codec);
+		}
+		catch(Throwable e)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Couldn't decode element at index {}!", index, e);
+		}
+		offset += recordHeaderSize + payloadSize;
+		index++;
+		action.accept(element);
+		return true;
+	}
+
+	@Override
+	public Spliterator<E> trySplit()
+	{
+		long remaining = end - index;
+		if(remaining < 2 * MIN_SPLIT_SIZE)
+		{
+			return null;
+		}
+		long middle = index + remaining / 2;
+		SequentialSpliterator<E> prefix = new SequentialSpliterator<>(buffer, dataFile, codec, usingChecksums, index, middle, offset);
+		index = middle;
+		offset = -1;
+		readAhead = null;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize()
+	{
+		return end - index;
+	}
+
+	@Override
+	public int characteristics()
+	{
+		return ORDERED | SIZED | SUBSIZED;
+	}
+
+	/**
+	 * @return the payload of the record at offset or null if there is no valid record.
+	 */
+	private ByteBuffer readPayload()
+		throws IOException
+	{
+		if(offset < 0 || !ensureAvailable(recordHeaderSize))
+		{
+			return null;
+		}
+		int position = (int) (offset - readAheadOffset);
+		int length = readAhead.getInt(position);
+		if(length < 0 || !ensureAvailable(recordHeaderSize + length))
+		{
+			return null;
+		}
+		position = (int) (offset - readAheadOffset) + recordHeaderSize;
+		ByteBuffer result = readAhead.duplicate();
+		result.limit(position + length);
+		result.position(position);
+		return result.slice();
+	}
+
+	/**
+	 * Makes sure that the read-ahead buffer contains count bytes starting at offset, refilling it if necessary.
+	 *
+	 * @return false if the data file does not contain count bytes starting at offset.
+	 */
+	private boolean ensureAvailable(int count)
+		throws IOException
+	{
+		if(readAhead != null && offset >= readAheadOffset && offset + count <= readAheadOffset + readAhead.limit())
+		{
+			return true;
+		}
+		try(FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ))
+		{
+			long available = channel.size() - offset;
+			if(available < count)
+			{
+				return false;
+			}
+			int size = (int) Math.min(available, Math.max(count, READ_AHEAD_SIZE));
+			if(readAhead == null || readAhead.capacity() < size)
+			{
+				readAhead = ByteBuffer.allocate(Math.max(size, READ_AHEAD_SIZE));
+			}
+			readAhead.clear();
+			readAhead.limit(size);
+			FileChannels.readFully(channel, readAhead, offset);
+			readAhead.flip();
+			readAheadOffset = offset;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Copies the live records of sparse data files, i.e. the records referenced by the index, into a new data file.
+ *
+ * Records that have been replaced by set(index, element) are skipped. Adjacent live records are copied at once.
+ *
+ * The index files are expected to use the format of DefaultIndexStrategy.
+ */
+final class SparseCompaction
+{
+	/**
+	 * The number of offsets read at once.
+	 */
+	private static final int OFFSET_BATCH_SIZE = 64 * 1024;
+
+	private static final int RECORD_HEADER_SIZE = (int) (SparseDataStrategy.DATA_LENGTH_SIZE + SparseDataStrategy.INDEX_SIZE);
+
+	private SparseCompaction()
+	{}
+
+	/**
+	 * Returns the number of bytes used by records referenced by the first count offsets of the index.
+	 *
+	 * Records starting at or after limit are ignored.
+	 *
+	 * @param dataChannel the channel of the data file.
+	 * @param indexChannel the channel of the index file.
+	 * @param count the number of offsets to check.
+	 * @param limit the length of the data file that is considered.
+	 * @return the number of live bytes, including record headers.
+	 * @throws IOException in case of IOException :p
+	 */
+	static long getLiveBytes(FileChannel dataChannel, FileChannel indexChannel, long count, long limit)
+		throws IOException
+	{
+		return copyLiveRecords(dataChannel, indexChannel, count, limit, null, null);
+	}
+
+	/**
+	 * Appends the records referenced by the first count offsets of the index to targetDataChannel and
+	 * writes their new offsets to targetIndexChannel.
+	 *
+	 * Offsets of records starting at or after limit, as well as offsets that don't reference a valid record,
+	 * are written as -1. The data file must not be changed before limit.
+	 *
+	 * @param dataChannel the channel of the data file.
+	 * @param indexChannel the channel of the index file.
+	 * @param count the number of offsets to copy.
+	 * @param limit the length of the data file that is considered.
+	 * @param targetDataChannel the channel of the new data file, positioned at its end. Might be null.
+	 * @param targetIndexChannel the channel of the new index file. Might be null.
+	 * @return the number of live bytes, including record headers.
+	 * @throws IOException in case of IOException :p
+	 */
+	static long copyLiveRecords(FileChannel dataChannel, FileChannel indexChannel, long count, long limit, FileChannel targetDataChannel, FileChannel targetIndexChannel)
+		throws IOException
+	{
+		DefaultIndexStrategy indexStrategy = new DefaultIndexStrategy();
+		ByteBuffer header = ByteBuffer.allocate((int) SparseDataStrategy.DATA_LENGTH_SIZE);
+		long liveBytes = 0;
+		long runStart = -1;
+		long runEnd = -1;
+		long targetOffset = targetDataChannel == null ? 0 : targetDataChannel.position();
+		for(long index = 0; index < count; index += OFFSET_BATCH_SIZE)
+		{
+			int batchSize = (int) Math.min(OFFSET_BATCH_SIZE, count - index);
+			long[] offsets = indexStrategy.getOffsets(indexChannel, index, batchSize);
+			for(int i = 0; i < offsets.length; i++)
+			{
+				long offset = offsets[i];
+				if(offset < 0 || offset + RECORD_HEADER_SIZE > limit)
+				{
+					offsets[i] = -1;
+					continue;
+				}
+				header.clear();
+				FileChannels.readFully(dataChannel, header, offset);
+				int length = header.getInt(0);
+				long end = offset + RECORD_HEADER_SIZE + length;
+				if(length < 0 || end > limit)
+				{
+					offsets[i] = -1;
+					continue;
+				}
+				if(offset != runEnd)
+				{
+					transfer(dataChannel, runStart, runEnd, targetDataChannel);
+					runStart = offset;
+				}
+				runEnd = end;
+				offsets[i] = targetOffset + liveBytes;
+				liveBytes += end - offset;
+			}
+			if(targetIndexChannel != null)
+			{
+				indexStrategy.setOffsets(targetIndexChannel, index, offsets);
+			}
+		}
+		transfer(dataChannel, runStart, runEnd, targetDataChannel);
+		return liveBytes;
+	}
+
+	/**
+	 * Appends all records starting at the given offset to targetDataChannel and sets their offsets
+	 * in targetIndexChannel, replacing previous offsets of the same index.
+	 *
+	 * @param dataChannel the channel of the data file.
+	 * @param offset the offset of the first record.
+	 * @param targetDataChannel the channel of the new data file, positioned at its end.
+	 * @param targetIndexChannel the channel of the new index file.
+	 * @throws IOException in case of IOException :p
+	 */
+	static void copyRecords(FileChannel dataChannel, long offset, FileChannel targetDataChannel, FileChannel targetIndexChannel)
+		throws IOException
+	{
+		DefaultIndexStrategy indexStrategy = new DefaultIndexStrategy();
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		long dataLength = dataChannel.size();
+		long start = offset;
+		long targetOffset = targetDataChannel.position();
+		while(offset + RECORD_HEADER_SIZE <= dataLength)
+		{
+			header.clear();
+			FileChannels.readFully(dataChannel, header, offset);
+			int length = header.getInt(0);
+			long index = header.getLong((int) SparseDataStrategy.DATA_LENGTH_SIZE);
+			long end = offset + RECORD_HEADER_SIZE + length;
+			if(length < 0 || index < 0 || end > dataLength)
+			{
+				break;
+			}
+			indexStrategy.setOffset(targetIndexChannel, index, targetOffset + offset - start);
+			offset = end;
+		}
+		transfer(dataChannel, start, offset, targetDataChannel);
+	}
+
+	private static void transfer(FileChannel dataChannel, long start, long end, FileChannel targetDataChannel)
+		throws IOException
+	{
+		if(targetDataChannel == null)
+		{
+			return;
+		}
+		long position = start;
+		while(position < end)
+		{
+			long transferred = dataChannel.transferTo(position, end - position, targetDataChannel);
+			if(transferred <= 0)
+			{
+				throw new EOFException("Reached end of file while transferring " + (end - position) + " more bytes at position " + position + "!");
+			}
+			position += transferred;
+		}
+	}
+}
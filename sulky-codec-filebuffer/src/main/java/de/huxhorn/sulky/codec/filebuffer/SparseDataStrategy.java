@@ -34,13 +34,19 @@
 
 package de.huxhorn.sulky.codec.filebuffer;
 
+import de.huxhorn.sulky.buffers.ResetOperation;
+import de.huxhorn.sulky.codec.ByteBufferEncoder;
 import de.huxhorn.sulky.codec.Codec;
+import de.huxhorn.sulky.codec.EncodingBuffers;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.List;
 
 public class SparseDataStrategy<E>
-	implements DataStrategy<E>
+	implements DataStrategy<E>, ResetOperation
 {
 	/**
 	 * The size of the data size, i.e. an int.
@@ -52,7 +58,24 @@ public class SparseDataStrategy<E>
 	 */
 	public static final long INDEX_SIZE = 8;
 
+	/**
+	 * 1MB. The number of bytes collected by addAll and addAllEncoded before they are written at once.
+	 */
+	public static final int WRITE_BATCH_SIZE = 1024 * 1024;
+
+	/**
+	 * 128MB. Elements crossing the border between two segments are read without mapping.
+	 */
+	public static final int MAPPED_SEGMENT_SIZE = 128 * 1024 * 1024;
+
+	/**
+	 * The batch size used for codecs that are a ByteBufferEncoder.
+	 * Half of EncodingBuffers.MAX_REUSED_CAPACITY so the grown batch buffer is still reused.
+	 */
+	static final int ENCODED_BATCH_SIZE = Math.min(WRITE_BATCH_SIZE, EncodingBuffers.MAX_REUSED_CAPACITY / 2);
+
 	private boolean supportingOverwrite;
+	private volatile MappedSegments mappedData;
 
 	public SparseDataStrategy()
 	{
@@ -60,8 +83,19 @@ public class SparseDataStrategy<E>
 	}
 
 	public SparseDataStrategy(boolean supportingOverwrite)
+	{
+		this(supportingOverwrite, false);
+	}
+
+	/**
+	 * @param supportingOverwrite whether or not set() may replace existing elements.
+	 * @param mappingData whether or not elements are read from a read-only mapping of the data file.
+	 * @see #setMappingData(boolean)
+	 */
+	public SparseDataStrategy(boolean supportingOverwrite, boolean mappingData)
 	{
 		this.supportingOverwrite = supportingOverwrite;
+		this.mappedData = mappingData ? new MappedSegments(MAPPED_SEGMENT_SIZE) : null;
 	}
 
 	public boolean isSupportingOverwrite()
@@ -74,6 +108,50 @@ public class SparseDataStrategy<E>
 		this.supportingOverwrite = supportingOverwrite;
 	}
 
+	public boolean isMappingData()
+	{
+		return mappedData != null;
+	}
+
+	/**
+	 * If enabled, elements are read from a read-only mapping of the data file and decoded without copying
+	 * if the codec is a ByteBufferDecoder.
+	 *
+	 * The mapping is kept by this instance, i.e. it must only be used for a single data file
+	 * and reset() must be called if that file is deleted or replaced.
+	 *
+	 * Segments of the file are mapped using its FileChannel, even if it is accessed using a RandomAccessFile.
+	 *
+	 * @param mappingData whether or not elements are read from a read-only mapping of the data file.
+	 */
+	public void setMappingData(boolean mappingData)
+	{
+		if(mappingData)
+		{
+			if(mappedData == null)
+			{
+				mappedData = new MappedSegments(MAPPED_SEGMENT_SIZE);
+			}
+		}
+		else
+		{
+			mappedData = null;
+		}
+	}
+
+	/**
+	 * Forgets the mapping of the data file, if any.
+	 */
+	@Override
+	public void reset()
+	{
+		MappedSegments segments = mappedData;
+		if(segments != null)
+		{
+			segments.clear();
+		}
+	}
+
 	@Override
 	public void add(E element,
 	                RandomAccessFile indexFile,
@@ -99,32 +177,42 @@ public class SparseDataStrategy<E>
 	                   IndexStrategy indexStrategy)
 		throws IOException
 	{
-		if(elements != null)
+		if(elements != null && !elements.isEmpty())
 		{
-			int newElementCount = elements.size();
-			if(newElementCount > 0)
+			if(codec instanceof ByteBufferEncoder)
 			{
+				@SuppressWarnings("unchecked")
+				ByteBufferEncoder<E> encoder = (ByteBufferEncoder<E>) codec;
+
 				long elementsCount = indexStrategy.getSize(indexFile);
 
 				long offset = dataFile.length();
 
-				long[] offsets = new long[newElementCount];
-				int index = 0;
-				for(E element : elements)
-				{
-					offsets[index] = offset;
-					offset = offset + internalWriteElement(dataFile, offset, elementsCount + index, element, codec) + DATA_LENGTH_SIZE + INDEX_SIZE;
-					index++;
-				}
+				long[] offsets = internalWriteElements(dataFile, offset, elementsCount, elements, encoder);
 
-				index = 0;
-				for(long curOffset : offsets)
-				{
-					indexStrategy.setOffset(indexFile, elementsCount + index, curOffset);
-					index++;
-				}
+				indexStrategy.setOffsets(indexFile, elementsCount, offsets);
+				return;
 			}
+			addAllEncoded(encode(elements, codec), indexFile, dataFile, indexStrategy);
+		}
+	}
 
+	@Override
+	public void addAllEncoded(List<byte[]> encodedElements,
+	                          RandomAccessFile indexFile,
+	                          RandomAccessFile dataFile,
+	                          IndexStrategy indexStrategy)
+		throws IOException
+	{
+		if(encodedElements != null && !encodedElements.isEmpty())
+		{
+			long elementsCount = indexStrategy.getSize(indexFile);
+
+			long offset = dataFile.length();
+
+			long[] offsets = internalWriteEncoded(dataFile, offset, elementsCount, encodedElements);
+
+			indexStrategy.setOffsets(indexFile, elementsCount, offsets);
 		}
 	}
 
@@ -159,6 +247,18 @@ public class SparseDataStrategy<E>
 		return true;
 	}
 
+	@Override
+	public boolean isEncodedAccessSupported()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean isFileChannelSupported()
+	{
+		return true;
+	}
+
 	@Override
 	public E get(long index,
 	             RandomAccessFile indexFile,
@@ -176,7 +276,264 @@ public class SparseDataStrategy<E>
 				return null;
 			}
 
-			return internalReadElement(dataFile, offset, codec);
+			if(codec == null)
+			{
+				throw new IllegalStateException("Codec has not been initialized!");
+			}
+			return DefaultDataStrategy.decode(internalReadEncoded(mappedData, dataFile, offset), codec);
+		}
+		return null;
+	}
+
+	@Override
+	public List<E> getRange(long index, int count,
+	                        RandomAccessFile indexFile,
+	                        RandomAccessFile dataFile,
+	                        Codec<E> codec,
+	                        IndexStrategy indexStrategy)
+		throws IOException, ClassNotFoundException
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		long[] offsets = indexStrategy.getOffsets(indexFile, index, count);
+		MappedSegments segments = mappedData;
+		RecordRegion region = null;
+		if(segments == null)
+		{
+			region = RecordRegion.read(dataFile, offsets, (int) (DATA_LENGTH_SIZE + INDEX_SIZE));
+		}
+		List<E> result = new ArrayList<>(offsets.length);
+		for(long offset : offsets)
+		{
+			if(offset < 0)
+			{
+				result.add(null);
+				continue;
+			}
+			ByteBuffer payload = null;
+			if(region != null)
+			{
+				payload = region.getPayload(offset);
+			}
+			if(payload == null)
+			{
+				payload = internalReadEncoded(segments, dataFile, offset);
+			}
+			result.add(DefaultDataStrategy.decode(payload, codec));
+		}
+		return result;
+	}
+
+	@Override
+	public ByteBuffer getEncoded(long index,
+	                             RandomAccessFile indexFile,
+	                             RandomAccessFile dataFile,
+	                             IndexStrategy indexStrategy)
+		throws IOException
+	{
+		long elementsCount = indexStrategy.getSize(indexFile);
+		if(index >= 0 && index < elementsCount)
+		{
+			long offset = indexStrategy.getOffset(indexFile, index);
+			if(offset < 0)
+			{
+				return null;
+			}
+
+			return internalReadEncoded(mappedData, dataFile, offset);
+		}
+		return null;
+	}
+
+
+	@Override
+	public void addUsingChannels(E element,
+	                             FileChannel indexChannel,
+	                             FileChannel dataChannel,
+	                             Codec<E> codec,
+	                             IndexStrategy indexStrategy)
+		throws IOException
+	{
+		long elementsCount = indexStrategy.getSize(indexChannel);
+
+		long offset = dataChannel.size();
+
+		internalWriteElement(dataChannel, offset, elementsCount, element, codec);
+
+		indexStrategy.setOffset(indexChannel, elementsCount, offset);
+	}
+
+	@Override
+	public void addAllUsingChannels(List<E> elements,
+	                                FileChannel indexChannel,
+	                                FileChannel dataChannel,
+	                                Codec<E> codec,
+	                                IndexStrategy indexStrategy)
+		throws IOException
+	{
+		if(elements != null && !elements.isEmpty())
+		{
+			if(codec instanceof ByteBufferEncoder)
+			{
+				@SuppressWarnings("unchecked")
+				ByteBufferEncoder<E> encoder = (ByteBufferEncoder<E>) codec;
+
+				long elementsCount = indexStrategy.getSize(indexChannel);
+
+				long offset = dataChannel.size();
+
+				long[] offsets = internalWriteElements(dataChannel, offset, elementsCount, elements, encoder);
+
+				indexStrategy.setOffsets(indexChannel, elementsCount, offsets);
+				return;
+			}
+			addAllEncodedUsingChannels(encode(elements, codec), indexChannel, dataChannel, indexStrategy);
+		}
+	}
+
+	@Override
+	public void addAllEncodedUsingChannels(List<byte[]> encodedElements,
+	                                       FileChannel indexChannel,
+	                                       FileChannel dataChannel,
+	                                       IndexStrategy indexStrategy)
+		throws IOException
+	{
+		if(encodedElements != null && !encodedElements.isEmpty())
+		{
+			long elementsCount = indexStrategy.getSize(indexChannel);
+
+			long offset = dataChannel.size();
+
+			long[] offsets = internalWriteEncoded(dataChannel, offset, elementsCount, encodedElements);
+
+			indexStrategy.setOffsets(indexChannel, elementsCount, offsets);
+		}
+	}
+
+	@Override
+	public boolean setUsingChannels(long index, E element, FileChannel indexChannel, FileChannel dataChannel, Codec<E> codec, IndexStrategy indexStrategy)
+		throws IOException
+	{
+		long offset = indexStrategy.getOffset(indexChannel, index);
+		if(!supportingOverwrite && offset >= 0)
+		{
+			return false;
+		}
+		if(element != null)
+		{
+			offset = dataChannel.size();
+			internalWriteElement(dataChannel, offset, index, element, codec);
+
+			indexStrategy.setOffset(indexChannel, index, offset);
+			return true;
+		}
+		else
+		{
+			// set offset to -1 to signal a null value.
+			indexStrategy.setOffset(indexChannel, index, -1);
+			return true;
+		}
+	}
+
+	@Override
+	public E getUsingChannels(long index,
+	                          FileChannel indexChannel,
+	                          FileChannel dataChannel,
+	                          Codec<E> codec,
+	                          IndexStrategy indexStrategy)
+		throws IOException, ClassNotFoundException
+	{
+		long elementsCount = indexStrategy.getSize(indexChannel);
+		if(index >= 0 && index < elementsCount)
+		{
+			long offset = indexStrategy.getOffset(indexChannel, index);
+			if(offset < 0)
+			{
+				return null;
+			}
+
+			MappedSegments segments = mappedData;
+			if(segments != null)
+			{
+				return internalReadMappedElement(segments, dataChannel, offset, codec);
+			}
+			return internalReadElement(dataChannel, offset, codec);
+		}
+		return null;
+	}
+
+	@Override
+	public List<E> getRangeUsingChannels(long index, int count,
+	                                     FileChannel indexChannel,
+	                                     FileChannel dataChannel,
+	                                     Codec<E> codec,
+	                                     IndexStrategy indexStrategy)
+		throws IOException, ClassNotFoundException
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		long[] offsets = indexStrategy.getOffsets(indexChannel, index, count);
+		MappedSegments segments = mappedData;
+		RecordRegion region = null;
+		if(segments == null)
+		{
+			region = RecordRegion.read(dataChannel, offsets, (int) (DATA_LENGTH_SIZE + INDEX_SIZE));
+		}
+		List<E> result = new ArrayList<>(offsets.length);
+		for(long offset : offsets)
+		{
+			if(offset < 0)
+			{
+				result.add(null);
+				continue;
+			}
+			ByteBuffer payload = null;
+			if(region != null)
+			{
+				payload = region.getPayload(offset);
+			}
+			if(payload != null)
+			{
+				result.add(DefaultDataStrategy.decode(payload, codec));
+			}
+			else if(segments != null)
+			{
+				result.add(internalReadMappedElement(segments, dataChannel, offset, codec));
+			}
+			else
+			{
+				result.add(internalReadElement(dataChannel, offset, codec));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public ByteBuffer getEncodedUsingChannels(long index,
+	                                          FileChannel indexChannel,
+	                                          FileChannel dataChannel,
+	                                          IndexStrategy indexStrategy)
+		throws IOException
+	{
+		long elementsCount = indexStrategy.getSize(indexChannel);
+		if(index >= 0 && index < elementsCount)
+		{
+			long offset = indexStrategy.getOffset(indexChannel, index);
+			if(offset < 0)
+			{
+				return null;
+			}
+
+			MappedSegments segments = mappedData;
+			if(segments != null)
+			{
+				return internalReadMappedEncoded(segments, dataChannel, offset);
+			}
+			return internalReadEncoded(dataChannel, offset);
 		}
 		return null;
 	}
@@ -200,29 +557,318 @@ public class SparseDataStrategy<E>
 		return bufferSize;
 	}
 
-	private E internalReadElement(RandomAccessFile dataFile, long offset, Codec<E> codec)
+	/**
+	 * RandomAccessFile variant of internalReadEncoded, using the mapping of the data file if segments isn't null.
+	 *
+	 * Mapping a segment requires the FileChannel of the file. Everything else is read using seek.
+	 */
+	private static ByteBuffer internalReadEncoded(MappedSegments segments, RandomAccessFile dataFile, long offset)
+		throws IOException
+	{
+		if(segments != null)
+		{
+			ByteBuffer mapped = internalSliceMapped(segments, dataFile.getChannel(), offset);
+			if(mapped != null)
+			{
+				return mapped;
+			}
+		}
+		long dataLength = dataFile.length();
+		if(dataLength < offset + DATA_LENGTH_SIZE + INDEX_SIZE)
+		{
+			throw new IndexOutOfBoundsException("Invalid offset: " + offset + "! Couldn't read length of data!");
+		}
+		dataFile.seek(offset);
+		int bufferSize = dataFile.readInt();
+		long startOfData = offset + DATA_LENGTH_SIZE + INDEX_SIZE;
+		if(bufferSize < 0 || dataLength < startOfData + bufferSize)
+		{
+			throw new IndexOutOfBoundsException("Invalid length (" + bufferSize + ") at offset: " + offset + "!");
+		}
+		// ignore stored index in case of read
+		ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+		RandomAccessFiles.readFully(dataFile, buffer, startOfData);
+		buffer.flip();
+		return buffer;
+	}
+
+	private int internalWriteElement(FileChannel dataChannel, long offset, long index, E element, Codec<E> codec)
 		throws IOException
 	{
 		if(codec == null)
 		{
 			throw new IllegalStateException("Codec has not been initialized!");
 		}
+		if(codec instanceof ByteBufferEncoder)
+		{
+			@SuppressWarnings("unchecked")
+			ByteBufferEncoder<E> encoder = (ByteBufferEncoder<E>) codec;
+			ByteBuffer record = putRecord(EncodingBuffers.acquire(), index, element, encoder);
+			record.flip();
+			FileChannels.writeFully(dataChannel, record, offset);
+			EncodingBuffers.release(record);
+			return record.limit() - (int) (DATA_LENGTH_SIZE + INDEX_SIZE);
+		}
+		byte[] buffer = codec.encode(element);
 
-		if(dataFile.length() < offset + DATA_LENGTH_SIZE + INDEX_SIZE)
+		int bufferSize = buffer.length;
+
+		ByteBuffer record = ByteBuffer.allocate((int) (DATA_LENGTH_SIZE + INDEX_SIZE) + bufferSize);
+		record.putInt(bufferSize);
+		record.putLong(index);
+		record.put(buffer);
+		record.flip();
+		FileChannels.writeFully(dataChannel, record, offset);
+		return bufferSize;
+	}
+
+	private static <E> List<byte[]> encode(List<E> elements, Codec<E> codec)
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		List<byte[]> result = new ArrayList<>(elements.size());
+		for(E element : elements)
+		{
+			result.add(codec.encode(element));
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the records of all encoded elements using one positional write per
+	 * WRITE_BATCH_SIZE bytes instead of separate writes for every single element.
+	 *
+	 * @return the offsets of the written records.
+	 */
+	private static long[] internalWriteEncoded(FileChannel dataChannel, long offset, long firstIndex, List<byte[]> encodedElements)
+		throws IOException
+	{
+		long[] offsets = new long[encodedElements.size()];
+		List<byte[]> batch = new ArrayList<>();
+		long batchOffset = offset;
+		long batchFirstIndex = firstIndex;
+		long batchSize = 0;
+		int count = 0;
+		for(byte[] buffer : encodedElements)
+		{
+			offsets[count] = batchOffset + batchSize;
+			batch.add(buffer);
+			batchSize += DATA_LENGTH_SIZE + INDEX_SIZE + buffer.length;
+			count++;
+			if(batchSize >= WRITE_BATCH_SIZE || count == offsets.length)
+			{
+				internalWriteBatch(dataChannel, batchOffset, batchFirstIndex, batch, (int) batchSize);
+				batch.clear();
+				batchOffset += batchSize;
+				batchFirstIndex = firstIndex + count;
+				batchSize = 0;
+			}
+		}
+		return offsets;
+	}
+
+	/**
+	 * Encodes the records of all elements directly into the buffer reused by the calling thread,
+	 * writing it whenever it exceeds ENCODED_BATCH_SIZE bytes.
+	 *
+	 * @return the offsets of the written records.
+	 */
+	private static <E> long[] internalWriteElements(FileChannel dataChannel, long offset, long firstIndex, List<E> elements, ByteBufferEncoder<E> encoder)
+		throws IOException
+	{
+		long[] offsets = new long[elements.size()];
+		ByteBuffer batch = EncodingBuffers.acquire();
+		long batchOffset = offset;
+		int count = 0;
+		for(E element : elements)
+		{
+			offsets[count] = batchOffset + batch.position();
+			batch = putRecord(batch, firstIndex + count, element, encoder);
+			count++;
+			if(batch.position() >= ENCODED_BATCH_SIZE || count == offsets.length)
+			{
+				batch.flip();
+				FileChannels.writeFully(dataChannel, batch, batchOffset);
+				batchOffset += batch.limit();
+				batch.clear();
+			}
+		}
+		EncodingBuffers.release(batch);
+		return offsets;
+	}
+
+	/**
+	 * RandomAccessFile variant of internalWriteEncoded.
+	 *
+	 * @return the offsets of the written records.
+	 */
+	private static long[] internalWriteEncoded(RandomAccessFile dataFile, long offset, long firstIndex, List<byte[]> encodedElements)
+		throws IOException
+	{
+		long[] offsets = new long[encodedElements.size()];
+		List<byte[]> batch = new ArrayList<>();
+		long batchOffset = offset;
+		long batchFirstIndex = firstIndex;
+		long batchSize = 0;
+		int count = 0;
+		for(byte[] buffer : encodedElements)
+		{
+			offsets[count] = batchOffset + batchSize;
+			batch.add(buffer);
+			batchSize += DATA_LENGTH_SIZE + INDEX_SIZE + buffer.length;
+			count++;
+			if(batchSize >= WRITE_BATCH_SIZE || count == offsets.length)
+			{
+				RandomAccessFiles.writeFully(dataFile, createBatch(batchFirstIndex, batch, (int) batchSize), batchOffset);
+				batch.clear();
+				batchOffset += batchSize;
+				batchFirstIndex = firstIndex + count;
+				batchSize = 0;
+			}
+		}
+		return offsets;
+	}
+
+	/**
+	 * RandomAccessFile variant of internalWriteElements.
+	 *
+	 * @return the offsets of the written records.
+	 */
+	private static <E> long[] internalWriteElements(RandomAccessFile dataFile, long offset, long firstIndex, List<E> elements, ByteBufferEncoder<E> encoder)
+		throws IOException
+	{
+		long[] offsets = new long[elements.size()];
+		ByteBuffer batch = EncodingBuffers.acquire();
+		long batchOffset = offset;
+		int count = 0;
+		for(E element : elements)
+		{
+			offsets[count] = batchOffset + batch.position();
+			batch = putRecord(batch, firstIndex + count, element, encoder);
+			count++;
+			if(batch.position() >= ENCODED_BATCH_SIZE || count == offsets.length)
+			{
+				batch.flip();
+				RandomAccessFiles.writeFully(dataFile, batch, batchOffset);
+				batchOffset += batch.limit();
+				batch.clear();
+			}
+		}
+		EncodingBuffers.release(batch);
+		return offsets;
+	}
+
+	/**
+	 * Encodes the element as record at the position of target.
+	 *
+	 * @return either target or a larger buffer, positioned directly after the record.
+	 */
+	private static <E> ByteBuffer putRecord(ByteBuffer target, long index, E element, ByteBufferEncoder<E> encoder)
+	{
+		int start = target.position();
+		int headerSize = (int) (DATA_LENGTH_SIZE + INDEX_SIZE);
+		ByteBuffer result = EncodingBuffers.ensureRemaining(target, headerSize);
+		result.position(start + headerSize);
+		result = EncodingBuffers.encode(encoder, element, result);
+		result.putInt(start, result.position() - start - headerSize);
+		result.putLong(start + (int) DATA_LENGTH_SIZE, index);
+		return result;
+	}
+
+	private static void internalWriteBatch(FileChannel dataChannel, long offset, long firstIndex, List<byte[]> encoded, int batchSize)
+		throws IOException
+	{
+		FileChannels.writeFully(dataChannel, createBatch(firstIndex, encoded, batchSize), offset);
+	}
+
+	private static ByteBuffer createBatch(long firstIndex, List<byte[]> encoded, int batchSize)
+	{
+		ByteBuffer batch = ByteBuffer.allocate(batchSize);
+		long index = firstIndex;
+		for(byte[] buffer : encoded)
+		{
+			batch.putInt(buffer.length);
+			batch.putLong(index);
+			index++;
+			batch.put(buffer);
+		}
+		batch.flip();
+		return batch;
+	}
+
+	private E internalReadElement(FileChannel dataChannel, long offset, Codec<E> codec)
+		throws IOException
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		return codec.decode(internalReadEncoded(dataChannel, offset).array());
+	}
+
+	private static ByteBuffer internalReadEncoded(FileChannel dataChannel, long offset)
+		throws IOException
+	{
+		long dataLength = dataChannel.size();
+		if(dataLength < offset + DATA_LENGTH_SIZE + INDEX_SIZE)
 		{
 			throw new IndexOutOfBoundsException("Invalid offset: " + offset + "! Couldn't read length of data!");
 		}
-		dataFile.seek(offset);
-		int bufferSize = dataFile.readInt();
+		ByteBuffer lengthBuffer = ByteBuffer.allocate((int) DATA_LENGTH_SIZE);
+		FileChannels.readFully(dataChannel, lengthBuffer, offset);
+		int bufferSize = lengthBuffer.getInt(0);
 		long startOfData = offset + DATA_LENGTH_SIZE + INDEX_SIZE;
-		if(dataFile.length() < startOfData + bufferSize)
+		if(dataLength < startOfData + bufferSize)
 		{
 			throw new IndexOutOfBoundsException("Invalid length (" + bufferSize + ") at offset: " + offset + "!");
 		}
 		// ignore stored index in case of read
-		dataFile.seek(startOfData);
-		byte[] buffer = new byte[bufferSize];
-		dataFile.readFully(buffer);
-		return codec.decode(buffer);
+		ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+		FileChannels.readFully(dataChannel, buffer, startOfData);
+		buffer.flip();
+		return buffer;
+	}
+
+	private E internalReadMappedElement(MappedSegments segments, FileChannel dataChannel, long offset, Codec<E> codec)
+		throws IOException
+	{
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		return DefaultDataStrategy.decode(internalReadMappedEncoded(segments, dataChannel, offset), codec);
+	}
+
+	private static ByteBuffer internalReadMappedEncoded(MappedSegments segments, FileChannel dataChannel, long offset)
+		throws IOException
+	{
+		ByteBuffer result = internalSliceMapped(segments, dataChannel, offset);
+		if(result != null)
+		{
+			return result;
+		}
+		// element crosses segments or is invalid
+		return internalReadEncoded(dataChannel, offset);
+	}
+
+	/**
+	 * @return the mapped payload of the record at the given offset or null if it crosses segments or is invalid.
+	 */
+	private static ByteBuffer internalSliceMapped(MappedSegments segments, FileChannel dataChannel, long offset)
+		throws IOException
+	{
+		ByteBuffer lengthBuffer = segments.slice(dataChannel, offset, (int) DATA_LENGTH_SIZE);
+		if(lengthBuffer != null)
+		{
+			int bufferSize = lengthBuffer.getInt(0);
+			ByteBuffer buffer = segments.slice(dataChannel, offset + DATA_LENGTH_SIZE + INDEX_SIZE, bufferSize);
+			if(buffer != null)
+			{
+				return buffer;
+			}
+		}
+		return null;
 	}
 }
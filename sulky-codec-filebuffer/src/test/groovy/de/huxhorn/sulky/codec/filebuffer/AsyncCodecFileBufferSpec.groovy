@@ -0,0 +1,170 @@
+package de.huxhorn.sulky.codec.filebuffer
+
+import de.huxhorn.sulky.buffers.Flush
+import de.huxhorn.sulky.codec.Codec
+import de.huxhorn.sulky.codec.SerializableCodec
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class AsyncCodecFileBufferSpec
+  extends Specification {
+
+  File tempOutputPath
+  File dataFile
+  File indexFile
+
+  int magicValue = 0xDEADBEEF
+
+  Codec<String> codec = new SerializableCodec<String>()
+
+  def setup() {
+    tempOutputPath = File.createTempFile("sfb-testing", "rulez")
+    tempOutputPath.delete()
+    tempOutputPath.mkdirs()
+    dataFile = new File(tempOutputPath, "dump")
+    indexFile = new File(tempOutputPath, "dump.index")
+  }
+
+  def cleanup() {
+    dataFile.delete()
+    indexFile.delete()
+    tempOutputPath.delete()
+  }
+
+  CodecFileBuffer<String> createBuffer(boolean sparse, Codec<String> codec) {
+    new CodecFileBuffer<String>(magicValue, sparse, null, codec, dataFile, indexFile)
+  }
+
+  @Unroll
+  def "concurrent add() and flush() (sparse=#sparse)"(boolean sparse) {
+    setup:
+    AsyncCodecFileBuffer<String> instance = new AsyncCodecFileBuffer<String>(createBuffer(sparse, codec), 100)
+    instance.batchSize = 17
+    int threadCount = 4
+    int elementCount = 500
+
+    when:
+    List<Thread> threads = (0..<threadCount).collect { int threadNumber ->
+      Thread.start {
+        for(int i = 0; i < elementCount; i++) {
+          instance.add(threadNumber + '-' + i)
+        }
+      }
+    }
+    threads*.join()
+    boolean flushed = Flush.flush(instance)
+    List<String> elements = instance.collect()
+
+    then:
+    flushed
+    0 == instance.pendingCount
+    0 == instance.droppedCount
+    threadCount * elementCount == instance.size
+    for(int threadNumber = 0; threadNumber < threadCount; threadNumber++) {
+      String prefix = threadNumber + '-'
+      // order of each thread is retained
+      assert elements.findAll { it.startsWith(prefix) } == (0..<elementCount).collect { prefix + it }
+    }
+
+    cleanup:
+    instance?.dispose()
+
+    where:
+    sparse << [false, true]
+  }
+
+  def "dispose() writes pending elements."() {
+    setup:
+    CodecFileBuffer<String> buffer = createBuffer(false, codec)
+    AsyncCodecFileBuffer<String> instance = new AsyncCodecFileBuffer<String>(buffer)
+    List<String> values = (1..1000).collect { 'Value ' + it }
+
+    when:
+    instance.addAll(values)
+    instance.dispose()
+
+    then:
+    instance.disposed
+    values == buffer.collect()
+
+    when:
+    instance.add('After')
+
+    then:
+    values.size() + 1 == buffer.size
+    'After' == buffer.get(values.size())
+  }
+
+  @Unroll
+  def "full queue with overflow policy #policy"(AsyncCodecFileBuffer.OverflowPolicy policy, long expectedDropped) {
+    setup:
+    CountDownLatch encoding = new CountDownLatch(1)
+    CountDownLatch release = new CountDownLatch(1)
+    ExecutorService executor = Executors.newSingleThreadExecutor()
+    Codec<String> blockingCodec = new SerializableCodec<String>() {
+      byte[] encode(String element) {
+        if(element == 'block') {
+          encoding.countDown()
+          release.await()
+        }
+        return super.encode(element)
+      }
+    }
+    CodecFileBuffer<String> buffer = createBuffer(false, blockingCodec)
+    AsyncCodecFileBuffer<String> instance = new AsyncCodecFileBuffer<String>(buffer, 1, executor)
+    instance.overflowPolicy = policy
+    instance.batchSize = 1
+
+    when: 'the encoder is blocked and the queue is full'
+    instance.add('block')
+    encoding.await()
+    // batches and the queue are filled by the dispatcher, wait until the queue is full.
+    while(!instance.full) {
+      instance.add('filler')
+      Thread.sleep(10)
+    }
+    long writtenCount = buffer.size
+    Thread adder = Thread.start {
+      instance.add('overflow')
+    }
+    adder.join(200)
+    release.countDown()
+    adder.join()
+    instance.flush()
+
+    then:
+    0 == writtenCount
+    expectedDropped == instance.droppedCount
+    buffer.collect().contains('overflow') == (policy != AsyncCodecFileBuffer.OverflowPolicy.DROP)
+    policy != AsyncCodecFileBuffer.OverflowPolicy.CALLER_RUNS || buffer.get(0) == 'overflow'
+
+    cleanup:
+    instance?.dispose()
+    executor.shutdown()
+
+    where:
+    policy                                          | expectedDropped
+    AsyncCodecFileBuffer.OverflowPolicy.BLOCK       | 0
+    AsyncCodecFileBuffer.OverflowPolicy.DROP        | 1
+    AsyncCodecFileBuffer.OverflowPolicy.CALLER_RUNS | 0
+  }
+
+  def "invalid arguments fail."() {
+    when:
+    new AsyncCodecFileBuffer<String>(null)
+
+    then:
+    IllegalArgumentException e = thrown()
+    e.message == 'buffer must not be null!'
+
+    when:
+    new AsyncCodecFileBuffer<String>(createBuffer(false, codec), 0)
+
+    then:
+    e = thrown()
+    e.message == 'queueCapacity must be positive but was 0!'
+  }
+}
@@ -0,0 +1,310 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.huxhorn.sulky.codec.filebuffer
+
+import de.huxhorn.sulky.codec.Codec
+import de.huxhorn.sulky.codec.SerializableCodec
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.zip.Deflater
+import spock.lang.Specification
+
+import static de.huxhorn.sulky.codec.filebuffer.DataStrategySpecBase.closeQuietly
+import static de.huxhorn.sulky.codec.filebuffer.DataStrategySpecBase.openChannel
+
+class BlockCompressingDataStrategySpec
+  extends Specification {
+
+  Codec<String> codec = new SerializableCodec<String>()
+  IndexStrategy indexStrategy = new DefaultIndexStrategy()
+
+  File indexFile
+  File dataFile
+  BlockCompressingDataStrategy<String> instance
+
+  def setup() {
+    indexFile = File.createTempFile("index", "tst")
+    indexFile.delete()
+    dataFile = File.createTempFile("data", "tst")
+    dataFile.delete()
+    instance = new BlockCompressingDataStrategy<String>()
+  }
+
+  def cleanup() {
+    indexFile.delete()
+    dataFile.delete()
+  }
+
+  def "add and get"() {
+    setup:
+    RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw")
+    RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw")
+
+    when: 'elements are added to the open block'
+    instance.add("Foo", randomIndexFile, randomDataFile, codec, indexStrategy)
+    instance.add("Bar", randomIndexFile, randomDataFile, codec, indexStrategy)
+
+    then: 'nothing is written before the block is flushed'
+    instance.pendingCount == 2
+    dataFile.length() == 0
+    indexStrategy.getSize(randomIndexFile) == 0
+    "Foo" == instance.get(0, randomIndexFile, randomDataFile, codec, indexStrategy)
+    "Bar" == instance.get(1, randomIndexFile, randomDataFile, codec, indexStrategy)
+    null == instance.get(2, randomIndexFile, randomDataFile, codec, indexStrategy)
+
+    when:
+    instance.flush(randomIndexFile, randomDataFile, indexStrategy)
+    byte[] firstBlock = dataFile.bytes
+    instance.add("Baz", randomIndexFile, randomDataFile, codec, indexStrategy)
+    instance.flush(randomIndexFile, randomDataFile, indexStrategy)
+    instance.reset()
+
+    then: 'both elements share a block, the next block is appended'
+    instance.pendingCount == 0
+    indexStrategy.getSize(randomIndexFile) == 3
+    BlockCompressingDataStrategy.getBlockOffset(indexStrategy.getOffset(randomIndexFile, 0)) == 0
+    BlockCompressingDataStrategy.getBlockOffset(indexStrategy.getOffset(randomIndexFile, 1)) == 0
+    BlockCompressingDataStrategy.getBlockOffset(indexStrategy.getOffset(randomIndexFile, 2)) == firstBlock.length
+    firstBlock == Arrays.copyOf(dataFile.bytes, firstBlock.length)
+    ["Foo", "Bar", "Baz"] == instance.getRange(0, 5, randomIndexFile, randomDataFile, codec, indexStrategy)
+
+    cleanup:
+    closeQuietly(randomIndexFile)
+    closeQuietly(randomDataFile)
+  }
+
+  def "reset discards pending elements"() {
+    setup:
+    FileChannel indexChannel = openChannel(indexFile)
+    FileChannel dataChannel = openChannel(dataFile)
+
+    when:
+    instance.addAllUsingChannels(['Foo', 'Bar'], indexChannel, dataChannel, codec, indexStrategy)
+    instance.reset()
+    instance.flushUsingChannels(indexChannel, dataChannel, indexStrategy)
+
+    then:
+    instance.pendingCount == 0
+    dataChannel.size() == 0
+    instance.getUsingChannels(0, indexChannel, dataChannel, codec, indexStrategy) == null
+
+    cleanup:
+    indexChannel.close()
+    dataChannel.close()
+  }
+
+  def "repeated single add packs records into full blocks"() {
+    setup:
+    List<String> values = (1..20000).collect { "Value " + it }
+    FileChannel indexChannel = openChannel(indexFile)
+    FileChannel dataChannel = openChannel(dataFile)
+
+    when:
+    for(String value : values) {
+      instance.addUsingChannels(value, indexChannel, dataChannel, codec, indexStrategy)
+    }
+    instance.flushUsingChannels(indexChannel, dataChannel, indexStrategy)
+    instance.reset()
+    long blocks = (0..<values.size()).collect { BlockCompressingDataStrategy.getBlockOffset(indexStrategy.getOffset(indexChannel, it)) }.unique().size()
+    long uncompressedSize = values.sum { codec.encode(it).length + DefaultDataStrategy.DATA_LENGTH_SIZE }
+    long dataSize = dataChannel.size()
+    List<String> all = instance.getRangeUsingChannels(0, values.size(), indexChannel, dataChannel, codec, indexStrategy)
+    indexChannel.close()
+    dataChannel.close()
+
+    then:
+    values == all
+    blocks == (long) Math.ceil(uncompressedSize / BlockCompressingDataStrategy.BLOCK_SIZE)
+    dataSize * 3 < uncompressedSize
+  }
+
+  def "add, addAll and getRange spanning multiple blocks"() {
+    setup:
+    List<String> values = (1..20000).collect { "Value " + it }
+    FileChannel indexChannel = openChannel(indexFile)
+    FileChannel dataChannel = openChannel(dataFile)
+
+    when:
+    instance.addUsingChannels(values[0], indexChannel, dataChannel, codec, indexStrategy)
+    instance.addAllUsingChannels(values.subList(1, 10000), indexChannel, dataChannel, codec, indexStrategy)
+    for(int i = 10000; i < 10100; i++) {
+      instance.addUsingChannels(values[i], indexChannel, dataChannel, codec, indexStrategy)
+    }
+    instance.addAllEncodedUsingChannels(values.subList(10100, values.size()).collect { codec.encode(it) }, indexChannel, dataChannel, indexStrategy)
+    instance.flushUsingChannels(indexChannel, dataChannel, indexStrategy)
+    long blocks = (0..<values.size()).collect { BlockCompressingDataStrategy.getBlockOffset(indexStrategy.getOffset(indexChannel, it)) }.unique().size()
+    long uncompressedSize = values.sum { codec.encode(it).length + DefaultDataStrategy.DATA_LENGTH_SIZE }
+    List<String> all = instance.getRangeUsingChannels(0, values.size() + 10, indexChannel, dataChannel, codec, indexStrategy)
+    instance.reset()
+    List<String> some = instance.getRangeUsingChannels(9990, 20, indexChannel, dataChannel, codec, indexStrategy)
+    String last = instance.getUsingChannels(values.size() - 1, indexChannel, dataChannel, codec, indexStrategy)
+    long dataSize = dataChannel.size()
+    indexChannel.close()
+    dataChannel.close()
+
+    then:
+    values == all
+    values.subList(9990, 10010) == some
+    values[-1] == last
+    blocks > 1
+    // only the last block may be partial
+    blocks == (long) Math.ceil(uncompressedSize / BlockCompressingDataStrategy.BLOCK_SIZE)
+    dataSize * 3 < uncompressedSize
+  }
+
+  def "RandomAccessFile is not closed by interrupted thread"() {
+    setup:
+    List<String> values = (1..20000).collect { "Value " + it }
+    RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw")
+    RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw")
+
+    when:
+    Thread.currentThread().interrupt()
+    instance.addAll(values.subList(0, 10000), randomIndexFile, randomDataFile, codec, indexStrategy)
+    instance.addAllEncoded(values.subList(10000, values.size()).collect { codec.encode(it) }, randomIndexFile, randomDataFile, indexStrategy)
+    instance.flush(randomIndexFile, randomDataFile, indexStrategy)
+    instance.reset()
+    List<String> range = instance.getRange(0, values.size(), randomIndexFile, randomDataFile, codec, indexStrategy)
+    ByteBuffer encoded = instance.getEncoded(4, randomIndexFile, randomDataFile, indexStrategy)
+    boolean interrupted = Thread.interrupted()
+    String last = instance.get(values.size() - 1, randomIndexFile, randomDataFile, codec, indexStrategy)
+    long blocks = (0..<values.size()).collect { BlockCompressingDataStrategy.getBlockOffset(indexStrategy.getOffset(randomIndexFile, it)) }.unique().size()
+    closeQuietly(randomIndexFile)
+    closeQuietly(randomDataFile)
+
+    then:
+    interrupted
+    blocks > 1
+    values == range
+    values[4] == DefaultDataStrategy.decode(encoded, codec)
+    values[-1] == last
+  }
+
+  def "element larger than a block"() {
+    setup:
+    String large = 'x' * (BlockCompressingDataStrategy.BLOCK_SIZE * 3)
+    FileChannel indexChannel = openChannel(indexFile)
+    FileChannel dataChannel = openChannel(dataFile)
+
+    when:
+    instance.addAllUsingChannels(['Foo', large, 'Bar'], indexChannel, dataChannel, codec, indexStrategy)
+    instance.addUsingChannels('Baz', indexChannel, dataChannel, codec, indexStrategy)
+    List<String> all = instance.getRangeUsingChannels(0, 10, indexChannel, dataChannel, codec, indexStrategy)
+    instance.flushUsingChannels(indexChannel, dataChannel, indexStrategy)
+    instance.reset()
+    List<String> written = instance.getRangeUsingChannels(0, 10, indexChannel, dataChannel, codec, indexStrategy)
+    indexChannel.close()
+    dataChannel.close()
+
+    then:
+    ['Foo', large, 'Bar', 'Baz'] == all
+    all == written
+  }
+
+  def "getEncoded"() {
+    setup:
+    FileChannel indexChannel = openChannel(indexFile)
+    FileChannel dataChannel = openChannel(dataFile)
+
+    when:
+    instance.addAllUsingChannels(['Foo', 'Bar'], indexChannel, dataChannel, codec, indexStrategy)
+    byte[] encoded = new byte[codec.encode('Bar').length]
+    instance.getEncodedUsingChannels(1, indexChannel, dataChannel, indexStrategy).get(encoded)
+    def none = instance.getEncodedUsingChannels(2, indexChannel, dataChannel, indexStrategy)
+    indexChannel.close()
+    dataChannel.close()
+
+    then:
+    codec.encode('Bar') == encoded
+    none == null
+  }
+
+  def "set"() {
+    when:
+    instance.set(0, null, null, null, null, null)
+
+    then:
+    thrown(UnsupportedOperationException)
+  }
+
+  def "isSetSupported"() {
+    expect:
+    !instance.isSetSupported()
+  }
+
+  def "supports encoded and FileChannel access"() {
+    expect:
+    instance.encodedAccessSupported
+    instance.fileChannelSupported
+  }
+
+  def "resolveCompressor"() {
+    expect:
+    BlockCompressingDataStrategy.resolveCompressor(new MetaData(false)) == null
+    BlockCompressingDataStrategy.resolveCompressor(new MetaData([(BlockCompressingDataStrategy.BLOCK_COMPRESSION_KEY): 'deflate'], true)) == null
+    BlockCompressingDataStrategy.resolveCompressor(new MetaData([(BlockCompressingDataStrategy.BLOCK_COMPRESSION_KEY): 'deflate'])) instanceof DeflaterBlockCompressor
+    BlockCompressingDataStrategy.resolveCompressor(new MetaData([(BlockCompressingDataStrategy.BLOCK_COMPRESSION_KEY): 'lz4'])).name == 'lz4'
+    BlockCompressingDataStrategy.resolveCompressor(new MetaData([(BlockCompressingDataStrategy.BLOCK_COMPRESSION_KEY): 'deflate-raw'])).name == 'deflate-raw'
+
+    when:
+    BlockCompressingDataStrategy.resolveCompressor(new MetaData([(BlockCompressingDataStrategy.BLOCK_COMPRESSION_KEY): 'foo']))
+
+    then:
+    IllegalArgumentException ex = thrown()
+    ex.message == "Unknown block compression 'foo'!"
+  }
+
+  def "DeflaterBlockCompressor (level=#level)"(int level) {
+    setup:
+    BlockCompressor compressor = new DeflaterBlockCompressor(level)
+    byte[] data = ('Foo Bar ' * 1000).bytes
+
+    when:
+    byte[] compressed = compressor.compress(data, data.length - 8)
+    byte[] uncompressed = new byte[data.length - 8]
+    compressor.decompress(compressed, 0, compressed.length, uncompressed)
+
+    then:
+    Arrays.copyOf(data, data.length - 8) == uncompressed
+
+    when:
+    compressor.decompress(compressed, 0, compressed.length, new byte[data.length])
+
+    then:
+    thrown(IOException)
+
+    where:
+    level << [Deflater.DEFAULT_COMPRESSION, Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION]
+  }
+}
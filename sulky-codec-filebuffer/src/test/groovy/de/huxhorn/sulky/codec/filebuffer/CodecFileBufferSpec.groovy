@@ -3,6 +3,14 @@ package de.huxhorn.sulky.codec.filebuffer
 import de.huxhorn.sulky.buffers.ElementProcessor
 import de.huxhorn.sulky.codec.Codec
 import de.huxhorn.sulky.codec.SerializableCodec
+import de.huxhorn.sulky.codec.binary.BinaryCodec
+import de.huxhorn.sulky.codec.binary.ClassRegistry
+import de.huxhorn.sulky.codec.compression.DeflateCompressor
+import de.huxhorn.sulky.codec.compression.Lz4Compressor
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.TimeUnit
+import java.util.stream.Collectors
+import java.util.stream.StreamSupport
 import spock.lang.Specification
 import spock.lang.Unroll
 
@@ -512,6 +520,1001 @@ class CodecFileBufferSpec
     [sparse, metaDataData] << sparseAndMetaDataData()
   }
 
+  @Unroll
+  def "delete index file, rebuild index and reopen (metaData=#metaDataData)"(Map<String, String> metaDataData) {
+    when:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.addAll(values)
+    assert indexFile.delete()
+    long count = IndexRecovery.rebuildIndex(dataFile, indexFile, fileHeaderStrategy, new DefaultIndexStrategy())
+    CodecFileBuffer<String> otherInstance = new CodecFileBuffer<String>(magicValue, false, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+
+    then:
+    count == values.length
+    otherInstance.size == values.length
+    otherInstance.iterator().collect() == values as List
+
+    where:
+    metaDataData << metaData() + [[(DefaultDataStrategy.CHECKSUM_KEY): DefaultDataStrategy.CHECKSUM_CRC32]]
+  }
+
+  @Unroll
+  def "torn writes are only recovered explicitly (checksums=#checksums)"(boolean checksums) {
+    setup:
+    Map<String, String> metaDataData = checksums ? [(DefaultDataStrategy.CHECKSUM_KEY): DefaultDataStrategy.CHECKSUM_CRC32] : null
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.addAll(values)
+    long validLength = dataFile.length()
+    long validIndexLength = indexFile.length()
+
+    when: 'the offsets of the last elements were not written'
+    RandomAccessFile raf = new RandomAccessFile(indexFile, 'rw')
+    raf.setLength(validIndexLength - 12)
+    raf.close()
+    CodecFileBuffer<String> otherInstance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+
+    then: 'opening does not change the files'
+    dataFile.length() == validLength
+    indexFile.length() == validIndexLength - 12
+
+    when:
+    long count = otherInstance.recover()
+
+    then: 'without checksums, unindexed records are truncated'
+    count == (checksums ? values.length : values.length - 2)
+    otherInstance.size == count
+    otherInstance.iterator().collect() == (values as List).subList(0, (int) count)
+    indexFile.length() == count * DefaultIndexStrategy.DATA_OFFSET_SIZE
+    (dataFile.length() == validLength) == checksums
+
+    when: 'the last record is incomplete'
+    long length = dataFile.length()
+    raf = new RandomAccessFile(dataFile, 'rw')
+    raf.setLength(length - 1)
+    raf.close()
+    otherInstance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+
+    then:
+    dataFile.length() == length - 1
+    otherInstance.recover() == count - 1
+    otherInstance.iterator().collect() == (values as List).subList(0, (int) count - 1)
+    dataFile.length() < length - 1
+
+    when: 'garbage was appended'
+    raf = new RandomAccessFile(dataFile, 'rw')
+    length = raf.length()
+    raf.seek(length)
+    raf.writeInt(3)
+    raf.writeInt((int) 0xCAFEBABE)
+    raf.writeInt((int) 0xCAFEBABE)
+    raf.close()
+    otherInstance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+
+    then: 'the garbage is truncated with or without checksums'
+    otherInstance.recover() == count - 1
+    dataFile.length() == length
+
+    when:
+    otherInstance.add('Foo')
+
+    then:
+    otherInstance.size == count
+    otherInstance.get(count - 1) == 'Foo'
+    otherInstance.get(count - 2) == values[(int) count - 2]
+
+    where:
+    checksums << [false, true]
+  }
+
+  def "recover() is not supported by sparse buffers."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, true, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.addAll(values)
+
+    when:
+    instance.recover()
+
+    then:
+    thrown(IllegalArgumentException)
+  }
+
+  def "checksums detect corrupted records."() {
+    setup:
+    Map<String, String> metaDataData = [(DefaultDataStrategy.CHECKSUM_KEY): DefaultDataStrategy.CHECKSUM_CRC32]
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.addAll(values)
+    RandomAccessFile raf = new RandomAccessFile(dataFile, 'rw')
+    long lastByteOfSecondRecord = instance.getDataOffset(2) - 1
+    raf.seek(lastByteOfSecondRecord)
+    int value = raf.read()
+    raf.seek(lastByteOfSecondRecord)
+    raf.write(value ^ 0xFF)
+    raf.close()
+
+    expect:
+    instance.get(0) == values[0]
+    instance.get(1) == null
+    instance.get(2) == values[2]
+    instance.get(0, 3) == [values[0], null, values[2]]
+    instance.iterator().collect() == [values[0], null] + (values as List).subList(2, values.length)
+  }
+
+  @Unroll
+  def "add() and addAll() with channel pool, then get() and Iterable. (sparse=#sparse, metaData=#metaDataData)"(boolean sparse, Map<String, String> metaDataData) {
+    when:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, sparse, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.channelPoolSize = 2
+    instance.addAll(values)
+    for(String current : values) {
+      instance.add(current)
+    }
+
+    then:
+    2 == instance.channelPoolSize
+    values.length*2 == instance.size
+    for(int i = 0; i < values.length*2; i++) {
+      assert values[i%values.length] == instance.get(i)
+    }
+
+    int index = 0;
+    for(String value : instance) {
+      assert value == values[index%values.length]
+      index++
+    }
+
+    CodecFileBuffer<String> otherInstance = new CodecFileBuffer<String>(magicValue, sparse, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+    values.length*2 == otherInstance.size
+    for(int i = 0; i < values.length*2; i++) {
+      assert values[i%values.length] == otherInstance.get(i)
+    }
+
+    where:
+    [sparse, metaDataData] << sparseAndMetaDataData()
+  }
+
+  @Unroll
+  def "concurrent get() with channel pool. (sparse=#sparse, metaData=#metaDataData)"(boolean sparse, Map<String, String> metaDataData) {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, sparse, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.channelPoolSize = 2
+    for(int i = 0; i < 10; i++) {
+      instance.addAll(values)
+    }
+    List<String> failures = Collections.synchronizedList(new ArrayList<String>())
+
+    when:
+    List<Thread> threads = (1..8).collect { int threadNumber ->
+      Thread.start {
+        for(int i = 0; i < values.length*10; i++) {
+          String value = instance.get(i)
+          if(value != values[i%values.length]) {
+            failures.add("Thread "+threadNumber+" read "+value+" at index "+i+".")
+          }
+        }
+      }
+    }
+    threads*.join()
+
+    then:
+    failures.isEmpty()
+
+    where:
+    [sparse, metaDataData] << sparseAndMetaDataData()
+  }
+
+  @Unroll
+  def "reset and dispose with channel pool. (sparse=#sparse, metaData=#metaDataData)"(boolean sparse, Map<String, String> metaDataData) {
+    when:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, sparse, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.channelPoolSize = 1
+    instance.addAll(values)
+    instance.reset()
+
+    then:
+    0 == instance.size
+
+    when:
+    instance.addAll(values)
+
+    then:
+    values.length == instance.size
+    values[0] == instance.get(0)
+
+    when:
+    instance.dispose()
+
+    then:
+    0 == instance.channelPoolSize
+    values.length == instance.size
+    values[0] == instance.get(0)
+
+    where:
+    [sparse, metaDataData] << sparseAndMetaDataData()
+  }
+
+  @Unroll
+  def "MappedIndexStrategy (sparse=#sparse, channelPoolSize=#channelPoolSize)"(boolean sparse, int channelPoolSize) {
+    when:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, sparse, null, codec, dataFile, indexFile, fileHeaderStrategy, new MappedIndexStrategy(16))
+    instance.channelPoolSize = channelPoolSize
+    instance.addAll(values)
+    for(String current : values) {
+      instance.add(current)
+    }
+
+    then:
+    values.length*2 == instance.size
+    for(int i = 0; i < values.length*2; i++) {
+      assert values[i%values.length] == instance.get(i)
+    }
+
+    when:
+    instance.reset()
+    instance.addAll(values)
+
+    then:
+    values.length == instance.size
+    for(int i = 0; i < values.length; i++) {
+      assert values[i] == instance.get(i)
+    }
+
+    when:
+    ReadOnlyExclusiveCodecFileBuffer<String> readOnly = new ReadOnlyExclusiveCodecFileBuffer<String>(dataFile, indexFile, fileHeaderStrategy, new MappedIndexStrategy())
+    readOnly.codec = codec
+
+    then:
+    values.length == readOnly.size
+    for(int i = 0; i < values.length; i++) {
+      assert values[i] == readOnly.get(i)
+    }
+
+    cleanup:
+    readOnly?.close()
+
+    where:
+    sparse | channelPoolSize
+    false  | 0
+    true   | 0
+    false  | 2
+    true   | 2
+  }
+
+  @Unroll
+  def "mapping data (sparse=#sparse, channelPoolSize=#channelPoolSize)"(boolean sparse, int channelPoolSize) {
+    when:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, sparse, null, codec, dataFile, indexFile, fileHeaderStrategy, new MappedIndexStrategy())
+    instance.channelPoolSize = channelPoolSize
+    instance.mappingData = true
+    instance.addAll(values)
+    for(String current : values) {
+      instance.add(current)
+    }
+
+    then:
+    instance.mappingData
+    values.length*2 == instance.size
+    for(int i = 0; i < values.length*2; i++) {
+      assert values[i%values.length] == instance.get(i)
+    }
+
+    when:
+    instance.reset()
+    instance.add(values[1])
+
+    then:
+    1 == instance.size
+    values[1] == instance.get(0)
+
+    when:
+    ReadOnlyExclusiveCodecFileBuffer<String> readOnly = new ReadOnlyExclusiveCodecFileBuffer<String>(dataFile, indexFile)
+    readOnly.codec = codec
+    readOnly.mappingData = true
+
+    then:
+    readOnly.mappingData
+    1 == readOnly.size
+    values[1] == readOnly.get(0)
+
+    cleanup:
+    readOnly?.close()
+
+    where:
+    sparse | channelPoolSize
+    false  | 0
+    true   | 0
+    false  | 2
+    true   | 2
+  }
+
+  def "negative channel pool size fails."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+
+    when:
+    instance.channelPoolSize = -1
+
+    then:
+    IllegalArgumentException e = thrown()
+    e.message == "channelPoolSize must not be negative but was -1!"
+  }
+
+  @Unroll
+  def "concurrent add() with group commits (sparse=#sparse, groupCommitDelay=#groupCommitDelay, channelPoolSize=#channelPoolSize)"(boolean sparse, int groupCommitDelay, int channelPoolSize) {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, sparse, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.channelPoolSize = channelPoolSize
+    instance.groupCommitSize = 16
+    instance.groupCommitDelay = groupCommitDelay
+    CapturingStringElementProcessor processor = new CapturingStringElementProcessor()
+    instance.elementProcessors = [processor]
+    int threadCount = 8
+    int elementCount = 100
+
+    when:
+    List<Thread> threads = (0..<threadCount).collect { int threadNumber ->
+      Thread.start {
+        for(int i = 0; i < elementCount; i++) {
+          instance.add(threadNumber + '-' + i)
+        }
+      }
+    }
+    threads*.join()
+    List<String> elements = instance.collect()
+
+    then:
+    instance.groupCommitSize == 16
+    instance.groupCommitDelay == groupCommitDelay
+    threadCount * elementCount == instance.size
+    elements == processor.list
+    for(int threadNumber = 0; threadNumber < threadCount; threadNumber++) {
+      String prefix = threadNumber + '-'
+      // order of each thread is retained
+      assert elements.findAll { it.startsWith(prefix) } == (0..<elementCount).collect { prefix + it }
+    }
+
+    where:
+    sparse | groupCommitDelay | channelPoolSize
+    false  | 0                | 0
+    true   | 0                | 0
+    false  | 1                | 2
+    true   | 1                | 2
+  }
+
+  def "disabling group commits."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+
+    when:
+    instance.groupCommitSize = 4
+    instance.add(values[0])
+    instance.groupCommitSize = 0
+    instance.add(values[1])
+
+    then:
+    2 == instance.size
+    values[0] == instance.get(0)
+    values[1] == instance.get(1)
+  }
+
+  def "negative group commit size fails."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+
+    when:
+    instance.groupCommitSize = -1
+
+    then:
+    IllegalArgumentException e = thrown()
+    e.message == "groupCommitSize must not be negative but was -1!"
+  }
+
+  def "negative group commit delay fails."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+
+    when:
+    instance.groupCommitDelay = -1
+
+    then:
+    IllegalArgumentException e = thrown()
+    e.message == "groupCommitDelay must not be negative but was -1!"
+  }
+
+  @Unroll
+  def "addAll() with parallel encoding (sparse=#sparse, customPool=#customPool)"(boolean sparse, boolean customPool) {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, sparse, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    ForkJoinPool pool = customPool ? new ForkJoinPool(3) : null
+    instance.encodingPool = pool
+    instance.parallelEncodingThreshold = 100
+    CapturingStringElementProcessor processor = new CapturingStringElementProcessor()
+    instance.elementProcessors = [processor]
+    // LinkedList is copied before encoding
+    List<String> elements = new LinkedList<String>((0..<1000).collect { 'Value ' + it })
+
+    when:
+    instance.addAll(elements)
+    instance.addAll(values)
+
+    then:
+    100 == instance.parallelEncodingThreshold
+    pool == instance.encodingPool
+    elements.size() + values.length == instance.size
+    elements + values.toList() == instance.collect()
+    elements + values.toList() == processor.list
+
+    cleanup:
+    pool?.shutdown()
+
+    where:
+    sparse | customPool
+    false  | false
+    true   | false
+    false  | true
+    true   | true
+  }
+
+  def "addAll() with parallel encoding and without codec."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, null, null, dataFile, indexFile, fileHeaderStrategy)
+    instance.parallelEncodingThreshold = 1
+
+    when:
+    instance.addAll(values)
+
+    then:
+    0 == instance.size
+  }
+
+  def "negative parallel encoding threshold fails."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+
+    when:
+    instance.parallelEncodingThreshold = -1
+
+    then:
+    IllegalArgumentException e = thrown()
+    e.message == "parallelEncodingThreshold must not be negative but was -1!"
+  }
+
+  @Unroll
+  def "get(from, count) (sparse=#sparse, channelPoolSize=#channelPoolSize, mappingData=#mappingData)"(boolean sparse, int channelPoolSize, boolean mappingData) {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, sparse, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.channelPoolSize = channelPoolSize
+    instance.mappingData = mappingData
+    List<String> valueList = values.toList()
+
+    when:
+    instance.addAll(values)
+
+    then:
+    valueList == instance.get(0, values.length)
+    valueList.subList(3, 7) == instance.get(3, 4)
+    valueList.subList(8, values.length) == instance.get(8, 10)
+    [] == instance.get(values.length, 1)
+    [] == instance.get(-1, 2)
+    [] == instance.get(0, 0)
+    valueList == instance.collect()
+
+    when: 'the second instance is read using a ReadOnlyExclusiveCodecFileBuffer'
+    ReadOnlyExclusiveCodecFileBuffer<String> readOnly = new ReadOnlyExclusiveCodecFileBuffer<String>(dataFile, indexFile)
+    readOnly.codec = codec
+    readOnly.mappingData = mappingData
+
+    then:
+    valueList.subList(3, 7) == readOnly.get(3, 4)
+    valueList == readOnly.collect()
+
+    cleanup:
+    readOnly?.close()
+
+    where:
+    sparse | channelPoolSize | mappingData
+    false  | 0               | false
+    true   | 0               | false
+    false  | 2               | false
+    true   | 2               | false
+    false  | 0               | true
+    true   | 2               | true
+  }
+
+  @Unroll
+  def "get(from, count) with missing and overwritten elements (channelPoolSize=#channelPoolSize)"(int channelPoolSize) {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, true, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.channelPoolSize = channelPoolSize
+
+    when:
+    instance.set(4, values[4])
+    instance.set(1, values[1])
+    instance.set(1, values[2])
+
+    then:
+    [null, values[2], null, null, values[4]] == instance.get(0, 10)
+
+    where:
+    channelPoolSize << [0, 2]
+  }
+
+  @Unroll
+  def "sequential spliterator (sparse=#sparse, channelPoolSize=#channelPoolSize)"(boolean sparse, int channelPoolSize) {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, sparse, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.channelPoolSize = channelPoolSize
+    List<String> expected = new ArrayList<String>()
+    for(int i = 0; i < 5000; i++) {
+      expected.add('Element ' + i)
+    }
+    String large = 'x' * (SequentialSpliterator.READ_AHEAD_SIZE + 17)
+    expected.add(2500, large)
+
+    when:
+    instance.addAll(expected)
+
+    then:
+    sparse || instance.spliterator() instanceof SequentialSpliterator
+    instance.spliterator().estimateSize() == expected.size()
+    instance.spliterator().hasCharacteristics(Spliterator.SIZED)
+    instance.iterator().collect() == expected
+    StreamSupport.stream(instance.spliterator(), false).collect(Collectors.toList()) == expected
+    StreamSupport.stream(instance.spliterator(), true).collect(Collectors.toList()) == expected
+
+    when:
+    Spliterator<String> suffix = instance.spliterator()
+    Spliterator<String> prefix = suffix.trySplit()
+    List<String> prefixElements = new ArrayList<String>()
+    List<String> suffixElements = new ArrayList<String>()
+    suffix.forEachRemaining({ suffixElements.add(it) })
+    prefix.forEachRemaining({ prefixElements.add(it) })
+
+    then:
+    prefixElements + suffixElements == expected
+
+    where:
+    sparse | channelPoolSize
+    false  | 0
+    true   | 0
+    false  | 2
+  }
+
+  def "sequential spliterator covers the elements available at creation."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.addAll(values as List)
+
+    when:
+    Iterator<String> iterator = instance.iterator()
+    instance.add('Eleven')
+
+    then:
+    iterator.collect() == values as List
+  }
+
+  @Unroll
+  def "element cache (sparse=#sparse, channelPoolSize=#channelPoolSize)"(boolean sparse, int channelPoolSize) {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, sparse, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.channelPoolSize = channelPoolSize
+    instance.elementCacheSize = 5
+    instance.addAll(values as List)
+
+    when:
+    List<String> first = (0..<values.length).collect { instance.get(it) }
+    List<String> second = (6..<values.length).collect { instance.get(it) }
+
+    then:
+    values as List == first
+    values[6..-1] == second
+    instance.elementCacheMisses == values.length
+    instance.elementCacheHits == 5
+
+    when:
+    instance.get(0)
+
+    then: 'evicted'
+    instance.elementCacheMisses == values.length + 1
+
+    when:
+    instance.reset()
+    instance.add('Foo')
+
+    then:
+    'Foo' == instance.get(0)
+
+    where:
+    sparse | channelPoolSize
+    false  | 0
+    true   | 0
+    true   | 2
+  }
+
+  def "element cache is invalidated by set()."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, true, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.elementCacheSize = 100
+    instance.addAll(values as List)
+
+    when:
+    instance.get(3)
+    instance.set(3, 'Drei')
+
+    then:
+    'Drei' == instance.get(3)
+    instance.elementCacheHits == 0
+    'Drei' == instance.get(3)
+    instance.elementCacheHits == 1
+  }
+
+  def "element cache with byte limit."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.elementCacheBytes = codec.encode(values[1]).length * 2 + 1
+    instance.addAll(values as List)
+
+    when:
+    instance.get(1)
+    instance.get(2)
+    instance.get(1)
+    instance.get(2)
+    instance.get(0)
+
+    then: 'element 0 is too large to be cached'
+    instance.elementCacheHits == 2
+    instance.elementCacheMisses == 3
+
+    when:
+    instance.elementCacheBytes = 0
+
+    then:
+    instance.get(1) == values[1]
+    instance.elementCacheHits == 2
+    instance.elementCacheMisses == 3
+  }
+
+  def "negative element cache size fails."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+
+    when:
+    instance.elementCacheSize = -1
+
+    then:
+    IllegalArgumentException ex = thrown()
+    ex.message == 'elementCacheSize must not be negative but was -1!'
+  }
+
+  def "negative element cache bytes fails."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+
+    when:
+    instance.elementCacheBytes = -1
+
+    then:
+    IllegalArgumentException ex = thrown()
+    ex.message == 'elementCacheBytes must not be negative but was -1!'
+  }
+
+  @Unroll
+  def "block compression (compression=#compression, channelPoolSize=#channelPoolSize)"(String compression, int channelPoolSize) {
+    setup:
+    Map<String, String> metaData = [(BlockCompressingDataStrategy.BLOCK_COMPRESSION_KEY): compression]
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, metaData, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.channelPoolSize = channelPoolSize
+    List<String> expected = (1..5000).collect { 'Element ' + it }
+
+    when:
+    instance.add(expected[0])
+    instance.addAll(expected.subList(1, expected.size()))
+
+    then:
+    !instance.setSupported
+    instance.size == expected.size()
+    instance.iterator().collect() == expected
+    instance.get(4321) == expected[4321]
+    instance.get(10, 5) == expected.subList(10, 15)
+    dataFile.length() < expected.sum { codec.encode(it).length } / 3
+
+    when:
+    instance.flush()
+    CodecFileBuffer<String> otherInstance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    otherInstance.add('Foo')
+
+    then:
+    otherInstance.fileHeader.metaData == new MetaData(metaData, false)
+    otherInstance.get(0) == expected[0]
+    otherInstance.get(expected.size()) == 'Foo'
+
+    where:
+    compression                   | channelPoolSize
+    DeflaterBlockCompressor.NAME  | 0
+    DeflaterBlockCompressor.NAME  | 2
+    DeflateCompressor.RAW_NAME    | 0
+    Lz4Compressor.NAME            | 0
+    Lz4Compressor.NAME            | 2
+  }
+
+  @Unroll
+  def "block compression packs single adds (channelPoolSize=#channelPoolSize)"(int channelPoolSize) {
+    setup:
+    Map<String, String> metaData = [(BlockCompressingDataStrategy.BLOCK_COMPRESSION_KEY): DeflaterBlockCompressor.NAME]
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, metaData, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.channelPoolSize = channelPoolSize
+    List<String> expected = (1..20000).collect { 'Element ' + it }
+    long uncompressedSize = expected.sum { codec.encode(it).length + DefaultDataStrategy.DATA_LENGTH_SIZE }
+
+    when:
+    for(String current : expected) {
+      instance.add(current)
+    }
+
+    then: 'pending elements are visible to this instance'
+    instance.size == expected.size()
+    instance.get(expected.size() - 1) == expected[-1]
+    new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy).size < expected.size()
+
+    when:
+    instance.dispose()
+    CodecFileBuffer<String> otherInstance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+
+    then:
+    otherInstance.size == expected.size()
+    otherInstance.iterator().collect() == expected
+    dataFile.length() - otherInstance.fileHeader.dataOffset < uncompressedSize / 3
+
+    where:
+    channelPoolSize << [0, 2]
+  }
+
+  @Unroll
+  def "compact() (channelPoolSize=#channelPoolSize, elementCacheSize=#elementCacheSize)"(int channelPoolSize, int elementCacheSize) {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, true, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.channelPoolSize = channelPoolSize
+    instance.elementCacheSize = elementCacheSize
+    instance.addAll(values as List)
+    for(int i = 0; i < 10; i++) {
+      instance.set(2, 'Two' + i)
+      instance.set(5, 'Five' + i)
+    }
+    instance.set(7, null)
+    instance.set(15, 'Fifteen')
+    long previousLength = dataFile.length()
+
+    when:
+    long reclaimed = instance.compact()
+
+    then:
+    reclaimed > 0
+    dataFile.length() == previousLength - reclaimed
+    !new File(dataFile.path + '.compacting').exists()
+    !new File(indexFile.path + '.compacting').exists()
+    instance.size == 16
+    instance.get(2) == 'Two9'
+    instance.get(5) == 'Five9'
+    instance.get(7) == null
+    instance.get(8) == values[8]
+    instance.get(14) == null
+    instance.get(15) == 'Fifteen'
+
+    when:
+    instance.set(3, 'Drei')
+    instance.add('Sixteen')
+
+    then:
+    instance.compact() == codec.encode(values[3]).length + SparseDataStrategy.DATA_LENGTH_SIZE + SparseDataStrategy.INDEX_SIZE
+    instance.get(3) == 'Drei'
+    instance.get(16) == 'Sixteen'
+    instance.compact() == 0
+
+    where:
+    channelPoolSize | elementCacheSize
+    0               | 0
+    2               | 100
+  }
+
+  def "compact() with garbage ratio."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, true, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.addAll(values as List)
+    instance.set(3, 'Drei')
+
+    expect:
+    instance.compact(0.5) == 0
+    instance.compact(0.01) > 0
+    instance.get(3) == 'Drei'
+  }
+
+  def "compact() of non-sparse buffer does nothing."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.addAll(values as List)
+
+    expect:
+    instance.compact() == 0
+    instance.size == values.length
+  }
+
+  def "compact() of buffer using a different index format fails."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, true, null, codec, dataFile, indexFile, fileHeaderStrategy, new StrategyDefaultMethodsSpec.RandomAccessIndexStrategy())
+    instance.addAll(values as List)
+    instance.set(3, 'Drei')
+    long dataLength = dataFile.length()
+
+    when:
+    instance.compact()
+
+    then:
+    IllegalArgumentException ex = thrown()
+    ex.message == 'Only buffers using the index format of DefaultIndexStrategy can be compacted!'
+    dataFile.length() == dataLength
+    instance.get(3) == 'Drei'
+  }
+
+  def "compact() keeps the sparse flag of the file header."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, true, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.addAll(values as List)
+    instance.set(3, 'Drei')
+
+    when:
+    long reclaimed = instance.compact()
+
+    then:
+    reclaimed > 0
+    instance.fileHeader.metaData.sparse
+    fileHeaderStrategy.readFileHeader(dataFile).metaData.sparse
+    instance.get(3) == 'Drei'
+  }
+
+  def "compact() with invalid garbage ratio fails."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, true, null, codec, dataFile, indexFile, fileHeaderStrategy)
+
+    when:
+    instance.compact(1.5)
+
+    then:
+    IllegalArgumentException ex = thrown()
+    ex.message == 'minimumGarbageRatio must be in the range [0, 1] but was 1.5!'
+  }
+
+  def "compact() with concurrent writes."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, true, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.channelPoolSize = 2
+    instance.addAll((0..<20000).collect { 'Value' + it })
+    Map<Long, String> expected = new HashMap<>()
+    Thread writer = new Thread({
+      Random random = new Random(17)
+      for(int i = 0; i < 5000; i++) {
+        long index = random.nextInt(25000)
+        String value = random.nextInt(10) == 0 ? null : 'Replaced' + i
+        instance.set(index, value)
+        expected.put(index, value)
+      }
+    })
+
+    when:
+    writer.start()
+    while(writer.alive) {
+      instance.compact()
+    }
+    writer.join()
+    instance.compact()
+
+    then:
+    for(long i = 0; i < 25000; i++) {
+      String value = expected.containsKey(i) ? expected.get(i) : (i < 20000 ? 'Value' + i : null)
+      assert instance.get(i) == value
+    }
+  }
+
+  @Unroll
+  def "exclusive mode tracks size in memory (sparse=#sparse, channelPoolSize=#channelPoolSize)"(boolean sparse, int channelPoolSize) {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, sparse, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.channelPoolSize = channelPoolSize
+    instance.exclusive = true
+
+    expect:
+    instance.exclusive
+    instance.size == 0
+    instance.get(0) == null
+
+    when:
+    instance.add(values[0])
+    instance.addAll(values[1..5])
+    instance.addAll(values[6..9] as String[])
+
+    then:
+    instance.size == 10
+    instance.get(9) == values[9]
+    instance.get(10) == null
+    instance.get(-1) == null
+    instance.get(8, 5) == values[8..9]
+    instance.get(10, 5) == []
+
+    when: 'the files are changed by another buffer'
+    new CodecFileBuffer<String>(magicValue, sparse, null, codec, dataFile, indexFile, fileHeaderStrategy).add(values[10])
+
+    then: 'the change is not visible'
+    instance.size == 10
+    instance.get(10) == null
+
+    when:
+    instance.exclusive = false
+
+    then:
+    instance.size == 11
+    instance.get(10) == values[10]
+
+    when:
+    instance.exclusive = true
+    instance.reset()
+    instance.add('Foo')
+
+    then:
+    instance.size == 1
+    instance.get(0) == 'Foo'
+
+    where:
+    sparse | channelPoolSize
+    false  | 0
+    true   | 0
+    false  | 2
+    true   | 2
+  }
+
+  def "exclusive mode tracks set() beyond size."() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, true, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.exclusive = true
+    instance.addAll(values as List)
+
+    when:
+    instance.set(15, 'Fifteen')
+    instance.set(3, 'Drei')
+
+    then:
+    instance.size == 16
+    instance.get(15) == 'Fifteen'
+    instance.get(3) == 'Drei'
+
+    when:
+    instance.set(20, null)
+
+    then:
+    instance.size == 21
+  }
+
+  @Unroll
+  def "BinaryCodec stores its class descriptor in the meta data (sparse=#sparse)"(boolean sparse) {
+    setup:
+    BinaryCodec<Object> binaryCodec = new BinaryCodec<Object>(new ClassRegistry(TimeUnit))
+    Map<String, String> metaData = binaryCodec.putMetaData([foo: 'bar'])
+    CodecFileBuffer<Object> instance = new CodecFileBuffer<Object>(magicValue, sparse, metaData, binaryCodec, dataFile, indexFile)
+    List<Object> values = (1..1000).collect { [name: 'Value' + it, unit: TimeUnit.SECONDS, count: it] as Map<String, Object> }
+
+    when:
+    instance.add(values[0])
+    instance.addAll(values.subList(1, values.size()))
+    instance = new CodecFileBuffer<Object>(magicValue, sparse, null, null, dataFile, indexFile)
+    instance.codec = BinaryCodec.fromMetaData(instance.fileHeader.metaData.data)
+
+    then:
+    instance.size == values.size()
+    instance.get(0) == values[0]
+    instance.get(999) == values[999]
+    instance.get(10, 5) == values.subList(10, 15)
+
+    where:
+    sparse << [false, true]
+  }
+
   static class CapturingStringElementProcessor
     implements ElementProcessor<String> {
 
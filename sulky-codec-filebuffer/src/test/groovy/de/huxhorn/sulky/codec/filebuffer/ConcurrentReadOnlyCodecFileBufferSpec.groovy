@@ -0,0 +1,201 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer
+
+import de.huxhorn.sulky.codec.Codec
+import de.huxhorn.sulky.codec.SerializableCodec
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.function.LongConsumer
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ConcurrentReadOnlyCodecFileBufferSpec
+  extends Specification {
+
+  Codec<String> codec = new SerializableCodec<String>()
+  FileHeaderStrategy fileHeaderStrategy = new DefaultFileHeaderStrategy()
+  int magicValue = 0xDEADBEEF
+
+  File tempOutputPath
+  File dataFile
+  File indexFile
+
+  def setup() {
+    tempOutputPath = File.createTempFile("sfb-testing", "rulez")
+    tempOutputPath.delete()
+    tempOutputPath.mkdirs()
+    dataFile = new File(tempOutputPath, "dump")
+    indexFile = new File(tempOutputPath, "dump.index")
+  }
+
+  def cleanup() {
+    dataFile.delete()
+    indexFile.delete()
+    tempOutputPath.delete()
+  }
+
+  @Unroll
+  def "concurrent reads (sparse=#sparse)"(boolean sparse) {
+    setup:
+    List<String> values = (0..<1000).collect { 'Value' + it }
+    new CodecFileBuffer<String>(magicValue, sparse, null, codec, dataFile, indexFile, fileHeaderStrategy).addAll(values)
+    ConcurrentReadOnlyCodecFileBuffer<String> instance = new ConcurrentReadOnlyCodecFileBuffer<String>(dataFile, indexFile)
+    instance.codec = codec
+    List<Throwable> failures = new CopyOnWriteArrayList<>()
+
+    when:
+    List<Thread> threads = (0..<4).collect { int offset ->
+      Thread.start {
+        try {
+          for(int i = 0; i < values.size(); i++) {
+            int index = (i + offset * 250) % values.size()
+            assert instance.get(index) == values[index]
+          }
+          assert instance.get(100, 50) == values.subList(100, 150)
+        } catch(Throwable t) {
+          failures.add(t)
+        }
+      }
+    }
+    threads*.join()
+
+    then:
+    failures.isEmpty()
+    instance.size == values.size()
+    instance.collect() == values
+
+    cleanup:
+    instance.close()
+
+    where:
+    sparse << [false, true]
+  }
+
+  def "channels closed by an interrupted reader are reopened."() {
+    setup:
+    new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy).addAll(['Foo', 'Bar'])
+    ConcurrentReadOnlyCodecFileBuffer<String> instance = new ConcurrentReadOnlyCodecFileBuffer<String>(dataFile, indexFile)
+    instance.codec = codec
+
+    when:
+    Thread.currentThread().interrupt()
+    String interruptedValue = instance.get(0)
+    boolean interrupted = Thread.interrupted()
+
+    then:
+    interrupted
+    interruptedValue == null
+    instance.get(0) == 'Foo'
+    instance.get(0, 2) == ['Foo', 'Bar']
+    instance.refreshSize() == 2
+
+    cleanup:
+    instance.close()
+  }
+
+  def "refreshSize() follows the written buffer."() {
+    setup:
+    CodecFileBuffer<String> writer = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    writer.add('Foo')
+    ConcurrentReadOnlyCodecFileBuffer<String> instance = new ConcurrentReadOnlyCodecFileBuffer<String>(dataFile, indexFile)
+    instance.codec = codec
+    List<Long> sizes = []
+    instance.addSizeListener({ long size -> sizes.add(size) } as LongConsumer)
+
+    when:
+    writer.addAll(['Bar', 'Foobar'])
+
+    then:
+    instance.size == 1
+    instance.get(2) == 'Foobar'
+    instance.refreshSize() == 3
+    instance.size == 3
+    instance.refreshSize() == 3
+    sizes == [3L]
+
+    cleanup:
+    instance.close()
+  }
+
+  def "tailing publishes size changes."() {
+    setup:
+    CodecFileBuffer<String> writer = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    writer.add('Foo')
+    ConcurrentReadOnlyCodecFileBuffer<String> instance = new ConcurrentReadOnlyCodecFileBuffer<String>(dataFile, indexFile)
+    instance.codec = codec
+    CountDownLatch latch = new CountDownLatch(1)
+    instance.addSizeListener({ long size -> if(size == 11) latch.countDown() } as LongConsumer)
+    instance.tailingInterval = 10
+
+    when:
+    writer.addAll((1..10).collect { 'Value' + it })
+
+    then:
+    latch.await(10, TimeUnit.SECONDS)
+    instance.size == 11
+    instance.get(10) == 'Value10'
+
+    when:
+    instance.close()
+
+    then:
+    instance.closed
+    instance.get(0) == null
+
+    when:
+    instance.tailingInterval = 10
+
+    then:
+    thrown(IllegalStateException)
+  }
+
+  def "negative tailing interval fails."() {
+    setup:
+    new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy).add('Foo')
+    ConcurrentReadOnlyCodecFileBuffer<String> instance = new ConcurrentReadOnlyCodecFileBuffer<String>(dataFile, indexFile)
+
+    when:
+    instance.tailingInterval = -1
+
+    then:
+    IllegalArgumentException ex = thrown()
+    ex.message == 'tailingInterval must not be negative but was -1!'
+
+    cleanup:
+    instance.close()
+  }
+}
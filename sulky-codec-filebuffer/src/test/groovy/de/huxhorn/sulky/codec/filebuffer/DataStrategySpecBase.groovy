@@ -35,6 +35,9 @@ package de.huxhorn.sulky.codec.filebuffer
 
 import de.huxhorn.sulky.codec.Codec
 import de.huxhorn.sulky.codec.SerializableCodec
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
 import spock.lang.Specification
 
 abstract class DataStrategySpecBase
@@ -102,6 +105,199 @@ abstract class DataStrategySpecBase
     value2 == readValue2
   }
 
+  def "supports encoded and FileChannel access"() {
+    expect:
+    instance.encodedAccessSupported
+    instance.fileChannelSupported
+  }
+
+  def "add and get using channels"() {
+    setup:
+    String value1 = "Foo"
+    String value2 = "Bar"
+    FileChannel indexChannel = openChannel(indexFile)
+    FileChannel dataChannel = openChannel(dataFile)
+
+    when:
+    instance.addUsingChannels(value1, indexChannel, dataChannel, codec, indexStrategy)
+    instance.addUsingChannels(value2, indexChannel, dataChannel, codec, indexStrategy)
+    String readValue1 = instance.getUsingChannels(0, indexChannel, dataChannel, codec, indexStrategy)
+    String readValue2 = instance.getUsingChannels(1, indexChannel, dataChannel, codec, indexStrategy)
+    String readValue3 = instance.getUsingChannels(2, indexChannel, dataChannel, codec, indexStrategy)
+    indexChannel.close()
+    dataChannel.close()
+
+    then:
+    value1 == readValue1
+    value2 == readValue2
+    null == readValue3
+  }
+
+  def "addAll using channels and get using RandomAccessFile"() {
+    setup:
+    String value1 = "Foo"
+    String value2 = "Bar"
+    List<String> list = [value1, value2]
+    FileChannel indexChannel = openChannel(indexFile)
+    FileChannel dataChannel = openChannel(dataFile)
+
+    when:
+    instance.addAllUsingChannels(list, indexChannel, dataChannel, codec, indexStrategy)
+    indexChannel.close()
+    dataChannel.close()
+    RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "r")
+    RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "r")
+    String readValue1 = instance.get(0, randomIndexFile, randomDataFile, codec, indexStrategy)
+    String readValue2 = instance.get(1, randomIndexFile, randomDataFile, codec, indexStrategy)
+    closeQuietly(randomIndexFile)
+    closeQuietly(randomDataFile)
+
+    then:
+    value1 == readValue1
+    value2 == readValue2
+  }
+
+  def "addAll spanning multiple write batches"() {
+    setup:
+    // roughly 3 batches of WRITE_BATCH_SIZE
+    String chunk = 'x' * 100000
+    List<String> values = (1..30).collect { it + chunk }
+    FileChannel indexChannel = openChannel(indexFile)
+    FileChannel dataChannel = openChannel(dataFile)
+    RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw")
+    RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw")
+
+    when:
+    instance.addAllUsingChannels(values, indexChannel, dataChannel, codec, indexStrategy)
+    instance.addAll(values, randomIndexFile, randomDataFile, codec, indexStrategy)
+    long size = indexStrategy.getSize(indexChannel)
+    List<String> readValues = (0..<size).collect { instance.getUsingChannels(it, indexChannel, dataChannel, codec, indexStrategy) }
+    indexChannel.close()
+    dataChannel.close()
+    closeQuietly(randomIndexFile)
+    closeQuietly(randomDataFile)
+
+    then:
+    values.size() * 2 == size
+    values + values == readValues
+  }
+
+  def "getRange using RandomAccessFile and channels"() {
+    setup:
+    List<String> values = (1..20).collect { "Value " + it }
+    FileChannel indexChannel = openChannel(indexFile)
+    FileChannel dataChannel = openChannel(dataFile)
+    RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "r")
+    RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "r")
+
+    when:
+    instance.addAllUsingChannels(values, indexChannel, dataChannel, codec, indexStrategy)
+    List<String> all = instance.getRangeUsingChannels(0, 100, indexChannel, dataChannel, codec, indexStrategy)
+    List<String> some = instance.getRange(5, 3, randomIndexFile, randomDataFile, codec, indexStrategy)
+    List<String> none = instance.getRangeUsingChannels(20, 3, indexChannel, dataChannel, codec, indexStrategy)
+    instance.mappingData = true
+    List<String> mapped = instance.getRange(17, 5, randomIndexFile, randomDataFile, codec, indexStrategy)
+    indexChannel.close()
+    dataChannel.close()
+    closeQuietly(randomIndexFile)
+    closeQuietly(randomDataFile)
+    instance.reset()
+
+    then:
+    values == all
+    values.subList(5, 8) == some
+    none.isEmpty()
+    values.subList(17, 20) == mapped
+  }
+
+  def "getEncoded using RandomAccessFile and channels"() {
+    setup:
+    List<String> values = (1..20).collect { "Value " + it }
+    FileChannel indexChannel = openChannel(indexFile)
+    FileChannel dataChannel = openChannel(dataFile)
+    RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "r")
+    RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "r")
+
+    when:
+    instance.addAllUsingChannels(values, indexChannel, dataChannel, codec, indexStrategy)
+    ByteBuffer first = instance.getEncodedUsingChannels(0, indexChannel, dataChannel, indexStrategy)
+    ByteBuffer last = instance.getEncoded(19, randomIndexFile, randomDataFile, indexStrategy)
+    ByteBuffer none = instance.getEncodedUsingChannels(20, indexChannel, dataChannel, indexStrategy)
+    instance.mappingData = true
+    ByteBuffer mapped = instance.getEncodedUsingChannels(5, indexChannel, dataChannel, indexStrategy)
+    indexChannel.close()
+    dataChannel.close()
+    closeQuietly(randomIndexFile)
+    closeQuietly(randomDataFile)
+    instance.reset()
+
+    then:
+    codec.encode(values[0]).length == first.remaining()
+    values[0] == DefaultDataStrategy.decode(first, codec)
+    values[19] == DefaultDataStrategy.decode(last, codec)
+    none == null
+    values[5] == DefaultDataStrategy.decode(mapped, codec)
+  }
+
+  def "RandomAccessFile is not closed by interrupted thread"() {
+    setup:
+    List<String> values = (1..5).collect { "Value " + it }
+    RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw")
+    RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw")
+
+    when:
+    Thread.currentThread().interrupt()
+    instance.addAll(values, randomIndexFile, randomDataFile, codec, indexStrategy)
+    List<String> range = instance.getRange(0, 5, randomIndexFile, randomDataFile, codec, indexStrategy)
+    ByteBuffer encoded = instance.getEncoded(4, randomIndexFile, randomDataFile, indexStrategy)
+    boolean interrupted = Thread.interrupted()
+    String first = instance.get(0, randomIndexFile, randomDataFile, codec, indexStrategy)
+    closeQuietly(randomIndexFile)
+    closeQuietly(randomDataFile)
+
+    then:
+    interrupted
+    values == range
+    values[4] == DefaultDataStrategy.decode(encoded, codec)
+    values[0] == first
+  }
+
+  def "add and get using mapped data"() {
+    setup:
+    instance.mappingData = true
+    List<String> values = (1..100).collect { "Value " + it }
+    FileChannel indexChannel = openChannel(indexFile)
+    FileChannel dataChannel = openChannel(dataFile)
+    RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "r")
+    RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "r")
+
+    when:
+    List<String> readValues = []
+    List<String> randomAccessReadValues = []
+    for(int i = 0; i < values.size(); i++) {
+      instance.addUsingChannels(values[i], indexChannel, dataChannel, codec, indexStrategy)
+      readValues.add(instance.getUsingChannels(i, indexChannel, dataChannel, codec, indexStrategy))
+      randomAccessReadValues.add(instance.get(i, randomIndexFile, randomDataFile, codec, indexStrategy))
+    }
+    boolean mapping = instance.mappingData
+    instance.reset()
+    String readAfterReset = instance.getUsingChannels(0, indexChannel, dataChannel, codec, indexStrategy)
+    indexChannel.close()
+    dataChannel.close()
+    closeQuietly(randomIndexFile)
+    closeQuietly(randomDataFile)
+
+    then:
+    mapping
+    values == readValues
+    values == randomAccessReadValues
+    values[0] == readAfterReset
+  }
+
+  static FileChannel openChannel(File file) {
+    return FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)
+  }
+
   static void closeQuietly(RandomAccessFile raf) {
     if(raf != null) {
       try {
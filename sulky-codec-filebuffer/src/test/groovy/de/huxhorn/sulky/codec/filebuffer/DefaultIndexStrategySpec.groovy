@@ -1,5 +1,7 @@
 package de.huxhorn.sulky.codec.filebuffer
 
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
 import spock.lang.Specification
 
 class DefaultIndexStrategySpec
@@ -102,4 +104,120 @@ class DefaultIndexStrategySpec
     value1 == offset1
     value2 == offset2
   }
+
+  def "any offset using channel"() {
+    setup:
+    FileChannel channel = FileChannel.open(testFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)
+    long index = 1234
+    long value = 42
+
+    when:
+    instance.setOffset(channel, index, value)
+    long size = instance.getSize(channel)
+    long offset = instance.getOffset(channel, index)
+    for(int i=0;i<index;i++) {
+      assert -1 == instance.getOffset(channel, i)
+    }
+    long outOfBounds = instance.getOffset(channel, index+1)
+    channel.close()
+
+    then:
+    index+1 == size
+    42 == offset
+    -1 == outOfBounds
+  }
+
+  def "channel and RandomAccessFile are compatible"() {
+    setup:
+    FileChannel channel = FileChannel.open(testFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)
+
+    when:
+    instance.setOffset(channel, 3, 17)
+    channel.close()
+    RandomAccessFile raf = new RandomAccessFile(testFile, "r")
+    long size = instance.getSize(raf)
+    long offset = instance.getOffset(raf, 3)
+    long emptyOffset = instance.getOffset(raf, 2)
+    raf.close()
+
+    then:
+    4 == size
+    17 == offset
+    -1 == emptyOffset
+  }
+
+  def "setOffsets using channel and RandomAccessFile"() {
+    setup:
+    FileChannel channel = FileChannel.open(testFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)
+
+    when:
+    instance.setOffsets(channel, 2, [17, 18, 19] as long[])
+    channel.close()
+    RandomAccessFile raf = new RandomAccessFile(testFile, "rw")
+    instance.setOffsets(raf, 4, [20, 21] as long[])
+    long size = instance.getSize(raf)
+    List<Long> offsets = (0..<size).collect { instance.getOffset(raf, it) }
+    raf.close()
+
+    then:
+    6 == size
+    [-1L, -1L, 17L, 18L, 20L, 21L] == offsets
+  }
+
+  def "getOffsets using channel and RandomAccessFile"() {
+    setup:
+    FileChannel channel = FileChannel.open(testFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)
+
+    when:
+    instance.setOffsets(channel, 1, [17, 18, 19] as long[])
+    long[] all = instance.getOffsets(channel, 0, 10)
+    long[] some = instance.getOffsets(channel, 2, 1)
+    long[] none = instance.getOffsets(channel, 4, 1)
+    long[] negative = instance.getOffsets(channel, -1, 1)
+    channel.close()
+    RandomAccessFile raf = new RandomAccessFile(testFile, "r")
+    long[] rafOffsets = instance.getOffsets(raf, 1, 2)
+    raf.close()
+
+    then:
+    [-1L, 17L, 18L, 19L] == all.toList()
+    [18L] == some.toList()
+    0 == none.length
+    0 == negative.length
+    [17L, 18L] == rafOffsets.toList()
+  }
+
+  def "setOffsets using RandomAccessFile fills large gaps"() {
+    setup:
+    RandomAccessFile raf = new RandomAccessFile(testFile, "rw")
+
+    when:
+    instance.setOffsets(raf, 1500, [17, 18] as long[])
+    long size = instance.getSize(raf)
+    long[] offsets = instance.getOffsets(raf, 0, 1502)
+    raf.close()
+
+    then:
+    1502 == size
+    offsets[0..1499].every { it == -1L }
+    [17L, 18L] == offsets[1500..1501]
+  }
+
+  def "RandomAccessFile is not closed by interrupted thread"() {
+    setup:
+    RandomAccessFile raf = new RandomAccessFile(testFile, "rw")
+
+    when:
+    Thread.currentThread().interrupt()
+    instance.setOffsets(raf, 0, [17, 18] as long[])
+    long[] offsets = instance.getOffsets(raf, 0, 2)
+    boolean interrupted = Thread.interrupted()
+    long size = instance.getSize(raf)
+    raf.close()
+
+    then:
+    interrupted
+    2 == size
+    [17L, 18L] == offsets.toList()
+  }
 }
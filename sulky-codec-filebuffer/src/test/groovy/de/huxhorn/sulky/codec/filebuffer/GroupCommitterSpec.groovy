@@ -0,0 +1,140 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer
+
+import de.huxhorn.sulky.buffers.AppendOperation
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import spock.lang.Specification
+
+class GroupCommitterSpec
+  extends Specification {
+
+  ExecutorService executor = Executors.newFixedThreadPool(4)
+
+  def cleanup() {
+    executor.shutdownNow()
+  }
+
+  def "elements of concurrent adds are written in a single batch"() {
+    setup:
+    RecordingTarget target = new RecordingTarget()
+    GroupCommitter<String> instance = new GroupCommitter<String>(target, 4, 10000)
+
+    when:
+    List<Future<?>> futures = (1..4).collect { value -> executor.submit({ instance.add("Value " + value) } as Runnable) }
+    futures.each { it.get() }
+
+    then:
+    target.batches.size() == 1
+    target.batches[0].sort() == (1..4).collect { "Value " + it }
+  }
+
+  def "failure of a batch is rethrown by every thread of the batch"() {
+    setup:
+    RecordingTarget target = new RecordingTarget(failing: true)
+    GroupCommitter<String> instance = new GroupCommitter<String>(target, 4, 10000)
+
+    when:
+    List<Future<?>> futures = (1..4).collect { value -> executor.submit({ instance.add("Value " + value) } as Runnable) }
+    List<Throwable> causes = futures.collect { future ->
+      try {
+        future.get()
+        return null
+      }
+      catch(ExecutionException ex) {
+        return ex.cause
+      }
+    }
+
+    then:
+    target.batches.size() == 1
+    causes.every { it instanceof IllegalStateException && it.message == 'Failed!' }
+
+    when: 'the next batch succeeds'
+    target.failing = false
+    futures = (5..8).collect { value -> executor.submit({ instance.add("Value " + value) } as Runnable) }
+    futures.each { it.get() }
+
+    then:
+    target.batches.size() == 2
+    target.batches[1].sort() == (5..8).collect { "Value " + it }
+  }
+
+  def "failure without delay is rethrown by the adding thread"() {
+    setup:
+    RecordingTarget target = new RecordingTarget(failing: true)
+    GroupCommitter<String> instance = new GroupCommitter<String>(target, 4, 0)
+
+    when:
+    instance.add('Foo')
+
+    then:
+    IllegalStateException ex = thrown()
+    ex.message == 'Failed!'
+  }
+
+  static class RecordingTarget
+    implements AppendOperation<String> {
+
+    final List<List<String>> batches = Collections.synchronizedList(new ArrayList<List<String>>())
+    volatile boolean failing
+
+    @Override
+    void add(String element) {
+      addAll([element])
+    }
+
+    @Override
+    void addAll(List<String> elements) {
+      batches.add(new ArrayList<String>(elements))
+      if(failing) {
+        throw new IllegalStateException('Failed!')
+      }
+    }
+
+    @Override
+    void addAll(String[] elements) {
+      addAll(Arrays.asList(elements))
+    }
+
+    @Override
+    boolean isFull() {
+      return false
+    }
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer
+
+import de.huxhorn.sulky.codec.Codec
+import de.huxhorn.sulky.codec.SerializableCodec
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class IndexRecoverySpec
+  extends Specification {
+
+  Codec<String> codec = new SerializableCodec<String>()
+  FileHeaderStrategy fileHeaderStrategy = new DefaultFileHeaderStrategy()
+  int magicValue = 0xDEADBEEF
+
+  File tempOutputPath
+  File dataFile
+  File indexFile
+
+  def setup() {
+    tempOutputPath = File.createTempFile("sfb-testing", "rulez")
+    tempOutputPath.delete()
+    tempOutputPath.mkdirs()
+    dataFile = new File(tempOutputPath, "dump")
+    indexFile = new File(tempOutputPath, "dump.index")
+  }
+
+  def cleanup() {
+    dataFile.delete()
+    indexFile.delete()
+    tempOutputPath.delete()
+  }
+
+  @Unroll
+  def "rebuildIndex spanning multiple chunks (checksums=#checksums, indexStrategy=#indexStrategy.class.simpleName)"(boolean checksums, IndexStrategy indexStrategy) {
+    setup:
+    Map<String, String> metaData = checksums ? [(DefaultDataStrategy.CHECKSUM_KEY): DefaultDataStrategy.CHECKSUM_CRC32] : null
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, metaData, codec, dataFile, indexFile, fileHeaderStrategy)
+    String padding = 'x' * 500
+    List<String> values = (1..20000).collect { padding + it }
+    values.add(10000, 'y' * (IndexRecovery.SCAN_BUFFER_SIZE + 10))
+    instance.addAll(values)
+    byte[] expectedIndex = indexFile.bytes
+
+    when:
+    indexFile.delete()
+    long count = IndexRecovery.rebuildIndex(dataFile, indexFile, fileHeaderStrategy, indexStrategy)
+
+    then:
+    dataFile.length() > IndexRecovery.SCAN_BUFFER_SIZE * 2
+    count == values.size()
+    expectedIndex == indexFile.bytes
+    new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy, indexStrategy).get(10000) == values[10000]
+
+    where:
+    checksums | indexStrategy
+    false     | new DefaultIndexStrategy()
+    true      | new DefaultIndexStrategy()
+    true      | new MappedIndexStrategy()
+  }
+
+  @Unroll
+  def "isConsistent only reads both files (checksums=#checksums)"(boolean checksums) {
+    setup:
+    Map<String, String> metaData = checksums ? [(DefaultDataStrategy.CHECKSUM_KEY): DefaultDataStrategy.CHECKSUM_CRC32] : null
+    new CodecFileBuffer<String>(magicValue, false, metaData, codec, dataFile, indexFile, fileHeaderStrategy).addAll(['Foo', 'Bar'])
+    FileHeader header = fileHeaderStrategy.readFileHeader(dataFile)
+    long dataLength = dataFile.length()
+
+    expect:
+    isConsistent(header)
+
+    when: 'a record is appended without its offset'
+    new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy).add('Foobar')
+    RandomAccessFile raf = new RandomAccessFile(indexFile, 'rw')
+    raf.setLength(2 * DefaultIndexStrategy.DATA_OFFSET_SIZE)
+    raf.close()
+    long appendedLength = dataFile.length()
+
+    then:
+    !isConsistent(header)
+    dataFile.length() == appendedLength
+    indexFile.length() == 2 * DefaultIndexStrategy.DATA_OFFSET_SIZE
+
+    when: 'the appended record is removed'
+    raf = new RandomAccessFile(dataFile, 'rw')
+    raf.setLength(dataLength)
+    raf.close()
+
+    then:
+    isConsistent(header)
+
+    where:
+    checksums << [false, true]
+  }
+
+  private boolean isConsistent(FileHeader header) {
+    FileChannel dataChannel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)
+    FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)
+    try {
+      return IndexRecovery.isConsistent(dataChannel, indexChannel, header)
+    } finally {
+      dataChannel.close()
+      indexChannel.close()
+    }
+  }
+
+  def "rebuildIndex of empty buffer"() {
+    setup:
+    new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy).add('Foo')
+    RandomAccessFile raf = new RandomAccessFile(dataFile, 'rw')
+    raf.setLength(fileHeaderStrategy.readFileHeader(dataFile).dataOffset + 2)
+    raf.close()
+
+    expect:
+    IndexRecovery.rebuildIndex(dataFile, indexFile, fileHeaderStrategy, new DefaultIndexStrategy()) == 0
+    indexFile.length() == 0
+    dataFile.length() == fileHeaderStrategy.readFileHeader(dataFile).dataOffset
+  }
+
+  def "rebuildIndex of sparse buffer uses the last record of each element"() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, true, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.addAll((0..<100000).collect { 'Foo' + it })
+    instance.set(5, 'Bar')
+    instance.set(100010, 'Baz')
+    instance.set(3, 'Foobar')
+    instance.set(5, 'Barfoo')
+    byte[] expectedIndex = indexFile.bytes
+    long dataLength = dataFile.length()
+    RandomAccessFile raf = new RandomAccessFile(dataFile, 'rw')
+    raf.setLength(dataLength + 7)
+    raf.close()
+
+    when:
+    indexFile.delete()
+    long count = IndexRecovery.rebuildIndex(dataFile, indexFile, fileHeaderStrategy, new DefaultIndexStrategy())
+
+    then:
+    count == 100011
+    expectedIndex == indexFile.bytes
+    dataFile.length() == dataLength
+
+    when:
+    instance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+
+    then:
+    instance.get(3) == 'Foobar'
+    instance.get(5) == 'Barfoo'
+    instance.get(99999) == 'Foo99999'
+    instance.get(100000) == null
+    instance.get(100010) == 'Baz'
+  }
+
+  def "rebuildIndex of corrupted sparse index using the buffer"() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, true, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.addAll(['Foo', 'Bar', 'Foobar'])
+    instance.set(1, 'Baz')
+    RandomAccessFile raf = new RandomAccessFile(indexFile, 'rw')
+    raf.writeLong(17)
+    raf.setLength(4 * DefaultIndexStrategy.DATA_OFFSET_SIZE)
+    raf.close()
+
+    expect:
+    instance.rebuildIndex() == 3
+    instance.size() == 3
+    instance.get(0) == 'Foo'
+    instance.get(1) == 'Baz'
+    instance.get(2) == 'Foobar'
+  }
+
+  def "rebuildIndex of block-compressed buffer fails"() {
+    setup:
+    Map<String, String> metaData = [(BlockCompressingDataStrategy.BLOCK_COMPRESSION_KEY): DeflaterBlockCompressor.NAME]
+    new CodecFileBuffer<String>(magicValue, false, metaData, codec, dataFile, indexFile, fileHeaderStrategy).add('Foo')
+
+    when:
+    IndexRecovery.rebuildIndex(dataFile, indexFile, fileHeaderStrategy, new DefaultIndexStrategy())
+
+    then:
+    thrown(IllegalArgumentException)
+  }
+}
@@ -0,0 +1,184 @@
+package de.huxhorn.sulky.codec.filebuffer
+
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import spock.lang.Specification
+
+class MappedIndexStrategySpec
+  extends Specification {
+  File testFile
+  // 8 offsets per segment
+  MappedIndexStrategy instance = new MappedIndexStrategy(64)
+
+  def setup() {
+    testFile = File.createTempFile("index", "tst")
+    testFile.delete()
+  }
+
+  def cleanup() {
+    testFile.delete()
+  }
+
+  def "invalid segment size"() {
+    when:
+    new MappedIndexStrategy(17)
+
+    then:
+    IllegalArgumentException e = thrown()
+    e.message == "segmentSize must be a positive multiple of 8 but was 17!"
+  }
+
+  def "empty getSize and getOffset"() {
+    setup:
+    RandomAccessFile raf = new RandomAccessFile(testFile, "rw")
+
+    when:
+    long size = instance.getSize(raf)
+    long offset = instance.getOffset(raf, 17)
+    raf.close()
+
+    then:
+    0 == size
+    -1 == offset
+  }
+
+  def "any offset, spanning multiple segments"() {
+    setup:
+    RandomAccessFile raf = new RandomAccessFile(testFile, "rw")
+    long index = 17
+    long value = 42
+
+    when:
+    instance.setOffset(raf, index, value)
+    long size = instance.getSize(raf)
+    long offset = instance.getOffset(raf, index)
+    for(int i=0;i<index;i++) {
+      assert -1 == instance.getOffset(raf, i)
+    }
+    raf.close()
+
+    then:
+    index+1 == size
+    42 == offset
+  }
+
+  def "appending after reading remaps the last segment"() {
+    setup:
+    FileChannel channel = openChannel()
+
+    when:
+    for(int i=0;i<20;i++) {
+      instance.setOffset(channel, i, i*10)
+      for(int j=0;j<=i;j++) {
+        assert j*10 == instance.getOffset(channel, j)
+      }
+    }
+    long size = instance.getSize(channel)
+    channel.close()
+
+    then:
+    20 == size
+    160 == testFile.length()
+  }
+
+  def "overwriting an already mapped offset"() {
+    setup:
+    FileChannel channel = openChannel()
+
+    when:
+    instance.setOffset(channel, 0, 17)
+    instance.setOffset(channel, 1, 18)
+    long offset1 = instance.getOffset(channel, 0)
+    instance.setOffset(channel, 0, -1)
+    long offset2 = instance.getOffset(channel, 0)
+    long size = instance.getSize(channel)
+    channel.close()
+
+    then:
+    17 == offset1
+    -1 == offset2
+    2 == size
+  }
+
+  def "existing file is read by a new instance"() {
+    setup:
+    DefaultIndexStrategy defaultStrategy = new DefaultIndexStrategy()
+    FileChannel channel = openChannel()
+    for(int i=0;i<10;i++) {
+      defaultStrategy.setOffset(channel, i, i+100)
+    }
+    channel.close()
+    RandomAccessFile raf = new RandomAccessFile(testFile, "r")
+
+    when:
+    long size = instance.getSize(raf)
+    List<Long> offsets = (0..9).collect { instance.getOffset(raf, it) }
+    raf.close()
+
+    then:
+    10 == size
+    (100L..109L) == offsets
+  }
+
+  def "reset forgets the size"() {
+    setup:
+    FileChannel channel = openChannel()
+    instance.setOffset(channel, 3, 17)
+    channel.close()
+
+    when:
+    assert testFile.delete()
+    channel = openChannel()
+    long sizeBefore = instance.getSize(channel)
+    instance.reset()
+    long sizeAfter = instance.getSize(channel)
+    channel.close()
+
+    then:
+    4 == sizeBefore
+    0 == sizeAfter
+  }
+
+  FileChannel openChannel() {
+    return FileChannel.open(testFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)
+  }
+
+  def "setOffsets extending and overwriting, spanning multiple segments"() {
+    setup:
+    FileChannel channel = FileChannel.open(testFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)
+    long[] values = (0..<20).collect { it * 10L } as long[]
+
+    when:
+    instance.setOffsets(channel, 0, values)
+    long size = instance.getSize(channel)
+    long offset = instance.getOffset(channel, 19)
+    instance.setOffsets(channel, 18, [1, 2, 3] as long[])
+    long extendedSize = instance.getSize(channel)
+    List<Long> offsets = (16..<21).collect { instance.getOffset(channel, it) }
+    channel.close()
+
+    then:
+    20 == size
+    190 == offset
+    21 == extendedSize
+    [160L, 170L, 1L, 2L, 3L] == offsets
+  }
+
+  def "getOffsets spanning multiple segments"() {
+    setup:
+    FileChannel channel = FileChannel.open(testFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)
+    long[] values = (0..<20).collect { it * 10L } as long[]
+
+    when:
+    instance.setOffsets(channel, 0, values)
+    long[] offsets = instance.getOffsets(channel, 6, 4)
+    long[] tail = instance.getOffsets(channel, 18, 4)
+    long[] none = instance.getOffsets(channel, 20, 4)
+    channel.close()
+
+    then:
+    [60L, 70L, 80L, 90L] == offsets.toList()
+    [180L, 190L] == tail.toList()
+    0 == none.length
+  }
+}
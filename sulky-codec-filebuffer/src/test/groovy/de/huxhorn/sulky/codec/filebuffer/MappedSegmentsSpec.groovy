@@ -0,0 +1,79 @@
+package de.huxhorn.sulky.codec.filebuffer
+
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import spock.lang.Specification
+
+class MappedSegmentsSpec
+  extends Specification {
+  File testFile
+  FileChannel channel
+  MappedSegments instance = new MappedSegments(16)
+
+  def setup() {
+    testFile = File.createTempFile("segments", "tst")
+    channel = FileChannel.open(testFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+  }
+
+  def cleanup() {
+    channel.close()
+    testFile.delete()
+  }
+
+  def "slices and longs"() {
+    setup:
+    write(0, 40)
+
+    expect:
+    ByteBuffer slice = instance.slice(channel, 2, 4)
+    4 == slice.remaining()
+    [2, 3, 4, 5] == (0..3).collect { slice.get(it) as int }
+    0x1011121314151617L == instance.getLong(channel, 16)
+  }
+
+  def "regions crossing segments or the end of the file are not supported"() {
+    setup:
+    write(0, 20)
+
+    expect:
+    null == instance.slice(channel, 14, 4)
+    null == instance.slice(channel, 18, 4)
+    null == instance.slice(channel, -1, 4)
+  }
+
+  def "growing file is remapped"() {
+    setup:
+    write(0, 4)
+
+    when:
+    ByteBuffer first = instance.slice(channel, 0, 4)
+    ByteBuffer missing = instance.slice(channel, 4, 4)
+    write(4, 8)
+    ByteBuffer second = instance.slice(channel, 4, 4)
+
+    then:
+    null != first
+    null == missing
+    null != second
+    4 == second.get(0)
+  }
+
+  def "invalid segment size"() {
+    when:
+    new MappedSegments(0)
+
+    then:
+    IllegalArgumentException e = thrown()
+    e.message == "segmentSize must be positive but was 0!"
+  }
+
+  void write(int from, int to) {
+    ByteBuffer buffer = ByteBuffer.allocate(to - from)
+    for(int i = from; i < to; i++) {
+      buffer.put((byte) i)
+    }
+    buffer.flip()
+    FileChannels.writeFully(channel, buffer, from)
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer
+
+import de.huxhorn.sulky.codec.Codec
+import de.huxhorn.sulky.codec.SerializableCodec
+import spock.lang.Specification
+
+class SegmentedCodecFileBufferSpec
+  extends Specification {
+
+  Codec<String> codec = new SerializableCodec<String>()
+  int magicValue = 0xDEADBEEF
+
+  File tempOutputPath
+
+  def setup() {
+    tempOutputPath = File.createTempFile("sfb-testing", "rulez")
+    tempOutputPath.delete()
+    tempOutputPath.mkdirs()
+  }
+
+  def cleanup() {
+    tempOutputPath.listFiles().each { it.delete() }
+    tempOutputPath.delete()
+  }
+
+  def "add() and addAll() roll segments by element count."() {
+    setup:
+    SegmentedCodecFileBuffer<String> instance = new SegmentedCodecFileBuffer<String>(magicValue, null, codec, tempOutputPath, 'events')
+    instance.maxSegmentElements = 10
+    List<String> values = (0..<35).collect { 'Value' + it }
+
+    when:
+    instance.add(values[0])
+    instance.addAll(values.subList(1, 24))
+    instance.addAll(values.subList(24, 35) as String[])
+
+    then:
+    instance.size == 35
+    instance.segmentCount == 4
+    instance.firstIndex == 0
+    (0..<35).every { instance.get(it) == values[it] }
+    instance.get(35) == null
+    instance.get(5, 20) == values.subList(5, 25)
+    instance.get(30, 20) == values.subList(30, 35)
+    instance.collect() == values
+    new File(tempOutputPath, 'events-0000000000000000020').isFile()
+    new File(tempOutputPath, 'events-0000000000000000020.index').isFile()
+  }
+
+  def "add() rolls segments by data file size."() {
+    setup:
+    SegmentedCodecFileBuffer<String> instance = new SegmentedCodecFileBuffer<String>(magicValue, null, codec, tempOutputPath, 'events')
+    instance.maxSegmentBytes = 1000
+
+    when:
+    100.times { instance.add('x' * 100) }
+
+    then:
+    instance.size == 100
+    instance.segmentCount > 10
+    instance.segmentCount < 100
+  }
+
+  def "retention keeps global indices."() {
+    setup:
+    SegmentedCodecFileBuffer<String> instance = new SegmentedCodecFileBuffer<String>(magicValue, null, codec, tempOutputPath, 'events')
+    instance.maxSegmentElements = 10
+    instance.retentionMaxSegments = 3
+    List<String> values = (0..<55).collect { 'Value' + it }
+
+    when:
+    instance.addAll(values)
+
+    then:
+    instance.size == 55
+    instance.segmentCount == 3
+    instance.firstIndex == 30
+    instance.get(29) == null
+    instance.get(30) == 'Value30'
+    instance.get(54) == 'Value54'
+    instance.get(25, 10) == [null] * 5 + values.subList(30, 35)
+    !new File(tempOutputPath, 'events-0000000000000000000').exists()
+    !new File(tempOutputPath, 'events-0000000000000000000.index').exists()
+
+    when: 'reopening'
+    instance.dispose()
+    instance = new SegmentedCodecFileBuffer<String>(magicValue, null, codec, tempOutputPath, 'events')
+
+    then:
+    instance.size == 55
+    instance.firstIndex == 30
+    instance.get(54) == 'Value54'
+
+    when:
+    instance.add('Value55')
+
+    then:
+    instance.get(55) == 'Value55'
+  }
+
+  def "retention by bytes and age."() {
+    setup:
+    SegmentedCodecFileBuffer<String> instance = new SegmentedCodecFileBuffer<String>(magicValue, null, codec, tempOutputPath, 'events')
+    instance.maxSegmentElements = 10
+    instance.addAll((0..<50).collect { 'Value' + it })
+    long segmentBytes = new File(tempOutputPath, 'events-0000000000000000010').length()
+
+    expect:
+    instance.segmentCount == 5
+    instance.applyRetention() == 0
+
+    when:
+    instance.retentionMaxBytes = segmentBytes * 3
+
+    then:
+    instance.applyRetention() == 2
+    instance.firstIndex == 20
+
+    when:
+    instance.retentionMaxBytes = 0
+    new File(tempOutputPath, 'events-0000000000000000020').setLastModified(System.currentTimeMillis() - 100000)
+    instance.retentionMaxAge = 50000
+
+    then:
+    instance.applyRetention() == 1
+    instance.firstIndex == 30
+    instance.size == 50
+  }
+
+  def "reset() deletes all segments."() {
+    setup:
+    SegmentedCodecFileBuffer<String> instance = new SegmentedCodecFileBuffer<String>(magicValue, null, codec, tempOutputPath, 'events')
+    instance.maxSegmentElements = 10
+    instance.addAll((0..<50).collect { 'Value' + it })
+
+    when:
+    instance.reset()
+    instance.add('Foo')
+
+    then:
+    instance.segmentCount == 1
+    instance.size == 1
+    instance.get(0) == 'Foo'
+    tempOutputPath.listFiles().length == 2
+  }
+
+  def "negative maxSegmentElements fails."() {
+    setup:
+    SegmentedCodecFileBuffer<String> instance = new SegmentedCodecFileBuffer<String>(magicValue, null, codec, tempOutputPath, 'events')
+
+    when:
+    instance.maxSegmentElements = -1
+
+    then:
+    IllegalArgumentException ex = thrown()
+    ex.message == 'maxSegmentElements must not be negative but was -1!'
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer
+
+import de.huxhorn.sulky.codec.Codec
+import de.huxhorn.sulky.codec.SerializableCodec
+import java.nio.channels.FileChannel
+import spock.lang.Specification
+
+class StrategyDefaultMethodsSpec
+  extends Specification {
+
+  Codec<String> codec = new SerializableCodec<String>()
+
+  File indexFile
+  File dataFile
+
+  def setup() {
+    indexFile = File.createTempFile("index", "tst")
+    indexFile.delete()
+    dataFile = File.createTempFile("data", "tst")
+    dataFile.delete()
+  }
+
+  def cleanup() {
+    indexFile.delete()
+    dataFile.delete()
+  }
+
+  def "IndexStrategy bulk methods fall back to single offsets"() {
+    setup:
+    IndexStrategy instance = new RandomAccessIndexStrategy()
+    RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw")
+    long[] offsets = [17, 42, 4711] as long[]
+
+    when:
+    instance.setOffsets(randomIndexFile, 0, offsets)
+    long[] all = instance.getOffsets(randomIndexFile, 0, 10)
+    long[] some = instance.getOffsets(randomIndexFile, 1, 1)
+    long[] none = instance.getOffsets(randomIndexFile, 3, 1)
+    DataStrategySpecBase.closeQuietly(randomIndexFile)
+
+    then:
+    all == offsets
+    some == [42] as long[]
+    none.length == 0
+  }
+
+  def "IndexStrategy without FileChannel support"() {
+    setup:
+    IndexStrategy instance = new RandomAccessIndexStrategy()
+    FileChannel indexChannel = DataStrategySpecBase.openChannel(indexFile)
+
+    when:
+    instance.getSize(indexChannel)
+
+    then:
+    thrown(UnsupportedOperationException)
+
+    cleanup:
+    indexChannel.close()
+  }
+
+  def "DataStrategy bulk methods fall back to single elements"() {
+    setup:
+    IndexStrategy indexStrategy = new DefaultIndexStrategy()
+    DataStrategy<String> instance = new RandomAccessDataStrategy<String>()
+    List<String> values = (1..5).collect { "Value " + it }
+    RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw")
+    RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw")
+
+    when:
+    instance.addAll(values, randomIndexFile, randomDataFile, codec, indexStrategy)
+    List<String> all = instance.getRange(0, 10, randomIndexFile, randomDataFile, codec, indexStrategy)
+    List<String> none = instance.getRange(5, 1, randomIndexFile, randomDataFile, codec, indexStrategy)
+    DataStrategySpecBase.closeQuietly(randomIndexFile)
+    DataStrategySpecBase.closeQuietly(randomDataFile)
+
+    then:
+    all == values
+    none.isEmpty()
+  }
+
+  def "DataStrategy without encoded access"() {
+    setup:
+    IndexStrategy indexStrategy = new DefaultIndexStrategy()
+    DataStrategy<String> instance = new RandomAccessDataStrategy<String>()
+    RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw")
+    RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw")
+
+    expect:
+    !instance.encodedAccessSupported
+
+    when:
+    instance.addAllEncoded([codec.encode('Foo')], randomIndexFile, randomDataFile, indexStrategy)
+
+    then:
+    thrown(UnsupportedOperationException)
+
+    when:
+    instance.getEncoded(0, randomIndexFile, randomDataFile, indexStrategy)
+
+    then:
+    thrown(UnsupportedOperationException)
+
+    cleanup:
+    DataStrategySpecBase.closeQuietly(randomIndexFile)
+    DataStrategySpecBase.closeQuietly(randomDataFile)
+  }
+
+  def "DataStrategy without FileChannel support"() {
+    setup:
+    IndexStrategy indexStrategy = new DefaultIndexStrategy()
+    DataStrategy<String> instance = new RandomAccessDataStrategy<String>()
+    FileChannel indexChannel = DataStrategySpecBase.openChannel(indexFile)
+    FileChannel dataChannel = DataStrategySpecBase.openChannel(dataFile)
+
+    expect:
+    !instance.fileChannelSupported
+
+    when:
+    instance.addAllUsingChannels(['Foo'], indexChannel, dataChannel, codec, indexStrategy)
+
+    then:
+    thrown(UnsupportedOperationException)
+
+    when:
+    instance.getUsingChannels(0, indexChannel, dataChannel, codec, indexStrategy)
+
+    then:
+    thrown(UnsupportedOperationException)
+
+    cleanup:
+    indexChannel.close()
+    dataChannel.close()
+  }
+
+  def "CodecFileBuffer using an IndexStrategy without FileChannel support"() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(0x0BADCAFE, false, null, codec, dataFile, indexFile, new DefaultFileHeaderStrategy(), new RandomAccessIndexStrategy())
+    List<String> values = (1..5).collect { "Value " + it }
+
+    when:
+    instance.add("Value 0")
+    instance.addAll(values)
+    List<String> range = instance.get(1, 5)
+
+    then:
+    instance.getSize() == 6
+    instance.get(0) == "Value 0"
+    range == values
+
+    cleanup:
+    instance.dispose()
+  }
+
+  /**
+   * Implements only the RandomAccessFile methods that existed before bulk and FileChannel access were added.
+   */
+  static class RandomAccessIndexStrategy
+    implements IndexStrategy {
+
+    private final DefaultIndexStrategy delegate = new DefaultIndexStrategy()
+
+    @Override
+    void setOffset(RandomAccessFile indexFile, long index, long offset) throws IOException {
+      delegate.setOffset(indexFile, index, offset)
+    }
+
+    @Override
+    long getOffset(RandomAccessFile indexFile, long index) throws IOException {
+      return delegate.getOffset(indexFile, index)
+    }
+
+    @Override
+    long getSize(RandomAccessFile indexFile) throws IOException {
+      return delegate.getSize(indexFile)
+    }
+  }
+
+  /**
+   * Implements only the RandomAccessFile methods that existed before bulk and FileChannel access were added.
+   */
+  static class RandomAccessDataStrategy<E>
+    implements DataStrategy<E> {
+
+    private final DefaultDataStrategy<E> delegate = new DefaultDataStrategy<E>()
+
+    @Override
+    void add(E element, RandomAccessFile indexFile, RandomAccessFile dataFile, Codec<E> codec, IndexStrategy indexStrategy) throws IOException {
+      delegate.add(element, indexFile, dataFile, codec, indexStrategy)
+    }
+
+    @Override
+    void addAll(List<E> elements, RandomAccessFile indexFile, RandomAccessFile dataFile, Codec<E> codec, IndexStrategy indexStrategy) throws IOException {
+      for(E element : elements) {
+        delegate.add(element, indexFile, dataFile, codec, indexStrategy)
+      }
+    }
+
+    @Override
+    boolean set(long index, E element, RandomAccessFile indexFile, RandomAccessFile dataFile, Codec<E> codec, IndexStrategy indexStrategy) throws IOException {
+      return false
+    }
+
+    @Override
+    boolean isSetSupported() {
+      return false
+    }
+
+    @Override
+    E get(long index, RandomAccessFile indexFile, RandomAccessFile dataFile, Codec<E> codec, IndexStrategy indexStrategy) throws IOException, ClassNotFoundException {
+      return delegate.get(index, indexFile, dataFile, codec, indexStrategy)
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encoder variant that writes the encoded bytes directly into a ByteBuffer, e.g. a reusable buffer
+ * that is written to a file afterwards.
+ *
+ * Implementations must only write the bytes between position and limit of the given buffer
+ * and must not keep a reference to the buffer after encode has returned.
+ *
+ * @param <E> the type of the encoded objects.
+ * @see EncodingBuffers
+ */
+public interface ByteBufferEncoder<E>
+{
+	/**
+	 * Encodes the object, starting at the position of the given buffer.
+	 *
+	 * If the object has been encoded, the position of the buffer is located directly after the encoded bytes.
+	 * Otherwise, the content and position of the buffer after its initial position are undefined.
+	 *
+	 * @param object the object to encode.
+	 * @param buffer the buffer receiving the encoded bytes.
+	 * @return true if the object has been encoded, false if the remaining space of the buffer was insufficient.
+	 */
+	boolean encode(E object, ByteBuffer buffer);
+
+	/**
+	 * Returns the expected number of bytes required to encode the given object.
+	 * The estimate doesn't have to be exact, 0 means unknown.
+	 *
+	 * @param object the object to encode.
+	 * @return the expected number of bytes.
+	 */
+	int estimateSize(E object);
+}
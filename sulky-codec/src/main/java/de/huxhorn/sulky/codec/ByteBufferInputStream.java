@@ -0,0 +1,119 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * InputStream reading the remaining bytes of a ByteBuffer.
+ *
+ * The position of the given buffer isn't changed.
+ */
+public class ByteBufferInputStream
+	extends InputStream
+{
+	private final ByteBuffer buffer;
+	private int markedPosition;
+
+	public ByteBufferInputStream(ByteBuffer buffer)
+	{
+		this.buffer = buffer.duplicate();
+		this.markedPosition = this.buffer.position();
+	}
+
+	@Override
+	public int read()
+	{
+		if(!buffer.hasRemaining())
+		{
+			return -1;
+		}
+		return buffer.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length)
+	{
+		if(length == 0)
+		{
+			return 0;
+		}
+		int remaining = buffer.remaining();
+		if(remaining == 0)
+		{
+			return -1;
+		}
+		int count = Math.min(remaining, length);
+		buffer.get(bytes, offset, count);
+		return count;
+	}
+
+	@Override
+	public long skip(long count)
+	{
+		if(count <= 0)
+		{
+			return 0;
+		}
+		int skipped = (int) Math.min(buffer.remaining(), count);
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available()
+	{
+		return buffer.remaining();
+	}
+
+	@Override
+	public boolean markSupported()
+	{
+		return true;
+	}
+
+	@Override
+	public synchronized void mark(int readLimit)
+	{
+		markedPosition = buffer.position();
+	}
+
+	@Override
+	public synchronized void reset()
+	{
+		buffer.position(markedPosition);
+	}
+}
@@ -34,8 +34,10 @@
 
 package de.huxhorn.sulky.codec;
 
+import java.nio.ByteBuffer;
+
 public class DelegatingCodecBase<E>
-	implements Codec<E>
+	implements ByteBufferCodec<E>
 {
 	private Encoder<E> encoder;
 	private Decoder<E> decoder;
@@ -90,4 +92,80 @@ public class DelegatingCodecBase<E>
 		}
 		return decoder.decode(bytes);
 	}
+
+	/**
+	 * Encodes the object directly if the encoder is a ByteBufferEncoder.
+	 * Otherwise, the object is encoded into an array that is copied into the buffer.
+	 *
+	 * @param object the object to encode.
+	 * @param buffer the buffer receiving the encoded bytes.
+	 * @return true if the object has been encoded, false if the remaining space of the buffer was insufficient.
+	 * @throws IllegalArgumentException if the encoder returned null.
+	 */
+	@Override
+	public boolean encode(E object, ByteBuffer buffer)
+	{
+		if(encoder == null)
+		{
+			throw new IllegalStateException("encoder must not be null!");
+		}
+		if(encoder instanceof ByteBufferEncoder)
+		{
+			@SuppressWarnings("unchecked")
+			ByteBufferEncoder<E> byteBufferEncoder = (ByteBufferEncoder<E>) encoder;
+			return byteBufferEncoder.encode(object, buffer);
+		}
+		byte[] bytes = encoder.encode(object);
+		if(bytes == null)
+		{
+			throw new IllegalArgumentException("Could not encode " + object + "!");
+		}
+		if(bytes.length > buffer.remaining())
+		{
+			return false;
+		}
+		buffer.put(bytes);
+		return true;
+	}
+
+	/**
+	 * @param object the object to encode.
+	 * @return the estimate of the encoder if it is a ByteBufferEncoder, 0 otherwise.
+	 */
+	@Override
+	public int estimateSize(E object)
+	{
+		if(encoder instanceof ByteBufferEncoder)
+		{
+			@SuppressWarnings("unchecked")
+			ByteBufferEncoder<E> byteBufferEncoder = (ByteBufferEncoder<E>) encoder;
+			return byteBufferEncoder.estimateSize(object);
+		}
+		return 0;
+	}
+
+	/**
+	 * Decodes the bytes directly if the decoder is a ByteBufferDecoder.
+	 * Otherwise, the remaining bytes are copied into an array that is decoded instead.
+	 *
+	 * @param bytes the encoded bytes.
+	 * @return the decoded object.
+	 */
+	@Override
+	public E decode(ByteBuffer bytes)
+	{
+		if(decoder == null)
+		{
+			throw new IllegalStateException("decoder must not be null!");
+		}
+		if(decoder instanceof ByteBufferDecoder)
+		{
+			@SuppressWarnings("unchecked")
+			ByteBufferDecoder<E> byteBufferDecoder = (ByteBufferDecoder<E>) decoder;
+			return byteBufferDecoder.decode(bytes);
+		}
+		byte[] array = new byte[bytes.remaining()];
+		bytes.duplicate().get(array);
+		return decoder.decode(array);
+	}
 }
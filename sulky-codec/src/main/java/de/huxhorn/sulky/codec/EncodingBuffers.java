@@ -0,0 +1,176 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes objects into ByteBuffers that are grown as needed.
+ *
+ * The buffers used by encode(ByteBufferEncoder, Object) are reused by the calling thread,
+ * so encoding doesn't allocate a new array for every object.
+ */
+public final class EncodingBuffers
+{
+	/**
+	 * 8KB. The initial capacity of the buffers reused by the calling thread.
+	 */
+	public static final int INITIAL_CAPACITY = 8 * 1024;
+
+	/**
+	 * 1MB. Larger buffers aren't reused so a single large object doesn't keep the memory allocated.
+	 */
+	public static final int MAX_REUSED_CAPACITY = 1024 * 1024;
+
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+	private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<>();
+
+	private EncodingBuffers()
+	{}
+
+	/**
+	 * Encodes the object into a buffer that is reused by the calling thread.
+	 *
+	 * The returned buffer contains the encoded bytes between position and limit. It's only valid
+	 * until encode is called again by the same thread.
+	 *
+	 * @param encoder the encoder.
+	 * @param object the object to encode.
+	 * @param <E> the type of the object.
+	 * @return the encoded bytes.
+	 */
+	public static <E> ByteBuffer encode(ByteBufferEncoder<E> encoder, E object)
+	{
+		ByteBuffer result = encode(encoder, object, acquire());
+		release(result);
+		result.flip();
+		return result;
+	}
+
+	/**
+	 * Returns the cleared buffer reused by the calling thread.
+	 *
+	 * The buffer must not be used after acquire is called again by the same thread.
+	 *
+	 * @return the buffer reused by the calling thread.
+	 */
+	public static ByteBuffer acquire()
+	{
+		ByteBuffer buffer = BUFFERS.get();
+		if(buffer == null)
+		{
+			buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+			BUFFERS.set(buffer);
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Keeps the given buffer, usually grown from the one returned by acquire, for reuse by the calling thread.
+	 * Buffers larger than MAX_REUSED_CAPACITY are ignored.
+	 *
+	 * @param buffer the buffer.
+	 */
+	public static void release(ByteBuffer buffer)
+	{
+		if(buffer != null && buffer.capacity() <= MAX_REUSED_CAPACITY)
+		{
+			BUFFERS.set(buffer);
+		}
+	}
+
+	/**
+	 * Encodes the object starting at the position of the target buffer.
+	 *
+	 * If the remaining space of target isn't sufficient, a larger buffer containing the bytes of target
+	 * before its position is allocated. Direct buffers are replaced by direct buffers.
+	 *
+	 * @param encoder the encoder.
+	 * @param object the object to encode.
+	 * @param target the buffer receiving the encoded bytes.
+	 * @param <E> the type of the object.
+	 * @return either target or the larger buffer, positioned directly after the encoded bytes.
+	 * @throws IllegalStateException if the encoded object would exceed the maximum capacity of a ByteBuffer.
+	 */
+	public static <E> ByteBuffer encode(ByteBufferEncoder<E> encoder, E object, ByteBuffer target)
+	{
+		ByteBuffer result = target;
+		int start = result.position();
+		int estimatedSize = encoder.estimateSize(object);
+		if(estimatedSize > result.remaining())
+		{
+			result = grow(result, start, start + (long) estimatedSize);
+		}
+		while(!encoder.encode(object, result))
+		{
+			if(result.capacity() >= MAX_CAPACITY)
+			{
+				throw new IllegalStateException("Could not encode " + object + " into " + MAX_CAPACITY + " bytes!");
+			}
+			result = grow(result, start, 2L * result.capacity());
+		}
+		return result;
+	}
+
+	/**
+	 * Ensures that the buffer has at least the given remaining space.
+	 *
+	 * @param buffer the buffer.
+	 * @param remaining the required remaining space.
+	 * @return either buffer or a larger buffer containing the bytes of buffer before its position.
+	 */
+	public static ByteBuffer ensureRemaining(ByteBuffer buffer, int remaining)
+	{
+		if(buffer.remaining() >= remaining)
+		{
+			return buffer;
+		}
+		int position = buffer.position();
+		return grow(buffer, position, Math.max(2L * buffer.capacity(), (long) position + remaining));
+	}
+
+	private static ByteBuffer grow(ByteBuffer buffer, int position, long capacity)
+	{
+		int newCapacity = (int) Math.min(MAX_CAPACITY, Math.max(capacity, 2L * buffer.capacity()));
+		ByteBuffer result = buffer.isDirect() ? ByteBuffer.allocateDirect(newCapacity) : ByteBuffer.allocate(newCapacity);
+		ByteBuffer content = buffer.duplicate();
+		content.clear();
+		content.limit(position);
+		result.put(content);
+		return result;
+	}
+}
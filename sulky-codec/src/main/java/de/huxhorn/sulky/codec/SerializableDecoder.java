@@ -34,14 +34,16 @@
 
 package de.huxhorn.sulky.codec;
 
+import de.huxhorn.sulky.codec.compression.PooledGZIPInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.zip.GZIPInputStream;
+import java.nio.ByteBuffer;
 
 public class SerializableDecoder<E extends Serializable>
-	implements Decoder<E>
+	implements Decoder<E>, ByteBufferDecoder<E>
 {
 	private boolean compressing;
 
@@ -68,7 +70,18 @@ public class SerializableDecoder<E extends Serializable>
 	@Override
 	public E decode(byte[] bytes)
 	{
-		try(ObjectInputStream ois = createObjectInputStream(bytes))
+		return decode(new ByteArrayInputStream(bytes));
+	}
+
+	@Override
+	public E decode(ByteBuffer bytes)
+	{
+		return decode(new ByteBufferInputStream(bytes));
+	}
+
+	private E decode(InputStream inputStream)
+	{
+		try(ObjectInputStream ois = createObjectInputStream(inputStream))
 		{
 			Object result = ois.readObject();
 			@SuppressWarnings({"unchecked"})
@@ -82,16 +95,24 @@ public class SerializableDecoder<E extends Serializable>
 		}
 	}
 
-	private ObjectInputStream createObjectInputStream(byte[] bytes)
+	private ObjectInputStream createObjectInputStream(InputStream inputStream)
 			throws IOException
 	{
-		ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
 		if(compressing)
 		{
-			GZIPInputStream gis = new GZIPInputStream(bis);
-			return new ObjectInputStream(gis);
+			PooledGZIPInputStream gis = new PooledGZIPInputStream(inputStream);
+			try
+			{
+				return new ObjectInputStream(gis);
+			}
+			catch(IOException | RuntimeException e)
+			{
+				// hand the pooled instance back
+				gis.close();
+				throw e;
+			}
 		}
-		return new ObjectInputStream(bis);
+		return new ObjectInputStream(inputStream);
 	}
 
 	@Override
@@ -34,17 +34,25 @@
 
 package de.huxhorn.sulky.codec;
 
+import de.huxhorn.sulky.codec.compression.PooledGZIPOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
-import java.util.zip.GZIPOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 public class SerializableEncoder<E extends Serializable>
-	implements Encoder<E>
+	implements Encoder<E>, ByteBufferEncoder<E>
 {
 	private boolean compressing;
 
+	/**
+	 * The size of the last object encoded into a ByteBuffer, used as estimate for the next one.
+	 */
+	private volatile int lastSize;
+
 	public SerializableEncoder()
 	{
 		this(false);
@@ -84,15 +92,65 @@ public class SerializableEncoder<E extends Serializable>
 		}
 	}
 
-	private ObjectOutputStream createObjectOutputStream(ByteArrayOutputStream bos)
+	/**
+	 * Serializes the object directly into the buffer.
+	 *
+	 * @param object the object to encode.
+	 * @param buffer the buffer receiving the encoded bytes.
+	 * @return true if the object has been encoded, false if the remaining space of the buffer was insufficient.
+	 * @throws IllegalArgumentException if the object could not be serialized.
+	 */
+	@Override
+	public boolean encode(E object, ByteBuffer buffer)
+	{
+		ByteBufferOutputStream os = new ByteBufferOutputStream(buffer);
+		try(ObjectOutputStream oos = createObjectOutputStream(os))
+		{
+			oos.writeObject(object);
+		}
+		catch(BufferOverflowException e)
+		{
+			return false;
+		}
+		catch(IOException e)
+		{
+			throw new IllegalArgumentException("Could not serialize " + object + "!", e);
+		}
+		lastSize = os.getCount();
+		return true;
+	}
+
+	@Override
+	public int estimateSize(E object)
+	{
+		return lastSize;
+	}
+
+	private ObjectOutputStream createObjectOutputStream(OutputStream os)
 			throws IOException
 	{
 		if(compressing)
 		{
-			GZIPOutputStream gos = new GZIPOutputStream(bos);
-			return new ObjectOutputStream(gos);
+			PooledGZIPOutputStream gos = new PooledGZIPOutputStream(os);
+			try
+			{
+				return new ObjectOutputStream(gos);
+			}
+			catch(IOException | RuntimeException e)
+			{
+				// hand the pooled instance back
+				try
+				{
+					gos.close();
+				}
+				catch(IOException | RuntimeException closeException)
+				{
+					e.addSuppressed(closeException);
+				}
+				throw e;
+			}
 		}
-		return new ObjectOutputStream(bos);
+		return new ObjectOutputStream(os);
 	}
 
 	@Override
@@ -34,13 +34,15 @@
 
 package de.huxhorn.sulky.codec;
 
+import de.huxhorn.sulky.codec.compression.PooledGZIPInputStream;
 import java.beans.XMLDecoder;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.zip.GZIPInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 public class XmlDecoder<E>
-	implements Decoder<E>
+	implements Decoder<E>, ByteBufferDecoder<E>
 {
 	private boolean compressing;
 
@@ -67,7 +69,18 @@ public class XmlDecoder<E>
 	@Override
 	public E decode(byte[] bytes)
 	{
-		try(XMLDecoder decoder=createXMLDecoder(bytes))
+		return decode(new ByteArrayInputStream(bytes));
+	}
+
+	@Override
+	public E decode(ByteBuffer bytes)
+	{
+		return decode(new ByteBufferInputStream(bytes));
+	}
+
+	private E decode(InputStream inputStream)
+	{
+		try(XMLDecoder decoder=createXMLDecoder(inputStream))
 		{
 			Object result = decoder.readObject();
 			@SuppressWarnings({"unchecked"})
@@ -81,16 +94,15 @@ public class XmlDecoder<E>
 		}
 	}
 
-	private XMLDecoder createXMLDecoder(byte[] bytes)
+	private XMLDecoder createXMLDecoder(InputStream inputStream)
 			throws IOException
 	{
-		ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
 		if(compressing)
 		{
-			GZIPInputStream gis = new GZIPInputStream(bis);
+			PooledGZIPInputStream gis = new PooledGZIPInputStream(inputStream);
 			return new XMLDecoder(gis);
 		}
-		return new XMLDecoder(bis);
+		return new XMLDecoder(inputStream);
 	}
 
 	@Override
@@ -34,10 +34,10 @@
 
 package de.huxhorn.sulky.codec;
 
+import de.huxhorn.sulky.codec.compression.PooledGZIPOutputStream;
 import java.beans.XMLEncoder;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * This class does only support XML serialization for the simple case where the class to serialize
@@ -109,7 +109,7 @@ public class XmlEncoder<E>
 	{
 		if(compressing)
 		{
-			GZIPOutputStream gos = new GZIPOutputStream(bos);
+			PooledGZIPOutputStream gos = new PooledGZIPOutputStream(bos);
 			return new XMLEncoder(gos);
 		}
 		return new XMLEncoder(bos);
@@ -0,0 +1,197 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.binary;
+
+import de.huxhorn.sulky.codec.ByteBufferCodec;
+import de.huxhorn.sulky.codec.EncodingBuffers;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compact binary codec using the class descriptors of a ClassRegistry.
+ *
+ * In contrast to SerializableCodec, objects don't contain class descriptors but only the id of their
+ * class, followed by their JavaBean properties. Strings, boxed primitives, Date, arrays of primitives, String and Object,
+ * List, Set and Map are supported out of the box. Collections are decoded as ArrayList, LinkedHashSet and
+ * LinkedHashMap. Object graphs are written as trees, so shared references are duplicated and cycles
+ * are not supported.
+ *
+ * The descriptor of the registry is required to decode the objects. It should be stored once, e.g. in the
+ * meta data of a CodecFileBuffer using METADATA_KEY, and the codec of an existing file should be created
+ * using fromMetaData.
+ *
+ * @param <E> the type of the encoded and decoded objects.
+ */
+public class BinaryCodec<E>
+	implements ByteBufferCodec<E>
+{
+	/**
+	 * The meta data key of the class descriptor.
+	 */
+	public static final String METADATA_KEY = "sulky.binary.classes";
+
+	private final Logger logger = LoggerFactory.getLogger(BinaryCodec.class);
+
+	private final ClassRegistry registry;
+
+	/**
+	 * The size of the last encoded object, used as estimate for the next one.
+	 */
+	private volatile int lastSize;
+
+	public BinaryCodec(ClassRegistry registry)
+	{
+		if(registry == null)
+		{
+			throw new IllegalArgumentException("registry must not be null!");
+		}
+		this.registry = registry;
+	}
+
+	/**
+	 * Creates a codec using the class descriptor contained in the given meta data.
+	 *
+	 * @param metaData the meta data, e.g. of a CodecFileBuffer.
+	 * @param <E> the type of the encoded and decoded objects.
+	 * @return the codec.
+	 * @throws IllegalArgumentException if the meta data doesn't contain a valid class descriptor.
+	 */
+	public static <E> BinaryCodec<E> fromMetaData(Map<String, String> metaData)
+	{
+		String descriptor = metaData == null ? null : metaData.get(METADATA_KEY);
+		if(descriptor == null)
+		{
+			throw new IllegalArgumentException("metaData does not contain " + METADATA_KEY + "!");
+		}
+		return new BinaryCodec<>(ClassRegistry.fromDescriptor(descriptor));
+	}
+
+	public ClassRegistry getRegistry()
+	{
+		return registry;
+	}
+
+	/**
+	 * Adds the class descriptor of this codec to the given meta data.
+	 *
+	 * @param metaData the meta data, e.g. the preferred meta data of a CodecFileBuffer.
+	 * @return metaData.
+	 */
+	public Map<String, String> putMetaData(Map<String, String> metaData)
+	{
+		metaData.put(METADATA_KEY, registry.getDescriptor());
+		return metaData;
+	}
+
+	/**
+	 * @param object the object to encode.
+	 * @return the encoded object.
+	 * @throws IllegalArgumentException if the object, or any object referenced by it, is not supported.
+	 */
+	@Override
+	public byte[] encode(E object)
+	{
+		ByteBuffer encoded = EncodingBuffers.encode(this, object);
+		byte[] result = new byte[encoded.remaining()];
+		encoded.get(result);
+		return result;
+	}
+
+	/**
+	 * @param object the object to encode.
+	 * @param buffer the buffer receiving the encoded bytes.
+	 * @return true if the object has been encoded, false if the remaining space of the buffer was insufficient.
+	 * @throws IllegalArgumentException if the object, or any object referenced by it, is not supported.
+	 */
+	@Override
+	public boolean encode(E object, ByteBuffer buffer)
+	{
+		try
+		{
+			int start = buffer.position();
+			BinaryValues.writeValue(buffer, object, registry);
+			lastSize = buffer.position() - start;
+			return true;
+		}
+		catch(BufferOverflowException ex)
+		{
+			return false;
+		}
+	}
+
+	@Override
+	public int estimateSize(E object)
+	{
+		return lastSize;
+	}
+
+	@Override
+	public E decode(byte[] bytes)
+	{
+		return decode(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Decodes the remaining bytes of the buffer. The buffer itself isn't changed.
+	 *
+	 * @param bytes the encoded object.
+	 * @return the decoded object or null if decoding failed.
+	 */
+	@Override
+	public E decode(ByteBuffer bytes)
+	{
+		try
+		{
+			@SuppressWarnings("unchecked")
+			E result = (E) BinaryValues.readValue(bytes.duplicate(), registry);
+			return result;
+		}
+		catch(BufferUnderflowException | IllegalArgumentException | IllegalStateException | ClassCastException ex)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Could not decode object!", ex); // NOPMD
+			return null;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "BinaryCodec[registry=" + registry + "]";
+	}
+}
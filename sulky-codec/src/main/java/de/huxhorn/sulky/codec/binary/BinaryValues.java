@@ -0,0 +1,526 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.binary;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads and writes the tagged values of the binary format.
+ *
+ * Every value starts with a tag byte. Numbers are written as zig-zag encoded variable-length integers,
+ * strings as UTF-8 preceded by their length.
+ */
+final class BinaryValues
+{
+	static final byte NULL = 0;
+	static final byte STRING = 1;
+	static final byte BOOLEAN = 2;
+	static final byte BYTE = 3;
+	static final byte CHARACTER = 4;
+	static final byte SHORT = 5;
+	static final byte INTEGER = 6;
+	static final byte LONG = 7;
+	static final byte FLOAT = 8;
+	static final byte DOUBLE = 9;
+	static final byte BYTE_ARRAY = 10;
+	static final byte INT_ARRAY = 11;
+	static final byte LONG_ARRAY = 12;
+	static final byte DOUBLE_ARRAY = 13;
+	static final byte STRING_ARRAY = 14;
+	static final byte OBJECT_ARRAY = 15;
+	static final byte LIST = 16;
+	static final byte SET = 17;
+	static final byte MAP = 18;
+	static final byte DATE = 19;
+	static final byte ENUM = 20;
+	static final byte OBJECT = 21;
+
+	private BinaryValues()
+	{}
+
+	/**
+	 * @param type the type.
+	 * @return true if values of the given type are written without a class descriptor.
+	 */
+	static boolean isBuiltIn(Class<?> type)
+	{
+		return type.isPrimitive()
+				|| type == String.class
+				|| type == Boolean.class
+				|| type == Byte.class
+				|| type == Character.class
+				|| type == Short.class
+				|| type == Integer.class
+				|| type == Long.class
+				|| type == Float.class
+				|| type == Double.class
+				|| type == Date.class
+				|| type.isArray()
+				|| Collection.class.isAssignableFrom(type)
+				|| Map.class.isAssignableFrom(type);
+	}
+
+	static void writeValue(ByteBuffer buffer, Object value, ClassRegistry registry)
+	{
+		if(value == null)
+		{
+			buffer.put(NULL);
+		}
+		else if(value instanceof String)
+		{
+			buffer.put(STRING);
+			writeString(buffer, (String) value);
+		}
+		else if(value instanceof Integer)
+		{
+			buffer.put(INTEGER);
+			writeVarInt(buffer, (Integer) value);
+		}
+		else if(value instanceof Long)
+		{
+			buffer.put(LONG);
+			writeVarLong(buffer, (Long) value);
+		}
+		else if(value instanceof Boolean)
+		{
+			buffer.put(BOOLEAN);
+			buffer.put((byte) ((Boolean) value ? 1 : 0));
+		}
+		else if(value instanceof Byte)
+		{
+			buffer.put(BYTE);
+			buffer.put((Byte) value);
+		}
+		else if(value instanceof Character)
+		{
+			buffer.put(CHARACTER);
+			buffer.putChar((Character) value);
+		}
+		else if(value instanceof Short)
+		{
+			buffer.put(SHORT);
+			buffer.putShort((Short) value);
+		}
+		else if(value instanceof Float)
+		{
+			buffer.put(FLOAT);
+			buffer.putFloat((Float) value);
+		}
+		else if(value instanceof Double)
+		{
+			buffer.put(DOUBLE);
+			buffer.putDouble((Double) value);
+		}
+		else if(value instanceof Date)
+		{
+			buffer.put(DATE);
+			writeVarLong(buffer, ((Date) value).getTime());
+		}
+		else if(value instanceof Enum)
+		{
+			Enum<?> constant = (Enum<?>) value;
+			ClassDescriptor descriptor = registry.resolve(constant.getDeclaringClass());
+			buffer.put(ENUM);
+			writeVarInt(buffer, descriptor.getId());
+			writeVarInt(buffer, descriptor.getStoredOrdinal(constant));
+		}
+		else if(value instanceof List || value instanceof Set)
+		{
+			Collection<?> collection = (Collection<?>) value;
+			buffer.put(value instanceof List ? LIST : SET);
+			writeVarInt(buffer, collection.size());
+			for(Object element : collection)
+			{
+				writeValue(buffer, element, registry);
+			}
+		}
+		else if(value instanceof Map)
+		{
+			Map<?, ?> map = (Map<?, ?>) value;
+			buffer.put(MAP);
+			writeVarInt(buffer, map.size());
+			for(Map.Entry<?, ?> entry : map.entrySet())
+			{
+				writeValue(buffer, entry.getKey(), registry);
+				writeValue(buffer, entry.getValue(), registry);
+			}
+		}
+		else if(value.getClass().isArray())
+		{
+			writeArray(buffer, value, registry);
+		}
+		else
+		{
+			ClassDescriptor descriptor = registry.resolve(value.getClass());
+			buffer.put(OBJECT);
+			writeVarInt(buffer, descriptor.getId());
+			descriptor.writeProperties(buffer, value, registry);
+		}
+	}
+
+	private static void writeArray(ByteBuffer buffer, Object value, ClassRegistry registry)
+	{
+		Class<?> type = value.getClass();
+		if(type == byte[].class)
+		{
+			byte[] array = (byte[]) value;
+			buffer.put(BYTE_ARRAY);
+			writeVarInt(buffer, array.length);
+			buffer.put(array);
+		}
+		else if(type == int[].class)
+		{
+			int[] array = (int[]) value;
+			buffer.put(INT_ARRAY);
+			writeVarInt(buffer, array.length);
+			for(int current : array)
+			{
+				writeVarInt(buffer, current);
+			}
+		}
+		else if(type == long[].class)
+		{
+			long[] array = (long[]) value;
+			buffer.put(LONG_ARRAY);
+			writeVarInt(buffer, array.length);
+			for(long current : array)
+			{
+				writeVarLong(buffer, current);
+			}
+		}
+		else if(type == double[].class)
+		{
+			double[] array = (double[]) value;
+			buffer.put(DOUBLE_ARRAY);
+			writeVarInt(buffer, array.length);
+			for(double current : array)
+			{
+				buffer.putDouble(current);
+			}
+		}
+		else if(type == String[].class || type == Object[].class)
+		{
+			Object[] array = (Object[]) value;
+			buffer.put(type == String[].class ? STRING_ARRAY : OBJECT_ARRAY);
+			writeVarInt(buffer, array.length);
+			for(Object current : array)
+			{
+				writeValue(buffer, current, registry);
+			}
+		}
+		else
+		{
+			throw new IllegalArgumentException("Arrays of type " + type.getComponentType().getName() + " are not supported!");
+		}
+	}
+
+	static Object readValue(ByteBuffer buffer, ClassRegistry registry)
+	{
+		byte tag = buffer.get();
+		switch(tag)
+		{
+			case NULL:
+				return null;
+			case STRING:
+				return readString(buffer);
+			case BOOLEAN:
+				return buffer.get() != 0;
+			case BYTE:
+				return buffer.get();
+			case CHARACTER:
+				return buffer.getChar();
+			case SHORT:
+				return buffer.getShort();
+			case INTEGER:
+				return readVarInt(buffer);
+			case LONG:
+				return readVarLong(buffer);
+			case FLOAT:
+				return buffer.getFloat();
+			case DOUBLE:
+				return buffer.getDouble();
+			case DATE:
+				return new Date(readVarLong(buffer));
+			case ENUM:
+				return registry.get(readVarInt(buffer)).getConstant(readVarInt(buffer));
+			case LIST:
+			{
+				int size = readLength(buffer);
+				List<Object> result = new ArrayList<>(size);
+				for(int i = 0; i < size; i++)
+				{
+					result.add(readValue(buffer, registry));
+				}
+				return result;
+			}
+			case SET:
+			{
+				int size = readLength(buffer);
+				Set<Object> result = new LinkedHashSet<>();
+				for(int i = 0; i < size; i++)
+				{
+					result.add(readValue(buffer, registry));
+				}
+				return result;
+			}
+			case MAP:
+			{
+				int size = readLength(buffer);
+				Map<Object, Object> result = new LinkedHashMap<>();
+				for(int i = 0; i < size; i++)
+				{
+					Object key = readValue(buffer, registry);
+					result.put(key, readValue(buffer, registry));
+				}
+				return result;
+			}
+			case OBJECT:
+				return registry.get(readVarInt(buffer)).readProperties(buffer, registry);
+			default:
+				return readArray(tag, buffer, registry);
+		}
+	}
+
+	private static Object readArray(byte tag, ByteBuffer buffer, ClassRegistry registry)
+	{
+		switch(tag)
+		{
+			case BYTE_ARRAY:
+			{
+				byte[] result = new byte[readLength(buffer)];
+				buffer.get(result);
+				return result;
+			}
+			case INT_ARRAY:
+			{
+				int[] result = new int[readLength(buffer)];
+				for(int i = 0; i < result.length; i++)
+				{
+					result[i] = readVarInt(buffer);
+				}
+				return result;
+			}
+			case LONG_ARRAY:
+			{
+				long[] result = new long[readLength(buffer)];
+				for(int i = 0; i < result.length; i++)
+				{
+					result[i] = readVarLong(buffer);
+				}
+				return result;
+			}
+			case DOUBLE_ARRAY:
+			{
+				double[] result = new double[readLength(buffer)];
+				for(int i = 0; i < result.length; i++)
+				{
+					result[i] = buffer.getDouble();
+				}
+				return result;
+			}
+			case STRING_ARRAY:
+			case OBJECT_ARRAY:
+			{
+				int length = readLength(buffer);
+				Object[] result = (Object[]) Array.newInstance(tag == STRING_ARRAY ? String.class : Object.class, length);
+				for(int i = 0; i < length; i++)
+				{
+					result[i] = readValue(buffer, registry);
+				}
+				return result;
+			}
+			default:
+				throw new IllegalArgumentException("Unknown tag " + tag + "!");
+		}
+	}
+
+	/**
+	 * Writes the string as UTF-8 without creating a temporary array.
+	 * Unpaired surrogates are replaced by '?', like String.getBytes does.
+	 */
+	static void writeString(ByteBuffer buffer, String value)
+	{
+		int length = value.length();
+		int utf8Length = 0;
+		int i = 0;
+		while(i < length)
+		{
+			char c = value.charAt(i);
+			if(c < 0x80)
+			{
+				utf8Length++;
+			}
+			else if(c < 0x800)
+			{
+				utf8Length += 2;
+			}
+			else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1)))
+			{
+				utf8Length += 4;
+				i++;
+			}
+			else if(Character.isSurrogate(c))
+			{
+				utf8Length++;
+			}
+			else
+			{
+				utf8Length += 3;
+			}
+			i++;
+		}
+		writeVarInt(buffer, utf8Length);
+		i = 0;
+		while(i < length)
+		{
+			char c = value.charAt(i);
+			if(c < 0x80)
+			{
+				buffer.put((byte) c);
+			}
+			else if(c < 0x800)
+			{
+				buffer.put((byte) (0xC0 | (c >> 6)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+			else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1)))
+			{
+				int codePoint = Character.toCodePoint(c, value.charAt(i + 1));
+				buffer.put((byte) (0xF0 | (codePoint >> 18)));
+				buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+				i++;
+			}
+			else if(Character.isSurrogate(c))
+			{
+				buffer.put((byte) '?');
+			}
+			else
+			{
+				buffer.put((byte) (0xE0 | (c >> 12)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+			i++;
+		}
+	}
+
+	static String readString(ByteBuffer buffer)
+	{
+		int length = readLength(buffer);
+		if(buffer.hasArray())
+		{
+			int position = buffer.position();
+			buffer.position(position + length);
+			return new String(buffer.array(), buffer.arrayOffset() + position, length, StandardCharsets.UTF_8);
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static void writeVarInt(ByteBuffer buffer, int value)
+	{
+		int remaining = (value << 1) ^ (value >> 31);
+		while((remaining & ~0x7F) != 0)
+		{
+			buffer.put((byte) ((remaining & 0x7F) | 0x80));
+			remaining >>>= 7;
+		}
+		buffer.put((byte) remaining);
+	}
+
+	static int readVarInt(ByteBuffer buffer)
+	{
+		int result = 0;
+		for(int shift = 0; shift < 35; shift += 7)
+		{
+			byte current = buffer.get();
+			result |= (current & 0x7F) << shift;
+			if(current >= 0)
+			{
+				return (result >>> 1) ^ -(result & 1);
+			}
+		}
+		throw new IllegalArgumentException("Malformed variable-length int!");
+	}
+
+	static void writeVarLong(ByteBuffer buffer, long value)
+	{
+		long remaining = (value << 1) ^ (value >> 63);
+		while((remaining & ~0x7FL) != 0)
+		{
+			buffer.put((byte) ((remaining & 0x7F) | 0x80));
+			remaining >>>= 7;
+		}
+		buffer.put((byte) remaining);
+	}
+
+	static long readVarLong(ByteBuffer buffer)
+	{
+		long result = 0;
+		for(int shift = 0; shift < 70; shift += 7)
+		{
+			byte current = buffer.get();
+			result |= (long) (current & 0x7F) << shift;
+			if(current >= 0)
+			{
+				return (result >>> 1) ^ -(result & 1);
+			}
+		}
+		throw new IllegalArgumentException("Malformed variable-length long!");
+	}
+
+	private static int readLength(ByteBuffer buffer)
+	{
+		int length = readVarInt(buffer);
+		if(length < 0 || length > buffer.remaining())
+		{
+			throw new IllegalArgumentException("Invalid length " + length + "!");
+		}
+		return length;
+	}
+}
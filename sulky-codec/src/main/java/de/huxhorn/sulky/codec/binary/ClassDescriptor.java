@@ -0,0 +1,394 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.binary;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The descriptor of a registered class, i.e. the stored layout of its properties or the stored names of its
+ * enum constants, mapped to the current version of the class.
+ *
+ * Properties are all JavaBean properties having both a public getter and setter that aren't marked as
+ * transient, sorted by name. The textual form is a single line, "C className property:typeCode ..." for
+ * classes and "E className CONSTANT ..." for enums.
+ */
+final class ClassDescriptor
+{
+	private static final String CLASS_PREFIX = "C";
+	private static final String ENUM_PREFIX = "E";
+	private static final String SEPARATOR = " ";
+	private static final char TYPE_SEPARATOR = ':';
+
+	private final int id;
+	private final Class<?> type;
+	private final PropertySlot[] slots;
+	private final Constructor<?> constructor;
+	private final String[] constantNames;
+	private final Object[] constants;
+	private final int[] storedOrdinals;
+
+	private ClassDescriptor(int id, Class<?> type, PropertySlot[] slots, Constructor<?> constructor)
+	{
+		this.id = id;
+		this.type = type;
+		this.slots = slots;
+		this.constructor = constructor;
+		this.constantNames = null;
+		this.constants = null;
+		this.storedOrdinals = null;
+	}
+
+	private ClassDescriptor(int id, Class<?> type, String[] constantNames)
+	{
+		this.id = id;
+		this.type = type;
+		this.slots = null;
+		this.constructor = null;
+		this.constantNames = constantNames;
+		Object[] currentConstants = type.getEnumConstants();
+		this.constants = new Object[constantNames.length];
+		this.storedOrdinals = new int[currentConstants.length];
+		Arrays.fill(storedOrdinals, -1);
+		for(int i = 0; i < constantNames.length; i++)
+		{
+			for(Object current : currentConstants)
+			{
+				Enum<?> constant = (Enum<?>) current;
+				if(constant.name().equals(constantNames[i]))
+				{
+					constants[i] = constant;
+					storedOrdinals[constant.ordinal()] = i;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the descriptor of the current version of the given class.
+	 *
+	 * @param id the id of the class.
+	 * @param type the class.
+	 * @return the descriptor.
+	 * @throws IllegalArgumentException if the class can't be registered.
+	 */
+	static ClassDescriptor create(int id, Class<?> type)
+	{
+		if(type.isEnum())
+		{
+			Object[] currentConstants = type.getEnumConstants();
+			String[] names = new String[currentConstants.length];
+			for(int i = 0; i < currentConstants.length; i++)
+			{
+				names[i] = ((Enum<?>) currentConstants[i]).name();
+			}
+			return new ClassDescriptor(id, type, names);
+		}
+		Constructor<?> constructor = resolveConstructor(type);
+		Map<String, PropertyDescriptor> properties = resolveProperties(type);
+		List<PropertySlot> slots = new ArrayList<>(properties.size());
+		for(PropertyDescriptor property : properties.values())
+		{
+			slots.add(createSlot(property.getName(), PropertySlot.typeCodeOf(property.getPropertyType()), property));
+		}
+		return new ClassDescriptor(id, type, slots.toArray(new PropertySlot[0]), constructor);
+	}
+
+	/**
+	 * Parses a stored descriptor and maps it to the current version of the class.
+	 *
+	 * Stored properties that don't exist anymore, or changed their type, are skipped while reading and
+	 * written as default values. Properties that aren't contained in the stored descriptor keep the value
+	 * assigned by the constructor.
+	 *
+	 * @param id the id of the class.
+	 * @param line the textual form of the descriptor.
+	 * @param classLoader the ClassLoader used to resolve the class.
+	 * @return the descriptor.
+	 * @throws IllegalArgumentException if the descriptor is invalid or the class can't be resolved.
+	 */
+	static ClassDescriptor parse(int id, String line, ClassLoader classLoader)
+	{
+		String[] tokens = line.trim().split(SEPARATOR);
+		if(tokens.length < 2 || !(CLASS_PREFIX.equals(tokens[0]) || ENUM_PREFIX.equals(tokens[0])))
+		{
+			throw new IllegalArgumentException("Invalid class descriptor '" + line + "'!");
+		}
+		Class<?> type;
+		try
+		{
+			type = Class.forName(tokens[1], false, classLoader);
+		}
+		catch(ClassNotFoundException ex)
+		{
+			throw new IllegalArgumentException("Could not resolve class of descriptor '" + line + "'!", ex);
+		}
+		if(ENUM_PREFIX.equals(tokens[0]))
+		{
+			if(!type.isEnum())
+			{
+				throw new IllegalArgumentException(type.getName() + " is not an enum!");
+			}
+			return new ClassDescriptor(id, type, Arrays.copyOfRange(tokens, 2, tokens.length));
+		}
+		if(type.isEnum())
+		{
+			throw new IllegalArgumentException(type.getName() + " is an enum!");
+		}
+		Map<String, PropertyDescriptor> properties = resolveProperties(type);
+		PropertySlot[] slots = new PropertySlot[tokens.length - 2];
+		for(int i = 0; i < slots.length; i++)
+		{
+			String value = tokens[i + 2];
+			int separatorIndex = value.indexOf(TYPE_SEPARATOR);
+			if(separatorIndex < 1 || separatorIndex != value.length() - 2)
+			{
+				throw new IllegalArgumentException("Invalid property '" + value + "' in class descriptor '" + line + "'!");
+			}
+			String name = value.substring(0, separatorIndex);
+			char typeCode = value.charAt(separatorIndex + 1);
+			PropertyDescriptor property = properties.get(name);
+			if(property != null && PropertySlot.typeCodeOf(property.getPropertyType()) != typeCode)
+			{
+				property = null;
+			}
+			slots[i] = createSlot(name, typeCode, property);
+		}
+		return new ClassDescriptor(id, type, slots, resolveConstructor(type));
+	}
+
+	int getId()
+	{
+		return id;
+	}
+
+	Class<?> getType()
+	{
+		return type;
+	}
+
+	/**
+	 * @return the types of the properties of the current class that are contained in this descriptor.
+	 */
+	List<Class<?>> getPropertyTypes()
+	{
+		List<Class<?>> result = new ArrayList<>();
+		if(slots != null)
+		{
+			for(PropertySlot slot : slots)
+			{
+				if(slot.getType() != null)
+				{
+					result.add(slot.getType());
+				}
+			}
+		}
+		return result;
+	}
+
+	String describe()
+	{
+		StringBuilder result = new StringBuilder();
+		if(slots == null)
+		{
+			result.append(ENUM_PREFIX).append(SEPARATOR).append(type.getName());
+			for(String name : constantNames)
+			{
+				result.append(SEPARATOR).append(name);
+			}
+		}
+		else
+		{
+			result.append(CLASS_PREFIX).append(SEPARATOR).append(type.getName());
+			for(PropertySlot slot : slots)
+			{
+				result.append(SEPARATOR).append(slot.getName()).append(TYPE_SEPARATOR).append(slot.getTypeCode());
+			}
+		}
+		return result.toString();
+	}
+
+	Object getConstant(int storedOrdinal)
+	{
+		if(constants == null || storedOrdinal < 0 || storedOrdinal >= constants.length)
+		{
+			throw new IllegalArgumentException("Invalid ordinal " + storedOrdinal + " of " + type.getName() + "!");
+		}
+		return constants[storedOrdinal];
+	}
+
+	int getStoredOrdinal(Enum<?> constant)
+	{
+		int result = storedOrdinals[constant.ordinal()];
+		if(result < 0)
+		{
+			throw new IllegalArgumentException("Constant " + constant.name() + " of " + type.getName() + " is not contained in the class descriptor!");
+		}
+		return result;
+	}
+
+	void writeProperties(ByteBuffer buffer, Object value, ClassRegistry registry)
+	{
+		try
+		{
+			for(PropertySlot slot : slots)
+			{
+				slot.write(buffer, value, registry);
+			}
+		}
+		catch(ReflectiveOperationException ex)
+		{
+			throw new IllegalStateException("Could not access properties of " + type.getName() + "!", ex);
+		}
+	}
+
+	Object readProperties(ByteBuffer buffer, ClassRegistry registry)
+	{
+		if(slots == null)
+		{
+			throw new IllegalArgumentException(type.getName() + " is an enum!");
+		}
+		try
+		{
+			Object result = constructor.newInstance();
+			for(PropertySlot slot : slots)
+			{
+				slot.read(buffer, result, registry);
+			}
+			return result;
+		}
+		catch(ReflectiveOperationException ex)
+		{
+			throw new IllegalStateException("Could not create instance of " + type.getName() + "!", ex);
+		}
+	}
+
+	/**
+	 * @param type the class.
+	 * @return true if the given class could be registered, i.e. it is an enum or a public concrete class
+	 * that is not built-in, not part of the JDK and has a public no-argument constructor.
+	 */
+	static boolean isRegistrable(Class<?> type)
+	{
+		if(type.isEnum())
+		{
+			return true;
+		}
+		int modifiers = type.getModifiers();
+		if(!Modifier.isPublic(modifiers) || Modifier.isAbstract(modifiers) || type.isInterface() || BinaryValues.isBuiltIn(type))
+		{
+			return false;
+		}
+		if(type.getName().startsWith("java.") || type.getName().startsWith("javax."))
+		{
+			return false;
+		}
+		try
+		{
+			type.getConstructor();
+			return true;
+		}
+		catch(NoSuchMethodException ex)
+		{
+			return false;
+		}
+	}
+
+	private static Constructor<?> resolveConstructor(Class<?> type)
+	{
+		if(!isRegistrable(type))
+		{
+			throw new IllegalArgumentException(type.getName() + " must be an enum or a public concrete class with a public no-argument constructor!");
+		}
+		try
+		{
+			return type.getConstructor();
+		}
+		catch(NoSuchMethodException ex)
+		{
+			throw new IllegalArgumentException(type.getName() + " does not have a public no-argument constructor!", ex);
+		}
+	}
+
+	/**
+	 * Returns all properties of the class having both a getter and a setter that aren't marked as transient,
+	 * sorted by name.
+	 */
+	private static Map<String, PropertyDescriptor> resolveProperties(Class<?> type)
+	{
+		BeanInfo beanInfo;
+		try
+		{
+			beanInfo = Introspector.getBeanInfo(type, Object.class);
+		}
+		catch(IntrospectionException ex)
+		{
+			throw new IllegalArgumentException("Could not introspect " + type.getName() + "!", ex);
+		}
+		Map<String, PropertyDescriptor> result = new TreeMap<>();
+		for(PropertyDescriptor property : beanInfo.getPropertyDescriptors())
+		{
+			if(property.getPropertyType() == null
+					|| property.getReadMethod() == null
+					|| property.getWriteMethod() == null
+					|| Boolean.TRUE.equals(property.getValue("transient")))
+			{
+				continue;
+			}
+			result.put(property.getName(), property);
+		}
+		return result;
+	}
+
+	private static PropertySlot createSlot(String name, char typeCode, PropertyDescriptor property)
+	{
+		if(property == null)
+		{
+			return new PropertySlot(name, typeCode, null, null, null);
+		}
+		return new PropertySlot(name, typeCode, property.getPropertyType(), property.getReadMethod(), property.getWriteMethod());
+	}
+}
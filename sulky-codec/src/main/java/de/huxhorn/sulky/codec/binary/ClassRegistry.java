@@ -0,0 +1,210 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.binary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The classes known to a BinaryCodec, each with the descriptor of its properties or enum constants.
+ *
+ * Objects only reference their class by id, so the descriptor, returned by getDescriptor, has to be
+ * stored once alongside the encoded objects, e.g. in the meta data of a file, and is required to
+ * decode them. Instances are immutable and thread-safe.
+ */
+public final class ClassRegistry
+{
+	private static final String LINE_SEPARATOR = "\n";
+
+	private final List<ClassDescriptor> descriptors;
+	private final Map<Class<?>, ClassDescriptor> descriptorsByClass;
+
+	/**
+	 * Registers the current version of the given classes.
+	 *
+	 * Concrete classes and enums used as type of their properties are registered implicitly.
+	 *
+	 * @param classes the classes to register.
+	 * @throws IllegalArgumentException if any of the classes can't be registered.
+	 */
+	public ClassRegistry(Class<?>... classes)
+	{
+		this.descriptors = new ArrayList<>();
+		this.descriptorsByClass = new HashMap<>();
+		for(Class<?> type : classes)
+		{
+			if(type == null)
+			{
+				throw new IllegalArgumentException("classes must not contain null!");
+			}
+			register(type);
+		}
+	}
+
+	private ClassRegistry(List<ClassDescriptor> descriptors)
+	{
+		this.descriptors = descriptors;
+		this.descriptorsByClass = new HashMap<>();
+		for(ClassDescriptor descriptor : descriptors)
+		{
+			if(descriptorsByClass.put(descriptor.getType(), descriptor) != null)
+			{
+				throw new IllegalArgumentException("Class " + descriptor.getType().getName() + " is described more than once!");
+			}
+		}
+	}
+
+	/**
+	 * Recreates the registry described by the given descriptor, using the context ClassLoader of the
+	 * current thread.
+	 *
+	 * @param descriptor the descriptor previously returned by getDescriptor.
+	 * @return the registry.
+	 * @throws IllegalArgumentException if the descriptor is invalid or references unknown classes.
+	 */
+	public static ClassRegistry fromDescriptor(String descriptor)
+	{
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		if(classLoader == null)
+		{
+			classLoader = ClassRegistry.class.getClassLoader(); // NOPMD fallback if there is no context ClassLoader
+		}
+		return fromDescriptor(descriptor, classLoader);
+	}
+
+	/**
+	 * Recreates the registry described by the given descriptor.
+	 *
+	 * The classes may have changed in the meantime. Stored properties that don't exist anymore are skipped,
+	 * new properties keep the value assigned by the no-argument constructor.
+	 *
+	 * @param descriptor the descriptor previously returned by getDescriptor.
+	 * @param classLoader the ClassLoader used to resolve the classes.
+	 * @return the registry.
+	 * @throws IllegalArgumentException if the descriptor is invalid or references unknown classes.
+	 */
+	public static ClassRegistry fromDescriptor(String descriptor, ClassLoader classLoader)
+	{
+		if(descriptor == null)
+		{
+			throw new IllegalArgumentException("descriptor must not be null!");
+		}
+		List<ClassDescriptor> descriptors = new ArrayList<>();
+		for(String line : descriptor.split(LINE_SEPARATOR))
+		{
+			if(!line.isEmpty())
+			{
+				descriptors.add(ClassDescriptor.parse(descriptors.size(), line, classLoader));
+			}
+		}
+		return new ClassRegistry(descriptors);
+	}
+
+	/**
+	 * @return the textual descriptor of all registered classes.
+	 */
+	public String getDescriptor()
+	{
+		StringBuilder result = new StringBuilder();
+		for(ClassDescriptor descriptor : descriptors)
+		{
+			if(result.length() > 0)
+			{
+				result.append(LINE_SEPARATOR);
+			}
+			result.append(descriptor.describe());
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @return the registered classes, in order of their ids.
+	 */
+	public List<Class<?>> getClasses()
+	{
+		List<Class<?>> result = new ArrayList<>(descriptors.size());
+		for(ClassDescriptor descriptor : descriptors)
+		{
+			result.add(descriptor.getType());
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	ClassDescriptor resolve(Class<?> type)
+	{
+		ClassDescriptor result = descriptorsByClass.get(type);
+		if(result == null)
+		{
+			throw new IllegalArgumentException("Class " + type.getName() + " is not registered!");
+		}
+		return result;
+	}
+
+	ClassDescriptor get(int id)
+	{
+		if(id < 0 || id >= descriptors.size())
+		{
+			throw new IllegalArgumentException("Unknown class id " + id + "!");
+		}
+		return descriptors.get(id);
+	}
+
+	private void register(Class<?> type)
+	{
+		if(descriptorsByClass.containsKey(type))
+		{
+			return;
+		}
+		ClassDescriptor descriptor = ClassDescriptor.create(descriptors.size(), type);
+		descriptors.add(descriptor);
+		descriptorsByClass.put(type, descriptor);
+		for(Class<?> propertyType : descriptor.getPropertyTypes())
+		{
+			if(ClassDescriptor.isRegistrable(propertyType))
+			{
+				register(propertyType);
+			}
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ClassRegistry[classes=" + getClasses() + "]";
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.binary;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * A property as stored in the class descriptor of a file, together with the cached accessors of the
+ * matching property of the current class, if any.
+ *
+ * Primitive properties are written without tag, all other properties as tagged values.
+ */
+final class PropertySlot
+{
+	static final char REFERENCE = 'L';
+
+	private final String name;
+	private final char typeCode;
+	private final Class<?> type;
+	private final Method getter;
+	private final Method setter;
+
+	/**
+	 * @param name the name of the property.
+	 * @param typeCode the type code of the property, i.e. the JVM signature character of primitive types or 'L'.
+	 * @param type the type of the property of the current class, null if it does not exist or has a different type code.
+	 * @param getter the getter of the property of the current class, null if it does not exist or has a different type code.
+	 * @param setter the setter of the property of the current class, null if it does not exist or has a different type code.
+	 */
+	PropertySlot(String name, char typeCode, Class<?> type, Method getter, Method setter)
+	{
+		this.name = name;
+		this.typeCode = typeCode;
+		this.type = type;
+		this.getter = getter;
+		this.setter = setter;
+	}
+
+	String getName()
+	{
+		return name;
+	}
+
+	char getTypeCode()
+	{
+		return typeCode;
+	}
+
+	/**
+	 * @return the type of the property of the current class, null if it does not exist.
+	 */
+	Class<?> getType()
+	{
+		return type;
+	}
+
+	static char typeCodeOf(Class<?> type)
+	{
+		if(type == boolean.class)
+		{
+			return 'Z';
+		}
+		if(type == byte.class)
+		{
+			return 'B';
+		}
+		if(type == char.class)
+		{
+			return 'C';
+		}
+		if(type == short.class)
+		{
+			return 'S';
+		}
+		if(type == int.class)
+		{
+			return 'I';
+		}
+		if(type == long.class)
+		{
+			return 'J';
+		}
+		if(type == float.class)
+		{
+			return 'F';
+		}
+		if(type == double.class)
+		{
+			return 'D';
+		}
+		return REFERENCE;
+	}
+
+	/**
+	 * Writes the value of this property. The default value is written if the current class lacks the property.
+	 */
+	void write(ByteBuffer buffer, Object source, ClassRegistry registry)
+		throws IllegalAccessException, InvocationTargetException
+	{
+		Object value = getter == null ? null : getter.invoke(source);
+		switch(typeCode)
+		{
+			case 'Z':
+				buffer.put((byte) (value != null && (Boolean) value ? 1 : 0));
+				break;
+			case 'B':
+				buffer.put(value == null ? 0 : (Byte) value);
+				break;
+			case 'C':
+				buffer.putChar(value == null ? 0 : (Character) value);
+				break;
+			case 'S':
+				buffer.putShort(value == null ? 0 : (Short) value);
+				break;
+			case 'I':
+				BinaryValues.writeVarInt(buffer, value == null ? 0 : (Integer) value);
+				break;
+			case 'J':
+				BinaryValues.writeVarLong(buffer, value == null ? 0 : (Long) value);
+				break;
+			case 'F':
+				buffer.putFloat(value == null ? 0 : (Float) value);
+				break;
+			case 'D':
+				buffer.putDouble(value == null ? 0 : (Double) value);
+				break;
+			default:
+				BinaryValues.writeValue(buffer, value, registry);
+				break;
+		}
+	}
+
+	/**
+	 * Reads the value of this property. The value is skipped if the current class lacks the property.
+	 */
+	void read(ByteBuffer buffer, Object target, ClassRegistry registry)
+		throws IllegalAccessException, InvocationTargetException
+	{
+		Object value;
+		switch(typeCode)
+		{
+			case 'Z':
+				value = buffer.get() != 0;
+				break;
+			case 'B':
+				value = buffer.get();
+				break;
+			case 'C':
+				value = buffer.getChar();
+				break;
+			case 'S':
+				value = buffer.getShort();
+				break;
+			case 'I':
+				value = BinaryValues.readVarInt(buffer);
+				break;
+			case 'J':
+				value = BinaryValues.readVarLong(buffer);
+				break;
+			case 'F':
+				value = buffer.getFloat();
+				break;
+			case 'D':
+				value = buffer.getDouble();
+				break;
+			default:
+				value = BinaryValues.readValue(buffer, registry);
+				if(setter != null && value != null && !type.isInstance(value))
+				{
+					throw new IllegalArgumentException("Can't assign " + value.getClass().getName() + " to property " + name + " of type " + type.getName() + "!");
+				}
+				break;
+		}
+		if(setter != null)
+		{
+			setter.invoke(target, value);
+		}
+	}
+}
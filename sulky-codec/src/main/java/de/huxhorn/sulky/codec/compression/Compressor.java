@@ -0,0 +1,86 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.compression;
+
+import java.io.IOException;
+
+/**
+ * Compresses and decompresses blocks of bytes.
+ *
+ * The name of a compressor identifies its format and is stored alongside the compressed data, e.g. in the
+ * header of a CompressorOutputStream, so the matching compressor can be resolved using Compressors.forName.
+ * Additional compressors can be provided using java.util.ServiceLoader.
+ *
+ * Implementations must be thread-safe.
+ */
+public interface Compressor
+{
+	/**
+	 * @return the name of the format of this compressor.
+	 */
+	String getName();
+
+	/**
+	 * @param length the length of the uncompressed data.
+	 * @return the maximum length of the compressed data.
+	 */
+	int maxCompressedLength(int length);
+
+	/**
+	 * Compresses the given data.
+	 *
+	 * @param input the uncompressed data.
+	 * @param inputOffset the offset of the uncompressed data in input.
+	 * @param length the length of the uncompressed data.
+	 * @param output receives the compressed data, must have at least maxCompressedLength(length) bytes after outputOffset.
+	 * @param outputOffset the offset of the compressed data in output.
+	 * @return the length of the compressed data.
+	 */
+	int compress(byte[] input, int inputOffset, int length, byte[] output, int outputOffset);
+
+	/**
+	 * Decompresses the given data.
+	 *
+	 * @param input the compressed data.
+	 * @param inputOffset the offset of the compressed data in input.
+	 * @param length the length of the compressed data.
+	 * @param output receives the uncompressed data.
+	 * @param outputOffset the offset of the uncompressed data in output.
+	 * @param uncompressedLength the length of the uncompressed data.
+	 * @throws IOException if the data could not be decompressed or doesn't have the given uncompressed length.
+	 */
+	void decompress(byte[] input, int inputOffset, int length, byte[] output, int outputOffset, int uncompressedLength)
+		throws IOException;
+}
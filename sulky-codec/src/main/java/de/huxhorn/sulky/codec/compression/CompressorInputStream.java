@@ -0,0 +1,186 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.compression;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream reading the data written by CompressorOutputStream.
+ *
+ * The compressor is resolved from the name contained in the stream.
+ */
+public class CompressorInputStream
+	extends InputStream
+{
+	private final DataInputStream in;
+	private final Compressor compressor;
+	private final byte[] block;
+	private byte[] compressed;
+	private int position;
+	private int limit;
+	private boolean ended;
+
+	/**
+	 * Reads the name of the compressor from the given stream.
+	 *
+	 * @param in the stream containing the compressed data.
+	 * @throws IOException if the name of the compressor could not be read or the compressor is unknown.
+	 */
+	public CompressorInputStream(InputStream in)
+		throws IOException
+	{
+		if(in == null)
+		{
+			throw new IllegalArgumentException("in must not be null!");
+		}
+		this.in = new DataInputStream(in);
+		String name = this.in.readUTF();
+		try
+		{
+			this.compressor = Compressors.forName(name);
+		}
+		catch(IllegalArgumentException ex)
+		{
+			throw new IOException("Unknown compressor '" + name + "'!", ex);
+		}
+		this.block = new byte[CompressorOutputStream.BLOCK_SIZE];
+	}
+
+	public Compressor getCompressor()
+	{
+		return compressor;
+	}
+
+	@Override
+	public int read()
+		throws IOException
+	{
+		if(!ensureAvailable())
+		{
+			return -1;
+		}
+		return block[position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length)
+		throws IOException
+	{
+		if(length == 0)
+		{
+			return 0;
+		}
+		if(!ensureAvailable())
+		{
+			return -1;
+		}
+		int result = Math.min(length, limit - position);
+		System.arraycopy(block, position, bytes, offset, result);
+		position += result;
+		return result;
+	}
+
+	@Override
+	public int available()
+	{
+		return limit - position;
+	}
+
+	/**
+	 * Skips all remaining data up to and including the end of the stream, so the underlying stream
+	 * is positioned directly after the data written by CompressorOutputStream.
+	 *
+	 * @throws IOException if reading failed.
+	 */
+	public void skipRemaining()
+		throws IOException
+	{
+		while(!ended)
+		{
+			readBlock();
+		}
+		position = limit;
+	}
+
+	@Override
+	public void close()
+		throws IOException
+	{
+		in.close();
+	}
+
+	private boolean ensureAvailable()
+		throws IOException
+	{
+		while(position == limit)
+		{
+			if(ended)
+			{
+				return false;
+			}
+			readBlock();
+		}
+		return true;
+	}
+
+	private void readBlock()
+		throws IOException
+	{
+		int uncompressedLength = in.readInt();
+		if(uncompressedLength == 0)
+		{
+			ended = true;
+			position = 0;
+			limit = 0;
+			return;
+		}
+		int compressedLength = in.readInt();
+		if(uncompressedLength < 0 || uncompressedLength > block.length
+				|| compressedLength <= 0 || compressedLength > compressor.maxCompressedLength(block.length))
+		{
+			throw new IOException("Invalid block lengths (" + compressedLength + ", " + uncompressedLength + ")!");
+		}
+		if(compressed == null || compressed.length < compressedLength)
+		{
+			compressed = new byte[compressor.maxCompressedLength(block.length)];
+		}
+		in.readFully(compressed, 0, compressedLength);
+		compressor.decompress(compressed, 0, compressedLength, block, 0, uncompressedLength);
+		position = 0;
+		limit = uncompressedLength;
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.compression;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * OutputStream compressing the written data in blocks of BLOCK_SIZE bytes.
+ *
+ * The stream starts with the name of the compressor, written by DataOutputStream.writeUTF, followed by
+ * the blocks. Every block consists of the uncompressed length, the compressed length and the compressed data.
+ * The end of the stream is marked by an uncompressed length of 0.
+ */
+public class CompressorOutputStream
+	extends OutputStream
+{
+	/**
+	 * 64KB. The maximum uncompressed length of a block.
+	 */
+	public static final int BLOCK_SIZE = 64 * 1024;
+
+	private final DataOutputStream out;
+	private final Compressor compressor;
+	private final byte[] block;
+	private final byte[] compressed;
+	private int count;
+	private boolean finished;
+
+	/**
+	 * Writes the name of the compressor to the given stream.
+	 *
+	 * @param out the stream receiving the compressed data.
+	 * @param compressor the compressor.
+	 * @throws IOException if the name of the compressor could not be written.
+	 */
+	public CompressorOutputStream(OutputStream out, Compressor compressor)
+		throws IOException
+	{
+		if(out == null)
+		{
+			throw new IllegalArgumentException("out must not be null!");
+		}
+		if(compressor == null)
+		{
+			throw new IllegalArgumentException("compressor must not be null!");
+		}
+		this.out = new DataOutputStream(out);
+		this.compressor = compressor;
+		this.block = new byte[BLOCK_SIZE];
+		this.compressed = new byte[compressor.maxCompressedLength(BLOCK_SIZE)];
+		this.out.writeUTF(compressor.getName());
+	}
+
+	public Compressor getCompressor()
+	{
+		return compressor;
+	}
+
+	@Override
+	public void write(int b)
+		throws IOException
+	{
+		ensureNotFinished();
+		if(count == block.length)
+		{
+			writeBlock();
+		}
+		block[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length)
+		throws IOException
+	{
+		ensureNotFinished();
+		int position = offset;
+		int remaining = length;
+		while(remaining > 0)
+		{
+			if(count == block.length)
+			{
+				writeBlock();
+			}
+			int chunk = Math.min(remaining, block.length - count);
+			System.arraycopy(bytes, position, block, count, chunk);
+			count += chunk;
+			position += chunk;
+			remaining -= chunk;
+		}
+	}
+
+	/**
+	 * Compresses the current block, even if it's not full yet, and flushes the underlying stream.
+	 */
+	@Override
+	public void flush()
+		throws IOException
+	{
+		if(!finished)
+		{
+			writeBlock();
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes the remaining data and the end of the stream without closing the underlying stream.
+	 *
+	 * @throws IOException if writing failed.
+	 */
+	public void finish()
+		throws IOException
+	{
+		if(finished)
+		{
+			return;
+		}
+		writeBlock();
+		out.writeInt(0);
+		out.flush();
+		finished = true;
+	}
+
+	@Override
+	public void close()
+		throws IOException
+	{
+		try // NOPMD try-with-resources would need an unused variable
+		{
+			finish();
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private void writeBlock()
+		throws IOException
+	{
+		if(count == 0)
+		{
+			return;
+		}
+		int compressedLength = compressor.compress(block, 0, count, compressed, 0);
+		out.writeInt(count);
+		out.writeInt(compressedLength);
+		out.write(compressed, 0, compressedLength);
+		count = 0;
+	}
+
+	private void ensureNotFinished()
+		throws IOException
+	{
+		if(finished)
+		{
+			throw new IOException("Stream has already been finished!");
+		}
+	}
+}
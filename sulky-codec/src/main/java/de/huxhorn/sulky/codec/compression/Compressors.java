@@ -0,0 +1,88 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.compression;
+
+import java.util.ServiceLoader;
+import java.util.zip.Deflater;
+
+/**
+ * Resolves compressors by name.
+ */
+public final class Compressors
+{
+	private static final Compressor DEFLATE = new DeflateCompressor();
+	private static final Compressor DEFLATE_RAW = new DeflateCompressor(Deflater.DEFAULT_COMPRESSION, true);
+	private static final Compressor LZ4 = new Lz4Compressor();
+
+	private Compressors()
+	{}
+
+	/**
+	 * Returns the compressor with the given name.
+	 *
+	 * The built-in compressors are DeflateCompressor.NAME, DeflateCompressor.RAW_NAME and Lz4Compressor.NAME.
+	 * Other compressors are looked up using ServiceLoader.
+	 *
+	 * @param name the name of the compressor.
+	 * @return the compressor.
+	 * @throws IllegalArgumentException if there's no compressor with the given name.
+	 */
+	public static Compressor forName(String name)
+	{
+		if(DeflateCompressor.NAME.equals(name))
+		{
+			return DEFLATE;
+		}
+		if(DeflateCompressor.RAW_NAME.equals(name))
+		{
+			return DEFLATE_RAW;
+		}
+		if(Lz4Compressor.NAME.equals(name))
+		{
+			return LZ4;
+		}
+		if(name != null)
+		{
+			for(Compressor compressor : ServiceLoader.load(Compressor.class))
+			{
+				if(name.equals(compressor.getName()))
+				{
+					return compressor;
+				}
+			}
+		}
+		throw new IllegalArgumentException("Unknown compressor '" + name + "'!");
+	}
+}
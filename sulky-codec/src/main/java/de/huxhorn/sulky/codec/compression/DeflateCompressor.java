@@ -0,0 +1,170 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.compression;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressor using Deflater and Inflater.
+ *
+ * The data is either written in zlib format or, if raw, without zlib header and checksum.
+ * Deflater and Inflater instances are taken from the shared DeflaterPool and InflaterPool instead of being
+ * created for every block.
+ */
+public class DeflateCompressor
+	implements Compressor
+{
+	/**
+	 * The name of the zlib format.
+	 */
+	public static final String NAME = "deflate";
+
+	/**
+	 * The name of the raw format, i.e. without zlib header and checksum.
+	 */
+	public static final String RAW_NAME = "deflate-raw";
+
+	private final int level;
+	private final boolean raw;
+	private final DeflaterPool deflaterPool;
+	private final InflaterPool inflaterPool;
+
+	public DeflateCompressor()
+	{
+		this(Deflater.DEFAULT_COMPRESSION, false);
+	}
+
+	/**
+	 * @param level the compression level, see Deflater.
+	 * @param raw true if zlib header and checksum should be omitted.
+	 */
+	public DeflateCompressor(int level, boolean raw)
+	{
+		if(level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION))
+		{
+			throw new IllegalArgumentException("Invalid compression level " + level + "!");
+		}
+		this.level = level;
+		this.raw = raw;
+		this.deflaterPool = DeflaterPool.getShared(level, raw);
+		this.inflaterPool = InflaterPool.getShared(raw);
+	}
+
+	public int getLevel()
+	{
+		return level;
+	}
+
+	public boolean isRaw()
+	{
+		return raw;
+	}
+
+	@Override
+	public String getName()
+	{
+		return raw ? RAW_NAME : NAME;
+	}
+
+	@Override
+	public int maxCompressedLength(int length)
+	{
+		return length + (length >> 8) + 64;
+	}
+
+	@Override
+	public int compress(byte[] input, int inputOffset, int length, byte[] output, int outputOffset)
+	{
+		Deflater deflater = deflaterPool.acquire();
+		try
+		{
+			deflater.setInput(input, inputOffset, length);
+			deflater.finish();
+			int count = 0;
+			while(!deflater.finished())
+			{
+				int available = output.length - outputOffset - count;
+				if(available <= 0)
+				{
+					throw new IllegalArgumentException("output is too small!");
+				}
+				count += deflater.deflate(output, outputOffset + count, available);
+			}
+			return count;
+		}
+		finally
+		{
+			deflaterPool.release(deflater);
+		}
+	}
+
+	@Override
+	public void decompress(byte[] input, int inputOffset, int length, byte[] output, int outputOffset, int uncompressedLength)
+		throws IOException
+	{
+		Inflater inflater = inflaterPool.acquire();
+		try
+		{
+			inflater.setInput(input, inputOffset, length);
+			int count = 0;
+			while(count < uncompressedLength)
+			{
+				int inflated = inflater.inflate(output, outputOffset + count, uncompressedLength - count);
+				if(inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+				{
+					throw new IOException("Compressed data ended after " + count + " of " + uncompressedLength + " bytes!");
+				}
+				count += inflated;
+			}
+		}
+		catch(DataFormatException e)
+		{
+			throw new IOException("Invalid compressed data!", e);
+		}
+		finally
+		{
+			inflaterPool.release(inflater);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "DeflateCompressor[level=" + level + ", raw=" + raw + "]";
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.compression;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Bounded pool of Deflater instances sharing the same level and nowrap setting.
+ *
+ * Creating a Deflater allocates native zlib memory that is only freed by end() or finalization.
+ * Acquired instances are reset when they are released and either kept for reuse or, if the pool
+ * is already full, ended immediately.
+ */
+public final class DeflaterPool
+{
+	/**
+	 * The maximum number of idle instances kept by the shared pools.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 16;
+
+	private static final DeflaterPool[] SHARED = createSharedPools();
+
+	private final int level;
+	private final boolean nowrap;
+	private final int maxSize;
+	private final BlockingQueue<Deflater> deflaters;
+
+	/**
+	 * @param level the compression level, see Deflater.
+	 * @param nowrap true if zlib header and checksum should be omitted, as required by GZIP.
+	 * @param maxSize the maximum number of idle instances kept by this pool.
+	 */
+	public DeflaterPool(int level, boolean nowrap, int maxSize)
+	{
+		if(level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION))
+		{
+			throw new IllegalArgumentException("Invalid compression level " + level + "!");
+		}
+		if(maxSize < 1)
+		{
+			throw new IllegalArgumentException("maxSize must be positive but was " + maxSize + "!");
+		}
+		this.level = level;
+		this.nowrap = nowrap;
+		this.maxSize = maxSize;
+		this.deflaters = new ArrayBlockingQueue<>(maxSize);
+	}
+
+	/**
+	 * Returns the shared pool for the given settings.
+	 *
+	 * @param level the compression level, see Deflater.
+	 * @param nowrap true if zlib header and checksum should be omitted, as required by GZIP.
+	 * @return the shared pool.
+	 */
+	public static DeflaterPool getShared(int level, boolean nowrap)
+	{
+		if(level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION))
+		{
+			throw new IllegalArgumentException("Invalid compression level " + level + "!");
+		}
+		return SHARED[sharedIndex(level, nowrap)];
+	}
+
+	public int getLevel()
+	{
+		return level;
+	}
+
+	public boolean isNowrap()
+	{
+		return nowrap;
+	}
+
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	/**
+	 * @return the number of idle instances currently kept by this pool.
+	 */
+	public int size()
+	{
+		return deflaters.size();
+	}
+
+	/**
+	 * Returns an idle Deflater or creates a new one if none is available.
+	 *
+	 * The caller must hand it back using release(Deflater) and must not use it afterwards.
+	 *
+	 * @return a Deflater ready for new input.
+	 */
+	public Deflater acquire()
+	{
+		Deflater result = deflaters.poll();
+		if(result != null)
+		{
+			return result;
+		}
+		return new Deflater(level, nowrap);
+	}
+
+	/**
+	 * Resets the given Deflater and keeps it for reuse. It is ended instead if the pool is full.
+	 *
+	 * @param deflater a Deflater previously acquired from this pool, may be null.
+	 */
+	public void release(Deflater deflater)
+	{
+		if(deflater == null)
+		{
+			return;
+		}
+		deflater.reset();
+		// undo any changes the user may have made
+		deflater.setLevel(level);
+		deflater.setStrategy(Deflater.DEFAULT_STRATEGY);
+		if(!deflaters.offer(deflater))
+		{
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Ends all idle instances.
+	 */
+	public void clear()
+	{
+		for(;;)
+		{
+			Deflater deflater = deflaters.poll();
+			if(deflater == null)
+			{
+				break;
+			}
+			deflater.end();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "DeflaterPool[level=" + level + ", nowrap=" + nowrap + ", maxSize=" + maxSize + ", size=" + size() + "]";
+	}
+
+	private static int sharedIndex(int level, boolean nowrap)
+	{
+		// DEFAULT_COMPRESSION is -1
+		return (level + 1) * 2 + (nowrap ? 1 : 0);
+	}
+
+	private static DeflaterPool[] createSharedPools()
+	{
+		DeflaterPool[] result = new DeflaterPool[sharedIndex(Deflater.BEST_COMPRESSION, true) + 1];
+		for(int level = Deflater.DEFAULT_COMPRESSION; level <= Deflater.BEST_COMPRESSION; level++)
+		{
+			result[sharedIndex(level, false)] = new DeflaterPool(level, false, DEFAULT_MAX_SIZE);
+			result[sharedIndex(level, true)] = new DeflaterPool(level, true, DEFAULT_MAX_SIZE);
+		}
+		return result;
+	}
+}
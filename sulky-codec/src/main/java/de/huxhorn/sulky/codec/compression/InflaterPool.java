@@ -0,0 +1,163 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.compression;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Inflater;
+
+/**
+ * Bounded pool of Inflater instances sharing the same nowrap setting.
+ *
+ * Acquired instances are reset when they are released and either kept for reuse or, if the pool
+ * is already full, ended immediately.
+ *
+ * @see DeflaterPool
+ */
+public final class InflaterPool
+{
+	/**
+	 * The maximum number of idle instances kept by the shared pools.
+	 */
+	public static final int DEFAULT_MAX_SIZE = DeflaterPool.DEFAULT_MAX_SIZE;
+
+	private static final InflaterPool SHARED = new InflaterPool(false, DEFAULT_MAX_SIZE);
+	private static final InflaterPool SHARED_NOWRAP = new InflaterPool(true, DEFAULT_MAX_SIZE);
+
+	private final boolean nowrap;
+	private final int maxSize;
+	private final BlockingQueue<Inflater> inflaters;
+
+	/**
+	 * @param nowrap true if zlib header and checksum are omitted, as required by GZIP.
+	 * @param maxSize the maximum number of idle instances kept by this pool.
+	 */
+	public InflaterPool(boolean nowrap, int maxSize)
+	{
+		if(maxSize < 1)
+		{
+			throw new IllegalArgumentException("maxSize must be positive but was " + maxSize + "!");
+		}
+		this.nowrap = nowrap;
+		this.maxSize = maxSize;
+		this.inflaters = new ArrayBlockingQueue<>(maxSize);
+	}
+
+	/**
+	 * Returns the shared pool for the given setting.
+	 *
+	 * @param nowrap true if zlib header and checksum are omitted, as required by GZIP.
+	 * @return the shared pool.
+	 */
+	public static InflaterPool getShared(boolean nowrap)
+	{
+		return nowrap ? SHARED_NOWRAP : SHARED;
+	}
+
+	public boolean isNowrap()
+	{
+		return nowrap;
+	}
+
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	/**
+	 * @return the number of idle instances currently kept by this pool.
+	 */
+	public int size()
+	{
+		return inflaters.size();
+	}
+
+	/**
+	 * Returns an idle Inflater or creates a new one if none is available.
+	 *
+	 * The caller must hand it back using release(Inflater) and must not use it afterwards.
+	 *
+	 * @return an Inflater ready for new input.
+	 */
+	public Inflater acquire()
+	{
+		Inflater result = inflaters.poll();
+		if(result != null)
+		{
+			return result;
+		}
+		return new Inflater(nowrap);
+	}
+
+	/**
+	 * Resets the given Inflater and keeps it for reuse. It is ended instead if the pool is full.
+	 *
+	 * @param inflater an Inflater previously acquired from this pool, may be null.
+	 */
+	public void release(Inflater inflater)
+	{
+		if(inflater == null)
+		{
+			return;
+		}
+		inflater.reset();
+		if(!inflaters.offer(inflater))
+		{
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Ends all idle instances.
+	 */
+	public void clear()
+	{
+		for(;;)
+		{
+			Inflater inflater = inflaters.poll();
+			if(inflater == null)
+			{
+				break;
+			}
+			inflater.end();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "InflaterPool[nowrap=" + nowrap + ", maxSize=" + maxSize + ", size=" + size() + "]";
+	}
+}
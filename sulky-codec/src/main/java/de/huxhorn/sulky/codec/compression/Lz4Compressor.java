@@ -0,0 +1,281 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pure Java compressor writing the LZ4 block format.
+ *
+ * Compression uses a single hash table of 4-byte sequences, i.e. it's optimized for speed rather than
+ * ratio. The hash table is reused by the calling thread.
+ */
+public class Lz4Compressor
+	implements Compressor
+{
+	public static final String NAME = "lz4";
+
+	private static final int MIN_MATCH = 4;
+	private static final int LAST_LITERALS = 5;
+	private static final int MATCH_FIND_LIMIT = 12;
+	private static final int MAX_DISTANCE = 65_535;
+	private static final int HASH_LOG = 14;
+	private static final int RUN_MASK = 15;
+	private static final int SKIP_TRIGGER = 6;
+
+	private final ThreadLocal<int[]> hashTables = new ThreadLocal<>();
+
+	@Override
+	public String getName()
+	{
+		return NAME;
+	}
+
+	@Override
+	public int maxCompressedLength(int length)
+	{
+		return length + length / 255 + 16;
+	}
+
+	@Override
+	public int compress(byte[] input, int inputOffset, int length, byte[] output, int outputOffset)
+	{
+		int inputEnd = inputOffset + length;
+		int outputPosition = outputOffset;
+		int anchor = inputOffset;
+		if(length > MATCH_FIND_LIMIT)
+		{
+			int[] hashTable = hashTables.get();
+			if(hashTable == null)
+			{
+				hashTable = new int[1 << HASH_LOG];
+				hashTables.set(hashTable);
+			}
+			Arrays.fill(hashTable, -1);
+			int matchLimit = inputEnd - LAST_LITERALS;
+			int matchFindLimit = inputEnd - MATCH_FIND_LIMIT;
+			int position = inputOffset;
+			while(position < matchFindLimit)
+			{
+				int sequence = readInt(input, position);
+				int hash = hash(sequence);
+				int reference = hashTable[hash];
+				hashTable[hash] = position;
+				if(reference < 0 || position - reference > MAX_DISTANCE || readInt(input, reference) != sequence)
+				{
+					position += 1 + ((position - anchor) >>> SKIP_TRIGGER);
+					continue;
+				}
+				while(position > anchor && reference > inputOffset && input[position - 1] == input[reference - 1])
+				{
+					position--;
+					reference--;
+				}
+				int matchLength = MIN_MATCH;
+				while(position + matchLength < matchLimit && input[position + matchLength] == input[reference + matchLength])
+				{
+					matchLength++;
+				}
+				outputPosition = writeSequence(input, anchor, position - anchor, position - reference, matchLength, output, outputPosition);
+				position += matchLength;
+				anchor = position;
+				if(position < matchFindLimit)
+				{
+					hashTable[hash(readInt(input, position - 2))] = position - 2;
+				}
+			}
+		}
+		outputPosition = writeLiterals(input, anchor, inputEnd - anchor, output, outputPosition, 0);
+		return outputPosition - outputOffset;
+	}
+
+	@Override
+	public void decompress(byte[] input, int inputOffset, int length, byte[] output, int outputOffset, int uncompressedLength)
+		throws IOException
+	{
+		int inputEnd = inputOffset + length;
+		int outputEnd = outputOffset + uncompressedLength;
+		if(length <= 0 || inputEnd > input.length || outputEnd > output.length)
+		{
+			throw new IOException("Invalid compressed data!");
+		}
+		int inputPosition = inputOffset;
+		int outputPosition = outputOffset;
+		for(;;)
+		{
+			int token = input[inputPosition++] & 0xFF;
+			int literalLength = token >>> 4;
+			if(literalLength == RUN_MASK)
+			{
+				int current;
+				do
+				{
+					if(inputPosition >= inputEnd)
+					{
+						throw new IOException("Invalid literal length at " + inputPosition + "!");
+					}
+					current = input[inputPosition++] & 0xFF;
+					literalLength += current;
+				}
+				while(current == 255);
+			}
+			if(literalLength > inputEnd - inputPosition || literalLength > outputEnd - outputPosition)
+			{
+				throw new IOException("Invalid literal length " + literalLength + " at " + inputPosition + "!");
+			}
+			System.arraycopy(input, inputPosition, output, outputPosition, literalLength);
+			inputPosition += literalLength;
+			outputPosition += literalLength;
+			if(inputPosition == inputEnd)
+			{
+				break;
+			}
+			if(inputEnd - inputPosition < 2)
+			{
+				throw new IOException("Invalid offset at " + inputPosition + "!");
+			}
+			int distance = (input[inputPosition] & 0xFF) | ((input[inputPosition + 1] & 0xFF) << 8);
+			inputPosition += 2;
+			if(distance == 0 || distance > outputPosition - outputOffset)
+			{
+				throw new IOException("Invalid offset " + distance + " at " + inputPosition + "!");
+			}
+			int matchLength = token & RUN_MASK;
+			if(matchLength == RUN_MASK)
+			{
+				int current;
+				do
+				{
+					if(inputPosition >= inputEnd)
+					{
+						throw new IOException("Invalid match length at " + inputPosition + "!");
+					}
+					current = input[inputPosition++] & 0xFF;
+					matchLength += current;
+				}
+				while(current == 255);
+			}
+			matchLength += MIN_MATCH;
+			if(matchLength > outputEnd - outputPosition)
+			{
+				throw new IOException("Invalid match length " + matchLength + " at " + inputPosition + "!");
+			}
+			int reference = outputPosition - distance;
+			if(distance >= matchLength)
+			{
+				System.arraycopy(output, reference, output, outputPosition, matchLength);
+				outputPosition += matchLength;
+			}
+			else
+			{
+				// overlapping match, e.g. a run of a repeated pattern
+				for(int i = 0; i < matchLength; i++)
+				{
+					output[outputPosition++] = output[reference + i];
+				}
+			}
+		}
+		if(outputPosition != outputEnd)
+		{
+			throw new IOException("Compressed data ended after " + (outputPosition - outputOffset) + " of " + uncompressedLength + " bytes!");
+		}
+	}
+
+	private static int writeSequence(byte[] input, int literalOffset, int literalLength, int distance, int matchLength, byte[] output, int outputOffset)
+	{
+		int remainingMatchLength = matchLength - MIN_MATCH;
+		int outputPosition = writeLiterals(input, literalOffset, literalLength, output, outputOffset, Math.min(remainingMatchLength, RUN_MASK));
+		output[outputPosition++] = (byte) distance;
+		output[outputPosition++] = (byte) (distance >>> 8);
+		if(remainingMatchLength >= RUN_MASK)
+		{
+			outputPosition = writeLength(remainingMatchLength - RUN_MASK, output, outputPosition);
+		}
+		return outputPosition;
+	}
+
+	/**
+	 * Writes the token, containing the given low bits, followed by the literals.
+	 */
+	private static int writeLiterals(byte[] input, int literalOffset, int literalLength, byte[] output, int outputOffset, int tokenLowBits)
+	{
+		int outputPosition = outputOffset;
+		int tokenPosition = outputPosition++;
+		if(literalLength >= RUN_MASK)
+		{
+			output[tokenPosition] = (byte) ((RUN_MASK << 4) | tokenLowBits);
+			outputPosition = writeLength(literalLength - RUN_MASK, output, outputPosition);
+		}
+		else
+		{
+			output[tokenPosition] = (byte) ((literalLength << 4) | tokenLowBits);
+		}
+		System.arraycopy(input, literalOffset, output, outputPosition, literalLength);
+		return outputPosition + literalLength;
+	}
+
+	private static int writeLength(int length, byte[] output, int outputOffset)
+	{
+		int outputPosition = outputOffset;
+		int remaining = length;
+		while(remaining >= 255)
+		{
+			output[outputPosition++] = (byte) 255;
+			remaining -= 255;
+		}
+		output[outputPosition++] = (byte) remaining;
+		return outputPosition;
+	}
+
+	private static int readInt(byte[] input, int offset)
+	{
+		return (input[offset] & 0xFF)
+				| ((input[offset + 1] & 0xFF) << 8)
+				| ((input[offset + 2] & 0xFF) << 16)
+				| ((input[offset + 3] & 0xFF) << 24);
+	}
+
+	private static int hash(int sequence)
+	{
+		return (sequence * -1_640_531_535) >>> (32 - HASH_LOG);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Lz4Compressor";
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.compression;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * GZIPInputStream replacement using an Inflater obtained from an InflaterPool.
+ *
+ * Only the first GZIP member is read, which is sufficient for data written by PooledGZIPOutputStream
+ * or GZIPOutputStream. The Inflater is handed back to its pool as soon as the stream is closed.
+ */
+public class PooledGZIPInputStream
+	extends InflaterInputStream
+{
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+	private static final int BUFFER_SIZE = 512;
+
+	private final InflaterPool pool;
+	private final CRC32 crc = new CRC32();
+	private boolean eos;
+	private boolean released;
+
+	public PooledGZIPInputStream(InputStream in)
+		throws IOException
+	{
+		this(in, InflaterPool.getShared(true));
+	}
+
+	/**
+	 * @param in the stream providing the compressed data.
+	 * @param pool the pool providing the Inflater, must not expect zlib data.
+	 * @throws IOException if the GZIP header could not be read.
+	 */
+	public PooledGZIPInputStream(InputStream in, InflaterPool pool)
+		throws IOException
+	{
+		super(in, acquire(pool), BUFFER_SIZE);
+		this.pool = pool;
+		try
+		{
+			readHeader(in);
+		}
+		catch(IOException | RuntimeException e)
+		{
+			release();
+			throw e;
+		}
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len)
+		throws IOException
+	{
+		if(released)
+		{
+			throw new IOException("Stream closed");
+		}
+		if(eos)
+		{
+			return -1;
+		}
+		int result = super.read(b, off, len);
+		if(result == -1)
+		{
+			readTrailer();
+			eos = true;
+		}
+		else
+		{
+			crc.update(b, off, result);
+		}
+		return result;
+	}
+
+	@Override
+	public int available()
+		throws IOException
+	{
+		if(released)
+		{
+			throw new IOException("Stream closed");
+		}
+		if(eos)
+		{
+			return 0;
+		}
+		return super.available();
+	}
+
+	@Override
+	public void close()
+		throws IOException
+	{
+		if(released)
+		{
+			return;
+		}
+		try
+		{
+			super.close();
+		}
+		finally
+		{
+			release();
+		}
+	}
+
+	private void release()
+	{
+		if(!released)
+		{
+			released = true;
+			pool.release(inf);
+		}
+	}
+
+	private void readTrailer()
+		throws IOException
+	{
+		byte[] trailer = new byte[PooledGZIPOutputStream.TRAILER_SIZE];
+		int remaining = inf.getRemaining();
+		int fromBuffer = Math.min(remaining, trailer.length);
+		System.arraycopy(buf, len - remaining, trailer, 0, fromBuffer);
+		int offset = fromBuffer;
+		while(offset < trailer.length)
+		{
+			int read = in.read(trailer, offset, trailer.length - offset);
+			if(read < 0)
+			{
+				throw new EOFException("Unexpected end of GZIP trailer");
+			}
+			offset += read;
+		}
+		if(readIntLE(trailer, 0) != (int) crc.getValue() || readIntLE(trailer, 4) != (int) inf.getBytesWritten())
+		{
+			throw new ZipException("Corrupt GZIP trailer");
+		}
+	}
+
+	private static void readHeader(InputStream in)
+		throws IOException
+	{
+		CRC32 headerCrc = new CRC32();
+		CheckedInputStream checked = new CheckedInputStream(in, headerCrc);
+		if(readUShort(checked) != PooledGZIPOutputStream.GZIP_MAGIC)
+		{
+			throw new ZipException("Not in GZIP format");
+		}
+		if(readUByte(checked) != Deflater.DEFLATED)
+		{
+			throw new ZipException("Unsupported compression method");
+		}
+		int flags = readUByte(checked);
+		// MTIME, XFL and OS
+		skipBytes(checked, 6);
+		if((flags & FEXTRA) == FEXTRA)
+		{
+			skipBytes(checked, readUShort(checked));
+		}
+		if((flags & FNAME) == FNAME)
+		{
+			skipString(checked);
+		}
+		if((flags & FCOMMENT) == FCOMMENT)
+		{
+			skipString(checked);
+		}
+		if((flags & FHCRC) == FHCRC)
+		{
+			int expected = (int) headerCrc.getValue() & 0xffff;
+			if(readUShort(checked) != expected)
+			{
+				throw new ZipException("Corrupt GZIP header");
+			}
+		}
+	}
+
+	private static void skipString(InputStream in)
+		throws IOException
+	{
+		// zero-terminated
+		int current = readUByte(in);
+		while(current != 0)
+		{
+			current = readUByte(in);
+		}
+	}
+
+	private static void skipBytes(InputStream in, int count)
+		throws IOException
+	{
+		for(int i = 0; i < count; i++)
+		{
+			readUByte(in);
+		}
+	}
+
+	private static int readUShort(InputStream in)
+		throws IOException
+	{
+		int low = readUByte(in);
+		return (readUByte(in) << 8) | low;
+	}
+
+	private static int readUByte(InputStream in)
+		throws IOException
+	{
+		int result = in.read();
+		if(result < 0)
+		{
+			throw new EOFException();
+		}
+		return result;
+	}
+
+	private static int readIntLE(byte[] buffer, int offset)
+	{
+		return (buffer[offset] & 0xff)
+			| (buffer[offset + 1] & 0xff) << 8
+			| (buffer[offset + 2] & 0xff) << 16
+			| (buffer[offset + 3] & 0xff) << 24;
+	}
+
+	private static Inflater acquire(InflaterPool pool)
+	{
+		if(pool == null)
+		{
+			throw new IllegalArgumentException("pool must not be null!");
+		}
+		if(!pool.isNowrap())
+		{
+			throw new IllegalArgumentException("pool must provide nowrap Inflater instances!");
+		}
+		return pool.acquire();
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * GZIPOutputStream replacement using a Deflater obtained from a DeflaterPool.
+ *
+ * The written data is a single GZIP member that is readable by GZIPInputStream.
+ * The Deflater is handed back to its pool as soon as the stream is closed.
+ */
+public class PooledGZIPOutputStream
+	extends DeflaterOutputStream
+{
+	static final int GZIP_MAGIC = 0x8b1f;
+	static final int HEADER_SIZE = 10;
+	static final int TRAILER_SIZE = 8;
+	private static final int BUFFER_SIZE = 512;
+
+	private final DeflaterPool pool;
+	private final CRC32 crc = new CRC32();
+	private boolean finished;
+	private boolean released;
+
+	public PooledGZIPOutputStream(OutputStream out)
+		throws IOException
+	{
+		this(out, DeflaterPool.getShared(Deflater.DEFAULT_COMPRESSION, true));
+	}
+
+	/**
+	 * @param out the stream receiving the compressed data.
+	 * @param pool the pool providing the Deflater, must not wrap zlib data.
+	 * @throws IOException if the GZIP header could not be written.
+	 */
+	public PooledGZIPOutputStream(OutputStream out, DeflaterPool pool)
+		throws IOException
+	{
+		super(out, acquire(pool), BUFFER_SIZE);
+		this.pool = pool;
+		try
+		{
+			writeHeader();
+		}
+		catch(IOException | RuntimeException e)
+		{
+			release();
+			throw e;
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len)
+		throws IOException
+	{
+		if(released)
+		{
+			throw new IOException("Stream closed");
+		}
+		super.write(b, off, len);
+		crc.update(b, off, len);
+	}
+
+	@Override
+	public void finish()
+		throws IOException
+	{
+		if(finished || released)
+		{
+			// like GZIPOutputStream, finishing a closed stream is a no-op
+			return;
+		}
+		super.finish();
+		writeTrailer();
+		finished = true;
+	}
+
+	@Override
+	public void close()
+		throws IOException
+	{
+		if(released)
+		{
+			return;
+		}
+		try
+		{
+			super.close();
+		}
+		finally
+		{
+			release();
+		}
+	}
+
+	private void release()
+	{
+		if(!released)
+		{
+			released = true;
+			pool.release(def);
+		}
+	}
+
+	private void writeHeader()
+		throws IOException
+	{
+		// magic, CM=deflate, FLG=0, MTIME=0, XFL=0, OS=0 - same as GZIPOutputStream
+		out.write(new byte[]{(byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0});
+	}
+
+	private void writeTrailer()
+		throws IOException
+	{
+		byte[] trailer = new byte[TRAILER_SIZE];
+		writeIntLE((int) crc.getValue(), trailer, 0);
+		writeIntLE((int) def.getBytesRead(), trailer, 4);
+		out.write(trailer);
+	}
+
+	private static void writeIntLE(int value, byte[] buffer, int offset)
+	{
+		buffer[offset] = (byte) value;
+		buffer[offset + 1] = (byte) (value >> 8);
+		buffer[offset + 2] = (byte) (value >> 16);
+		buffer[offset + 3] = (byte) (value >> 24);
+	}
+
+	private static Deflater acquire(DeflaterPool pool)
+	{
+		if(pool == null)
+		{
+			throw new IllegalArgumentException("pool must not be null!");
+		}
+		if(!pool.isNowrap())
+		{
+			throw new IllegalArgumentException("pool must provide nowrap Deflater instances!");
+		}
+		return pool.acquire();
+	}
+}
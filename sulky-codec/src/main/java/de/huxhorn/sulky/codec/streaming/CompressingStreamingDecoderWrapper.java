@@ -0,0 +1,85 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.streaming;
+
+import de.huxhorn.sulky.codec.compression.CompressorInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes objects written by CompressingStreamingEncoderWrapper, using the compressor named in the stream.
+ *
+ * In contrast to GZIPStreamingDecoderWrapper, the stream is not closed, even if the wrapped decoder closes
+ * the stream it's reading from. It's positioned directly after the compressed data, so several objects can be
+ * read from the same stream.
+ *
+ * @param <E> the type of the decoded objects.
+ * @see CompressingStreamingEncoderWrapper
+ */
+public class CompressingStreamingDecoderWrapper<E>
+	implements StreamingDecoder<E>
+{
+	private final StreamingDecoder<E> wrapped;
+
+	public CompressingStreamingDecoderWrapper(StreamingDecoder<E> wrapped)
+	{
+		this.wrapped = wrapped;
+	}
+
+	@Override
+	public E decode(InputStream from) throws IOException
+	{
+		CompressorInputStream cis = new CompressorInputStream(new NonClosingInputStream(from));
+		E result = wrapped.decode(cis);
+		cis.skipRemaining();
+		return result;
+	}
+
+	private static class NonClosingInputStream
+		extends FilterInputStream
+	{
+		NonClosingInputStream(InputStream in)
+		{
+			super(in);
+		}
+
+		@Override
+		public void close()
+		{
+			// the stream is closed by the caller of decode
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.streaming;
+
+import de.huxhorn.sulky.codec.compression.Compressor;
+import de.huxhorn.sulky.codec.compression.CompressorOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compresses the encoded object using a CompressorOutputStream, i.e. the name of the compressor
+ * is written in front of the compressed data.
+ *
+ * In contrast to GZIPStreamingEncoderWrapper, the stream is not closed after the object has been encoded,
+ * even if the wrapped encoder closes the stream it's writing to.
+ *
+ * @param <E> the type of the encoded objects.
+ * @see CompressingStreamingDecoderWrapper
+ */
+public class CompressingStreamingEncoderWrapper<E>
+	implements StreamingEncoder<E>
+{
+	private final StreamingEncoder<E> wrapped;
+	private final Compressor compressor;
+
+	public CompressingStreamingEncoderWrapper(StreamingEncoder<E> wrapped, Compressor compressor)
+	{
+		if(compressor == null)
+		{
+			throw new IllegalArgumentException("compressor must not be null!");
+		}
+		this.wrapped = wrapped;
+		this.compressor = compressor;
+	}
+
+	public Compressor getCompressor()
+	{
+		return compressor;
+	}
+
+	@Override
+	public void encode(E obj, OutputStream into) throws IOException
+	{
+		CompressorOutputStream cos = new CompressorOutputStream(new NonClosingOutputStream(into), compressor);
+		wrapped.encode(obj, cos);
+		cos.finish();
+	}
+
+	private static class NonClosingOutputStream
+		extends FilterOutputStream
+	{
+		NonClosingOutputStream(OutputStream out)
+		{
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length)
+			throws IOException
+		{
+			out.write(bytes, offset, length);
+		}
+
+		@Override
+		public void close()
+			throws IOException
+		{
+			flush();
+		}
+	}
+}
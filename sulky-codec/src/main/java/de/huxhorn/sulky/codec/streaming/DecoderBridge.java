@@ -34,15 +34,19 @@
 
 package de.huxhorn.sulky.codec.streaming;
 
+import de.huxhorn.sulky.codec.ByteBufferDecoder;
+import de.huxhorn.sulky.codec.ByteBufferInputStream;
 import de.huxhorn.sulky.codec.Decoder;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class DecoderBridge<E>
-	implements Decoder<E>
+	implements Decoder<E>, ByteBufferDecoder<E>
 {
 	private final Logger logger = LoggerFactory.getLogger(DecoderBridge.class);
 
@@ -56,9 +60,20 @@ public class DecoderBridge<E>
 	@Override
 	public E decode(byte[] bytes)
 	{
-		try(ByteArrayInputStream bis=new ByteArrayInputStream(bytes))
+		return decode(new ByteArrayInputStream(bytes));
+	}
+
+	@Override
+	public E decode(ByteBuffer bytes)
+	{
+		return decode(new ByteBufferInputStream(bytes));
+	}
+
+	private E decode(InputStream inputStream)
+	{
+		try(InputStream is=inputStream)
 		{
-			return wrapped.decode(bis);
+			return wrapped.decode(is);
 		}
 		catch (IOException e)
 		{
@@ -34,9 +34,9 @@
 
 package de.huxhorn.sulky.codec.streaming;
 
+import de.huxhorn.sulky.codec.compression.PooledGZIPInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.GZIPInputStream;
 
 public class GZIPStreamingDecoderWrapper<E>
 	implements StreamingDecoder<E>
@@ -51,7 +51,7 @@ public class GZIPStreamingDecoderWrapper<E>
 	@Override
 	public E decode(InputStream from) throws IOException
 	{
-		try(GZIPInputStream gis=new GZIPInputStream(from))
+		try(PooledGZIPInputStream gis=new PooledGZIPInputStream(from))
 		{
 			return wrapped.decode(gis);
 		}
@@ -34,9 +34,9 @@
 
 package de.huxhorn.sulky.codec.streaming;
 
+import de.huxhorn.sulky.codec.compression.PooledGZIPOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.zip.GZIPOutputStream;
 
 public class GZIPStreamingEncoderWrapper<E>
 	implements StreamingEncoder<E>
@@ -51,7 +51,7 @@ public class GZIPStreamingEncoderWrapper<E>
 	@Override
 	public void encode(E obj, OutputStream into) throws IOException
 	{
-		try(GZIPOutputStream gos=new GZIPOutputStream(into))
+		try(PooledGZIPOutputStream gos=new PooledGZIPOutputStream(into))
 		{
 			wrapped.encode(obj, gos);
 			gos.finish();
@@ -0,0 +1,81 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ByteBufferInputStreamTest
+{
+	@Test
+	public void readRemainingBytes()
+		throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, (byte) 0xFF, 6});
+		buffer.position(1);
+		buffer.limit(5);
+		ByteBufferInputStream instance = new ByteBufferInputStream(buffer);
+
+		assertEquals(4, instance.available());
+		assertEquals(2, instance.read());
+		byte[] bytes = new byte[5];
+		assertEquals(3, instance.read(bytes, 1, 4));
+		assertArrayEquals(new byte[]{0, 3, 4, (byte) 0xFF, 0}, bytes);
+		assertEquals(-1, instance.read());
+		assertEquals(-1, instance.read(bytes, 0, 5));
+		assertEquals(0, instance.available());
+
+		// position of original buffer is unchanged
+		assertEquals(1, buffer.position());
+	}
+
+	@Test
+	public void skipMarkAndReset()
+		throws IOException
+	{
+		ByteBufferInputStream instance = new ByteBufferInputStream(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}));
+
+		assertEquals(1, instance.skip(1));
+		instance.mark(10);
+		assertEquals(2, instance.read());
+		assertEquals(2, instance.skip(17));
+		instance.reset();
+		assertEquals(2, instance.read());
+	}
+}
@@ -34,9 +34,12 @@
 
 package de.huxhorn.sulky.codec;
 
+import java.nio.ByteBuffer;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class CompressingSerializableCodecTest
 {
@@ -49,4 +52,49 @@ public class CompressingSerializableCodecTest
 		String decoded = instance.decode(encoded);
 		assertEquals(obj, decoded);
 	}
+
+	@Test
+	public void byteBuffer()
+	{
+		String obj = "Foo";
+		CompressingSerializableCodec<String> instance = new CompressingSerializableCodec<>();
+		byte[] encoded = instance.encode(obj);
+		// surround encoded bytes with garbage to make sure only the remaining bytes are used.
+		ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 20);
+		buffer.position(10);
+		buffer.put(encoded);
+		buffer.position(10);
+		buffer.limit(10 + encoded.length);
+		String decoded = instance.decode(buffer);
+		assertEquals(obj, decoded);
+		assertEquals(10, buffer.position());
+		assertEquals(10 + encoded.length, buffer.limit());
+	}
+
+	@Test
+	public void encodeByteBuffer()
+	{
+		String obj = "Foo";
+		CompressingSerializableCodec<String> instance = new CompressingSerializableCodec<>();
+		byte[] encoded = instance.encode(obj);
+		ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 20);
+		buffer.position(10);
+		assertTrue(instance.encode(obj, buffer));
+		assertEquals(10 + encoded.length, buffer.position());
+		assertEquals(encoded.length, instance.estimateSize(obj));
+		buffer.flip();
+		buffer.position(10);
+		assertEquals(ByteBuffer.wrap(encoded), buffer);
+		assertEquals(obj, instance.decode(buffer));
+	}
+
+	@Test
+	public void encodeByteBufferTooSmall()
+	{
+		String obj = "Foo";
+		CompressingSerializableCodec<String> instance = new CompressingSerializableCodec<>();
+		byte[] encoded = instance.encode(obj);
+		ByteBuffer buffer = ByteBuffer.allocate(encoded.length - 1);
+		assertFalse(instance.encode(obj, buffer));
+	}
 }
@@ -0,0 +1,126 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EncodingBuffersTest
+{
+	@Test
+	public void reusedBuffer()
+	{
+		SerializableCodec<String> codec = new SerializableCodec<>();
+		ByteBuffer first = EncodingBuffers.encode(codec, "Foo");
+		assertEquals(ByteBuffer.wrap(codec.encode("Foo")), first);
+		assertEquals("Foo", codec.decode(first));
+
+		ByteBuffer second = EncodingBuffers.encode(codec, "Bar");
+		assertSame(first, second);
+		assertEquals("Bar", codec.decode(second));
+	}
+
+	@Test
+	public void largeObjectsAreNotReused()
+	{
+		SerializableCodec<String> codec = new SerializableCodec<>();
+		String large = new String(new char[EncodingBuffers.MAX_REUSED_CAPACITY]).replace('\0', 'x');
+		ByteBuffer small = EncodingBuffers.encode(codec, "Foo");
+		ByteBuffer buffer = EncodingBuffers.encode(codec, large);
+		assertTrue(buffer.capacity() > EncodingBuffers.MAX_REUSED_CAPACITY);
+		assertEquals(large, codec.decode(buffer));
+		assertNotSame(buffer, EncodingBuffers.encode(codec, "Foo"));
+		assertSame(small, EncodingBuffers.acquire());
+	}
+
+	@Test
+	public void growingKeepsContentAndDirectness()
+	{
+		SerializableCodec<String> codec = new SerializableCodec<>();
+		ByteBuffer target = ByteBuffer.allocateDirect(8);
+		target.putInt(17);
+		ByteBuffer result = EncodingBuffers.encode(codec, "Foo", target);
+		assertNotSame(target, result);
+		assertTrue(result.isDirect());
+		result.flip();
+		assertEquals(17, result.getInt());
+		assertEquals("Foo", codec.decode(result));
+	}
+
+	@Test
+	public void ensureRemaining()
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		buffer.putInt(17);
+		assertSame(buffer, EncodingBuffers.ensureRemaining(buffer, 4));
+		ByteBuffer result = EncodingBuffers.ensureRemaining(buffer, 5);
+		assertTrue(result.remaining() >= 5);
+		assertEquals(4, result.position());
+		assertEquals(17, result.getInt(0));
+	}
+
+	@Test
+	public void adapterCopiesEncodedBytes()
+	{
+		Codec<String> codec = new Codec<String>()
+		{
+			@Override
+			public byte[] encode(String object)
+			{
+				return object.getBytes();
+			}
+
+			@Override
+			public String decode(byte[] bytes)
+			{
+				return new String(bytes);
+			}
+		};
+		ByteBufferCodec<String> adapter = ByteBufferCodecAdapter.adapt(codec);
+		assertEquals(0, adapter.estimateSize("Foo"));
+		assertFalse(adapter.encode("Foo", ByteBuffer.allocate(2)));
+		ByteBuffer buffer = EncodingBuffers.encode(adapter, "Foobar");
+		assertEquals("Foobar", adapter.decode(buffer));
+
+		SerializableCodec<String> serializable = new SerializableCodec<>();
+		assertSame(serializable, ByteBufferCodecAdapter.adapt(serializable));
+	}
+}
@@ -34,6 +34,7 @@
 
 package de.huxhorn.sulky.codec;
 
+import java.nio.ByteBuffer;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -50,4 +51,23 @@ public class XmlCodecTest
 		String decoded = decoder.decode(encoded);
 		assertEquals(obj, decoded);
 	}
+
+	@Test
+	public void byteBuffer()
+	{
+		String obj = "Foo";
+		XmlEncoder<String> encoder = new XmlEncoder<>();
+		XmlDecoder<String> decoder = new XmlDecoder<>();
+		byte[] encoded = encoder.encode(obj);
+		// surround encoded bytes with garbage to make sure only the remaining bytes are used.
+		ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 20);
+		buffer.position(10);
+		buffer.put(encoded);
+		buffer.position(10);
+		buffer.limit(10 + encoded.length);
+		String decoded = decoder.decode(buffer);
+		assertEquals(obj, decoded);
+		assertEquals(10, buffer.position());
+		assertEquals(10 + encoded.length, buffer.limit());
+	}
 }
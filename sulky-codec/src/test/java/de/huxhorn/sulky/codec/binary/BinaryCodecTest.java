@@ -0,0 +1,401 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.binary;
+
+import de.huxhorn.sulky.codec.SerializableCodec;
+import java.beans.Transient;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryCodecTest
+{
+	@Test
+	public void builtInValues()
+	{
+		BinaryCodec<Object> instance = new BinaryCodec<>(new ClassRegistry());
+		List<Object> values = Arrays.asList(null, "Foo", "\u00e4\u20ac\ud83d\ude00", true, (byte) -3, 'x', (short) 1234,
+				Integer.MIN_VALUE, Long.MAX_VALUE, -1.5f, Math.PI, new Date(1234567890L));
+		for(Object value : values)
+		{
+			assertEquals(value, instance.decode(instance.encode(value)));
+		}
+		assertEquals("a?b", instance.decode(instance.encode("a\ud800b")));
+		assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) instance.decode(instance.encode(new byte[]{1, 2, 3})));
+		assertArrayEquals(new int[]{-1, 0, Integer.MAX_VALUE}, (int[]) instance.decode(instance.encode(new int[]{-1, 0, Integer.MAX_VALUE})));
+		assertArrayEquals(new long[]{Long.MIN_VALUE, 17}, (long[]) instance.decode(instance.encode(new long[]{Long.MIN_VALUE, 17})));
+		assertArrayEquals(new String[]{"Foo", null}, (String[]) instance.decode(instance.encode(new String[]{"Foo", null})));
+		assertEquals(new ArrayList<>(values), instance.decode(instance.encode(new ArrayList<>(values))));
+		assertEquals(new LinkedHashSet<>(Arrays.asList("Foo", "Bar")), instance.decode(instance.encode(new LinkedHashSet<>(Arrays.asList("Foo", "Bar")))));
+	}
+
+	@Test
+	public void objects()
+	{
+		ClassRegistry registry = new ClassRegistry(Bean.class);
+		assertEquals(Arrays.asList(Bean.class, Child.class, Color.class), registry.getClasses());
+		BinaryCodec<Bean> instance = new BinaryCodec<>(registry);
+		Bean bean = createBean();
+
+		Bean decoded = instance.decode(instance.encode(bean));
+		assertEquals(bean, decoded);
+		assertNull(decoded.getTransientValue());
+	}
+
+	@Test
+	public void descriptorRoundTrip()
+	{
+		ClassRegistry registry = new ClassRegistry(Bean.class);
+		Map<String, String> metaData = new BinaryCodec<Bean>(registry).putMetaData(new HashMap<>());
+		assertEquals(registry.getDescriptor(), metaData.get(BinaryCodec.METADATA_KEY));
+
+		BinaryCodec<Bean> instance = BinaryCodec.fromMetaData(metaData);
+		assertEquals(registry.getDescriptor(), instance.getRegistry().getDescriptor());
+		Bean bean = createBean();
+		assertEquals(bean, instance.decode(new BinaryCodec<Bean>(registry).encode(bean)));
+	}
+
+	@Test
+	public void changedClasses()
+	{
+		String descriptor = "C " + Child.class.getName() + " removed:J name:L number:L\n"
+				+ "E " + Color.class.getName() + " BLUE REMOVED RED";
+		ClassRegistry registry = ClassRegistry.fromDescriptor(descriptor);
+		assertEquals(descriptor, registry.getDescriptor());
+		BinaryCodec<Object> instance = new BinaryCodec<>(registry);
+
+		Child child = new Child();
+		child.setName("Foo");
+		child.setNumber(17);
+		Child decoded = (Child) instance.decode(instance.encode(child));
+		assertEquals("Foo", decoded.getName());
+		// number changed its type from a reference to int.
+		assertEquals(0, decoded.getNumber());
+		assertEquals(Color.BLUE, instance.decode(instance.encode(Color.BLUE)));
+		assertEquals(Color.RED, instance.decode(instance.encode(Color.RED)));
+		ByteBuffer removed = ByteBuffer.wrap(new byte[]{BinaryValues.ENUM, 2, 2});
+		assertNull(instance.decode(removed));
+	}
+
+	@Test
+	public void encodeByteBuffer()
+	{
+		BinaryCodec<Bean> instance = new BinaryCodec<>(new ClassRegistry(Bean.class));
+		Bean bean = createBean();
+		byte[] encoded = instance.encode(bean);
+		assertEquals(encoded.length, instance.estimateSize(bean));
+		assertFalse(instance.encode(bean, ByteBuffer.allocate(encoded.length - 1)));
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(encoded.length + 10);
+		buffer.position(10);
+		assertTrue(instance.encode(bean, buffer));
+		buffer.flip();
+		buffer.position(10);
+		assertEquals(ByteBuffer.wrap(encoded), buffer);
+		assertEquals(bean, instance.decode(buffer));
+		assertEquals(10, buffer.position());
+	}
+
+	@Test
+	public void smallerThanSerialization()
+	{
+		BinaryCodec<Bean> instance = new BinaryCodec<>(new ClassRegistry(Bean.class));
+		Bean bean = createBean();
+		int binarySize = instance.encode(bean).length;
+		int serializedSize = new SerializableCodec<Bean>().encode(bean).length;
+		assertTrue("binary: " + binarySize + ", serialized: " + serializedSize, binarySize * 5 < serializedSize);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unregisteredClass()
+	{
+		new BinaryCodec<Object>(new ClassRegistry()).encode(new Child());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void classWithoutDefaultConstructor()
+	{
+		new ClassRegistry(Immutable.class);
+	}
+
+	@Test
+	public void corruptedData()
+	{
+		BinaryCodec<Object> instance = new BinaryCodec<>(new ClassRegistry());
+		assertNull(instance.decode(new byte[]{BinaryValues.STRING, 10, 'F'}));
+		assertNull(instance.decode(new byte[]{BinaryValues.OBJECT, 0}));
+		assertNull(instance.decode(new byte[]{127}));
+	}
+
+	private static Bean createBean()
+	{
+		Bean bean = new Bean();
+		bean.setFlag(true);
+		bean.setCount(-17);
+		bean.setTimestamp(1234567890123L);
+		bean.setRatio(0.25);
+		bean.setMessage("Hello, world!");
+		bean.setColor(Color.GREEN);
+		bean.setTags(new ArrayList<>(Arrays.asList("foo", "bar")));
+		Map<String, String> properties = new HashMap<>();
+		properties.put("key", "value");
+		bean.setProperties(properties);
+		Child child = new Child();
+		child.setName("child");
+		child.setNumber(42);
+		bean.setChild(child);
+		bean.setTransientValue("transient");
+		return bean;
+	}
+
+	public enum Color
+	{
+		RED, GREEN, BLUE
+	}
+
+	public static class Child
+		implements Serializable
+	{
+		private static final long serialVersionUID = 3213451717707768557L;
+
+		private String name;
+		private int number;
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public void setName(String name)
+		{
+			this.name = name;
+		}
+
+		public int getNumber()
+		{
+			return number;
+		}
+
+		public void setNumber(int number)
+		{
+			this.number = number;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(this == o) return true;
+			if(o == null || getClass() != o.getClass()) return false;
+			Child child = (Child) o;
+			return number == child.number && Objects.equals(name, child.name);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(name, number);
+		}
+	}
+
+	public static class Bean
+		implements Serializable
+	{
+		private static final long serialVersionUID = -3795411405519530187L;
+
+		private boolean flag;
+		private int count;
+		private long timestamp;
+		private double ratio;
+		private String message;
+		private Color color;
+		private List<String> tags;
+		private Map<String, String> properties;
+		private Child child;
+		private transient String transientValue;
+
+		public boolean isFlag()
+		{
+			return flag;
+		}
+
+		public void setFlag(boolean flag)
+		{
+			this.flag = flag;
+		}
+
+		public int getCount()
+		{
+			return count;
+		}
+
+		public void setCount(int count)
+		{
+			this.count = count;
+		}
+
+		public long getTimestamp()
+		{
+			return timestamp;
+		}
+
+		public void setTimestamp(long timestamp)
+		{
+			this.timestamp = timestamp;
+		}
+
+		public double getRatio()
+		{
+			return ratio;
+		}
+
+		public void setRatio(double ratio)
+		{
+			this.ratio = ratio;
+		}
+
+		public String getMessage()
+		{
+			return message;
+		}
+
+		public void setMessage(String message)
+		{
+			this.message = message;
+		}
+
+		public Color getColor()
+		{
+			return color;
+		}
+
+		public void setColor(Color color)
+		{
+			this.color = color;
+		}
+
+		public List<String> getTags()
+		{
+			return tags;
+		}
+
+		public void setTags(List<String> tags)
+		{
+			this.tags = tags;
+		}
+
+		public Map<String, String> getProperties()
+		{
+			return properties;
+		}
+
+		public void setProperties(Map<String, String> properties)
+		{
+			this.properties = properties;
+		}
+
+		public Child getChild()
+		{
+			return child;
+		}
+
+		public void setChild(Child child)
+		{
+			this.child = child;
+		}
+
+		@Transient
+		public String getTransientValue()
+		{
+			return transientValue;
+		}
+
+		public void setTransientValue(String transientValue)
+		{
+			this.transientValue = transientValue;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(this == o) return true;
+			if(o == null || getClass() != o.getClass()) return false;
+			Bean bean = (Bean) o;
+			return flag == bean.flag
+					&& count == bean.count
+					&& timestamp == bean.timestamp
+					&& Double.compare(bean.ratio, ratio) == 0
+					&& Objects.equals(message, bean.message)
+					&& color == bean.color
+					&& Objects.equals(tags, bean.tags)
+					&& Objects.equals(properties, bean.properties)
+					&& Objects.equals(child, bean.child);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(flag, count, timestamp, ratio, message, color, tags, properties, child);
+		}
+	}
+
+	public static class Immutable
+	{
+		private final String value;
+
+		public Immutable(String value)
+		{
+			this.value = value;
+		}
+
+		public String getValue()
+		{
+			return value;
+		}
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(Parameterized.class)
+public class CompressorTest
+{
+	private final Compressor compressor;
+
+	public CompressorTest(Compressor compressor)
+	{
+		this.compressor = compressor;
+	}
+
+	@Parameterized.Parameters(name = "{0}")
+	public static Collection<Object[]> compressors()
+	{
+		return Arrays.asList(new Object[][]{
+				{new Lz4Compressor()},
+				{new DeflateCompressor()},
+				{new DeflateCompressor(Deflater.BEST_SPEED, true)},
+				{new DeflateCompressor(Deflater.NO_COMPRESSION, false)},
+		});
+	}
+
+	@Test
+	public void roundTrip()
+		throws IOException
+	{
+		for(byte[] data : createData())
+		{
+			byte[] compressed = new byte[compressor.maxCompressedLength(data.length) + 3];
+			int compressedLength = compressor.compress(data, 0, data.length, compressed, 3);
+			assertTrue(compressedLength <= compressor.maxCompressedLength(data.length));
+
+			byte[] uncompressed = new byte[data.length + 2];
+			compressor.decompress(compressed, 3, compressedLength, uncompressed, 2, data.length);
+			assertArrayEquals(data, Arrays.copyOfRange(uncompressed, 2, uncompressed.length));
+		}
+	}
+
+	@Test
+	public void compressing()
+	{
+		byte[] data = repeat("Foo Bar Foobar ", 1000);
+		byte[] compressed = new byte[compressor.maxCompressedLength(data.length)];
+		int compressedLength = compressor.compress(data, 0, data.length, compressed, 0);
+		if(!(compressor instanceof DeflateCompressor) || ((DeflateCompressor) compressor).getLevel() != Deflater.NO_COMPRESSION)
+		{
+			assertTrue(compressedLength < data.length / 10);
+		}
+	}
+
+	@Test
+	public void wrongUncompressedLength()
+	{
+		byte[] data = repeat("Foo Bar ", 1000);
+		byte[] compressed = new byte[compressor.maxCompressedLength(data.length)];
+		int compressedLength = compressor.compress(data, 0, data.length, compressed, 0);
+		try
+		{
+			compressor.decompress(compressed, 0, compressedLength, new byte[data.length + 1], 0, data.length + 1);
+			fail("Expected IOException!");
+		}
+		catch(IOException ex)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void stream()
+		throws IOException
+	{
+		byte[] data = createData().get(4);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(CompressorOutputStream cos = new CompressorOutputStream(bos, compressor))
+		{
+			cos.write(data, 0, 10);
+			cos.write(data[10]);
+			cos.flush();
+			cos.write(data, 11, data.length - 11);
+		}
+		bos.write(17);
+
+		ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
+		CompressorInputStream cis = new CompressorInputStream(bis);
+		assertEquals(compressor.getName(), cis.getCompressor().getName());
+		byte[] read = new byte[data.length];
+		int count = 0;
+		while(count < read.length)
+		{
+			int current = cis.read(read, count, read.length - count);
+			assertTrue(current > 0);
+			count += current;
+		}
+		assertArrayEquals(data, read);
+		assertEquals(-1, cis.read());
+		cis.skipRemaining();
+		assertEquals(17, bis.read());
+	}
+
+	@Test
+	public void forName()
+	{
+		Compressor resolved = Compressors.forName(compressor.getName());
+		assertEquals(compressor.getName(), resolved.getName());
+		assertSame(resolved, Compressors.forName(compressor.getName()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void forUnknownName()
+	{
+		Compressors.forName("foo");
+	}
+
+	private static List<byte[]> createData()
+	{
+		Random random = new Random(17);
+		List<byte[]> result = new ArrayList<>();
+		result.add(new byte[0]);
+		result.add(new byte[]{42});
+		result.add(repeat("Foo", 5));
+		result.add(new byte[100_000]);
+		byte[] mixed = new byte[3 * CompressorOutputStream.BLOCK_SIZE + 17];
+		for(int i = 0; i < mixed.length; i++)
+		{
+			mixed[i] = (byte) ((i / 1000) % 2 == 0 ? random.nextInt(4) : random.nextInt());
+		}
+		result.add(mixed);
+		byte[] random16 = new byte[70_000];
+		random.nextBytes(random16);
+		result.add(random16);
+		return result;
+	}
+
+	private static byte[] repeat(String value, int count)
+	{
+		StringBuilder result = new StringBuilder();
+		for(int i = 0; i < count; i++)
+		{
+			result.append(value);
+		}
+		return result.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class PooledGZIPStreamTest
+{
+	@Test
+	public void deflaterPoolReusesInstances()
+	{
+		DeflaterPool pool = new DeflaterPool(Deflater.BEST_SPEED, true, 2);
+		Deflater first = pool.acquire();
+		pool.release(first);
+		assertEquals(1, pool.size());
+		assertSame(first, pool.acquire());
+		assertEquals(0, pool.size());
+	}
+
+	@Test
+	public void deflaterPoolIsBounded()
+	{
+		DeflaterPool pool = new DeflaterPool(Deflater.BEST_SPEED, true, 2);
+		Deflater first = pool.acquire();
+		Deflater second = pool.acquire();
+		Deflater third = pool.acquire();
+		assertNotSame(first, second);
+		pool.release(first);
+		pool.release(second);
+		pool.release(third);
+		assertEquals(2, pool.size());
+		pool.clear();
+		assertEquals(0, pool.size());
+	}
+
+	@Test
+	public void inflaterPoolIsBounded()
+	{
+		InflaterPool pool = new InflaterPool(true, 1);
+		Inflater first = pool.acquire();
+		Inflater second = pool.acquire();
+		pool.release(first);
+		pool.release(second);
+		assertEquals(1, pool.size());
+		assertSame(first, pool.acquire());
+	}
+
+	@Test
+	public void sharedPools()
+	{
+		DeflaterPool deflaterPool = DeflaterPool.getShared(Deflater.DEFAULT_COMPRESSION, true);
+		assertSame(deflaterPool, DeflaterPool.getShared(Deflater.DEFAULT_COMPRESSION, true));
+		assertEquals(Deflater.DEFAULT_COMPRESSION, deflaterPool.getLevel());
+		assertEquals(true, deflaterPool.isNowrap());
+		DeflaterPool other = DeflaterPool.getShared(Deflater.BEST_COMPRESSION, false);
+		assertEquals(Deflater.BEST_COMPRESSION, other.getLevel());
+		assertEquals(false, other.isNowrap());
+		assertEquals(true, InflaterPool.getShared(true).isNowrap());
+		assertEquals(false, InflaterPool.getShared(false).isNowrap());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidMaxSize()
+	{
+		new DeflaterPool(Deflater.DEFAULT_COMPRESSION, true, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void wrappingPoolIsRejected()
+		throws IOException
+	{
+		new PooledGZIPOutputStream(new ByteArrayOutputStream(), new DeflaterPool(Deflater.DEFAULT_COMPRESSION, false, 1));
+	}
+
+	@Test
+	public void pooledOutputIsReadableByGZIPInputStream()
+		throws IOException
+	{
+		DeflaterPool pool = new DeflaterPool(Deflater.DEFAULT_COMPRESSION, true, 1);
+		for(int i = 0; i < 3; i++)
+		{
+			byte[] data = createData(i * 50000);
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			try(OutputStream out = new PooledGZIPOutputStream(bos, pool))
+			{
+				out.write(data);
+			}
+			assertEquals(1, pool.size());
+			assertArrayEquals(data, readFully(new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray()))));
+		}
+	}
+
+	@Test
+	public void pooledInputReadsGZIPOutputStream()
+		throws IOException
+	{
+		InflaterPool pool = new InflaterPool(true, 1);
+		for(int i = 0; i < 3; i++)
+		{
+			byte[] data = createData(i * 50000);
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			try(OutputStream out = new GZIPOutputStream(bos))
+			{
+				out.write(data);
+			}
+			assertArrayEquals(data, readFully(new PooledGZIPInputStream(new ByteArrayInputStream(bos.toByteArray()), pool)));
+			assertEquals(1, pool.size());
+		}
+	}
+
+	@Test
+	public void corruptTrailerIsDetected()
+		throws IOException
+	{
+		byte[] data = createData(1000);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(OutputStream out = new PooledGZIPOutputStream(bos))
+		{
+			out.write(data);
+		}
+		byte[] compressed = bos.toByteArray();
+		compressed[compressed.length - 5]++;
+		InflaterPool pool = new InflaterPool(true, 1);
+		try
+		{
+			readFully(new PooledGZIPInputStream(new ByteArrayInputStream(compressed), pool));
+			fail("Expected ZipException!");
+		}
+		catch(ZipException ex)
+		{
+			// expected
+		}
+		assertEquals(1, pool.size());
+	}
+
+	@Test
+	public void invalidHeaderReleasesInflater()
+	{
+		InflaterPool pool = new InflaterPool(true, 1);
+		try
+		{
+			new PooledGZIPInputStream(new ByteArrayInputStream(new byte[]{1, 2, 3}), pool);
+			fail("Expected ZipException!");
+		}
+		catch(IOException ex)
+		{
+			// expected
+		}
+		assertEquals(1, pool.size());
+	}
+
+	private static byte[] createData(int size)
+	{
+		byte[] result = new byte[size];
+		Random random = new Random(17);
+		for(int i = 0; i < size; i++)
+		{
+			result[i] = (byte) ('a' + random.nextInt(8));
+		}
+		return result;
+	}
+
+	private static byte[] readFully(InputStream in)
+		throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(InputStream closing = in)
+		{
+			byte[] buffer = new byte[4096];
+			for(;;)
+			{
+				int read = closing.read(buffer);
+				if(read < 0)
+				{
+					break;
+				}
+				bos.write(buffer, 0, read);
+			}
+		}
+		return bos.toByteArray();
+	}
+}